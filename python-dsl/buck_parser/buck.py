@@ -1597,6 +1597,20 @@ class BuildFileProcessor(object):
         self._include_cache[build_include.path] = build_env, mod
         return build_env, mod
 
+    def preload_implicit_includes(self):
+        # type: () -> None
+        """Process implicit includes ahead of the first build file.
+
+        Failures are ignored, since failed includes are not cached and will be
+        reported with proper diagnostics once a build file that needs them is
+        processed.
+        """
+        for include in self._implicit_includes:
+            try:
+                self._process_include(self._resolve_include(include), True)
+            except Exception:
+                pass
+
     def _process_build_file(
         self, watch_root, project_prefix, path, package_implicit_load
     ):
@@ -1931,6 +1945,11 @@ def main():
         action="store_true",
         help="Warn about deprecated syntax usage.",
     )
+    parser.add_option(
+        "--preload_includes",
+        action="store_true",
+        help="Process implicit includes before reading the first query.",
+    )
     (options, args) = parser.parse_args()
 
     # Even though project_root is absolute path, it may not be concise. For
@@ -2007,6 +2026,9 @@ def main():
         with build_file_processor.with_builtins(builtins.__dict__):
             processed_build_file = []
 
+            if options.preload_includes:
+                build_file_processor.preload_implicit_includes()
+
             profiler = None
             if options.profile:
                 profiler = Profiler(True)
@@ -339,6 +339,52 @@ class BuckTest(unittest.TestCase):
             build_file.root, build_file.prefix, build_file.path, [], None
         )
 
+    def test_preloaded_implicit_includes_are_reused(self):
+        """
+        Verify that implicit includes processed ahead of time are not read again.
+        """
+
+        implicit_inc = ProjectFile(
+            self.project_root, path="implicit", contents=("FOO = 1",)
+        )
+        build_file = ProjectFile(self.project_root, path="BUCK", contents=("FOO",))
+        self.write_files(implicit_inc, build_file)
+        build_file_processor = self.create_build_file_processor(
+            includes=[implicit_inc.name]
+        )
+        build_file_processor.preload_implicit_includes()
+        os.remove(os.path.join(self.project_root, implicit_inc.path))
+
+        build_file_processor.process(
+            build_file.root, build_file.prefix, build_file.path, [], None
+        )
+
+    def test_preloading_broken_implicit_include_defers_error(self):
+        """
+        Verify that errors in implicit includes are only reported once a build
+        file is processed.
+        """
+
+        implicit_inc = ProjectFile(
+            self.project_root, path="implicit", contents=("FOO = BAR",)
+        )
+        build_file = ProjectFile(self.project_root, path="BUCK", contents=("FOO",))
+        self.write_files(implicit_inc, build_file)
+        build_file_processor = self.create_build_file_processor(
+            includes=[implicit_inc.name]
+        )
+        build_file_processor.preload_implicit_includes()
+
+        self.assertRaises(
+            NameError,
+            build_file_processor.process,
+            build_file.root,
+            build_file.prefix,
+            build_file.path,
+            [],
+            None,
+        )
+
     def test_all_list_is_respected(self):
         """
         Verify that the `__all__` list in included files can be used to narrow
@@ -84,7 +84,11 @@ public class AsyncJobStateFactory {
         .addListener(
             () ->
                 clientStatsTracker.ifPresent(
-                    tracker -> tracker.stopTimer(LOCAL_FILE_HASH_COMPUTATION)),
+                    tracker -> {
+                      tracker.stopTimer(LOCAL_FILE_HASH_COMPUTATION);
+                      tracker.setLocalFileHashCount(
+                          distributedBuildFileHashes.getRecordedFileHashCount());
+                    }),
             executorService);
 
     // Distributed builds serialize and send the unversioned target graph,
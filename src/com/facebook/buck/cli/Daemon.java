@@ -35,6 +35,7 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.watchman.Watchman;
 import com.facebook.buck.io.watchman.WatchmanCursor;
 import com.facebook.buck.io.watchman.WatchmanWatcher;
+import com.facebook.buck.parser.BuildFileSearchCache;
 import com.facebook.buck.parser.DaemonicParserState;
 import com.facebook.buck.parser.ParserConfig;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
@@ -74,6 +75,7 @@ final class Daemon implements Closeable {
   private final Cell rootCell;
   private final TypeCoercerFactory typeCoercerFactory;
   private final DaemonicParserState daemonicParserState;
+  private final BuildFileSearchCache buildFileSearchCache;
   private final ImmutableList<ProjectFileHashCache> hashCaches;
   private final EventBus fileEventBus;
   private final Optional<WebServer> webServer;
@@ -124,6 +126,8 @@ final class Daemon implements Closeable {
     typeCoercerFactory = new DefaultTypeCoercerFactory();
     ParserConfig parserConfig = rootCell.getBuckConfig().getView(ParserConfig.class);
     this.daemonicParserState = new DaemonicParserState(parserConfig.getNumParsingThreads());
+    this.buildFileSearchCache = new BuildFileSearchCache();
+    fileEventBus.register(buildFileSearchCache);
 
     // Build the the rule key cache recycler.
     this.defaultRuleKeyFactoryCacheRecycler =
@@ -250,6 +254,10 @@ final class Daemon implements Closeable {
     return daemonicParserState;
   }
 
+  BuildFileSearchCache getBuildFileSearchCache() {
+    return buildFileSearchCache;
+  }
+
   void interruptOnClientExit(Thread threadToInterrupt) {
     // Synchronize on parser object so that the main command processing thread is not
     // interrupted mid way through a Parser cache update by the Thread.interrupt() call
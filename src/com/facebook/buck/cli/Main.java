@@ -1142,6 +1142,8 @@ public final class Main {
                   clock,
                   counterRegistry,
                   commandEventListeners,
+                  command.subcommand instanceof AbstractCommand
+                      && ((AbstractCommand) command.subcommand).getEnableParserProfiling(),
                   managerScope);
           consoleListener.register(buildEventBus);
 
@@ -1526,7 +1528,11 @@ public final class Main {
               new ParserPythonInterpreterProvider(parserConfig, executableFinder),
               rootCell.getBuckConfig(),
               daemon.getDaemonicParserState(),
-              new TargetSpecResolver(buildEventBus, watchman),
+              // Build file searches can only be reused if the daemon is notified of file changes.
+              watchmanWatcher.isPresent()
+                  ? new TargetSpecResolver(
+                      buildEventBus, watchman, daemon.getBuildFileSearchCache())
+                  : new TargetSpecResolver(buildEventBus, watchman),
               watchman,
               buildEventBus,
               targetPlatforms,
@@ -1868,6 +1874,7 @@ public final class Main {
       Clock clock,
       CounterRegistry counterRegistry,
       Iterable<BuckEventListener> commandSpecificEventListeners,
+      boolean parserProfilingEnabled,
       TaskManagerScope managerScope) {
     ImmutableList.Builder<BuckEventListener> eventListenersBuilder =
         ImmutableList.<BuckEventListener>builder().add(new LoggingBuildListener());
@@ -1943,7 +1950,10 @@ public final class Main {
       }
     }
 
-    eventListenersBuilder.add(new ParserProfilerLoggerListener(invocationInfo, projectFilesystem));
+    if (parserProfilingEnabled) {
+      eventListenersBuilder.add(
+          new ParserProfilerLoggerListener(invocationInfo, projectFilesystem));
+    }
 
     eventListenersBuilder.add(new LoadBalancerEventsListener(counterRegistry));
     eventListenersBuilder.add(new CacheRateStatsListener(buckEventBus));
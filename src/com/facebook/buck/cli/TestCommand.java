@@ -287,6 +287,11 @@ public class TestCommand extends BuildCommand {
     coverageIncludes.ifPresent(strings -> builder.setCoverageIncludes(String.join(",", strings)));
     coverageExcludes.ifPresent(strings -> builder.setCoverageExcludes(String.join(",", strings)));
 
+    builder
+        .setSchedulingByDuration(testBuckConfig.isSchedulingByDuration())
+        .setNumTestThreads(getNumTestThreads(params.getBuckConfig()))
+        .setMaxJUnitShards(isDebugEnabled() ? 1 : testBuckConfig.getMaxJUnitShards());
+
     return builder.build();
   }
 
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * How long test rules and test classes took in previous runs, kept in buck-out for {@link
+ * com.facebook.buck.test.TestScheduler}.
+ *
+ * <p>Each duration is a moving average that weighs the latest run as much as all earlier runs
+ * together, so that it follows real changes quickly without trusting one slow run too much.
+ */
+class TestDurationHistory {
+  private static final Logger LOG = Logger.get(TestDurationHistory.class);
+
+  private static final String FILE_NAME = "test_durations.json";
+  private static final String TARGETS = "targets";
+  private static final String CLASSES = "classes";
+
+  private final Path path;
+  private final ConcurrentMap<String, Long> targetDurationsMs;
+  private final ConcurrentMap<String, Long> classDurationsMs;
+
+  @VisibleForTesting
+  TestDurationHistory(
+      Path path, Map<String, Long> targetDurationsMs, Map<String, Long> classDurationsMs) {
+    this.path = path;
+    this.targetDurationsMs = new ConcurrentHashMap<>(targetDurationsMs);
+    this.classDurationsMs = new ConcurrentHashMap<>(classDurationsMs);
+  }
+
+  /** Reads the durations recorded in the given filesystem, if any. */
+  public static TestDurationHistory load(ProjectFilesystem filesystem) {
+    return load(filesystem.resolve(filesystem.getBuckPaths().getBuckOut()).resolve(FILE_NAME));
+  }
+
+  @VisibleForTesting
+  static TestDurationHistory load(Path path) {
+    Map<String, Map<String, Long>> durations = ImmutableMap.of();
+    if (Files.isRegularFile(path)) {
+      try {
+        durations =
+            ObjectMappers.readValue(path, new TypeReference<Map<String, Map<String, Long>>>() {});
+      } catch (IOException e) {
+        LOG.warn(e, "Ignoring unreadable test durations in %s.", path);
+      }
+    }
+    return new TestDurationHistory(
+        path,
+        durations.getOrDefault(TARGETS, ImmutableMap.of()),
+        durations.getOrDefault(CLASSES, ImmutableMap.of()));
+  }
+
+  public Optional<Long> getTargetDurationMs(BuildTarget target) {
+    return Optional.ofNullable(targetDurationsMs.get(target.getFullyQualifiedName()));
+  }
+
+  public ImmutableMap<String, Long> getClassDurationsMs() {
+    return ImmutableMap.copyOf(classDurationsMs);
+  }
+
+  public void recordTarget(BuildTarget target, long durationMs) {
+    targetDurationsMs.merge(
+        target.getFullyQualifiedName(), durationMs, TestDurationHistory::average);
+  }
+
+  public void recordClass(String testClass, long durationMs) {
+    classDurationsMs.merge(testClass, durationMs, TestDurationHistory::average);
+  }
+
+  /** Writes the durations back, replacing the file atomically. Failures are only logged. */
+  @SuppressWarnings("PMD.EmptyCatchBlock")
+  public void save() {
+    Path temp = path.resolveSibling(String.format("%s.%s.tmp", FILE_NAME, UUID.randomUUID()));
+    try {
+      Files.createDirectories(path.getParent());
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        ObjectMappers.WRITER.writeValue(
+            out,
+            ImmutableMap.of(
+                TARGETS, ImmutableMap.copyOf(targetDurationsMs),
+                CLASSES, ImmutableMap.copyOf(classDurationsMs)));
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to save test durations to %s.", path);
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException ignored) {
+        // The temporary file is in buck-out, and will go away with the next clean.
+      }
+    }
+  }
+
+  private static long average(long previousMs, long latestMs) {
+    return (previousMs + latestMs) / 2;
+  }
+}
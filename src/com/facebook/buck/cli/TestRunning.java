@@ -46,6 +46,7 @@ import com.facebook.buck.jvm.core.JavaLibrary;
 import com.facebook.buck.jvm.java.CompilerOutputPaths;
 import com.facebook.buck.jvm.java.DefaultJavaPackageFinder;
 import com.facebook.buck.jvm.java.GenerateCodeCoverageReportStep;
+import com.facebook.buck.jvm.java.JUnitShardsStep;
 import com.facebook.buck.jvm.java.JacocoConstants;
 import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.jvm.java.JavaLibraryWithTests;
@@ -62,10 +63,15 @@ import com.facebook.buck.test.TestResultSummary;
 import com.facebook.buck.test.TestResults;
 import com.facebook.buck.test.TestRuleEvent;
 import com.facebook.buck.test.TestRunningOptions;
+import com.facebook.buck.test.TestScheduler;
 import com.facebook.buck.test.TestStatusMessage;
 import com.facebook.buck.test.result.type.ResultType;
 import com.facebook.buck.util.Threads;
+import com.facebook.buck.util.concurrent.ListeningMultiSemaphore;
 import com.facebook.buck.util.concurrent.MoreFutures;
+import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.util.types.Either;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
@@ -74,6 +80,7 @@ import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
@@ -166,6 +173,19 @@ public class TestRunning {
       rulesUnderTestForCoverage = ImmutableSet.of();
     }
 
+    Optional<TestDurationHistory> history = Optional.empty();
+    if (options.isSchedulingByDuration()) {
+      history = Optional.of(TestDurationHistory.load(params.getCell().getFilesystem()));
+      options =
+          TestRunningOptions.builder()
+              .from(options)
+              .setTestClassDurationsMs(history.get().getClassDurationsMs())
+              .build();
+    }
+    // Runs with test selectors only run some of the tests, so their durations are not recorded.
+    Optional<TestDurationHistory> historyToRecord =
+        options.getTestSelectorList().isEmpty() ? history : Optional.empty();
+
     ImmutableSet<String> testTargets =
         FluentIterable.from(tests)
             .transform(BuildRule::getBuildTarget)
@@ -300,6 +320,32 @@ public class TestRunning {
       }
     }
 
+    int numTestThreads = Math.max(1, options.getNumTestThreads());
+    long predictedWallTimeMs = 0;
+    if (history.isPresent()) {
+      ImmutableMap<TestRun, Long> parallelDurationsMs =
+          estimateDurationsMs(parallelTestRuns, history.get());
+      parallelTestRuns = TestScheduler.orderLongestFirst(parallelDurationsMs);
+      predictedWallTimeMs =
+          TestScheduler.predictWallTimeMs(
+                  parallelTestRuns,
+                  parallelDurationsMs::get,
+                  testRun -> getTestSlots(testRun, numTestThreads),
+                  numTestThreads)
+              + estimateDurationsMs(separateTestRuns, history.get()).values().stream()
+                  .mapToLong(Long::longValue)
+                  .sum();
+    }
+
+    // Test runs that run several JVMs at once take a test slot for each, so that they don't run
+    // more tests at once than test.threads allows.
+    WeightedListeningExecutorService testSlotsService =
+        new WeightedListeningExecutorService(
+            new ListeningMultiSemaphore(
+                ResourceAmounts.of(numTestThreads, 0, 0, 0), ResourceAllocationFairness.FAIR),
+            ResourceAmounts.of(1, 0, 0, 0),
+            service);
+    long startTimeMs = System.currentTimeMillis();
     for (TestRun testRun : parallelTestRuns) {
       ListenableFuture<TestResults> testResults =
           runStepsAndYieldResult(
@@ -309,7 +355,9 @@ public class TestRunning {
               testRun.getTestResultsCallable(),
               testRun.getTest().getBuildTarget(),
               params.getBuckEventBus(),
-              service);
+              historyToRecord,
+              testSlotsService.withDefaultAmounts(
+                  ResourceAmounts.of(getTestSlots(testRun, numTestThreads), 0, 0, 0)));
       results.add(
           transformTestResults(
               params,
@@ -346,6 +394,7 @@ public class TestRunning {
                               testRun.getTestResultsCallable(),
                               testRun.getTest().getBuildTarget(),
                               params.getBuckEventBus(),
+                              historyToRecord,
                               directExecutorService),
                           testRun.getTest(),
                           testRun.getTestReportingCallback(),
@@ -399,6 +448,18 @@ public class TestRunning {
 
     params.getBuckEventBus().post(TestRunEvent.finished(testTargets, completedResults));
 
+    if (history.isPresent()) {
+      long wallTimeMs = System.currentTimeMillis() - startTimeMs;
+      LOG.info("Tests took %d ms, predicted %d ms.", wallTimeMs, predictedWallTimeMs);
+      params
+          .getBuckEventBus()
+          .post(
+              ConsoleEvent.info(
+                  "Tests took %.1fs, predicted %.1fs from previous runs.",
+                  wallTimeMs / 1000.0, predictedWallTimeMs / 1000.0));
+      history.get().save();
+    }
+
     // Write out the results as XML, if requested.
     Optional<String> path = options.getPathToXmlTestOutput();
     if (path.isPresent()) {
@@ -833,6 +894,31 @@ public class TestRunning {
     return ImmutableSet.copyOf(srcFolders);
   }
 
+  /**
+   * Estimates how long each test run will take from previous runs. Runs without steps only read
+   * cached results, and take no time.
+   */
+  private static ImmutableMap<TestRun, Long> estimateDurationsMs(
+      List<TestRun> testRuns, TestDurationHistory history) {
+    return TestScheduler.estimateDurationsMs(
+        testRuns,
+        testRun ->
+            testRun.getSteps().isEmpty()
+                ? Optional.of(0L)
+                : history.getTargetDurationMs(testRun.getTest().getBuildTarget()));
+  }
+
+  /** @return the number of test slots that the run takes while it runs, at most {@code max}. */
+  private static int getTestSlots(TestRun testRun, int max) {
+    int slots = 1;
+    for (Step step : testRun.getSteps()) {
+      if (step instanceof JUnitShardsStep) {
+        slots = Math.max(slots, ((JUnitShardsStep) step).getShardCount());
+      }
+    }
+    return Math.min(slots, max);
+  }
+
   private static ListenableFuture<TestResults> runStepsAndYieldResult(
       StepRunner stepRunner,
       ExecutionContext context,
@@ -840,19 +926,29 @@ public class TestRunning {
       Callable<TestResults> interpretResults,
       BuildTarget buildTarget,
       BuckEventBus eventBus,
+      Optional<TestDurationHistory> history,
       ListeningExecutorService listeningExecutorService) {
     Preconditions.checkState(!listeningExecutorService.isShutdown());
     Callable<TestResults> callable =
         () -> {
           LOG.debug("Test steps will run for %s", buildTarget);
           eventBus.post(TestRuleEvent.started(buildTarget));
+          long startTimeMs = System.currentTimeMillis();
           for (Step step : steps) {
             stepRunner.runStepForBuildTarget(context, step, Optional.of(buildTarget));
           }
+          long durationMs = System.currentTimeMillis() - startTimeMs;
           LOG.debug("Test steps did run for %s", buildTarget);
           eventBus.post(TestRuleEvent.finished(buildTarget));
 
-          return interpretResults.call();
+          TestResults results = interpretResults.call();
+          if (history.isPresent() && !steps.isEmpty()) {
+            history.get().recordTarget(buildTarget, durationMs);
+            for (TestCaseSummary testCase : results.getTestCases()) {
+              history.get().recordClass(testCase.getTestCaseName(), testCase.getTotalTime());
+            }
+          }
+          return results;
         };
 
     return listeningExecutorService.submit(callable);
@@ -259,6 +259,27 @@ public class BuildInfoRecorder {
     return Optional.ofNullable(buildMetadata.get(key));
   }
 
+  /**
+   * Removes the rule keys from the build metadata, so that they are not written to disk.
+   *
+   * @return the removed rule keys.
+   */
+  public ImmutableMap<String, String> removeRuleKeys() {
+    ImmutableMap.Builder<String, String> removed = ImmutableMap.builder();
+    for (String key :
+        ImmutableList.of(
+            BuildInfo.MetadataKey.RULE_KEY,
+            BuildInfo.MetadataKey.INPUT_BASED_RULE_KEY,
+            BuildInfo.MetadataKey.DEP_FILE_RULE_KEY,
+            BuildInfo.MetadataKey.MANIFEST_KEY)) {
+      String value = buildMetadata.remove(key);
+      if (value != null) {
+        removed.put(key, value);
+      }
+    }
+    return removed.build();
+  }
+
   public void assertOnlyHasKeys(String... keys) {
     Sets.SetView<String> difference =
         Sets.difference(buildMetadata.keySet(), ImmutableSet.copyOf(keys));
@@ -61,6 +61,7 @@ import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -71,10 +72,14 @@ import com.google.common.util.concurrent.MoreExecutors;
 import java.io.Closeable;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -116,6 +121,10 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   private final ConcurrentMap<BuildTarget, ListenableFuture<BuildResult>> results =
       Maps.newConcurrentMap();
 
+  /** Rule keys withheld from the metadata on disk of rules whose outputs were deferred. */
+  private final ConcurrentMap<BuildRule, ImmutableMap<String, String>> rulesWithDeferredOutputs =
+      Maps.newConcurrentMap();
+
   private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
   private final ConcurrentLinkedQueue<WeakReference<CachingBuildRuleBuilder>> ruleBuilders =
       new ConcurrentLinkedQueue<>();
@@ -267,6 +276,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   public void close() {
     try {
       if (customBuildRuleStrategy.isPresent()) {
+        recordRuleKeysOfMaterializedOutputs(customBuildRuleStrategy.get());
         customBuildRuleStrategy.get().close();
       }
       terminateBuildWithFailure(new CancellationException("Cancelling due to engine shutdown."));
@@ -278,6 +288,24 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     }
   }
 
+  /**
+   * Writes the rule keys of rules whose deferred outputs were written to disk later in the build,
+   * so that the next build can rely on them. Rules whose outputs were never written keep metadata
+   * without rule keys, so the next build builds them again.
+   */
+  private void recordRuleKeysOfMaterializedOutputs(BuildRuleStrategy strategy) throws IOException {
+    for (Map.Entry<BuildRule, ImmutableMap<String, String>> entry :
+        rulesWithDeferredOutputs.entrySet()) {
+      BuildRule rule = entry.getKey();
+      if (strategy.getDeferredOutputs(rule).isEmpty()) {
+        buildInfoStoreManager
+            .get(rule.getProjectFilesystem(), metadataStorage)
+            .updateMetadata(rule.getBuildTarget(), entry.getValue());
+      }
+    }
+    rulesWithDeferredOutputs.clear();
+  }
+
   /// We might want to share rule-key calculation with other parts of code.
   public ParallelRuleKeyCalculator<RuleKey> getRuleKeyCalculator() {
     return ruleKeyCalculator;
@@ -473,9 +501,49 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     registerTopLevelRule(rule, buildContext.getEventBus());
     ListenableFuture<BuildResult> resultFuture =
         getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext);
+    if (customBuildRuleStrategy.isPresent()) {
+      resultFuture = materializeTopLevelOutputs(customBuildRuleStrategy.get(), rule, resultFuture);
+    }
     return BuildEngineResult.builder().setResult(resultFuture).build();
   }
 
+  /**
+   * Top-level rules are what the user asked for, so their outputs (and those of their runtime deps)
+   * have to be on disk once they are built even if the strategy deferred writing them.
+   */
+  private ListenableFuture<BuildResult> materializeTopLevelOutputs(
+      BuildRuleStrategy strategy, BuildRule rule, ListenableFuture<BuildResult> resultFuture) {
+    return Futures.transformAsync(
+        resultFuture,
+        result -> {
+          if (!result.isSuccess()) {
+            return Futures.immediateFuture(result);
+          }
+          Set<BuildRule> rules = new LinkedHashSet<>();
+          Queue<BuildRule> queue = new ArrayDeque<>();
+          queue.add(rule);
+          while (!queue.isEmpty()) {
+            BuildRule current = queue.remove();
+            if (rules.add(current) && current instanceof HasRuntimeDeps) {
+              queue.addAll(
+                  resolver.getAllRules(
+                      ((HasRuntimeDeps) current)
+                          .getRuntimeDeps(ruleFinder)
+                          .collect(ImmutableSet.toImmutableSet())));
+            }
+          }
+          return Futures.catching(
+              Futures.transform(
+                  strategy.materializeOutputs(rules),
+                  ignored -> result,
+                  MoreExecutors.directExecutor()),
+              Throwable.class,
+              throwable -> BuildResult.failure(rule, throwable),
+              MoreExecutors.directExecutor());
+        },
+        MoreExecutors.directExecutor());
+  }
+
   @Nullable
   @Override
   public BuildResult getBuildRuleResult(BuildTarget buildTarget)
@@ -586,5 +654,10 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     public void onRuleAboutToBeBuilt(BuildRule rule) {
       cachingBuildEngine.cachingBuildEngineDelegate.onRuleAboutToBeBuilt(rule);
     }
+
+    @Override
+    public void onOutputsDeferred(BuildRule rule, ImmutableMap<String, String> ruleKeys) {
+      cachingBuildEngine.rulesWithDeferredOutputs.put(rule, ruleKeys);
+    }
   }
 }
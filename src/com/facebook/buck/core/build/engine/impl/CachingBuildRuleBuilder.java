@@ -65,6 +65,7 @@ import com.facebook.buck.core.rules.attr.InitializableFromDisk;
 import com.facebook.buck.core.rules.attr.SupportsDependencyFileRuleKey;
 import com.facebook.buck.core.rules.attr.SupportsInputBasedRuleKey;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy;
+import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy.DeferredOutput;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy.StrategyBuildResult;
 import com.facebook.buck.core.rules.pipeline.RulePipelineState;
 import com.facebook.buck.core.rules.pipeline.SupportsPipelining;
@@ -643,8 +644,19 @@ class CachingBuildRuleBuilder {
   private void finalizeBuiltLocally(AtomicReference<Long> outputSize)
       throws IOException, StepFailedException, InterruptedException {
     BuildRuleSuccessType success = BuildRuleSuccessType.BUILT_LOCALLY;
+    ImmutableMap<Path, DeferredOutput> deferredOutputs = getDeferredOutputs();
+    if (!deferredOutputs.isEmpty() && needsOutputsToFinalize()) {
+      Futures.getChecked(
+          customBuildRuleStrategy.get().materializeOutputs(ImmutableList.of(rule)),
+          IOException.class);
+      deferredOutputs = ImmutableMap.of();
+    }
     // Try get the output size now that all outputs have been recorded.
-    outputSize.set(getBuildInfoRecorder().getOutputSize());
+    long deferredOutputSize = 0;
+    for (DeferredOutput deferredOutput : deferredOutputs.values()) {
+      deferredOutputSize += deferredOutput.size;
+    }
+    outputSize.set(getBuildInfoRecorder().getOutputSize() + deferredOutputSize);
     getBuildInfoRecorder()
         .addMetadata(BuildInfo.MetadataKey.OUTPUT_SIZE, outputSize.get().toString());
 
@@ -656,6 +668,10 @@ class CachingBuildRuleBuilder {
     for (Path path : getBuildInfoRecorder().getRecordedPaths()) {
       fileHashCache.invalidate(rule.getProjectFilesystem().resolve(path));
     }
+    // Outputs that haven't been written yet can't be hashed from disk, use the strategy's hashes.
+    for (Map.Entry<Path, DeferredOutput> entry : deferredOutputs.entrySet()) {
+      fileHashCache.set(rule.getProjectFilesystem(), entry.getKey(), entry.getValue().hashCode);
+    }
 
     // Doing this here is probably not strictly necessary, however in the case of
     // pipelined rules built locally we will never do an input-based cache check.
@@ -745,6 +761,11 @@ class CachingBuildRuleBuilder {
                 .stream()
                 .map(Object::toString)
                 .collect(ImmutableList.toImmutableList()));
+    if (!deferredOutputs.isEmpty()) {
+      // The metadata on disk must not claim that the outputs match a rule key until they are
+      // written, in case the build is killed before that.
+      buildRuleBuilderDelegate.onOutputsDeferred(rule, getBuildInfoRecorder().removeRuleKeys());
+    }
     if (success.shouldWriteRecordedMetadataToDiskAfterBuilding()) {
       try {
         boolean clearExistingMetadata = success.shouldClearAndOverwriteMetadataOnDisk();
@@ -759,6 +780,19 @@ class CachingBuildRuleBuilder {
     }
   }
 
+  private ImmutableMap<Path, DeferredOutput> getDeferredOutputs() {
+    return customBuildRuleStrategy.isPresent()
+        ? customBuildRuleStrategy.get().getDeferredOutputs(rule)
+        : ImmutableMap.of();
+  }
+
+  /** Whether finalizing the rule reads its outputs from disk. */
+  private boolean needsOutputsToFinalize() {
+    return rule instanceof HasPostBuildSteps
+        || rule instanceof InitializableFromDisk
+        || dependencyFileRuleKeyManager.useDependencyFileRuleKey();
+  }
+
   private boolean shouldWriteOutputHashes(long outputSize) {
     Optional<Long> sizeLimit = ruleKeyFactories.getInputBasedRuleKeyFactory().getInputSizeLimit();
     return !sizeLimit.isPresent() || (outputSize <= sizeLimit.get());
@@ -813,6 +847,14 @@ class CachingBuildRuleBuilder {
               buildCacheArtifactUploader.shouldUploadToCache(success, outputSize.get());
         }
 
+        // Outputs that haven't been written to disk can't be uploaded, but the strategy that built
+        // them already stores them remotely.
+        if (shouldUploadToCache.equals(UploadToCacheResultType.CACHEABLE)
+            && !getDeferredOutputs().isEmpty()) {
+          LOG.debug("Not uploading %s to cache, its outputs are deferred.", rule);
+          shouldUploadToCache = UploadToCacheResultType.UNCACHEABLE;
+        }
+
         // Upload it to the cache.
         if (shouldUploadToCache.equals(UploadToCacheResultType.CACHEABLE)) {
           uploadToCache(success);
@@ -844,14 +886,25 @@ class CachingBuildRuleBuilder {
         new BuildStrategyContext() {
           @Override
           public ListenableFuture<Optional<BuildResult>> runWithDefaultBehavior() {
-            if (SupportsPipelining.isSupported(rule)
-                && ((SupportsPipelining<?>) rule).useRulePipelining()) {
-              return pipelinesRunner.runPipelineStartingAt(
-                  buildRuleBuildContext, (SupportsPipelining<?>) rule, service);
-            } else {
-              buildRuleSteps.runWithDefaultExecutor();
-              return buildRuleSteps.future;
-            }
+            // Local steps may read the outputs of any transitive dep, so make sure that outputs
+            // the custom strategy hasn't written yet are on disk first.
+            ListenableFuture<Void> depsMaterialized =
+                customBuildRuleStrategy.isPresent()
+                    ? customBuildRuleStrategy.get().materializeDependencies(rule)
+                    : Futures.immediateFuture(null);
+            return Futures.transformAsync(
+                depsMaterialized,
+                ignored -> {
+                  if (SupportsPipelining.isSupported(rule)
+                      && ((SupportsPipelining<?>) rule).useRulePipelining()) {
+                    return pipelinesRunner.runPipelineStartingAt(
+                        buildRuleBuildContext, (SupportsPipelining<?>) rule, service);
+                  } else {
+                    buildRuleSteps.runWithDefaultExecutor();
+                    return buildRuleSteps.future;
+                  }
+                },
+                depsMaterialized.isDone() ? MoreExecutors.directExecutor() : service);
           }
 
           @Override
@@ -1474,5 +1527,11 @@ class CachingBuildRuleBuilder {
     void addAsyncCallback(ListenableFuture<Void> callback);
 
     void onRuleAboutToBeBuilt(BuildRule rule);
+
+    /**
+     * Called when the outputs of a rule were deferred by the build strategy, with the rule keys
+     * that were left out of its metadata on disk until the outputs are written.
+     */
+    void onOutputsDeferred(BuildRule rule, ImmutableMap<String, String> ruleKeys);
   }
 }
@@ -19,9 +19,13 @@ package com.facebook.buck.core.rules.build.strategy;
 import com.facebook.buck.core.build.engine.BuildResult;
 import com.facebook.buck.core.build.engine.BuildStrategyContext;
 import com.facebook.buck.core.rules.BuildRule;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Optional;
 
 /** Interface for injecting customized behavior into the CachingBuildEngine. */
@@ -35,6 +39,40 @@ public interface BuildRuleStrategy extends Closeable {
   /** A rule will be built by the custom strategy only if canBuild() returns true. */
   boolean canBuild(BuildRule instance);
 
+  /**
+   * Returns the outputs of a rule built by this strategy that have not been written to disk yet,
+   * keyed by path relative to the rule's filesystem. Strategies may defer writing outputs until
+   * something actually needs to read them, in which case they are written by {@link
+   * #materializeOutputs} or {@link #materializeDependencies}.
+   */
+  @SuppressWarnings("unused")
+  default ImmutableMap<Path, DeferredOutput> getDeferredOutputs(BuildRule rule) {
+    return ImmutableMap.of();
+  }
+
+  /** Writes any deferred outputs of the given rules to disk. */
+  @SuppressWarnings("unused")
+  default ListenableFuture<Void> materializeOutputs(Iterable<BuildRule> rules) {
+    return Futures.immediateFuture(null);
+  }
+
+  /** Writes any deferred outputs of the transitive build deps of a rule to disk. */
+  @SuppressWarnings("unused")
+  default ListenableFuture<Void> materializeDependencies(BuildRule rule) {
+    return Futures.immediateFuture(null);
+  }
+
+  /** Hash and size of an output that a strategy has not written to disk yet. */
+  final class DeferredOutput {
+    public final HashCode hashCode;
+    public final long size;
+
+    public DeferredOutput(HashCode hashCode, long size) {
+      this.hashCode = hashCode;
+      this.size = size;
+    }
+  }
+
   /** A simple interface for build results exposing an explicit cancellation. */
   interface StrategyBuildResult {
     /**
@@ -75,6 +75,10 @@ abstract class AbstractDistBuildClientStats {
 
   abstract Optional<Long> missingFilesUploadedCount();
 
+  abstract Optional<Long> localFileHashCount();
+
+  abstract Optional<Long> localFileHashesPerSecond();
+
   abstract Optional<Long> materializeSlaveLogsDurationMs();
 
   abstract Optional<Long> publishBuildSlaveFinishedStatsDurationMs();
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.util.timing.Clock;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local record of the build state chunks that were uploaded to the frontend by previous builds, so
+ * that they don't need to be uploaded, or even checked for, again.
+ *
+ * <p>The frontend may drop old content, so chunks are only trusted to be there for a limited time
+ * after they were last uploaded or checked.
+ *
+ * @see BuildJobStateSerializer#serializeChunked
+ */
+public class BuildJobStateChunkRecord {
+  private static final Logger LOG = Logger.get(BuildJobStateChunkRecord.class);
+
+  private final Path recordPath;
+  private final Clock clock;
+  private final long maxAgeMillis;
+  private final Map<String, Long> lastSeenMillisByHash = new HashMap<>();
+
+  public BuildJobStateChunkRecord(Path recordPath, Clock clock, long maxAge, TimeUnit unit) {
+    this.recordPath = recordPath;
+    this.clock = clock;
+    this.maxAgeMillis = unit.toMillis(maxAge);
+    load();
+  }
+
+  private void load() {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(recordPath, Charsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      return;
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to read the record of uploaded chunks. Checking all chunks.");
+      return;
+    }
+    long now = clock.currentTimeMillis();
+    for (String line : lines) {
+      String[] fields = line.split(" ");
+      if (fields.length != 2) {
+        continue;
+      }
+      try {
+        long lastSeenMillis = Long.parseLong(fields[1]);
+        if (now - lastSeenMillis < maxAgeMillis) {
+          lastSeenMillisByHash.put(fields[0], lastSeenMillis);
+        }
+      } catch (NumberFormatException e) {
+        // Ignore corrupt lines, the chunk will be checked again.
+      }
+    }
+  }
+
+  /** @return whether the chunk was recently known to be stored by the frontend. */
+  public synchronized boolean isKnown(String hash) {
+    Long lastSeenMillis = lastSeenMillisByHash.get(hash);
+    return lastSeenMillis != null && clock.currentTimeMillis() - lastSeenMillis < maxAgeMillis;
+  }
+
+  /** Records that the frontend now stores the given chunks, and saves the record to disk. */
+  public synchronized void recordStored(ImmutableSet<String> hashes) throws IOException {
+    long now = clock.currentTimeMillis();
+    for (String hash : hashes) {
+      lastSeenMillisByHash.put(hash, now);
+    }
+    lastSeenMillisByHash.values().removeIf(lastSeenMillis -> now - lastSeenMillis >= maxAgeMillis);
+
+    Files.createDirectories(recordPath.getParent());
+    Path tmp =
+        Files.createTempFile(recordPath.getParent(), recordPath.getFileName().toString(), ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp, Charsets.UTF_8)) {
+      for (Map.Entry<String, Long> entry : lastSeenMillisByHash.entrySet()) {
+        writer.write(entry.getKey() + " " + entry.getValue());
+        writer.newLine();
+      }
+    }
+    Files.move(tmp, recordPath, StandardCopyOption.REPLACE_EXISTING);
+  }
+}
@@ -19,17 +19,44 @@ package com.facebook.buck.distributed;
 import com.facebook.buck.distributed.thrift.BuildJobState;
 import com.facebook.buck.slb.ThriftProtocol;
 import com.facebook.buck.slb.ThriftUtil;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
 public abstract class BuildJobStateSerializer {
   private static final ThriftProtocol PROTOCOL = ThriftProtocol.COMPACT;
 
+  /**
+   * Prefix of serialized states that only list the hashes of their chunks. Can't be mistaken for a
+   * full state, which always starts with a zlib header.
+   */
+  private static final byte[] CHUNK_MANIFEST_HEADER = "BJSCHUNKS1\n".getBytes(Charsets.UTF_8);
+
+  // Chunk boundaries are placed where a rolling hash of the last bytes matches a mask, so that an
+  // edit only changes the chunks around it. The masked bits give chunks of ~64KB on average.
+  private static final int MIN_CHUNK_SIZE = 16 * 1024;
+  private static final int MAX_CHUNK_SIZE = 256 * 1024;
+  private static final long CHUNK_BOUNDARY_MASK = 0xFFFF000000000000L;
+  private static final long[] GEAR_TABLE = createGearTable();
+
   private BuildJobStateSerializer() {
     // Do not instantiate.
   }
@@ -61,4 +88,103 @@ public abstract class BuildJobStateSerializer {
       return deserialize(stream);
     }
   }
+
+  /**
+   * A state split into chunks, which can be uploaded separately to the CAS so that chunks that
+   * didn't change since the previous build don't need to be uploaded again.
+   */
+  public static class ChunkedBuildJobState {
+    /** Small replacement of the full state, listing its chunks in order. */
+    public final byte[] manifest;
+    /** Compressed chunks by the sha1 of their content. */
+    public final ImmutableMap<String, byte[]> chunksByHash;
+
+    ChunkedBuildJobState(byte[] manifest, ImmutableMap<String, byte[]> chunksByHash) {
+      this.manifest = manifest;
+      this.chunksByHash = chunksByHash;
+    }
+  }
+
+  private static long[] createGearTable() {
+    // The seed is fixed so that all clients place chunk boundaries at the same content.
+    Random random = new Random(0x5eed);
+    long[] table = new long[256];
+    for (int i = 0; i < table.length; i++) {
+      table[i] = random.nextLong();
+    }
+    return table;
+  }
+
+  /** Serializes the state and splits it into content-defined, individually compressed chunks. */
+  public static ChunkedBuildJobState serializeChunked(BuildJobState state) throws IOException {
+    byte[] data = ThriftUtil.serialize(PROTOCOL, state);
+
+    Map<String, byte[]> chunksByHash = new LinkedHashMap<>();
+    List<String> hashes = new ArrayList<>();
+    int start = 0;
+    long hash = 0;
+    for (int i = 0; i < data.length; i++) {
+      hash = (hash << 1) + GEAR_TABLE[data[i] & 0xff];
+      int length = i + 1 - start;
+      if ((length >= MIN_CHUNK_SIZE && (hash & CHUNK_BOUNDARY_MASK) == 0)
+          || length >= MAX_CHUNK_SIZE
+          || i == data.length - 1) {
+        byte[] chunk = compress(Arrays.copyOfRange(data, start, i + 1));
+        String chunkHash = Hashing.sha1().hashBytes(chunk).toString();
+        chunksByHash.put(chunkHash, chunk);
+        hashes.add(chunkHash);
+        start = i + 1;
+        hash = 0;
+      }
+    }
+
+    try (ByteArrayOutputStream manifest = new ByteArrayOutputStream()) {
+      manifest.write(CHUNK_MANIFEST_HEADER);
+      manifest.write(Joiner.on('\n').join(hashes).getBytes(Charsets.UTF_8));
+      return new ChunkedBuildJobState(manifest.toByteArray(), ImmutableMap.copyOf(chunksByHash));
+    }
+  }
+
+  private static byte[] compress(byte[] data) throws IOException {
+    try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
+      try (DeflaterOutputStream zlibStream = new DeflaterOutputStream(stream)) {
+        zlibStream.write(data);
+      }
+      return stream.toByteArray();
+    }
+  }
+
+  /** @return whether the data is a manifest created by {@link #serializeChunked}. */
+  public static boolean isChunkManifest(byte[] data) {
+    return data.length >= CHUNK_MANIFEST_HEADER.length
+        && Arrays.equals(
+            Arrays.copyOfRange(data, 0, CHUNK_MANIFEST_HEADER.length), CHUNK_MANIFEST_HEADER);
+  }
+
+  /** @return the hashes of the chunks listed in the manifest, in order. */
+  public static ImmutableList<String> getChunkHashes(byte[] manifest) {
+    Preconditions.checkArgument(isChunkManifest(manifest), "Not a chunk manifest.");
+    String hashes =
+        new String(
+            manifest,
+            CHUNK_MANIFEST_HEADER.length,
+            manifest.length - CHUNK_MANIFEST_HEADER.length,
+            Charsets.UTF_8);
+    return ImmutableList.copyOf(Splitter.on('\n').omitEmptyStrings().split(hashes));
+  }
+
+  /** Reassembles a state from its chunks, in the order of the manifest. */
+  public static BuildJobState deserializeChunks(List<byte[]> chunks) throws IOException {
+    try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
+      for (byte[] chunk : chunks) {
+        try (InflaterInputStream zlibStream =
+            new InflaterInputStream(new ByteArrayInputStream(chunk))) {
+          ByteStreams.copy(zlibStream, stream);
+        }
+      }
+      BuildJobState state = new BuildJobState();
+      ThriftUtil.deserialize(PROTOCOL, stream.toByteArray(), state);
+      return state;
+    }
+  }
 }
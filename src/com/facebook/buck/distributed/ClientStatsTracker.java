@@ -90,6 +90,8 @@ public class ClientStatsTracker {
 
   private volatile Optional<Long> missingFilesUploadedCount = Optional.empty();
 
+  private volatile Optional<Long> localFileHashCount = Optional.empty();
+
   private volatile Optional<Long> missingRulesUploadedFromDirCacheCount = Optional.empty();
 
   private volatile Optional<String> buckClientErrorMessage = Optional.empty();
@@ -183,6 +185,12 @@ public class ClientStatsTracker {
 
     builder.setMissingRulesUploadedFromDirCacheCount(missingRulesUploadedFromDirCacheCount);
     builder.setMissingFilesUploadedCount(missingFilesUploadedCount);
+    builder.setLocalFileHashCount(localFileHashCount);
+    Optional<Long> fileHashDurationMs = getDurationOrEmpty(LOCAL_FILE_HASH_COMPUTATION);
+    if (localFileHashCount.isPresent() && fileHashDurationMs.isPresent()) {
+      builder.setLocalFileHashesPerSecond(
+          localFileHashCount.get() * 1000 / Math.max(1, fileHashDurationMs.get()));
+    }
 
     return builder.build();
   }
@@ -195,6 +203,10 @@ public class ClientStatsTracker {
     this.missingFilesUploadedCount = Optional.of(missingFilesUploadedCount);
   }
 
+  public void setLocalFileHashCount(long localFileHashCount) {
+    this.localFileHashCount = Optional.of(localFileHashCount);
+  }
+
   public void setPerformedLocalBuild(boolean performedLocalBuild) {
     this.performedLocalBuild = performedLocalBuild;
   }
@@ -182,6 +182,38 @@ public class DistBuildConfig {
   private static final String ENABLE_RELEASING_MINIONS_EARLY = "enable_releasing_minions_early";
   private static final boolean DEFAULT_ENABLE_RELEASING_MINIONS_EARLY = true;
 
+  /**
+   * Hand out work units on the critical path of the build first, using rule durations from {@link
+   * #RULE_DURATIONS_FILE} (or the number of rules if unset) to predict the critical path.
+   */
+  private static final String ENABLE_CRITICAL_PATH_SCHEDULING = "enable_critical_path_scheduling";
+
+  private static final boolean DEFAULT_ENABLE_CRITICAL_PATH_SCHEDULING = false;
+
+  /** Rule durations of a previous build, as written by the coordinator next to its trace. */
+  private static final String RULE_DURATIONS_FILE = "rule_durations_file";
+
+  /** Chains of rules predicted to be shorter than this get packed together in one work unit. */
+  private static final String WORK_UNIT_PACKING_THRESHOLD_MILLIS =
+      "work_unit_packing_threshold_millis";
+
+  private static final long DEFAULT_WORK_UNIT_PACKING_THRESHOLD_MILLIS = 0;
+
+  /**
+   * Upload the build state in content-defined chunks through the CAS, so that chunks that didn't
+   * change since a previous build don't need to be uploaded again.
+   */
+  private static final String ENABLE_CHUNKED_BUILD_STATE_UPLOAD =
+      "enable_chunked_build_state_upload";
+
+  private static final boolean DEFAULT_ENABLE_CHUNKED_BUILD_STATE_UPLOAD = false;
+
+  /** How long chunks uploaded by previous builds are assumed to still be stored by the frontend. */
+  private static final String BUILD_STATE_CHUNK_RECORD_MAX_AGE_HOURS =
+      "build_state_chunk_record_max_age_hours";
+
+  private static final long DEFAULT_BUILD_STATE_CHUNK_RECORD_MAX_AGE_HOURS = 24;
+
   /**
    * While the experiments.stampede_beta_test flag is set to true, this flag can be used to
    * configure whether we want auto-stampede conversion for all builds, no builds, or some builds.
@@ -648,4 +680,32 @@ public class DistBuildConfig {
     return buckConfig.getBooleanValue(
         STAMPEDE_SECTION, ENABLE_RELEASING_MINIONS_EARLY, DEFAULT_ENABLE_RELEASING_MINIONS_EARLY);
   }
+
+  public boolean isCriticalPathSchedulingEnabled() {
+    return buckConfig.getBooleanValue(
+        STAMPEDE_SECTION, ENABLE_CRITICAL_PATH_SCHEDULING, DEFAULT_ENABLE_CRITICAL_PATH_SCHEDULING);
+  }
+
+  public Optional<Path> getRuleDurationsFile() {
+    return buckConfig.getPath(STAMPEDE_SECTION, RULE_DURATIONS_FILE);
+  }
+
+  public long getWorkUnitPackingThresholdMillis() {
+    return buckConfig
+        .getLong(STAMPEDE_SECTION, WORK_UNIT_PACKING_THRESHOLD_MILLIS)
+        .orElse(DEFAULT_WORK_UNIT_PACKING_THRESHOLD_MILLIS);
+  }
+
+  public boolean isChunkedBuildStateUploadEnabled() {
+    return buckConfig.getBooleanValue(
+        STAMPEDE_SECTION,
+        ENABLE_CHUNKED_BUILD_STATE_UPLOAD,
+        DEFAULT_ENABLE_CHUNKED_BUILD_STATE_UPLOAD);
+  }
+
+  public long getBuildStateChunkRecordMaxAgeHours() {
+    return buckConfig
+        .getLong(STAMPEDE_SECTION, BUILD_STATE_CHUNK_RECORD_MAX_AGE_HOURS)
+        .orElse(DEFAULT_BUILD_STATE_CHUNK_RECORD_MAX_AGE_HOURS);
+  }
 }
@@ -66,9 +66,11 @@ import javax.annotation.Nullable;
 public class DistBuildFileHashes {
   private static final Logger LOG = Logger.get(DistBuildFileHashes.class);
 
+  /** Number of partitions of the action graph per available processor. */
+  private static final int PARTITIONS_PER_PROCESSOR = 4;
+
   // Map<CellIndex, BuildJobStateFileHashes>.
   private final Map<Integer, RecordedFileHashes> remoteFileHashes;
-  private final LoadingCache<ProjectFilesystem, DefaultRuleKeyFactory> ruleKeyFactories;
 
   private final ListenableFuture<ImmutableList<RecordedFileHashes>> fileHashes;
   private final ListenableFuture<ImmutableMap<BuildRule, RuleKey>> ruleKeys;
@@ -104,16 +106,35 @@ public class DistBuildFileHashes {
               }
             });
 
-    this.ruleKeyFactories =
-        createRuleKeyFactories(
-            sourcePathResolver, ruleFinder, recordingHashCache, ruleKeyConfiguration);
-    this.ruleKeys = ruleKeyComputation(actionGraph, this.ruleKeyFactories, executorService);
+    // A single factory is shared by the rules of all cells: it doesn't depend on the filesystem of
+    // the rule, and sharing it means the rule keys of deps in other cells are computed only once.
+    DefaultRuleKeyFactory ruleKeyFactory =
+        new DefaultRuleKeyFactory(
+            new RuleKeyFieldLoader(ruleKeyConfiguration),
+            recordingHashCache,
+            sourcePathResolver,
+            ruleFinder);
+    List<ListenableFuture<List<Map.Entry<BuildRule, RuleKey>>>> partitions =
+        ruleKeyComputation(actionGraph, ruleKeyFactory, executorService);
+    // Hashes are recorded into the per-cell entries as they are computed, so they are ready as soon
+    // as all partitions are done, without waiting for the map of rule keys to be built.
     this.fileHashes =
         fileHashesComputation(
             Futures.transform(
-                this.ruleKeys, Functions.constant(null), MoreExecutors.directExecutor()),
+                Futures.allAsList(partitions),
+                Functions.constant(null),
+                MoreExecutors.directExecutor()),
             ImmutableList.copyOf(this.remoteFileHashes.values()),
             executorService);
+    this.ruleKeys =
+        Futures.transform(
+            Futures.allAsList(partitions),
+            results -> {
+              ImmutableMap.Builder<BuildRule, RuleKey> builder = ImmutableMap.builder();
+              results.forEach(builder::putAll);
+              return builder.build();
+            },
+            executorService);
   }
 
   private RecordedFileHashes getRemoteFileHashes(Integer cellIndex) {
@@ -147,21 +168,46 @@ public class DistBuildFileHashes {
             });
   }
 
-  private static ListenableFuture<ImmutableMap<BuildRule, RuleKey>> ruleKeyComputation(
+  /**
+   * Computes the rule keys of all rules, which records the hashes of all their inputs as a side
+   * effect. Rules are split into a few partitions per processor, each computed by a single task,
+   * instead of a task per rule: most of the time is spent hashing files, and per rule tasks mostly
+   * contend on the executor queue and on deps being computed by other tasks.
+   */
+  private static List<ListenableFuture<List<Map.Entry<BuildRule, RuleKey>>>> ruleKeyComputation(
       ActionGraph actionGraph,
-      LoadingCache<ProjectFilesystem, DefaultRuleKeyFactory> ruleKeyFactories,
+      DefaultRuleKeyFactory ruleKeyFactory,
       ListeningExecutorService executorService) {
-    List<ListenableFuture<Map.Entry<BuildRule, RuleKey>>> ruleKeyEntries = new ArrayList<>();
-    for (BuildRule rule : Sets.newLinkedHashSet(actionGraph.getNodes())) {
-      ruleKeyEntries.add(
+    List<BuildRule> rules = new ArrayList<>(Sets.newLinkedHashSet(actionGraph.getNodes()));
+    int partitionCount =
+        Math.max(
+            1,
+            Math.min(
+                rules.size(),
+                Runtime.getRuntime().availableProcessors() * PARTITIONS_PER_PROCESSOR));
+    List<ListenableFuture<List<Map.Entry<BuildRule, RuleKey>>>> partitions = new ArrayList<>();
+    for (int partition = 0; partition < partitionCount; partition++) {
+      // Rules are striped across partitions, so that rules with deep dependency chains (which
+      // take longer) are spread evenly.
+      List<BuildRule> partitionRules = new ArrayList<>();
+      for (int i = partition; i < rules.size(); i += partitionCount) {
+        partitionRules.add(rules.get(i));
+      }
+      partitions.add(
           executorService.submit(
-              () ->
-                  Maps.immutableEntry(
-                      rule, ruleKeyFactories.get(rule.getProjectFilesystem()).build(rule))));
+              () -> {
+                List<Map.Entry<BuildRule, RuleKey>> ruleKeys =
+                    new ArrayList<>(partitionRules.size());
+                for (BuildRule rule : partitionRules) {
+                  if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                  }
+                  ruleKeys.add(Maps.immutableEntry(rule, ruleKeyFactory.build(rule)));
+                }
+                return ruleKeys;
+              }));
     }
-    ListenableFuture<List<Map.Entry<BuildRule, RuleKey>>> ruleKeyComputation =
-        Futures.allAsList(ruleKeyEntries);
-    return Futures.transform(ruleKeyComputation, ImmutableMap::copyOf, executorService);
+    return partitions;
   }
 
   private static ListenableFuture<ImmutableList<RecordedFileHashes>> fileHashesComputation(
@@ -212,6 +258,15 @@ public class DistBuildFileHashes {
     return fileHashes;
   }
 
+  /** @return the number of file hashes recorded for all cells, once the computation is done. */
+  public long getRecordedFileHashCount() {
+    return remoteFileHashes
+        .values()
+        .stream()
+        .mapToLong(recordedHashes -> recordedHashes.getRemoteFileHashes().getEntriesSize())
+        .sum();
+  }
+
   private void checkNoDuplicates(ImmutableList<BuildJobStateFileHashes> hashes) {
     for (BuildJobStateFileHashes hash : hashes) {
       if (hash.isSetEntries()) {
@@ -24,6 +24,7 @@ import static com.facebook.buck.distributed.ClientStatsTracker.DistBuildClientSt
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.distributed.BuildJobStateSerializer.ChunkedBuildJobState;
 import com.facebook.buck.distributed.thrift.AppendBuildSlaveEventsRequest;
 import com.facebook.buck.distributed.thrift.BuckVersion;
 import com.facebook.buck.distributed.thrift.BuildJob;
@@ -106,6 +107,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class DistBuildService implements Closeable {
   private static final Logger LOG = Logger.get(DistBuildService.class);
@@ -164,12 +166,33 @@ public class DistBuildService implements Closeable {
   public void uploadTargetGraph(
       BuildJobState buildJobState, StampedeId stampedeId, ClientStatsTracker distBuildClientStats)
       throws IOException {
+    uploadTargetGraph(buildJobState, stampedeId, distBuildClientStats, Optional.empty());
+  }
+
+  /**
+   * Uploads the build state of the given build.
+   *
+   * @param chunkRecord if present, the state is uploaded as content-defined chunks through the CAS,
+   *     and only chunks that are not already known to be stored by the frontend are sent.
+   */
+  public void uploadTargetGraph(
+      BuildJobState buildJobState,
+      StampedeId stampedeId,
+      ClientStatsTracker distBuildClientStats,
+      Optional<BuildJobStateChunkRecord> chunkRecord)
+      throws IOException {
     distBuildClientStats.startTimer(UPLOAD_TARGET_GRAPH);
 
-    // Serialize and send the whole buildJobState
     StoreBuildGraphRequest storeBuildGraphRequest = new StoreBuildGraphRequest();
     storeBuildGraphRequest.setStampedeId(stampedeId);
-    storeBuildGraphRequest.setBuildGraph(BuildJobStateSerializer.serialize(buildJobState));
+    if (chunkRecord.isPresent()) {
+      ChunkedBuildJobState chunkedState = BuildJobStateSerializer.serializeChunked(buildJobState);
+      uploadMissingChunks(chunkedState.chunksByHash, chunkRecord.get());
+      storeBuildGraphRequest.setBuildGraph(chunkedState.manifest);
+    } else {
+      // Serialize and send the whole buildJobState
+      storeBuildGraphRequest.setBuildGraph(BuildJobStateSerializer.serialize(buildJobState));
+    }
 
     FrontendRequest request = new FrontendRequest();
     request.setType(FrontendRequestType.STORE_BUILD_GRAPH);
@@ -179,6 +202,55 @@ public class DistBuildService implements Closeable {
     // No response expected.
   }
 
+  private void uploadMissingChunks(
+      ImmutableMap<String, byte[]> chunksByHash, BuildJobStateChunkRecord chunkRecord)
+      throws IOException {
+    List<String> hashesToCheck =
+        chunksByHash
+            .keySet()
+            .stream()
+            .filter(hash -> !chunkRecord.isKnown(hash))
+            .collect(Collectors.toList());
+
+    List<FileInfo> missingChunks = new ArrayList<>();
+    long missingBytes = 0;
+    if (!hashesToCheck.isEmpty()) {
+      CASContainsRequest containsReq = new CASContainsRequest();
+      containsReq.setContentSha1s(hashesToCheck);
+      FrontendResponse response =
+          makeRequestChecked(
+              new FrontendRequest()
+                  .setType(FrontendRequestType.CAS_CONTAINS)
+                  .setCasContainsRequest(containsReq));
+      List<Boolean> isPresent = response.getCasContainsResponse().exists;
+      Preconditions.checkState(isPresent.size() == hashesToCheck.size());
+      for (int i = 0; i < isPresent.size(); ++i) {
+        if (isPresent.get(i)) {
+          continue;
+        }
+        byte[] content = Objects.requireNonNull(chunksByHash.get(hashesToCheck.get(i)));
+        missingChunks.add(new FileInfo().setContentHash(hashesToCheck.get(i)).setContent(content));
+        missingBytes += content.length;
+      }
+    }
+
+    LOG.info(
+        "Build state has %d chunks, %d not known to be stored. Uploading %d chunks (%d bytes).",
+        chunksByHash.size(), hashesToCheck.size(), missingChunks.size(), missingBytes);
+
+    if (!missingChunks.isEmpty()) {
+      StoreLocalChangesRequest storeReq = new StoreLocalChangesRequest();
+      storeReq.setFiles(missingChunks);
+      makeRequestChecked(
+          new FrontendRequest()
+              .setType(FrontendRequestType.STORE_LOCAL_CHANGES)
+              .setStoreLocalChangesRequest(storeReq));
+    }
+    // Chunks that were skipped keep the time at which they were last seen stored, so that they are
+    // checked again once that is too old.
+    chunkRecord.recordStored(ImmutableSet.copyOf(hashesToCheck));
+  }
+
   public ListenableFuture<Void> uploadMissingFilesAsync(
       Map<Integer, ProjectFilesystem> localFilesystemsByCell,
       List<BuildJobStateFileHashes> fileHashes,
@@ -426,8 +498,19 @@ public class DistBuildService implements Closeable {
     Preconditions.checkState(response.getFetchBuildGraphResponse().isSetBuildGraph());
     Preconditions.checkState(response.getFetchBuildGraphResponse().getBuildGraph().length > 0);
 
-    return BuildJobStateSerializer.deserialize(
-        response.getFetchBuildGraphResponse().getBuildGraph());
+    byte[] buildGraph = response.getFetchBuildGraphResponse().getBuildGraph();
+    if (!BuildJobStateSerializer.isChunkManifest(buildGraph)) {
+      return BuildJobStateSerializer.deserialize(buildGraph);
+    }
+
+    ImmutableList<String> chunkHashes = BuildJobStateSerializer.getChunkHashes(buildGraph);
+    ImmutableMap<String, byte[]> chunksByHash =
+        multiFetchSourceFiles(ImmutableSet.copyOf(chunkHashes));
+    List<byte[]> chunks = new ArrayList<>(chunkHashes.size());
+    for (String hash : chunkHashes) {
+      chunks.add(Objects.requireNonNull(chunksByHash.get(hash)));
+    }
+    return BuildJobStateSerializer.deserializeChunks(chunks);
   }
 
   public static FrontendRequest createFetchBuildGraphRequest(StampedeId stampedeId) {
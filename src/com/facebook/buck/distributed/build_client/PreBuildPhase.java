@@ -27,6 +27,7 @@ import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.rulekey.calculator.ParallelRuleKeyCalculator;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.distributed.ArtifactCacheByBuildRule;
+import com.facebook.buck.distributed.BuildJobStateChunkRecord;
 import com.facebook.buck.distributed.ClientStatsTracker;
 import com.facebook.buck.distributed.DistBuildArtifactCacheImpl;
 import com.facebook.buck.distributed.DistBuildCellIndexer;
@@ -44,6 +45,7 @@ import com.facebook.buck.distributed.thrift.StampedeId;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.util.timing.DefaultClock;
 import com.facebook.buck.util.types.Pair;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -55,11 +57,13 @@ import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /** Phase before the build. */
 public class PreBuildPhase {
   private static final Logger LOG = Logger.get(PreBuildPhase.class);
+  private static final String CHUNK_RECORD_NAME = "dist_build_state_chunks";
 
   private final DistBuildService distBuildService;
   private final ClientStatsTracker distBuildClientStats;
@@ -136,6 +140,17 @@ public class PreBuildPhase {
         job, ImmutableList.of(), "SERIALIZING AND UPLOADING DATA");
 
     List<ListenableFuture<?>> asyncJobs = new LinkedList<>();
+    DistBuildConfig distBuildConfig = new DistBuildConfig(buildExecutorArgs.getBuckConfig());
+    Optional<BuildJobStateChunkRecord> chunkRecord =
+        distBuildConfig.isChunkedBuildStateUploadEnabled()
+            ? Optional.of(
+                new BuildJobStateChunkRecord(
+                    projectFilesystem.resolve(
+                        projectFilesystem.getBuckPaths().getCacheDir().resolve(CHUNK_RECORD_NAME)),
+                    new DefaultClock(),
+                    distBuildConfig.getBuildStateChunkRecordMaxAgeHours(),
+                    TimeUnit.HOURS))
+            : Optional.empty();
 
     asyncJobs.add(
         Futures.transformAsync(
@@ -156,7 +171,8 @@ public class PreBuildPhase {
             jobState -> {
               LOG.info("Uploading target graph.");
               try {
-                distBuildService.uploadTargetGraph(jobState, stampedeId, distBuildClientStats);
+                distBuildService.uploadTargetGraph(
+                    jobState, stampedeId, distBuildClientStats, chunkRecord);
               } catch (IOException e) {
                 throw new RuntimeException("Failed to upload target graph with exception.", e);
               }
@@ -184,8 +200,6 @@ public class PreBuildPhase {
               }
             }));
 
-    DistBuildConfig distBuildConfig = new DistBuildConfig(buildExecutorArgs.getBuckConfig());
-
     if (distBuildConfig.isUploadFromLocalCacheEnabled()) {
       asyncJobs.add(
           Futures.transformAsync(
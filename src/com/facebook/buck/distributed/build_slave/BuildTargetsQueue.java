@@ -33,4 +33,13 @@ public interface BuildTargetsQueue {
   int getSafeApproxOfRemainingWorkUnitsCount();
 
   DistributableBuildGraph getDistributableBuildGraph();
+
+  /**
+   * @return how urgently the work unit should be built, higher first. Used to order work units
+   *     that need to be re-allocated from failed minions.
+   */
+  @SuppressWarnings("unused")
+  default long getWorkUnitPriority(WorkUnit workUnit) {
+    return 0;
+  }
 }
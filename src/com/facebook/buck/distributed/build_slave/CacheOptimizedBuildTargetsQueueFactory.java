@@ -38,6 +38,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -315,6 +316,30 @@ public class CacheOptimizedBuildTargetsQueueFactory {
       Iterable<BuildTarget> targetsToBuild,
       CoordinatorBuildRuleEventsPublisher coordinatorBuildRuleEventsPublisher,
       int mostBuildRulesFinishedPercentageThreshold) {
+    return createBuildTargetsQueue(
+        targetsToBuild,
+        coordinatorBuildRuleEventsPublisher,
+        mostBuildRulesFinishedPercentageThreshold,
+        Optional.empty(),
+        0);
+  }
+
+  /**
+   * Create {@link BuildTargetsQueue} that hands out work units on the critical path first.
+   *
+   * @param targetsToBuild top-level targets that need to be built.
+   * @param ruleDurationHistory durations used to predict the critical path. Work units are handed
+   *     out in the order they become ready if absent.
+   * @param workUnitPackingThresholdMillis chains predicted to be shorter than this are packed
+   *     together in one work unit.
+   * @return an instance of {@link BuildTargetsQueue} with the top-level targets at the root.
+   */
+  public ReverseDepBuildTargetsQueue createBuildTargetsQueue(
+      Iterable<BuildTarget> targetsToBuild,
+      CoordinatorBuildRuleEventsPublisher coordinatorBuildRuleEventsPublisher,
+      int mostBuildRulesFinishedPercentageThreshold,
+      Optional<RuleDurationHistory> ruleDurationHistory,
+      long workUnitPackingThresholdMillis) {
     LOG.info("Starting to create the %s.", BuildTargetsQueue.class.getName());
     GraphTraversalData results = traverseGraphFromTopLevelUsingAvailableCaches(targetsToBuild);
 
@@ -390,7 +415,9 @@ public class CacheOptimizedBuildTargetsQueueFactory {
 
     return new ReverseDepBuildTargetsQueue(
         new DistributableBuildGraph(allNodes.build(), zeroDependencyNodes.build()),
-        mostBuildRulesFinishedPercentageThreshold);
+        mostBuildRulesFinishedPercentageThreshold,
+        ruleDurationHistory,
+        workUnitPackingThresholdMillis);
   }
 
   private static String ruleToTarget(BuildRule rule) {
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.build_slave;
+
+import com.facebook.buck.distributed.build_slave.DistributableBuildGraph.DistributableNode;
+import com.facebook.buck.distributed.build_slave.MinionWorkloadAllocator.WorkloadAllocationResult;
+import com.facebook.buck.distributed.thrift.MinionType;
+import com.facebook.buck.distributed.thrift.StampedeId;
+import com.facebook.buck.distributed.thrift.WorkUnit;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.facebook.buck.util.timing.Clock;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Replays a recorded build graph against {@link ReverseDepBuildTargetsQueue} and {@link
+ * MinionWorkloadAllocator} with simulated minions, to compare how long a distributed build would
+ * take with different scheduling settings.
+ *
+ * <p>Simulated minions build each work unit on a single core, one rule after the other, and ask for
+ * more work as soon as a rule finishes. Uncacheable rules take no time, as minions build them as
+ * part of their dependents.
+ *
+ * <p>The graph is read from a JSON object mapping each target to its {@code deps}, {@code
+ * duration_millis} and (optionally) {@code uncacheable} flag.
+ */
+public class DistBuildSimulator {
+  private final ImmutableMap<String, ImmutableSet<String>> depsByTarget;
+  private final RuleDurationHistory durations;
+  private final ImmutableSet<String> uncacheableTargets;
+
+  public DistBuildSimulator(
+      ImmutableMap<String, ImmutableSet<String>> depsByTarget,
+      RuleDurationHistory durations,
+      ImmutableSet<String> uncacheableTargets) {
+    this.depsByTarget = depsByTarget;
+    this.durations = durations;
+    this.uncacheableTargets = uncacheableTargets;
+  }
+
+  public static DistBuildSimulator readFromFile(Path path) throws IOException {
+    JsonNode root;
+    try (InputStream stream = Files.newInputStream(path)) {
+      root = ObjectMappers.READER.readTree(stream);
+    }
+    ImmutableMap.Builder<String, ImmutableSet<String>> depsByTarget = ImmutableMap.builder();
+    Map<String, Long> durations = new HashMap<>();
+    ImmutableSet.Builder<String> uncacheableTargets = ImmutableSet.builder();
+    Iterator<Map.Entry<String, JsonNode>> rules = root.fields();
+    while (rules.hasNext()) {
+      Map.Entry<String, JsonNode> rule = rules.next();
+      ImmutableSet.Builder<String> deps = ImmutableSet.builder();
+      for (JsonNode dep : rule.getValue().path("deps")) {
+        deps.add(dep.asText());
+      }
+      depsByTarget.put(rule.getKey(), deps.build());
+      durations.put(rule.getKey(), rule.getValue().path("duration_millis").asLong());
+      if (rule.getValue().path("uncacheable").asBoolean()) {
+        uncacheableTargets.add(rule.getKey());
+      }
+    }
+    return new DistBuildSimulator(
+        depsByTarget.build(), new RuleDurationHistory(durations), uncacheableTargets.build());
+  }
+
+  /** @return the durations of the rules in the recorded graph. */
+  public RuleDurationHistory getDurations() {
+    return durations;
+  }
+
+  private DistributableBuildGraph createGraph() {
+    Map<String, Set<String>> dependentsByTarget = new HashMap<>();
+    for (Map.Entry<String, ImmutableSet<String>> entry : depsByTarget.entrySet()) {
+      for (String dep : entry.getValue()) {
+        dependentsByTarget.computeIfAbsent(dep, ignored -> new HashSet<>()).add(entry.getKey());
+      }
+    }
+
+    ImmutableMap.Builder<String, DistributableNode> allNodes = ImmutableMap.builder();
+    ImmutableSet.Builder<DistributableNode> leafNodes = ImmutableSet.builder();
+    for (Map.Entry<String, ImmutableSet<String>> entry : depsByTarget.entrySet()) {
+      DistributableNode node =
+          new DistributableNode(
+              entry.getKey(),
+              ImmutableSet.copyOf(dependentsByTarget.getOrDefault(entry.getKey(), new HashSet<>())),
+              entry.getValue(),
+              uncacheableTargets.contains(entry.getKey()));
+      allNodes.put(entry.getKey(), node);
+      if (node.areAllDependenciesResolved()) {
+        leafNodes.add(node);
+      }
+    }
+    return new DistributableBuildGraph(allNodes.build(), leafNodes.build());
+  }
+
+  private static class RuleFinishedEvent {
+    private final long finishMillis;
+    private final int minion;
+    private final String target;
+    private final boolean isLastInWorkUnit;
+
+    RuleFinishedEvent(long finishMillis, int minion, String target, boolean isLastInWorkUnit) {
+      this.finishMillis = finishMillis;
+      this.minion = minion;
+      this.target = target;
+      this.isLastInWorkUnit = isLastInWorkUnit;
+    }
+  }
+
+  private static class SimulatedClock implements Clock {
+    private long currentTimeMillis = 0;
+
+    @Override
+    public long currentTimeMillis() {
+      return currentTimeMillis;
+    }
+
+    @Override
+    public long nanoTime() {
+      return currentTimeMillis * 1_000_000;
+    }
+
+    @Override
+    public long threadUserNanoTime(long threadId) {
+      return -1;
+    }
+  }
+
+  /**
+   * Simulates a build of the whole graph.
+   *
+   * @param predictedDurations durations used to prioritize the critical path, or empty to hand out
+   *     work units in the order they become ready.
+   * @return the simulated duration of the build in milliseconds.
+   */
+  public long simulate(
+      int minionCount,
+      int coresPerMinion,
+      Optional<RuleDurationHistory> predictedDurations,
+      long workUnitPackingThresholdMillis) {
+    SimulatedClock clock = new SimulatedClock();
+    ReverseDepBuildTargetsQueue queue =
+        new ReverseDepBuildTargetsQueue(
+            createGraph(), 100, predictedDurations, workUnitPackingThresholdMillis);
+    MinionWorkloadAllocator allocator =
+        new MinionWorkloadAllocator(
+            queue,
+            new DistBuildTraceTracker(new StampedeId().setId("simulation"), clock),
+            Optional.empty(),
+            false);
+
+    PriorityQueue<RuleFinishedEvent> events =
+        new PriorityQueue<>(
+            Comparator.<RuleFinishedEvent>comparingLong(event -> event.finishMillis)
+                .thenComparingInt(event -> event.minion));
+    int[] freeCores = new int[minionCount];
+    for (int minion = 0; minion < minionCount; minion++) {
+      freeCores[minion] = coresPerMinion;
+    }
+
+    while (true) {
+      // Minions whose rules just finished report them first, then idle minions ask for work.
+      Map<Integer, List<String>> finishedTargetsByMinion = new HashMap<>();
+      while (!events.isEmpty() && events.peek().finishMillis == clock.currentTimeMillis) {
+        RuleFinishedEvent event = events.remove();
+        finishedTargetsByMinion
+            .computeIfAbsent(event.minion, ignored -> new ArrayList<>())
+            .add(event.target);
+        if (event.isLastInWorkUnit) {
+          freeCores[event.minion]++;
+        }
+      }
+      for (Map.Entry<Integer, List<String>> entry : finishedTargetsByMinion.entrySet()) {
+        requestWork(allocator, clock, events, freeCores, entry.getKey(), entry.getValue());
+      }
+      for (int minion = 0; minion < minionCount; minion++) {
+        if (freeCores[minion] > 0) {
+          requestWork(allocator, clock, events, freeCores, minion, new ArrayList<>());
+        }
+      }
+
+      if (allocator.isBuildFinished()) {
+        return clock.currentTimeMillis;
+      }
+      if (events.isEmpty()) {
+        throw new IllegalStateException("Simulated build stopped making progress.");
+      }
+      clock.currentTimeMillis = events.peek().finishMillis;
+    }
+  }
+
+  private void requestWork(
+      MinionWorkloadAllocator allocator,
+      SimulatedClock clock,
+      PriorityQueue<RuleFinishedEvent> events,
+      int[] freeCores,
+      int minion,
+      List<String> finishedTargets) {
+    WorkloadAllocationResult result =
+        allocator.updateMinionWorkloadAllocation(
+            "minion" + minion, MinionType.STANDARD_SPEC, finishedTargets, freeCores[minion]);
+    for (WorkUnit workUnit : result.newWorkUnitsForMinion) {
+      freeCores[minion]--;
+      long finishMillis = clock.currentTimeMillis;
+      List<String> targets = workUnit.getBuildTargets();
+      for (int i = 0; i < targets.size(); i++) {
+        finishMillis += durations.getDurationMillis(targets.get(i));
+        events.add(
+            new RuleFinishedEvent(finishMillis, minion, targets.get(i), i == targets.size() - 1));
+      }
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.build_slave;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Prints the simulated duration of a recorded build with and without critical path scheduling.
+ *
+ * <p>Usage: {@code DistBuildSimulatorMain <graph.json> <minions> <cores per minion> [packing
+ * threshold millis]}
+ */
+public class DistBuildSimulatorMain {
+
+  private DistBuildSimulatorMain() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println(
+          "Usage: DistBuildSimulatorMain <graph.json> <minions> <cores per minion> "
+              + "[packing threshold millis]");
+      System.exit(1);
+    }
+    DistBuildSimulator simulator = DistBuildSimulator.readFromFile(Paths.get(args[0]));
+    int minions = Integer.parseInt(args[1]);
+    int cores = Integer.parseInt(args[2]);
+    long packingThresholdMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+    System.out.printf(
+        "Readiness order: %d ms%n", simulator.simulate(minions, cores, Optional.empty(), 0));
+    System.out.printf(
+        "Critical path first: %d ms%n",
+        simulator.simulate(
+            minions, cores, Optional.of(simulator.getDurations()), packingThresholdMillis));
+  }
+}
@@ -65,11 +65,26 @@ public class DistBuildTraceTracker {
       for (int i = 1; i < workUnit.buildTargets.size(); i++) {
         String buildTarget = workUnit.buildTargets.get(i);
         String prevBuildTarget = workUnit.buildTargets.get(i - 1);
-        nextBuildRuleInWorkUnitByRule.put(prevBuildTarget, buildTarget);
+        // Work units can contain several independent chains packed together. A rule only starts
+        // when the previous one finishes if it's the next rule of the same chain.
+        if (isNextInChain(prevBuildTarget, buildTarget)) {
+          nextBuildRuleInWorkUnitByRule.put(prevBuildTarget, buildTarget);
+        }
       }
     }
   }
 
+  private boolean isNextInChain(String buildTarget, String nextBuildTarget) {
+    if (!buildGraph.isPresent()) {
+      return true;
+    }
+    return buildGraph
+        .get()
+        .getNode(buildTarget)
+        .getTransitiveCacheableDependents(buildGraph.get())
+        .contains(nextBuildTarget);
+  }
+
   private void minionFinishedWork(String minionId, List<String> ruleNames, long now) {
     for (String ruleName : ruleNames) {
       Long startEpochMillisOrNull = jobStartedEpochMillisByJobId.remove(ruleName);
@@ -23,6 +23,7 @@ import com.facebook.buck.distributed.thrift.WorkUnit;
 import com.google.common.base.Preconditions;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -252,6 +253,13 @@ public class MinionWorkloadAllocator {
       return reallocatedWorkUnits;
     }
 
+    // Failed work units are re-allocated most urgent first. The sort is stable, so they stay in the
+    // order in which minions failed if the queue doesn't prioritize work units.
+    List<WorkUnit> sortedWorkUnits = new ArrayList<>(workUnitsFromFailedMinions);
+    sortedWorkUnits.sort(
+        Comparator.<WorkUnit>comparingLong(queue::getWorkUnitPriority).reversed());
+    workUnitsFromFailedMinions = new LinkedList<>(sortedWorkUnits);
+
     while (workUnitsFromFailedMinions.size() > 0 && reallocatedWorkUnits.size() < maxWorkUnits) {
       WorkUnit workUnitToReAssign = workUnitsFromFailedMinions.remove();
       Preconditions.checkArgument(workUnitToReAssign.getBuildTargets().size() > 0);
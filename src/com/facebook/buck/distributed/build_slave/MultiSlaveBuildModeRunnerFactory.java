@@ -40,12 +40,15 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.chrome_trace.ChromeTraceBuckConfig;
 import com.facebook.buck.util.timing.DefaultClock;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
@@ -56,6 +59,21 @@ public class MultiSlaveBuildModeRunnerFactory {
   private static final Logger LOG = Logger.get(MultiSlaveBuildModeRunnerFactory.class);
   private static final String LOCALHOST_ADDRESS = "localhost";
 
+  private static Optional<RuleDurationHistory> getRuleDurationHistory(
+      DistBuildConfig distBuildConfig) throws IOException {
+    if (!distBuildConfig.isCriticalPathSchedulingEnabled()) {
+      return Optional.empty();
+    }
+    Optional<Path> durationsFile = distBuildConfig.getRuleDurationsFile();
+    if (durationsFile.isPresent() && Files.exists(durationsFile.get())) {
+      return Optional.of(RuleDurationHistory.readFromFile(durationsFile.get()));
+    }
+    // Without durations, every rule is predicted to take as long, so the critical path is the
+    // longest chain of rules.
+    LOG.info("No rule durations available. Prioritizing work units by length of chain.");
+    return Optional.of(new RuleDurationHistory(ImmutableMap.of()));
+  }
+
   /**
    * Create a {@link CoordinatorModeRunner}.
    *
@@ -108,7 +126,9 @@ public class MultiSlaveBuildModeRunnerFactory {
                                 .createBuildTargetsQueue(
                                     topLevelTargetsToBuild,
                                     coordinatorBuildRuleEventsPublisher,
-                                    distBuildConfig.getMostBuildRulesFinishedPercentageThreshold());
+                                    distBuildConfig.getMostBuildRulesFinishedPercentageThreshold(),
+                                    getRuleDurationHistory(distBuildConfig),
+                                    distBuildConfig.getWorkUnitPackingThresholdMillis());
                       } catch (Exception e) {
                         LOG.error(e, "Failed to create BuildTargetsQueue.");
                         throw new RuntimeException(e);
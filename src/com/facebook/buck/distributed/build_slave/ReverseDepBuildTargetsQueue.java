@@ -24,22 +24,40 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Queue;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-/** NOTE: Not thread safe. Caller needs to synchronize access if using multiple threads. */
+/**
+ * Hands out chains of build rules whose dependencies have all been built.
+ *
+ * <p>When a {@link RuleDurationHistory} is given, ready chains are handed out in order of their
+ * critical path, i.e. the longest predicted time from the start of the chain to the end of the
+ * build, so that the long chain of a build doesn't end up starting last. Chains that are predicted
+ * to be shorter than the packing threshold are packed together into a single work unit, so that an
+ * idle minion core gets a batch of short rules instead of a single one per request.
+ *
+ * <p>NOTE: Not thread safe. Caller needs to synchronize access if using multiple threads.
+ */
 public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
   private static final TimedLogger LOG =
       new TimedLogger(Logger.get(ReverseDepBuildTargetsQueue.class));
   private final DistributableBuildGraph distributableBuildGraph;
   private final int totalCacheableNodes;
   private final int mostBuildRulesFinishedPercentageThreshold;
+  private final Optional<RuleDurationHistory> ruleDurationHistory;
+  private final long workUnitPackingThresholdMillis;
+  private final Map<String, Long> criticalPathMillisByTarget = new HashMap<>();
 
   private final Set<String> seenWorkingCacheableNodes = new HashSet<>();
   private final Set<String> seenFinishedNodes = new HashSet<>();
@@ -52,8 +70,24 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
   ReverseDepBuildTargetsQueue(
       DistributableBuildGraph distributableBuildGraph,
       int mostBuildRulesFinishedPercentageThreshold) {
+    this(distributableBuildGraph, mostBuildRulesFinishedPercentageThreshold, Optional.empty(), 0);
+  }
+
+  /**
+   * @param ruleDurationHistory durations used to prioritize work units by critical path. Work
+   *     units are handed out in the order their nodes became ready if absent.
+   * @param workUnitPackingThresholdMillis chains predicted to take less than this are packed into
+   *     a single work unit. Only used with a rule duration history.
+   */
+  ReverseDepBuildTargetsQueue(
+      DistributableBuildGraph distributableBuildGraph,
+      int mostBuildRulesFinishedPercentageThreshold,
+      Optional<RuleDurationHistory> ruleDurationHistory,
+      long workUnitPackingThresholdMillis) {
     this.distributableBuildGraph = distributableBuildGraph;
     this.mostBuildRulesFinishedPercentageThreshold = mostBuildRulesFinishedPercentageThreshold;
+    this.ruleDurationHistory = ruleDurationHistory;
+    this.workUnitPackingThresholdMillis = workUnitPackingThresholdMillis;
 
     this.zeroDependencyTargets =
         distributableBuildGraph
@@ -75,9 +109,64 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
             "Constructing queue with [%d] zero dependency targets and [%d] total targets.",
             zeroDependencyTargets.size(), distributableBuildGraph.size()));
 
+    ruleDurationHistory.ifPresent(this::computeCriticalPaths);
     completeUncachableZeroDependencyNodes();
   }
 
+  /**
+   * Computes, for every node, the predicted time from the moment it starts building until all of
+   * its transitive dependents are built, assuming unlimited minions.
+   */
+  private void computeCriticalPaths(RuleDurationHistory history) {
+    // Order the nodes so that all dependencies of a node come before it, then walk the order
+    // backwards. This is done iteratively, as dependency chains can be too deep for recursion.
+    Map<String, Integer> remainingDependencies = new HashMap<>();
+    Deque<DistributableNode> readyNodes = new ArrayDeque<>(distributableBuildGraph.leafNodes);
+    List<DistributableNode> topologicalOrder = new ArrayList<>(distributableBuildGraph.size());
+    while (!readyNodes.isEmpty()) {
+      DistributableNode node = readyNodes.remove();
+      topologicalOrder.add(node);
+      for (String dependent : node.dependentTargets) {
+        DistributableNode dependentNode = distributableBuildGraph.getNode(dependent);
+        int remaining =
+            remainingDependencies.getOrDefault(dependent, dependentNode.allDependencies.size())
+                - 1;
+        remainingDependencies.put(dependent, remaining);
+        if (remaining == 0) {
+          readyNodes.add(dependentNode);
+        }
+      }
+    }
+
+    for (DistributableNode node : Lists.reverse(topologicalOrder)) {
+      long longestDependentPath = 0;
+      for (String dependent : node.dependentTargets) {
+        longestDependentPath =
+            Math.max(longestDependentPath, criticalPathMillisByTarget.getOrDefault(dependent, 0L));
+      }
+      criticalPathMillisByTarget.put(
+          node.getTargetName(),
+          history.getDurationMillis(node.getTargetName()) + longestDependentPath);
+    }
+  }
+
+  /**
+   * @return the predicted time from the start of the target until the end of the build, or 0 if
+   *     work units are not prioritized.
+   */
+  public long getCriticalPathMillis(String target) {
+    return criticalPathMillisByTarget.getOrDefault(target, 0L);
+  }
+
+  @Override
+  public long getWorkUnitPriority(WorkUnit workUnit) {
+    long priority = 0;
+    for (String target : workUnit.getBuildTargets()) {
+      priority = Math.max(priority, getCriticalPathMillis(target));
+    }
+    return priority;
+  }
+
   @Override
   public DistributableBuildGraph getDistributableBuildGraph() {
     return distributableBuildGraph;
@@ -126,8 +215,12 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
     }
 
     List<WorkUnit> newUnitsOfWork = new ArrayList<>();
-    createWorkUnitsStartingAtNodes(
-        new HashSet<>(zeroDependencyTargets), newUnitsOfWork, maxUnitsOfWork);
+    if (ruleDurationHistory.isPresent()) {
+      createPrioritizedWorkUnits(newUnitsOfWork, maxUnitsOfWork);
+    } else {
+      createWorkUnitsStartingAtNodes(
+          new HashSet<>(zeroDependencyTargets), newUnitsOfWork, maxUnitsOfWork);
+    }
 
     if (newUnitsOfWork.size() > 0) {
       LOG.info(String.format("Returning [%s] work units", newUnitsOfWork.size()));
@@ -237,8 +330,65 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
     }
   }
 
-  private void addToWorkUnit(
-      DistributableNode node, List<String> unitOfWork, Queue<DistributableNode> nodesToCheck) {
+  private void createPrioritizedWorkUnits(List<WorkUnit> newUnitsOfWork, int maxUnitsOfWork) {
+    RuleDurationHistory history = ruleDurationHistory.get();
+    List<String> nodes = new ArrayList<>(zeroDependencyTargets);
+    nodes.sort(
+        Comparator.comparingLong(this::getCriticalPathMillis)
+            .reversed()
+            .thenComparing(Comparator.naturalOrder()));
+
+    // Targets of the new work units, in priority order. Short chains are packed into the unit at
+    // packingUnit until their predicted duration reaches the threshold, so work units are only
+    // created once all their targets are known.
+    List<List<String>> unitTargets = new ArrayList<>();
+    int packingUnit = -1;
+    long packedMillis = 0;
+    for (String node : nodes) {
+      if (seenWorkingCacheableNodes.contains(node)) {
+        continue; // Node may form work unit with an earlier zero dependency node
+      }
+
+      List<DistributableNode> chain = getChainStartingAtLeafNode(node);
+      long chainMillis = 0;
+      for (DistributableNode chainNode : chain) {
+        chainMillis += history.getDurationMillis(chainNode.getTargetName());
+      }
+
+      if (packingUnit >= 0 && packedMillis + chainMillis <= workUnitPackingThresholdMillis) {
+        LOG.debug(String.format("Packing chain starting at [%s] with other short chains.", node));
+        addToWorkUnit(chain, unitTargets.get(packingUnit));
+        packedMillis += chainMillis;
+        continue;
+      }
+
+      if (newUnitsOfWork.size() + unitTargets.size() >= maxUnitsOfWork) {
+        break;
+      }
+
+      List<String> targets = new LinkedList<>();
+      addToWorkUnit(chain, targets);
+      unitTargets.add(targets);
+      if (chainMillis < workUnitPackingThresholdMillis) {
+        packingUnit = unitTargets.size() - 1;
+        packedMillis = chainMillis;
+      }
+    }
+
+    for (List<String> targets : unitTargets) {
+      WorkUnit workUnit = new WorkUnit();
+      workUnit.setBuildTargets(targets);
+      newUnitsOfWork.add(workUnit);
+    }
+  }
+
+  private void addToWorkUnit(List<DistributableNode> chain, List<String> unitOfWork) {
+    for (DistributableNode node : chain) {
+      addToWorkUnit(node, unitOfWork);
+    }
+  }
+
+  private void addToWorkUnit(DistributableNode node, List<String> unitOfWork) {
     if (node.isUncacheable()) {
       // Uncachables do not need to be scheduled explicitly. If they are needed for a
       // cachable in the chain, they will be built anyway.
@@ -251,22 +401,35 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
       unitOfWork.add(node.getTargetName()); // Reverse dependency order
     }
 
-    nodesToCheck.add(node);
     zeroDependencyTargets.remove(node.getTargetName());
   }
 
   private WorkUnit getUnitOfWorkStartingAtLeafNode(String leafNode) {
+    return createWorkUnit(getChainStartingAtLeafNode(leafNode));
+  }
+
+  private WorkUnit createWorkUnit(List<DistributableNode> chain) {
+    List<String> workUnitNodes = new LinkedList<>(); //
+    addToWorkUnit(chain, workUnitNodes);
+
+    WorkUnit workUnit = new WorkUnit();
+    workUnit.setBuildTargets(workUnitNodes);
+
+    return workUnit;
+  }
+
+  /** Finds the chain of nodes that will form a work unit, without adding them to one yet. */
+  private List<DistributableNode> getChainStartingAtLeafNode(String leafNode) {
     if (seenWorkingCacheableNodes.contains(leafNode)) {
       throw new RuntimeException(
           String.format("Leaf node [%s] is already part of a work unit", leafNode));
     }
 
-    List<String> workUnitNodes = new LinkedList<>(); //
-    Queue<DistributableNode> nodesToCheck = new LinkedList<>();
-    addToWorkUnit(distributableBuildGraph.getNode(leafNode), workUnitNodes, nodesToCheck);
+    List<DistributableNode> chain = new ArrayList<>();
+    DistributableNode currentNode = distributableBuildGraph.getNode(leafNode);
+    chain.add(currentNode);
 
-    while (nodesToCheck.size() == 1) {
-      DistributableNode currentNode = nodesToCheck.remove();
+    while (true) {
       // If a node has more than one parent, then it should be the last node in the chain.
       if (currentNode.dependentTargets.size() != 1) {
         break;
@@ -282,12 +445,10 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
         break;
       }
 
-      addToWorkUnit(parent, workUnitNodes, nodesToCheck);
+      chain.add(parent);
+      currentNode = parent;
     }
 
-    WorkUnit workUnit = new WorkUnit();
-    workUnit.setBuildTargets(workUnitNodes);
-
-    return workUnit;
+    return chain;
   }
 }
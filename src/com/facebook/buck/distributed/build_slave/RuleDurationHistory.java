@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.build_slave;
+
+import com.facebook.buck.distributed.build_slave.DistBuildTrace.MinionThread;
+import com.facebook.buck.distributed.build_slave.DistBuildTrace.MinionTrace;
+import com.facebook.buck.distributed.build_slave.DistBuildTrace.RuleTrace;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Build durations of rules in a previous distributed build, used by {@link
+ * ReverseDepBuildTargetsQueue} to predict how long the remaining chains of the current build will
+ * take.
+ *
+ * <p>Stored as a JSON object mapping fully qualified target names to durations in milliseconds.
+ */
+public class RuleDurationHistory {
+  private final ImmutableMap<String, Long> durationMillisByTarget;
+  private final long defaultDurationMillis;
+
+  public RuleDurationHistory(Map<String, Long> durationMillisByTarget) {
+    this.durationMillisByTarget = ImmutableMap.copyOf(durationMillisByTarget);
+    // Rules that were not built before are assumed to be average.
+    this.defaultDurationMillis =
+        Math.max(
+            1,
+            (long)
+                durationMillisByTarget
+                    .values()
+                    .stream()
+                    .mapToLong(Long::longValue)
+                    .average()
+                    .orElse(1));
+  }
+
+  /** @return the history of the rules built in the given trace. */
+  public static RuleDurationHistory fromTrace(DistBuildTrace trace) {
+    Map<String, Long> durations = new HashMap<>();
+    for (MinionTrace minion : trace.minions) {
+      for (MinionThread thread : minion.threads) {
+        for (RuleTrace rule : thread.ruleTraces) {
+          durations.put(rule.ruleName, rule.finishEpochMillis - rule.startEpochMillis);
+        }
+      }
+    }
+    return new RuleDurationHistory(durations);
+  }
+
+  public static RuleDurationHistory readFromFile(Path path) throws IOException {
+    try (InputStream stream = Files.newInputStream(path)) {
+      Map<String, Long> durations =
+          ObjectMappers.READER.forType(new TypeReference<Map<String, Long>>() {}).readValue(stream);
+      return new RuleDurationHistory(durations);
+    }
+  }
+
+  public void writeToFile(Path path) throws IOException {
+    try (OutputStream stream = Files.newOutputStream(path)) {
+      ObjectMappers.WRITER.writeValue(stream, durationMillisByTarget);
+    }
+  }
+
+  /**
+   * @return how long the target took to build last time, or the average duration of all known
+   *     targets if it wasn't built before.
+   */
+  public long getDurationMillis(String target) {
+    Long duration = durationMillisByTarget.get(target);
+    return duration == null ? defaultDurationMillis : Math.max(1, duration);
+  }
+
+  public ImmutableMap<String, Long> getDurationMillisByTarget() {
+    return durationMillisByTarget;
+  }
+}
@@ -33,6 +33,7 @@ import com.facebook.buck.distributed.thrift.ReportMinionAliveResponse;
 import com.facebook.buck.distributed.thrift.StampedeId;
 import com.facebook.buck.log.TimedLogger;
 import com.facebook.buck.slb.ThriftException;
+import com.facebook.buck.util.BuckConstant;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -321,6 +322,11 @@ public class ThriftCoordinatorServer implements Closeable {
       if (exitState.isDone() && exitState.get().exitCode == 0) {
         DistBuildTrace trace = chromeTraceTracker.generateTrace();
         trace.dumpToChromeTrace(traceFilePath);
+        // Keep the rule durations next to the trace, so they can be used to prioritize the
+        // critical path of later builds (see DistBuildConfig#getRuleDurationsFile).
+        RuleDurationHistory.fromTrace(trace)
+            .writeToFile(
+                traceFilePath.resolveSibling(BuckConstant.DIST_BUILD_RULE_DURATIONS_FILE_NAME));
         return true;
       }
     } catch (InterruptedException | ExecutionException | IOException e) {
@@ -49,6 +49,7 @@ import com.facebook.buck.log.GlobalStateManager;
 import com.facebook.buck.log.InvocationInfo;
 import com.facebook.buck.parser.ParseEvent;
 import com.facebook.buck.parser.events.ParseBuckFileEvent;
+import com.facebook.buck.parser.events.ResolveTargetSpecsEvent;
 import com.facebook.buck.step.StepEvent;
 import com.facebook.buck.support.bgtasks.BackgroundTask;
 import com.facebook.buck.support.bgtasks.ImmutableBackgroundTask;
@@ -409,6 +410,32 @@ public class ChromeTraceBuildListener implements BuckEventListener {
         finished);
   }
 
+  @Subscribe
+  public void resolveTargetSpecsStarted(ResolveTargetSpecsEvent.Started started) {
+    writeChromeTraceEvent(
+        "buck",
+        "resolve_target_specs",
+        ChromeTraceEvent.Phase.BEGIN,
+        ImmutableMap.of("specs", Integer.toString(started.getSpecsCount())),
+        started);
+  }
+
+  @Subscribe
+  public void resolveTargetSpecsFinished(ResolveTargetSpecsEvent.Finished finished) {
+    writeChromeTraceEvent(
+        "buck",
+        "resolve_target_specs",
+        ChromeTraceEvent.Phase.END,
+        ImmutableMap.of(
+            "build_files",
+            Integer.toString(finished.getBuildFilesCount()),
+            "build_file_search_ms",
+            Long.toString(TimeUnit.NANOSECONDS.toMillis(finished.getBuildFileSearchNanos())),
+            "cached_build_file_searches",
+            Integer.toString(finished.getCachedBuildFileSearches())),
+        finished);
+  }
+
   @Subscribe
   public void simplePerfEvent(SimplePerfEvent perfEvent) {
     ChromeTraceEvent.Phase phase = null;
@@ -455,17 +482,14 @@ public class ChromeTraceBuildListener implements BuckEventListener {
         "buck",
         "parse_file",
         ChromeTraceEvent.Phase.END,
-        ImmutableMap.of(
-            "path",
-            finished.getBuckFilePath().toString(),
-            "num_rules",
-            Integer.toString(finished.getNumRules()),
-            "processed_bytes",
-            Long.toString(finished.getProcessedBytes()),
-            "python_profile",
-            finished.getProfile().orElse(""),
-            "parser",
-            finished.getParserClass().getSimpleName()),
+        ImmutableMap.<String, String>builder()
+            .put("path", finished.getBuckFilePath().toString())
+            .put("num_rules", Integer.toString(finished.getNumRules()))
+            .put("processed_bytes", Long.toString(finished.getProcessedBytes()))
+            .put("allocated_bytes", Long.toString(finished.getAllocatedBytes()))
+            .put("python_profile", finished.getProfile().orElse(""))
+            .put("parser", finished.getParserClass().getSimpleName())
+            .build(),
         finished);
   }
 
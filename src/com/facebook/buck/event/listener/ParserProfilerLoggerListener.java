@@ -19,15 +19,26 @@ package com.facebook.buck.event.listener;
 import com.facebook.buck.event.BuckEventListener;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.log.InvocationInfo;
+import com.facebook.buck.parser.events.ParseBuckFileEvent;
 import com.facebook.buck.parser.events.ParseBuckProfilerReportEvent;
 import com.google.common.eventbus.Subscribe;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Writes parser profiles reported by build file parsers, along with the number of bytes allocated
+ * while parsing each package, to the log directory of the invocation.
+ */
 public class ParserProfilerLoggerListener implements BuckEventListener {
 
+  private static final String ALLOCATIONS_LOG_FILE_NAME = "parser-allocations.log";
+
   private final InvocationInfo info;
   private final ProjectFilesystem filesystem;
+  private final Map<Path, PackageAllocation> packageAllocations = new ConcurrentHashMap<>();
 
   public ParserProfilerLoggerListener(InvocationInfo info, ProjectFilesystem filesystem) {
     this.info = info;
@@ -41,4 +52,50 @@ public class ParserProfilerLoggerListener implements BuckEventListener {
     filesystem.createParentDirs(tracePath);
     filesystem.writeContentsToPath(event.getReport(), tracePath);
   }
+
+  @Subscribe
+  public void parseBuckFileFinished(ParseBuckFileEvent.Finished event) {
+    if (event.getAllocatedBytes() < 0) {
+      return;
+    }
+    packageAllocations.put(
+        event.getBuckFilePath(),
+        new PackageAllocation(event.getAllocatedBytes(), event.getNumRules()));
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (packageAllocations.isEmpty()) {
+      return;
+    }
+    StringBuilder report = new StringBuilder("allocated_bytes\tnum_rules\tbuild_file\n");
+    packageAllocations.entrySet().stream()
+        .sorted(
+            Comparator.comparingLong(
+                    (Map.Entry<Path, PackageAllocation> entry) -> entry.getValue().allocatedBytes)
+                .reversed())
+        .forEach(
+            entry ->
+                report
+                    .append(entry.getValue().allocatedBytes)
+                    .append('\t')
+                    .append(entry.getValue().rulesCount)
+                    .append('\t')
+                    .append(entry.getKey())
+                    .append('\n'));
+    Path allocationsPath = info.getLogDirectoryPath().resolve(ALLOCATIONS_LOG_FILE_NAME);
+    filesystem.createParentDirs(allocationsPath);
+    filesystem.writeContentsToPath(report.toString(), allocationsPath);
+  }
+
+  /** Heap usage of parsing a single package. */
+  private static class PackageAllocation {
+    private final long allocatedBytes;
+    private final int rulesCount;
+
+    PackageAllocation(long allocatedBytes, int rulesCount) {
+      this.allocatedBytes = allocatedBytes;
+      this.rulesCount = rulesCount;
+    }
+  }
 }
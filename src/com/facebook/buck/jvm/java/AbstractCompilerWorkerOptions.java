@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.config.BuckConfig;
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.core.util.immutables.BuckStyleTuple;
+import java.util.Optional;
+import java.util.OptionalInt;
+import org.immutables.value.Value;
+
+/**
+ * How to run external compilers in persistent worker processes (see {@link CompilerWorkers})
+ * instead of launching a new JVM for every compilation.
+ */
+@Value.Immutable
+@BuckStyleTuple
+abstract class AbstractCompilerWorkerOptions {
+  private static final String MAX_WORKERS = "compiler_workers";
+  private static final String MAX_HEAP_MB = "compiler_worker_heap_mb";
+  private static final String RECYCLE_HEAP_RATIO = "compiler_worker_recycle_heap_ratio";
+
+  private static final int DEFAULT_MAX_HEAP_MB = 1024;
+  private static final float DEFAULT_RECYCLE_HEAP_RATIO = 0.8f;
+
+  /** The maximum number of worker processes kept alive for each compiler. */
+  public abstract int getMaxWorkers();
+
+  /** The maximum heap size of each worker process, in megabytes. */
+  public abstract int getMaxHeapMb();
+
+  /**
+   * The fraction of the maximum heap that a worker may still be using after a compilation before
+   * it is shut down and replaced by a new process.
+   */
+  public abstract float getRecycleHeapRatio();
+
+  @Value.Check
+  protected void check() {
+    if (getMaxHeapMb() <= 0) {
+      throw new HumanReadableException("%s must be positive, got %d.", MAX_HEAP_MB, getMaxHeapMb());
+    }
+    if (getRecycleHeapRatio() <= 0 || getRecycleHeapRatio() > 1) {
+      throw new HumanReadableException(
+          "%s must be in (0, 1], got %s.", RECYCLE_HEAP_RATIO, getRecycleHeapRatio());
+    }
+  }
+
+  /**
+   * Reads the options from the given section of the config.
+   *
+   * @return the options, or empty if compiler workers are not enabled for that section.
+   */
+  public static Optional<CompilerWorkerOptions> fromConfig(BuckConfig config, String section) {
+    OptionalInt maxWorkers = config.getInteger(section, MAX_WORKERS);
+    if (!maxWorkers.isPresent() || maxWorkers.getAsInt() <= 0) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        CompilerWorkerOptions.of(
+            maxWorkers.getAsInt(),
+            config.getInteger(section, MAX_HEAP_MB).orElse(DEFAULT_MAX_HEAP_MB),
+            config.getFloat(section, RECYCLE_HEAP_RATIO).orElse(DEFAULT_RECYCLE_HEAP_RATIO)));
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.collect.ImmutableSortedSet;
+import java.util.Optional;
+import org.immutables.value.Value;
+
+/** What {@link IncrementalJavacStep} remembers about one class file it compiled. */
+@Value.Immutable
+@BuckStyleImmutable
+@JsonSerialize(as = IncrementalClassFileState.class)
+@JsonDeserialize(as = IncrementalClassFileState.class)
+abstract class AbstractIncrementalClassFileState {
+  /** The internal name of the class, e.g. {@code com/example/Foo$Bar}. */
+  public abstract String getClassName();
+
+  /** The name of the source file recorded in the class file, if it was compiled with one. */
+  public abstract Optional<String> getSourceFileName();
+
+  /** The internal names of the superclass and interfaces of the class. */
+  public abstract ImmutableSortedSet<String> getSuperTypes();
+
+  /** A hash of everything about the class that other classes may compile against. */
+  public abstract String getAbiHash();
+
+  /** A hash of the compile-time constants of the class, which javac inlines into other classes. */
+  public abstract String getConstantsHash();
+
+  /** The internal names of the classes referenced by the class, outside of the JDK. */
+  public abstract ImmutableSortedSet<String> getReferences();
+}
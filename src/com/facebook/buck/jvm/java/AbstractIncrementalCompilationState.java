@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import org.immutables.value.Value;
+
+/**
+ * The state that {@link IncrementalJavacStep} keeps between two compilations of the same target.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+@JsonSerialize(as = IncrementalCompilationState.class)
+@JsonDeserialize(as = IncrementalCompilationState.class)
+abstract class AbstractIncrementalCompilationState {
+  /**
+   * A hash of the compiler, its options and the contents of the classpath. Sources are only
+   * recompiled incrementally when it is unchanged.
+   */
+  public abstract String getFingerprint();
+
+  /** The source files of the target, keyed by their path relative to the project root. */
+  public abstract ImmutableSortedMap<String, IncrementalSourceFileState> getSources();
+
+  /**
+   * The classes used by all the compilations since the last full one, in the format of the used
+   * classes file of the target.
+   */
+  public abstract ImmutableSortedMap<String, ImmutableList<String>> getUsedClasses();
+}
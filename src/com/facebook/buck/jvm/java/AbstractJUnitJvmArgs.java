@@ -71,6 +71,14 @@ abstract class AbstractJUnitJvmArgs {
     return false;
   }
 
+  /**
+   * @return The name of the file in the JaCoCo output directory to write code coverage data to.
+   */
+  @Value.Default
+  String getCodeCoverageDataFileName() {
+    return JacocoConstants.JACOCO_EXEC_COVERAGE_FILE;
+  }
+
   /**
    * @return If true, passes inclNoLocationClassesEnabled=true to the jacoco java agent.
    *     <p>Defaults to false.
@@ -145,7 +153,7 @@ abstract class AbstractJUnitJvmArgs {
               "-javaagent:%s=destfile=%s/%s,append=true,inclnolocationclasses=%b",
               JacocoConstants.PATH_TO_JACOCO_AGENT_JAR,
               JacocoConstants.getJacocoOutputDir(filesystem),
-              JacocoConstants.JACOCO_EXEC_COVERAGE_FILE,
+              getCodeCoverageDataFileName(),
               isInclNoLocationClassesEnabled()));
     }
 
@@ -50,4 +50,9 @@ abstract class AbstractJavacExecutionContext {
   public abstract ImmutableMap<String, String> getEnvironment();
 
   public abstract ProcessExecutor getProcessExecutor();
+
+  public abstract CompilerWorkers getCompilerWorkers();
+
+  /** Whether in-process javac uses the shared indexes of classpath jars. */
+  public abstract boolean isIndexingClasspathJars();
 }
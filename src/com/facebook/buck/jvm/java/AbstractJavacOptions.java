@@ -138,6 +138,26 @@ abstract class AbstractJavacOptions implements AddsToRuleKey {
     return false;
   }
 
+  /**
+   * Whether to recompile only the sources of a library that changed since its previous build, and
+   * the sources that depend on them (see {@link IncrementalJavacStep}).
+   */
+  @Value.Default
+  @CustomFieldBehavior(DefaultFieldSerialization.class)
+  public boolean isIncrementalCompilation() {
+    return false;
+  }
+
+  /**
+   * Whether in-process javac should look up classes in indexes of the classpath jars that are
+   * shared between compilations (see {@link IndexedClasspathFileManager}).
+   */
+  @Value.Default
+  @CustomFieldBehavior(DefaultFieldSerialization.class)
+  public boolean isIndexingClasspathJars() {
+    return true;
+  }
+
   public void validateOptions(Function<String, Boolean> classpathChecker) throws IOException {
     if (getBootclasspath().isPresent()) {
       String bootclasspath = getBootclasspath().get();
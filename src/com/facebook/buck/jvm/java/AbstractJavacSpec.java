@@ -31,6 +31,9 @@ abstract class AbstractJavacSpec {
 
   protected abstract Optional<String> getCompilerClassName();
 
+  /** Whether to run an external javac in persistent worker processes, and how. */
+  protected abstract Optional<CompilerWorkerOptions> getCompilerWorkerOptions();
+
   @Value.Lazy
   public JavacProvider getJavacProvider() {
     return ExternalJavacProvider.getProviderForSpec((JavacSpec) this);
@@ -32,9 +32,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
-import com.google.common.io.ByteSource;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
@@ -128,14 +126,7 @@ public class AccumulateClassNamesStep implements Step {
             }
 
             String key = FileLikes.getFileNameWithoutClassSuffix(fileLike);
-            ByteSource input =
-                new ByteSource() {
-                  @Override
-                  public InputStream openStream() throws IOException {
-                    return fileLike.getInput();
-                  }
-                };
-            HashCode value = input.hash(Hashing.sha1());
+            HashCode value = Hashing.sha1().hashBytes(fileLike.getContents());
             HashCode existing = classNames.putIfAbsent(key, value);
             if (existing != null && !existing.equals(value)) {
               throw new IllegalArgumentException(
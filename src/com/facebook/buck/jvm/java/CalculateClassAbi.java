@@ -42,6 +42,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Optional;
 
 public class CalculateClassAbi extends AbstractBuildRuleWithDeclaredAndExtraDeps
     implements CalculateAbi, InitializableFromDisk<Object>, SupportsInputBasedRuleKey {
@@ -53,6 +54,9 @@ public class CalculateClassAbi extends AbstractBuildRuleWithDeclaredAndExtraDeps
    */
   @AddToRuleKey private final AbiGenerationMode compatibilityMode;
 
+  /** The maximum size of the store of ABI jars shared between rules, or empty to not store them. */
+  private final Optional<Long> classAbiStoreMaxSize;
+
   private final Path outputPath;
   private BuildOutputInitializer<Object> buildOutputInitializer;
   private final JavaAbiInfo javaAbiInfo;
@@ -62,10 +66,12 @@ public class CalculateClassAbi extends AbstractBuildRuleWithDeclaredAndExtraDeps
       ProjectFilesystem projectFilesystem,
       BuildRuleParams buildRuleParams,
       SourcePath binaryJar,
-      AbiGenerationMode compatibilityMode) {
+      AbiGenerationMode compatibilityMode,
+      Optional<Long> classAbiStoreMaxSize) {
     super(buildTarget, projectFilesystem, buildRuleParams);
     this.binaryJar = binaryJar;
     this.compatibilityMode = compatibilityMode;
+    this.classAbiStoreMaxSize = classAbiStoreMaxSize;
     this.outputPath = getAbiJarPath(getProjectFilesystem(), getBuildTarget());
     this.javaAbiInfo = new DefaultJavaAbiInfo(getSourcePathToOutput());
     this.buildOutputInitializer = new BuildOutputInitializer<>(getBuildTarget(), this);
@@ -88,6 +94,24 @@ public class CalculateClassAbi extends AbstractBuildRuleWithDeclaredAndExtraDeps
       BuildRuleParams libraryParams,
       SourcePath library,
       AbiGenerationMode compatibilityMode) {
+    return of(
+        target,
+        ruleFinder,
+        projectFilesystem,
+        libraryParams,
+        library,
+        compatibilityMode,
+        Optional.empty());
+  }
+
+  public static CalculateClassAbi of(
+      BuildTarget target,
+      SourcePathRuleFinder ruleFinder,
+      ProjectFilesystem projectFilesystem,
+      BuildRuleParams libraryParams,
+      SourcePath library,
+      AbiGenerationMode compatibilityMode,
+      Optional<Long> classAbiStoreMaxSize) {
     return new CalculateClassAbi(
         target,
         projectFilesystem,
@@ -95,7 +119,8 @@ public class CalculateClassAbi extends AbstractBuildRuleWithDeclaredAndExtraDeps
             .withDeclaredDeps(ImmutableSortedSet.copyOf(ruleFinder.filterBuildRuleInputs(library)))
             .withoutExtraDeps(),
         library,
-        compatibilityMode);
+        compatibilityMode,
+        classAbiStoreMaxSize);
   }
 
   public static Path getAbiJarPath(ProjectFilesystem filesystem, BuildTarget buildTarget) {
@@ -120,7 +145,9 @@ public class CalculateClassAbi extends AbstractBuildRuleWithDeclaredAndExtraDeps
                 getProjectFilesystem(),
                 context.getSourcePathResolver().getAbsolutePath(binaryJar),
                 outputPath,
-                compatibilityMode));
+                compatibilityMode,
+                classAbiStoreMaxSize.map(
+                    maxSize -> ClassAbiStore.of(getProjectFilesystem(), maxSize))));
 
     buildableContext.recordArtifact(outputPath);
 
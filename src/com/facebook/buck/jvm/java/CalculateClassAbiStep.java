@@ -23,37 +23,78 @@ import com.facebook.buck.jvm.java.abi.StubJar;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
+import com.google.common.hash.HashCode;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
 public class CalculateClassAbiStep implements Step {
+  /**
+   * Jars at least this large are stubbed in parallel. Below that, stubbing is quick enough that
+   * it isn't worth taking threads from other rules.
+   */
+  private static final long PARALLEL_STUBBING_MIN_JAR_BYTES = 1024 * 1024;
 
   private final ProjectFilesystem filesystem;
   private final Path binaryJar;
   private final Path abiJar;
   private final AbiGenerationMode compatibilityMode;
+  private final Optional<ClassAbiStore> store;
 
   public CalculateClassAbiStep(
       ProjectFilesystem filesystem,
       Path binaryJar,
       Path abiJar,
       AbiGenerationMode compatibilityMode) {
+    this(filesystem, binaryJar, abiJar, compatibilityMode, Optional.empty());
+  }
+
+  /**
+   * @param store if present, where to look for the ABI jar of an identical library jar before
+   *     stubbing the library, and where to keep the ABI jar afterwards.
+   */
+  public CalculateClassAbiStep(
+      ProjectFilesystem filesystem,
+      Path binaryJar,
+      Path abiJar,
+      AbiGenerationMode compatibilityMode,
+      Optional<ClassAbiStore> store) {
     this.filesystem = filesystem;
     this.binaryJar = binaryJar;
     this.abiJar = abiJar;
     this.compatibilityMode = compatibilityMode;
+    this.store = store;
   }
 
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
+    Path binJar = filesystem.resolve(binaryJar);
+    Optional<HashCode> key = Optional.empty();
+    if (store.isPresent() && Files.isRegularFile(binJar)) {
+      key = Optional.of(store.get().getKey(binJar, compatibilityMode));
+      boolean hit = store.get().get(key.get(), filesystem.resolve(abiJar));
+      context.getBuckEventBus().post(new ClassAbiStoreEvent(binaryJar, key.get(), hit));
+      if (hit) {
+        return StepExecutionResults.SUCCESS;
+      }
+    }
+
     try {
-      Path binJar = filesystem.resolve(binaryJar);
-      new StubJar(binJar).setCompatibilityMode(compatibilityMode).writeTo(filesystem, abiJar);
+      StubJar stubJar = new StubJar(binJar).setCompatibilityMode(compatibilityMode);
+      if (Files.isRegularFile(binJar) && Files.size(binJar) >= PARALLEL_STUBBING_MIN_JAR_BYTES) {
+        stubJar.setForkJoinPool(ForkJoinPool.commonPool());
+      }
+      stubJar.writeTo(filesystem, abiJar);
     } catch (IllegalArgumentException e) {
       context.logError(e, "Failed to calculate ABI for %s.", binaryJar);
       return StepExecutionResults.ERROR;
     }
 
+    if (key.isPresent()) {
+      store.get().put(key.get(), filesystem.resolve(abiJar));
+    }
     return StepExecutionResults.SUCCESS;
   }
 
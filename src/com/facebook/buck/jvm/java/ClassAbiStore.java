@@ -0,0 +1,225 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
+import com.facebook.buck.rules.keys.config.impl.BuckVersion;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A content-addressed store of the ABI jars produced by {@link CalculateClassAbiStep}, keyed by the
+ * contents of the library jar and the ABI generation mode.
+ *
+ * <p>A library whose rule key changed while its jar did not, or two rules that produce the same
+ * jar, get their ABI jar from the store instead of stubbing the library again. ABI jars are always
+ * copied in and out of the store rather than linked, because outputs can be rewritten in place
+ * (e.g. when they are fetched from the artifact cache), which would change a shared entry too.
+ *
+ * <p>The least recently used entries are deleted once the store grows past its maximum size. The
+ * store lives in buck-out, so it is also emptied by {@code buck clean}.
+ */
+public class ClassAbiStore {
+  private static final Logger LOG = Logger.get(ClassAbiStore.class);
+
+  /** Change this when the format of ABI jars changes in a way that Buck's version doesn't show. */
+  private static final String STORE_VERSION = "1";
+
+  /** Stores by root, so that rules share the size of the store instead of each listing it. */
+  private static final ConcurrentMap<Path, ClassAbiStore> STORES = new ConcurrentHashMap<>();
+
+  private final Path root;
+  private final long maxSizeBytes;
+
+  /**
+   * Approximate size of the entries in the store, or -1 if the store hasn't been listed yet.
+   * Guarded by {@code this}.
+   */
+  private long sizeBytes = -1;
+
+  @VisibleForTesting
+  ClassAbiStore(Path root, long maxSizeBytes) {
+    this.root = root;
+    this.maxSizeBytes = maxSizeBytes;
+  }
+
+  /** @return the store in the given filesystem's buck-out, holding at most the given size. */
+  public static ClassAbiStore of(ProjectFilesystem filesystem, long maxSizeBytes) {
+    Path root = filesystem.resolve(filesystem.getBuckPaths().getBuckOut()).resolve("abi_store");
+    return STORES.compute(
+        root,
+        (path, store) ->
+            store != null && store.maxSizeBytes == maxSizeBytes
+                ? store
+                : new ClassAbiStore(path, maxSizeBytes));
+  }
+
+  /** @return the key of the ABI jar of the given library jar. */
+  public HashCode getKey(Path binaryJar, AbiGenerationMode compatibilityMode) throws IOException {
+    Hasher hasher =
+        Hashing.sha1()
+            .newHasher()
+            .putString(STORE_VERSION, StandardCharsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(BuckVersion.getVersion(), StandardCharsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(compatibilityMode.name(), StandardCharsets.UTF_8)
+            .putByte((byte) 0);
+    try (InputStream input = Files.newInputStream(binaryJar);
+        OutputStream output = Funnels.asOutputStream(hasher)) {
+      ByteStreams.copy(input, output);
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * Copies the stored ABI jar with the given key to the given path, which must not exist.
+   *
+   * @return whether the store had an ABI jar with that key.
+   */
+  public boolean get(HashCode key, Path abiJar) throws IOException {
+    Path stored = getPath(key);
+    if (!Files.isRegularFile(stored)) {
+      return false;
+    }
+    try {
+      Files.copy(stored, abiJar);
+    } catch (NoSuchFileException e) {
+      // Removed since we looked, e.g. by a concurrent clean or trim.
+      Files.deleteIfExists(abiJar);
+      return false;
+    }
+    touch(stored);
+    return true;
+  }
+
+  /**
+   * Copies the given ABI jar into the store. Failures are logged and otherwise ignored, since the
+   * store is only an optimization.
+   */
+  public void put(HashCode key, Path abiJar) {
+    Path stored = getPath(key);
+    Path temp = root.resolve(String.format("%s.%s.tmp", key, UUID.randomUUID()));
+    try {
+      Files.createDirectories(root);
+      Files.copy(abiJar, temp);
+      long size = Files.size(temp);
+      // Another rule may be storing the same ABI jar concurrently; either copy is fine.
+      Files.move(
+          temp, stored, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      trimIfNeeded(size);
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to store the ABI jar %s.", abiJar);
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException deleteException) {
+        LOG.warn(deleteException, "Unable to delete %s.", temp);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  Path getPath(HashCode key) {
+    return root.resolve(key + ".jar");
+  }
+
+  private static void touch(Path path) {
+    try {
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      LOG.debug(e, "Failed to touch stored ABI jar %s.", path);
+    }
+  }
+
+  /**
+   * Deletes the least recently used entries once the store is larger than {@code maxSizeBytes}.
+   * Entries are deleted until the store is at most nine tenths of that size, so that the store
+   * isn't listed on every put.
+   */
+  private synchronized void trimIfNeeded(long addedBytes) throws IOException {
+    if (sizeBytes >= 0) {
+      sizeBytes += addedBytes;
+      if (sizeBytes <= maxSizeBytes) {
+        return;
+      }
+    }
+
+    List<Entry> entries = new ArrayList<>();
+    long totalBytes = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, "*.jar")) {
+      for (Path path : stream) {
+        BasicFileAttributes attributes;
+        try {
+          attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+          continue;
+        }
+        entries.add(new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+        totalBytes += attributes.size();
+      }
+    }
+    sizeBytes = totalBytes;
+    if (sizeBytes <= maxSizeBytes) {
+      return;
+    }
+
+    entries.sort(Comparator.comparing(entry -> entry.lastModifiedTime));
+    long targetBytes = maxSizeBytes / 10 * 9;
+    for (Entry entry : entries) {
+      if (sizeBytes <= targetBytes) {
+        break;
+      }
+      Files.deleteIfExists(entry.path);
+      sizeBytes -= entry.sizeBytes;
+    }
+  }
+
+  private static class Entry {
+    private final Path path;
+    private final long sizeBytes;
+    private final FileTime lastModifiedTime;
+
+    private Entry(Path path, long sizeBytes, FileTime lastModifiedTime) {
+      this.path = path;
+      this.sizeBytes = sizeBytes;
+      this.lastModifiedTime = lastModifiedTime;
+    }
+  }
+}
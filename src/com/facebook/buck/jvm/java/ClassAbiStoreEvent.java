@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.event.AbstractBuckEvent;
+import com.facebook.buck.event.EventKey;
+import com.google.common.hash.HashCode;
+import java.nio.file.Path;
+
+/** Sent when {@link CalculateClassAbiStep} looks up an ABI jar in the {@link ClassAbiStore}. */
+public class ClassAbiStoreEvent extends AbstractBuckEvent {
+  private final Path binaryJar;
+  private final HashCode key;
+  private final boolean hit;
+
+  public ClassAbiStoreEvent(Path binaryJar, HashCode key, boolean hit) {
+    super(EventKey.unique());
+    this.binaryJar = binaryJar;
+    this.key = key;
+    this.hit = hit;
+  }
+
+  public Path getBinaryJar() {
+    return binaryJar;
+  }
+
+  public HashCode getKey() {
+    return key;
+  }
+
+  /** @return whether the ABI jar was found in the store, so the library wasn't stubbed. */
+  public boolean isHit() {
+    return hit;
+  }
+
+  @Override
+  public String getEventName() {
+    return "ClassAbiStore";
+  }
+
+  @Override
+  protected String getValueString() {
+    return String.format("%s %s", hit ? "hit" : "miss", binaryJar);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.base.Charsets;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import javax.annotation.Nullable;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.JavaFileObject;
+
+/**
+ * A read-only {@link JavaFileObject} for an entry of a {@link ClasspathJarIndex}, whose contents
+ * are read through the {@link IndexedClasspathFileManager} that listed it.
+ */
+class ClasspathJarEntryFileObject implements JavaFileObject {
+  private final IndexedClasspathFileManager fileManager;
+  private final ClasspathJarIndex index;
+  private final ClasspathJarIndex.Entry entry;
+
+  ClasspathJarEntryFileObject(
+      IndexedClasspathFileManager fileManager,
+      ClasspathJarIndex index,
+      ClasspathJarIndex.Entry entry) {
+    this.fileManager = fileManager;
+    this.index = index;
+    this.entry = entry;
+  }
+
+  String getBinaryName() {
+    return entry.getBinaryName();
+  }
+
+  @Override
+  public URI toUri() {
+    // Same format as the URIs of javac's own jar entries, which ClassUsageTracker relies on.
+    URI jarUri = index.getJarPath().toFile().toURI().normalize();
+    try {
+      return new URI("jar:" + jarUri + "!/" + entry.getPathInJar());
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return index.getJarPath() + "(" + entry.getPathInJar() + ")";
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    return new ByteArrayInputStream(fileManager.readContents(index, entry));
+  }
+
+  @Override
+  public OutputStream openOutputStream() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+    return new StringReader(getCharContent(ignoreEncodingErrors).toString());
+  }
+
+  @Override
+  public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+    return new String(fileManager.readContents(index, entry), Charsets.UTF_8);
+  }
+
+  @Override
+  public Writer openWriter() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getLastModified() {
+    return 0L;
+  }
+
+  @Override
+  public boolean delete() {
+    return false;
+  }
+
+  @Override
+  public Kind getKind() {
+    return entry.getKind();
+  }
+
+  @Override
+  public boolean isNameCompatible(String simpleName, Kind kind) {
+    String baseName = simpleName + kind.extension;
+    String pathInJar = entry.getPathInJar();
+    return kind.equals(getKind())
+        && (baseName.equals(pathInJar) || pathInJar.endsWith("/" + baseName));
+  }
+
+  @Override
+  @Nullable
+  public NestingKind getNestingKind() {
+    return null;
+  }
+
+  @Override
+  @Nullable
+  public Modifier getAccessLevel() {
+    return null;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ClasspathJarEntryFileObject)) {
+      return false;
+    }
+    ClasspathJarEntryFileObject other = (ClasspathJarEntryFileObject) o;
+    return index.getJarPath().equals(other.index.getJarPath())
+        && entry.getPathInJar().equals(other.entry.getPathInJar());
+  }
+
+  @Override
+  public int hashCode() {
+    return index.getJarPath().hashCode() * 31 + entry.getPathInJar().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getName() + "[" + getName() + "]";
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.tools.JavaFileObject;
+
+/**
+ * The table of entries of a jar on the classpath, grouped by package, together with the contents
+ * of the small class files that compilations read from it.
+ *
+ * <p>Indexes are shared between compilations through {@link ClasspathJarIndexCache}, so that each
+ * jar is only opened and scanned once for as long as it doesn't change.
+ */
+class ClasspathJarIndex {
+  /** Rough per-entry overhead of the index in bytes, used to bound the size of the cache. */
+  private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+  private final Path jarPath;
+  private final ImmutableListMultimap<String, Entry> entriesByPackage;
+
+  @GuardedBy("this")
+  private long retainedContentsBytes = 0;
+
+  @GuardedBy("this")
+  private boolean evicted = false;
+
+  /** An entry of the jar. */
+  static class Entry {
+    private final String pathInJar;
+    private final JavaFileObject.Kind kind;
+
+    @Nullable private volatile byte[] contents;
+
+    private Entry(String pathInJar) {
+      this.pathInJar = pathInJar;
+      this.kind = getKindForName(pathInJar);
+    }
+
+    String getPathInJar() {
+      return pathInJar;
+    }
+
+    JavaFileObject.Kind getKind() {
+      return kind;
+    }
+
+    @Nullable
+    byte[] getContents() {
+      return contents;
+    }
+
+    /** @return the binary name of the class (or source file) stored in this entry. */
+    String getBinaryName() {
+      return pathInJar.substring(0, pathInJar.length() - kind.extension.length()).replace('/', '.');
+    }
+  }
+
+  private ClasspathJarIndex(Path jarPath, ImmutableListMultimap<String, Entry> entriesByPackage) {
+    this.jarPath = jarPath;
+    this.entriesByPackage = entriesByPackage;
+  }
+
+  /** Reads the central directory of the given jar. */
+  static ClasspathJarIndex read(Path jarPath) throws IOException {
+    ImmutableListMultimap.Builder<String, Entry> entriesByPackage = ImmutableListMultimap.builder();
+    try (ZipFile zipFile = new ZipFile(jarPath.toFile())) {
+      for (Enumeration<? extends ZipEntry> entries = zipFile.entries();
+          entries.hasMoreElements(); ) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory()) {
+          continue;
+        }
+        String name = entry.getName();
+        int lastSlash = name.lastIndexOf('/');
+        String packageName = lastSlash < 0 ? "" : name.substring(0, lastSlash).replace('/', '.');
+        entriesByPackage.put(packageName, new Entry(name));
+      }
+    }
+    return new ClasspathJarIndex(jarPath, entriesByPackage.build());
+  }
+
+  private static JavaFileObject.Kind getKindForName(String name) {
+    for (JavaFileObject.Kind kind :
+        ImmutableList.of(
+            JavaFileObject.Kind.CLASS, JavaFileObject.Kind.SOURCE, JavaFileObject.Kind.HTML)) {
+      if (name.endsWith(kind.extension)) {
+        return kind;
+      }
+    }
+    return JavaFileObject.Kind.OTHER;
+  }
+
+  Path getJarPath() {
+    return jarPath;
+  }
+
+  /** @return the entries directly in the given package. */
+  ImmutableList<Entry> getEntries(String packageName) {
+    return entriesByPackage.get(packageName);
+  }
+
+  /** @return the packages with at least one entry. */
+  ImmutableSet<String> getPackages() {
+    return entriesByPackage.keySet();
+  }
+
+  /** @return how much memory the entry table takes, approximately. */
+  long getEstimatedIndexBytes() {
+    long bytes = 0;
+    for (Entry entry : entriesByPackage.values()) {
+      bytes += ENTRY_OVERHEAD_BYTES + 2L * entry.pathInJar.length();
+    }
+    return bytes;
+  }
+
+  /**
+   * Keeps the contents of the entry in memory if the cache has room for them.
+   *
+   * @return whether the contents are now retained.
+   */
+  synchronized boolean retainContents(
+      ClasspathJarIndexCache cache, Entry entry, byte[] contents) {
+    if (evicted || entry.contents != null || !cache.tryReserveContentsBytes(contents.length)) {
+      return false;
+    }
+    entry.contents = contents;
+    retainedContentsBytes += contents.length;
+    return true;
+  }
+
+  /** Called when the index leaves the cache, to give back the memory used by class contents. */
+  synchronized long evict() {
+    evicted = true;
+    long released = retainedContentsBytes;
+    retainedContentsBytes = 0;
+    return released;
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Indexes of classpath jars shared by all in-process compilations of a daemon, so that large
+ * classpaths are not opened and scanned again by every {@link Jsr199Javac} invocation.
+ *
+ * <p>An index is reused for as long as the jar keeps the same file key, size and modification
+ * time. Both the entry tables and the class contents kept in memory are bounded.
+ */
+public class ClasspathJarIndexCache {
+  private static final long DEFAULT_MAX_INDEX_BYTES = 64 * 1024 * 1024;
+  private static final long DEFAULT_MAX_CONTENTS_BYTES = 128 * 1024 * 1024;
+
+  /** Class files larger than this are read from the jar every time. */
+  static final int MAX_RETAINED_ENTRY_BYTES = 16 * 1024;
+
+  private static final ClasspathJarIndexCache SHARED_CACHE =
+      new ClasspathJarIndexCache(DEFAULT_MAX_INDEX_BYTES, DEFAULT_MAX_CONTENTS_BYTES);
+
+  private final Cache<JarKey, ClasspathJarIndex> indexes;
+  private final long maxContentsBytes;
+  private final AtomicLong contentsBytes = new AtomicLong();
+  private final AtomicLong contentsHits = new AtomicLong();
+  private final AtomicLong contentsMisses = new AtomicLong();
+
+  ClasspathJarIndexCache(long maxIndexBytes, long maxContentsBytes) {
+    this.maxContentsBytes = maxContentsBytes;
+    this.indexes =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxIndexBytes)
+            .<JarKey, ClasspathJarIndex>weigher(
+                (key, index) -> (int) Math.min(Integer.MAX_VALUE, index.getEstimatedIndexBytes()))
+            .removalListener(
+                notification -> {
+                  ClasspathJarIndex index = notification.getValue();
+                  if (index != null) {
+                    contentsBytes.addAndGet(-index.evict());
+                  }
+                })
+            .recordStats()
+            .build();
+  }
+
+  /** @return the cache shared by all compilations for the lifetime of the process. */
+  public static ClasspathJarIndexCache getSharedCache() {
+    return SHARED_CACHE;
+  }
+
+  /** @return the index of the jar, reading it if the jar is new or has changed. */
+  ClasspathJarIndex getIndex(Path jarPath) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(jarPath, BasicFileAttributes.class);
+    JarKey key =
+        new JarKey(
+            jarPath,
+            attributes.fileKey(),
+            attributes.size(),
+            attributes.lastModifiedTime().toMillis());
+    try {
+      return indexes.get(key, () -> ClasspathJarIndex.read(jarPath));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  boolean tryReserveContentsBytes(long bytes) {
+    if (bytes > MAX_RETAINED_ENTRY_BYTES) {
+      return false;
+    }
+    while (true) {
+      long current = contentsBytes.get();
+      if (current + bytes > maxContentsBytes) {
+        return false;
+      }
+      if (contentsBytes.compareAndSet(current, current + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  void recordContentsRead(boolean fromMemory) {
+    (fromMemory ? contentsHits : contentsMisses).incrementAndGet();
+  }
+
+  /** @return hit and miss counts of the jar indexes. */
+  public CacheStats getIndexStats() {
+    return indexes.stats();
+  }
+
+  /** @return how many class files were served from memory rather than read from their jar. */
+  public long getContentsHitCount() {
+    return contentsHits.get();
+  }
+
+  /** @return how many class files had to be read from their jar. */
+  public long getContentsMissCount() {
+    return contentsMisses.get();
+  }
+
+  /** @return how much memory is used by class contents kept in the cache. */
+  public long getRetainedContentsBytes() {
+    return contentsBytes.get();
+  }
+
+  private static class JarKey {
+    private final Path path;
+    @Nullable private final Object fileKey;
+    private final long size;
+    private final long lastModifiedMillis;
+
+    JarKey(Path path, @Nullable Object fileKey, long size, long lastModifiedMillis) {
+      this.path = path;
+      this.fileKey = fileKey;
+      this.size = size;
+      this.lastModifiedMillis = lastModifiedMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof JarKey)) {
+        return false;
+      }
+      JarKey other = (JarKey) o;
+      return path.equals(other.path)
+          && Objects.equals(fileKey, other.fileKey)
+          && size == other.size
+          && lastModifiedMillis == other.lastModifiedMillis;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, fileKey, size, lastModifiedMillis);
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.compilerworker.CompilerWorkerMain;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.facebook.buck.worker.WorkerProcessIdentity;
+import com.facebook.buck.worker.WorkerProcessParams;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.facebook.buck.worker.WorkerProcessPool.BorrowedWorkerProcess;
+import com.facebook.buck.worker.WorkerProcessPoolFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.gson.stream.JsonReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Runs compilations in persistent worker processes (see {@link CompilerWorkerMain}), which keep
+ * the compiler loaded and JIT-compiled between targets.
+ *
+ * <p>There is one pool of workers per cell, compiler and JVM. Pools are kept across builds when the
+ * daemon is running, and otherwise for the duration of the build. Workers whose heap is still
+ * mostly in use after a compilation are shut down, and started again for the next compilation.
+ */
+public class CompilerWorkers {
+  private static final Logger LOG = Logger.get(CompilerWorkers.class);
+
+  private static final String POOL_KEY_PREFIX = "compiler-worker:";
+
+  private final ExecutionContext executionContext;
+  private final ProjectFilesystem filesystem;
+
+  public CompilerWorkers(ExecutionContext executionContext, ProjectFilesystem filesystem) {
+    this.executionContext = executionContext;
+    this.filesystem = filesystem;
+  }
+
+  /** @return whether workers are kept alive between builds. */
+  public boolean arePersistent() {
+    return executionContext.getPersistentWorkerPools().isPresent();
+  }
+
+  /**
+   * @return the {@code java} launcher in the same directory as the given compiler, after following
+   *     symlinks, if any.
+   */
+  public static Optional<Path> findJavaNextTo(Path compiler) {
+    Path directory;
+    try {
+      directory = compiler.toRealPath().getParent();
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+    if (directory == null) {
+      return Optional.empty();
+    }
+    Path java = directory.resolve("java");
+    return Files.isExecutable(java) ? Optional.of(java) : Optional.empty();
+  }
+
+  /** @return the {@code java} launcher of the JVM that Buck runs on. */
+  public static Path getCurrentJava() {
+    return Paths.get(System.getProperty("java.home"), "bin", "java");
+  }
+
+  /**
+   * Runs a compilation in a worker.
+   *
+   * @param java the JVM to run the worker on.
+   * @param compiler the arguments of {@link CompilerWorkerMain} that select the compiler.
+   * @param options how many workers to keep, and how large they may grow.
+   * @param args the arguments of the compiler.
+   * @param stderr where to print the output of the compiler.
+   * @return the exit code of the compiler.
+   */
+  public int compile(
+      Path java,
+      ImmutableList<String> compiler,
+      CompilerWorkerOptions options,
+      ImmutableList<String> args,
+      PrintStream stderr)
+      throws IOException, InterruptedException {
+    WorkerProcessParams params = getWorkerProcessParams(java, compiler, options);
+    WorkerProcessPool pool =
+        new WorkerProcessPoolFactory(filesystem).getWorkerProcessPool(executionContext, params);
+    String jobArgs = ObjectMappers.WRITER.writeValueAsString(args);
+
+    WorkerJobResult result;
+    boolean recycle;
+    try (BorrowedWorkerProcess process = pool.borrowWorkerProcess()) {
+      result = process.submitAndWaitForJob(jobArgs);
+      recycle = shouldRecycle(result.getStdout(), options.getRecycleHeapRatio());
+      if (recycle) {
+        process.recycle();
+      }
+    }
+
+    result.getStderr().ifPresent(stderr::print);
+    if (recycle) {
+      LOG.debug("Recycled a compiler worker of %s after its heap grew too large.", compiler);
+    }
+    return result.getExitCode();
+  }
+
+  @VisibleForTesting
+  WorkerProcessParams getWorkerProcessParams(
+      Path java, ImmutableList<String> compiler, CompilerWorkerOptions options) {
+    ImmutableList<String> startupCommand =
+        ImmutableList.<String>builder()
+            .add(java.toString())
+            .add(String.format("-Xmx%dm", options.getMaxHeapMb()))
+            .add("-cp")
+            .add(getWorkerClasspath())
+            .add(CompilerWorkerMain.class.getName())
+            .addAll(compiler)
+            .build();
+    // Compiler arguments are relative to the root of the cell, which is the working directory of
+    // the workers, so cells don't share workers.
+    Path root = filesystem.getRootPath().toAbsolutePath();
+    ImmutableMap<String, String> environment = executionContext.getEnvironment();
+    String key = POOL_KEY_PREFIX + root + " " + java + " " + Joiner.on(' ').join(compiler);
+    return WorkerProcessParams.of(
+        filesystem.getBuckPaths().getScratchDir().resolve("compiler-workers"),
+        startupCommand,
+        environment,
+        options.getMaxWorkers(),
+        Optional.of(
+            WorkerProcessIdentity.of(
+                key,
+                Hashing.sha1()
+                    .newHasher()
+                    .putString(root.toString(), StandardCharsets.UTF_8)
+                    .putByte((byte) 0)
+                    .putString(Joiner.on(' ').join(startupCommand), StandardCharsets.UTF_8)
+                    .putByte((byte) 0)
+                    .putString(
+                        Joiner.on('\0').withKeyValueSeparator('=').join(environment),
+                        StandardCharsets.UTF_8)
+                    .hash())));
+  }
+
+  /**
+   * Parses the heap usage reported by the worker.
+   *
+   * @return whether the worker retains more than the given ratio of its maximum heap.
+   */
+  @VisibleForTesting
+  static boolean shouldRecycle(Optional<String> stdout, float recycleHeapRatio) {
+    long used = -1;
+    long max = -1;
+    for (String line : stdout.orElse("").split("\n")) {
+      String[] parts = line.trim().split("=", 2);
+      if (parts.length != 2) {
+        continue;
+      }
+      try {
+        if (parts[0].equals(CompilerWorkerMain.HEAP_USED_BYTES)) {
+          used = Long.parseLong(parts[1]);
+        } else if (parts[0].equals(CompilerWorkerMain.HEAP_MAX_BYTES)) {
+          max = Long.parseLong(parts[1]);
+        }
+      } catch (NumberFormatException e) {
+        LOG.warn(e, "Unable to parse heap usage of a compiler worker: %s", line);
+      }
+    }
+    return used >= 0 && max > 0 && used > max * (double) recycleHeapRatio;
+  }
+
+  private static String getWorkerClasspath() {
+    return Joiner.on(File.pathSeparatorChar)
+        .join(
+            ImmutableSet.of(
+                getClassLocation(CompilerWorkerMain.class), getClassLocation(JsonReader.class)));
+  }
+
+  private static String getClassLocation(Class<?> clazz) {
+    URL location = clazz.getProtectionDomain().getCodeSource().getLocation();
+    try {
+      return Paths.get(location.toURI()).toAbsolutePath().toString();
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -492,7 +492,10 @@ public abstract class DefaultJavaLibraryRules {
                 getProjectFilesystem(),
                 getInitialParams(),
                 libraryRule.getSourcePathToOutput(),
-                getAbiCompatibilityMode()));
+                getAbiCompatibilityMode(),
+                getJavaBuckConfig() == null
+                    ? Optional.empty()
+                    : getJavaBuckConfig().getClassAbiStoreMaxSize()));
   }
 
   @Value.Lazy
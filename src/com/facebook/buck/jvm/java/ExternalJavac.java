@@ -35,6 +35,8 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
@@ -42,10 +44,20 @@ import javax.annotation.Nullable;
 public class ExternalJavac implements Javac {
   @AddToRuleKey private final Supplier<Tool> javac;
   private final String shortName;
+  // Where javac runs doesn't change its output.
+  private final Optional<CompilerWorkerOptions> compilerWorkerOptions;
 
-  public ExternalJavac(Supplier<Tool> javac, String shortName) {
+  public ExternalJavac(
+      Supplier<Tool> javac,
+      String shortName,
+      Optional<CompilerWorkerOptions> compilerWorkerOptions) {
     this.javac = MoreSuppliers.memoize(javac);
     this.shortName = shortName;
+    this.compilerWorkerOptions = compilerWorkerOptions;
+  }
+
+  public ExternalJavac(Supplier<Tool> javac, String shortName) {
+    this(javac, shortName, Optional.empty());
   }
 
   @Override
@@ -137,8 +149,9 @@ public class ExternalJavac implements Javac {
           return 0;
         }
 
+        ImmutableList<String> commandPrefix = javac.get().getCommandPrefix(sourcePathResolver);
         ImmutableList.Builder<String> command = ImmutableList.builder();
-        command.addAll(javac.get().getCommandPrefix(sourcePathResolver));
+        command.addAll(commandPrefix);
 
         try {
           FluentIterable<String> escapedPaths =
@@ -162,6 +175,24 @@ public class ExternalJavac implements Javac {
           return 1;
         }
 
+        Optional<Path> workerJava = getWorkerJava(commandPrefix);
+        if (workerJava.isPresent()) {
+          Path argsFile = context.getProjectFilesystem().resolve(pathToSrcsList);
+          try {
+            return context
+                .getCompilerWorkers()
+                .compile(
+                    workerJava.get(),
+                    ImmutableList.of("javac"),
+                    compilerWorkerOptions.get(),
+                    ImmutableList.of("@" + argsFile),
+                    context.getStdErr());
+          } catch (IOException e) {
+            e.printStackTrace(context.getStdErr());
+            return -1;
+          }
+        }
+
         // Run the command
         int exitCode = -1;
         try {
@@ -187,4 +218,15 @@ public class ExternalJavac implements Javac {
       }
     };
   }
+
+  /**
+   * Workers run javac in-process, so they can only be used when this javac is a plain binary that
+   * sits next to the {@code java} launcher of the same JDK.
+   */
+  private Optional<Path> getWorkerJava(ImmutableList<String> commandPrefix) {
+    if (!compilerWorkerOptions.isPresent() || commandPrefix.size() != 1) {
+      return Optional.empty();
+    }
+    return CompilerWorkers.findJavaNextTo(Paths.get(commandPrefix.get(0)));
+  }
 }
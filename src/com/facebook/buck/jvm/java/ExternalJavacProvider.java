@@ -48,18 +48,34 @@ import java.util.Optional;
 public class ExternalJavacProvider implements JavacProvider {
   private final ProcessExecutor processExecutor;
   private final SourcePath javacPath;
+  private final Optional<CompilerWorkerOptions> compilerWorkerOptions;
 
   public static final String COM_SUN_TOOLS_JAVAC_API_JAVAC_TOOL =
       "com.sun.tools.javac.api.JavacTool";
 
   @VisibleForTesting
-  ExternalJavacProvider(ProcessExecutor processExecutor, SourcePath javacPath) {
+  ExternalJavacProvider(
+      ProcessExecutor processExecutor,
+      SourcePath javacPath,
+      Optional<CompilerWorkerOptions> compilerWorkerOptions) {
     this.processExecutor = processExecutor;
     this.javacPath = javacPath;
+    this.compilerWorkerOptions = compilerWorkerOptions;
+  }
+
+  @VisibleForTesting
+  ExternalJavacProvider(ProcessExecutor processExecutor, SourcePath javacPath) {
+    this(processExecutor, javacPath, Optional.empty());
+  }
+
+  public ExternalJavacProvider(
+      SourcePath javacPath, Optional<CompilerWorkerOptions> compilerWorkerOptions) {
+    this(
+        new DefaultProcessExecutor(Console.createNullConsole()), javacPath, compilerWorkerOptions);
   }
 
   public ExternalJavacProvider(SourcePath javacPath) {
-    this(new DefaultProcessExecutor(Console.createNullConsole()), javacPath);
+    this(javacPath, Optional.empty());
   }
 
   /** Creates a JavacProvider based on a spec. */
@@ -70,7 +86,8 @@ public class ExternalJavacProvider implements JavacProvider {
     switch (javacSource) {
       case EXTERNAL:
         Preconditions.checkState(spec.getJavacPath().isPresent());
-        return new ExternalJavacProvider(spec.getJavacPath().get());
+        return new ExternalJavacProvider(
+            spec.getJavacPath().get(), spec.getCompilerWorkerOptions());
       case JAR:
         Preconditions.checkState(spec.getJavacJarPath().isPresent());
         return new JarBackedJavacProvider(spec.getJavacJarPath().get(), compilerClassName);
@@ -90,10 +107,13 @@ public class ExternalJavacProvider implements JavacProvider {
           rule instanceof BinaryBuildRule
               ? ((BinaryBuildRule) rule)::getExecutableCommand
               : Suppliers.ofInstance(new NonHashingJavacTool(buildTargetPath)),
-          buildTargetPath.getTarget().toString());
+          buildTargetPath.getTarget().toString(),
+          compilerWorkerOptions);
     } else {
       return new ExternalJavac(
-          () -> createVersionedJavac((PathSourcePath) javacPath), javacPath.toString());
+          () -> createVersionedJavac((PathSourcePath) javacPath),
+          javacPath.toString(),
+          compilerWorkerOptions);
     }
   }
 
@@ -20,29 +20,25 @@ import static com.facebook.buck.jvm.java.JacocoConstants.JACOCO_EXEC_COVERAGE_FI
 import static java.util.stream.Collectors.joining;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
-import com.facebook.buck.io.file.MostFiles;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
-import com.facebook.buck.io.filesystem.ProjectFilesystemFactory;
 import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.test.CoverageReportFormat;
-import com.facebook.buck.util.unarchive.ArchiveFormat;
-import com.facebook.buck.util.unarchive.ExistingFileMode;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
@@ -91,35 +87,26 @@ public class GenerateCodeCoverageReportStep extends ShellStep {
   @Override
   public StepExecutionResult execute(ExecutionContext context)
       throws IOException, InterruptedException {
-    Set<Path> tempDirs = new HashSet<>();
-    Set<Path> extractedClassesDirectories = new HashSet<>();
+    // Jars are analyzed in place by the report generator, so only directories are passed as such.
+    Set<Path> classesDirectories = new LinkedHashSet<>();
     for (Path jarFile : jarFiles) {
       if (filesystem.isDirectory(jarFile)) {
-        extractedClassesDirectories.add(jarFile);
+        classesDirectories.add(jarFile);
       } else {
-        Path extractClassDir = Files.createTempDirectory("extractedClasses");
-        populateClassesDir(context.getProjectFilesystemFactory(), jarFile, extractClassDir);
-        extractedClassesDirectories.add(extractClassDir);
-        tempDirs.add(extractClassDir);
+        Preconditions.checkState(
+            filesystem.exists(jarFile), String.valueOf(jarFile) + " does not exist");
       }
     }
 
-    try {
-      return executeInternal(context, extractedClassesDirectories);
-    } finally {
-      for (Path tempDir : tempDirs) {
-        MostFiles.deleteRecursively(tempDir);
-      }
-    }
+    return executeInternal(context, classesDirectories);
   }
 
   @VisibleForTesting
-  StepExecutionResult executeInternal(
-      ExecutionContext context, Set<Path> extractedClassesDirectories)
+  StepExecutionResult executeInternal(ExecutionContext context, Set<Path> classesDirectories)
       throws IOException, InterruptedException {
     try (OutputStream propertyFileStream =
         new FileOutputStream(filesystem.resolve(propertyFile).toFile())) {
-      saveParametersToPropertyStream(filesystem, extractedClassesDirectories, propertyFileStream);
+      saveParametersToPropertyStream(filesystem, classesDirectories, propertyFileStream);
     }
 
     return super.execute(context);
@@ -127,9 +114,7 @@ public class GenerateCodeCoverageReportStep extends ShellStep {
 
   @VisibleForTesting
   void saveParametersToPropertyStream(
-      ProjectFilesystem filesystem,
-      Set<Path> extractedClassesDirectories,
-      OutputStream outputStream)
+      ProjectFilesystem filesystem, Set<Path> classesDirectories, OutputStream outputStream)
       throws IOException {
     Properties properties = new Properties();
 
@@ -140,9 +125,10 @@ public class GenerateCodeCoverageReportStep extends ShellStep {
         formats.stream().map(format -> format.name().toLowerCase()).collect(joining(",")));
     properties.setProperty("jacoco.title", title);
 
-    properties.setProperty("classes.jars", formatPathSet(jarFiles));
+    properties.setProperty(
+        "classes.jars", formatPathSet(Sets.difference(jarFiles, classesDirectories)));
 
-    properties.setProperty("classes.dir", formatPathSet(extractedClassesDirectories));
+    properties.setProperty("classes.dir", formatPathSet(classesDirectories));
     properties.setProperty("src.dir", Joiner.on(":").join(sourceDirectories));
 
     if (coverageIncludes.isPresent()) {
@@ -174,26 +160,4 @@ public class GenerateCodeCoverageReportStep extends ShellStep {
 
     return args.build();
   }
-
-  /**
-   * ReportGenerator.java needs a class-directory to work with, so if we instead have a jar file we
-   * extract it first.
-   */
-  private void populateClassesDir(
-      ProjectFilesystemFactory projectFilesystemFactory, Path outputJar, Path classesDir)
-      throws InterruptedException {
-    try {
-      Preconditions.checkState(
-          filesystem.exists(outputJar), String.valueOf(outputJar) + " does not exist");
-      ArchiveFormat.ZIP
-          .getUnarchiver()
-          .extractArchive(
-              projectFilesystemFactory,
-              outputJar,
-              classesDir,
-              ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-  }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Extracts from a class file what {@link IncrementalJavacStep} needs to find the sources to
+ * recompile when it changes: its ABI, its constants, its supertypes and the classes it references.
+ */
+final class IncrementalClassFileAnalyzer {
+
+  /** The constants hash of a class without constants. */
+  public static final String NO_CONSTANTS_HASH = hash(ImmutableSortedSet.of());
+
+  private IncrementalClassFileAnalyzer() {}
+
+  public static IncrementalClassFileState analyze(byte[] classFile) {
+    ClassReader reader = new ClassReader(classFile);
+
+    AbiVisitor abiVisitor = new AbiVisitor();
+    reader.accept(abiVisitor, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+
+    ReferenceCollector references = new ReferenceCollector();
+    reader.accept(new ClassRemapper(new ClassNode(), references), ClassReader.SKIP_FRAMES);
+    references.referencedClasses.remove(reader.getClassName());
+
+    return IncrementalClassFileState.builder()
+        .setClassName(reader.getClassName())
+        .setSourceFileName(Optional.ofNullable(abiVisitor.sourceFileName))
+        .setSuperTypes(abiVisitor.superTypes.build())
+        .setAbiHash(hash(abiVisitor.abi))
+        .setConstantsHash(hash(abiVisitor.constants))
+        .setReferences(ImmutableSortedSet.copyOf(references.referencedClasses))
+        .build();
+  }
+
+  private static String hash(SortedSet<String> members) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String member : members) {
+      hasher.putString(member, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Records the non-private declarations of a class, and the values of its constants. Members are
+   * sorted, so that reordering them doesn't change the ABI.
+   */
+  private static class AbiVisitor extends ClassVisitor {
+    private final SortedSet<String> abi = new TreeSet<>();
+    private final SortedSet<String> constants = new TreeSet<>();
+    private final ImmutableSortedSet.Builder<String> superTypes = ImmutableSortedSet.naturalOrder();
+    @Nullable private String className;
+    @Nullable private String sourceFileName;
+
+    AbiVisitor() {
+      super(Opcodes.ASM7);
+    }
+
+    @Override
+    public void visit(
+        int version,
+        int access,
+        String name,
+        @Nullable String signature,
+        @Nullable String superName,
+        @Nullable String[] interfaces) {
+      className = name;
+      abi.add(
+          String.format(
+              "class %d %s %s %s %s",
+              access,
+              name,
+              signature,
+              superName,
+              interfaces == null ? "" : Arrays.toString(interfaces)));
+      if (superName != null) {
+        superTypes.add(superName);
+      }
+      if (interfaces != null) {
+        superTypes.add(interfaces);
+      }
+    }
+
+    @Override
+    public void visitSource(@Nullable String source, @Nullable String debug) {
+      sourceFileName = source;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+      abi.add("annotation " + descriptor);
+      return null;
+    }
+
+    @Override
+    public void visitInnerClass(
+        String name, @Nullable String outerName, @Nullable String innerName, int access) {
+      if (name.equals(className) || Objects.equals(outerName, className)) {
+        abi.add(String.format("inner %d %s %s %s", access, name, outerName, innerName));
+      }
+    }
+
+    @Override
+    public FieldVisitor visitField(
+        int access,
+        String name,
+        String descriptor,
+        @Nullable String signature,
+        @Nullable Object value) {
+      if ((access & Opcodes.ACC_PRIVATE) == 0) {
+        abi.add(String.format("field %d %s %s %s %s", access, name, descriptor, signature, value));
+        if (value != null) {
+          constants.add(String.format("%s %s %s", name, descriptor, value));
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+        int access,
+        String name,
+        String descriptor,
+        @Nullable String signature,
+        @Nullable String[] exceptions) {
+      if ((access & Opcodes.ACC_PRIVATE) == 0) {
+        abi.add(
+            String.format(
+                "method %d %s %s %s %s",
+                access,
+                name,
+                descriptor,
+                signature,
+                exceptions == null ? "" : Joiner.on(',').join(exceptions)));
+      }
+      return null;
+    }
+  }
+
+  /** Records every class name that appears anywhere in a class file, including method bodies. */
+  private static class ReferenceCollector extends Remapper {
+    private final SortedSet<String> referencedClasses = new TreeSet<>();
+
+    @Override
+    public String map(String internalName) {
+      if (!internalName.startsWith("java/")) {
+        referencedClasses.add(internalName);
+      }
+      return internalName;
+    }
+  }
+}
@@ -0,0 +1,555 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.impl.BuildTargetPaths;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles the sources of a library into its classes directory, like {@link JavacStep}, but only
+ * recompiles the sources that changed since the previous compilation of the same target, and the
+ * sources that depend on them. Class files of the other sources are copied from a snapshot of the
+ * previous compilation.
+ *
+ * <p>The sources to recompile are found as follows:
+ *
+ * <ul>
+ *   <li>sources whose contents changed, and all the sources in the package of a source that was
+ *       added or removed, since new classes may shadow imported ones;
+ *   <li>once those are compiled, the sources that reference a class whose ABI changed or that was
+ *       removed, a subclass of such a class, or any class in a package that gained a class. This is
+ *       repeated until no ABI changes.
+ * </ul>
+ *
+ * <p>Everything is recompiled when the compiler, its options or the contents of the classpath
+ * change, when the value of a constant changes (since javac inlines them), when a class file cannot
+ * be attributed to a single source, and when the incremental compilation fails, so that errors are
+ * always reported against a clean build.
+ */
+public class IncrementalJavacStep implements Step {
+  private static final Logger LOG = Logger.get(IncrementalJavacStep.class);
+
+  private static final String STATE_FILE_NAME = "state.json";
+  private static final String CLASSES_DIR_NAME = "classes";
+  private static final String CLASS_FILE_EXTENSION = ".class";
+
+  private final Javac javac;
+  private final JavacOptions javacOptions;
+  private final BuildTarget invokingRule;
+  private final SourcePathResolver resolver;
+  private final ProjectFilesystem filesystem;
+  private final CompilerParameters parameters;
+  private final Path classesDir;
+  private final Path stateDir;
+  private final Set<String> compiledSources = new TreeSet<>();
+
+  public IncrementalJavacStep(
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem,
+      CompilerParameters parameters) {
+    this.javac = javac;
+    this.javacOptions = javacOptions;
+    this.invokingRule = invokingRule;
+    this.resolver = resolver;
+    this.filesystem = filesystem;
+    this.parameters = parameters;
+    this.classesDir = filesystem.resolve(parameters.getOutputPaths().getClassesDir());
+    this.stateDir = filesystem.resolve(getStateDir(filesystem, invokingRule));
+  }
+
+  /**
+   * @return where the state of incremental compilation of the given target is kept. Unlike the
+   *     classes directory, it is not cleaned before the target is built.
+   */
+  public static Path getStateDir(ProjectFilesystem filesystem, BuildTarget target) {
+    return BuildTargetPaths.getScratchPath(filesystem, target, "lib__%s__incremental");
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    Files.createDirectories(classesDir);
+    ImmutableSet<String> classFilesBeforeCompilation = listClassFiles();
+    String fingerprint = computeFingerprint();
+    ImmutableSortedMap<String, String> sourceHashes = hashSources();
+
+    Optional<IncrementalCompilationState> previous = readState();
+    // The snapshot is about to change, so it is only valid again once the new state is written.
+    Files.deleteIfExists(stateDir.resolve(STATE_FILE_NAME));
+
+    if (previous.isPresent() && previous.get().getFingerprint().equals(fingerprint)) {
+      Optional<IncrementalCompilationState> state =
+          compileIncrementally(context, previous.get(), sourceHashes);
+      if (state.isPresent()) {
+        writeState(state.get());
+        return StepExecutionResults.SUCCESS;
+      }
+      LOG.info("Recompiling all the sources of %s.", invokingRule);
+      for (String classFile : Sets.difference(listClassFiles(), classFilesBeforeCompilation)) {
+        Files.delete(classesDir.resolve(classFile));
+      }
+    }
+
+    return compileFully(context, fingerprint, sourceHashes, classFilesBeforeCompilation);
+  }
+
+  private StepExecutionResult compileFully(
+      ExecutionContext context,
+      String fingerprint,
+      ImmutableSortedMap<String, String> sourceHashes,
+      Set<String> classFilesBeforeCompilation)
+      throws IOException, InterruptedException {
+    MostFiles.deleteRecursivelyIfExists(stateDir);
+
+    StepExecutionResult result = compile(context, sourceHashes.keySet(), false);
+    if (!result.isSuccess()) {
+      return result;
+    }
+
+    Optional<Map<String, IncrementalSourceFileState>> sources =
+        attributeNewClassFiles(classFilesBeforeCompilation, sourceHashes);
+    if (!sources.isPresent()) {
+      return result;
+    }
+    for (IncrementalSourceFileState source : sources.get().values()) {
+      copyClassFiles(source, classesDir, stateDir.resolve(CLASSES_DIR_NAME));
+    }
+    writeState(
+        IncrementalCompilationState.builder()
+            .setFingerprint(fingerprint)
+            .setSources(ImmutableSortedMap.copyOf(sources.get()))
+            .setUsedClasses(readUsedClasses().orElse(ImmutableSortedMap.of()))
+            .build());
+    return result;
+  }
+
+  private Optional<IncrementalCompilationState> compileIncrementally(
+      ExecutionContext context,
+      IncrementalCompilationState previous,
+      ImmutableSortedMap<String, String> sourceHashes)
+      throws IOException, InterruptedException {
+    Map<String, IncrementalSourceFileState> sources = new TreeMap<>(previous.getSources());
+    Set<String> deletedSources =
+        ImmutableSet.copyOf(Sets.difference(sources.keySet(), sourceHashes.keySet()));
+    Set<String> addedSources =
+        ImmutableSet.copyOf(Sets.difference(sourceHashes.keySet(), sources.keySet()));
+
+    Set<String> packagesToRecompile = new HashSet<>();
+    for (String source : Sets.union(deletedSources, addedSources)) {
+      packagesToRecompile.add(getPackage(source));
+    }
+    Set<String> toCompile = new TreeSet<>();
+    for (Map.Entry<String, String> source : sourceHashes.entrySet()) {
+      IncrementalSourceFileState previousSource = sources.get(source.getKey());
+      if (previousSource == null
+          || !previousSource.getHash().equals(source.getValue())
+          || packagesToRecompile.contains(getPackage(source.getKey()))) {
+        toCompile.add(source.getKey());
+      }
+    }
+
+    Path snapshotDir = stateDir.resolve(CLASSES_DIR_NAME);
+    List<IncrementalClassFileState> removedClasses = new ArrayList<>();
+    for (String source : deletedSources) {
+      IncrementalSourceFileState deleted = sources.remove(source);
+      removedClasses.addAll(deleted.getClassFiles().values());
+      deleteClassFiles(deleted, snapshotDir);
+    }
+    for (Map.Entry<String, IncrementalSourceFileState> source : sources.entrySet()) {
+      if (!toCompile.contains(source.getKey())
+          && !copyClassFiles(source.getValue(), snapshotDir, classesDir)) {
+        return Optional.empty();
+      }
+    }
+
+    SortedMap<String, Set<String>> usedClasses = new TreeMap<>();
+    addUsedClasses(usedClasses, previous.getUsedClasses());
+    Set<String> compiled = new HashSet<>();
+    while (!toCompile.isEmpty()) {
+      LOG.debug("Recompiling %d sources of %s.", toCompile.size(), invokingRule);
+      Map<String, IncrementalClassFileState> oldClasses = new HashMap<>();
+      for (IncrementalClassFileState removed : removedClasses) {
+        oldClasses.put(removed.getClassName(), removed);
+      }
+      removedClasses.clear();
+      for (String source : toCompile) {
+        IncrementalSourceFileState previousSource = sources.get(source);
+        if (previousSource != null) {
+          deleteClassFiles(previousSource, classesDir);
+          for (IncrementalClassFileState classFile : previousSource.getClassFiles().values()) {
+            oldClasses.put(classFile.getClassName(), classFile);
+          }
+        }
+      }
+
+      ImmutableSet<String> classFilesBeforeCompilation = listClassFiles();
+      if (!compile(context, toCompile, true).isSuccess()) {
+        return Optional.empty();
+      }
+      readUsedClasses().ifPresent(roundUsage -> addUsedClasses(usedClasses, roundUsage));
+      Optional<Map<String, IncrementalSourceFileState>> compiledSources =
+          attributeNewClassFiles(
+              classFilesBeforeCompilation, Maps.filterKeys(sourceHashes, toCompile::contains));
+      if (!compiledSources.isPresent()) {
+        return Optional.empty();
+      }
+
+      Map<String, IncrementalClassFileState> newClasses = new HashMap<>();
+      for (Map.Entry<String, IncrementalSourceFileState> source :
+          compiledSources.get().entrySet()) {
+        IncrementalSourceFileState previousSource = sources.put(source.getKey(), source.getValue());
+        if (previousSource != null) {
+          deleteClassFiles(previousSource, snapshotDir);
+        }
+        copyClassFiles(source.getValue(), classesDir, snapshotDir);
+        for (IncrementalClassFileState classFile : source.getValue().getClassFiles().values()) {
+          newClasses.put(classFile.getClassName(), classFile);
+        }
+      }
+      compiled.addAll(toCompile);
+
+      Set<String> changedClasses = new HashSet<>();
+      Set<String> changedPackages = new HashSet<>();
+      for (IncrementalClassFileState oldClass : oldClasses.values()) {
+        IncrementalClassFileState newClass = newClasses.get(oldClass.getClassName());
+        String newConstantsHash =
+            newClass == null
+                ? IncrementalClassFileAnalyzer.NO_CONSTANTS_HASH
+                : newClass.getConstantsHash();
+        if (!oldClass.getConstantsHash().equals(newConstantsHash)) {
+          LOG.debug("Constants of %s changed.", oldClass.getClassName());
+          return Optional.empty();
+        }
+        if (newClass == null || !newClass.getAbiHash().equals(oldClass.getAbiHash())) {
+          changedClasses.add(oldClass.getClassName());
+        }
+      }
+      for (String newClass : Sets.difference(newClasses.keySet(), oldClasses.keySet())) {
+        changedPackages.add(getPackage(newClass));
+      }
+      addSubclasses(changedClasses, sources.values());
+
+      toCompile = new TreeSet<>();
+      for (Map.Entry<String, IncrementalSourceFileState> source : sources.entrySet()) {
+        if (!compiled.contains(source.getKey())
+            && dependsOn(source.getValue(), changedClasses, changedPackages)) {
+          toCompile.add(source.getKey());
+        }
+      }
+    }
+
+    ImmutableSortedMap<String, ImmutableList<String>> allUsedClasses =
+        usedClasses.entrySet().stream()
+            .collect(
+                ImmutableSortedMap.toImmutableSortedMap(
+                    Comparator.naturalOrder(),
+                    Map.Entry::getKey,
+                    entry -> ImmutableList.sortedCopyOf(entry.getValue())));
+    if (parameters.shouldTrackClassUsage()) {
+      ObjectMappers.WRITER.writeValue(
+          filesystem
+              .resolve(CompilerOutputPaths.getDepFilePath(invokingRule, filesystem))
+              .toFile(),
+          allUsedClasses);
+    }
+
+    return Optional.of(
+        IncrementalCompilationState.builder()
+            .from(previous)
+            .setSources(ImmutableSortedMap.copyOf(sources))
+            .setUsedClasses(allUsedClasses)
+            .build());
+  }
+
+  /** Adds the classes that (transitively) extend or implement the given classes. */
+  private static void addSubclasses(
+      Set<String> classes, Iterable<IncrementalSourceFileState> sources) {
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (IncrementalSourceFileState source : sources) {
+        for (IncrementalClassFileState classFile : source.getClassFiles().values()) {
+          if (!classes.contains(classFile.getClassName())
+              && classFile.getSuperTypes().stream().anyMatch(classes::contains)) {
+            classes.add(classFile.getClassName());
+            changed = true;
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean dependsOn(
+      IncrementalSourceFileState source, Set<String> classes, Set<String> packages) {
+    for (IncrementalClassFileState classFile : source.getClassFiles().values()) {
+      for (String reference : classFile.getReferences()) {
+        if (classes.contains(reference) || packages.contains(getPackage(reference))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private StepExecutionResult compile(
+      ExecutionContext context, Set<String> sources, boolean withClassesDir)
+      throws IOException, InterruptedException {
+    ImmutableSortedSet<Path> classpath = parameters.getClasspathEntries();
+    if (withClassesDir) {
+      classpath =
+          ImmutableSortedSet.<Path>naturalOrder().addAll(classpath).add(classesDir).build();
+    }
+    compiledSources.addAll(sources);
+    CompilerParameters compilerParameters =
+        CompilerParameters.builder()
+            .from(parameters)
+            .setSourceFilePaths(
+                sources.stream()
+                    .map(filesystem::getPath)
+                    .collect(ImmutableSortedSet.toImmutableSortedSet(Comparator.naturalOrder())))
+            .setClasspathEntries(classpath)
+            .build();
+    return createJavacStep(compilerParameters).execute(context);
+  }
+
+  private JavacStep createJavacStep(CompilerParameters compilerParameters) {
+    return new JavacStep(
+        javac,
+        javacOptions,
+        invokingRule,
+        resolver,
+        filesystem,
+        new ClasspathChecker(),
+        compilerParameters,
+        null,
+        null);
+  }
+
+  /**
+   * Attributes each class file that is not in the given set to the source it was compiled from,
+   * using the source file name it records and its package.
+   *
+   * @return the compiled sources, or empty if some class file could not be attributed to exactly
+   *     one of them.
+   */
+  private Optional<Map<String, IncrementalSourceFileState>> attributeNewClassFiles(
+      Set<String> classFilesBeforeCompilation, Map<String, String> compiledSourceHashes)
+      throws IOException {
+    Map<String, ImmutableSortedMap.Builder<String, IncrementalClassFileState>> classFiles =
+        new TreeMap<>();
+    for (String source : compiledSourceHashes.keySet()) {
+      classFiles.put(source, ImmutableSortedMap.naturalOrder());
+    }
+
+    for (String classFile : Sets.difference(listClassFiles(), classFilesBeforeCompilation)) {
+      IncrementalClassFileState state =
+          IncrementalClassFileAnalyzer.analyze(Files.readAllBytes(classesDir.resolve(classFile)));
+      if (!state.getSourceFileName().isPresent()) {
+        LOG.debug("%s has no source file attribute.", classFile);
+        return Optional.empty();
+      }
+      Path expectedSource =
+          filesystem.getPath(classFile).resolveSibling(state.getSourceFileName().get());
+      List<String> candidates =
+          compiledSourceHashes.keySet().stream()
+              .filter(source -> filesystem.getPath(source).endsWith(expectedSource))
+              .collect(Collectors.toList());
+      if (candidates.size() != 1) {
+        LOG.debug("Unable to find the source of %s among %s.", classFile, candidates);
+        return Optional.empty();
+      }
+      classFiles.get(candidates.get(0)).put(classFile, state);
+    }
+
+    Map<String, IncrementalSourceFileState> sources = new TreeMap<>();
+    for (Map.Entry<String, ImmutableSortedMap.Builder<String, IncrementalClassFileState>> source :
+        classFiles.entrySet()) {
+      sources.put(
+          source.getKey(),
+          IncrementalSourceFileState.builder()
+              .setHash(compiledSourceHashes.get(source.getKey()))
+              .setClassFiles(source.getValue().build())
+              .build());
+    }
+    return Optional.of(sources);
+  }
+
+  /** @return the paths of the class files in the classes directory, relative to it. */
+  private ImmutableSet<String> listClassFiles() throws IOException {
+    try (Stream<Path> files = Files.walk(classesDir)) {
+      return files
+          .filter(path -> path.toString().endsWith(CLASS_FILE_EXTENSION))
+          .filter(Files::isRegularFile)
+          .map(path -> classesDir.relativize(path).toString())
+          .collect(ImmutableSet.toImmutableSet());
+    }
+  }
+
+  /** @return whether all the class files of the source existed in the source directory. */
+  private static boolean copyClassFiles(
+      IncrementalSourceFileState source, Path fromDir, Path toDir) throws IOException {
+    for (String classFile : source.getClassFiles().keySet()) {
+      Path from = fromDir.resolve(classFile);
+      if (!Files.isRegularFile(from)) {
+        LOG.debug("%s is missing.", from);
+        return false;
+      }
+      Path to = toDir.resolve(classFile);
+      Files.createDirectories(to.getParent());
+      Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return true;
+  }
+
+  private static void deleteClassFiles(IncrementalSourceFileState source, Path dir)
+      throws IOException {
+    for (String classFile : source.getClassFiles().keySet()) {
+      Files.deleteIfExists(dir.resolve(classFile));
+    }
+  }
+
+  private ImmutableSortedMap<String, String> hashSources() throws IOException {
+    ImmutableSortedMap.Builder<String, String> hashes = ImmutableSortedMap.naturalOrder();
+    for (Path source : parameters.getSourceFilePaths()) {
+      hashes.put(source.toString(), filesystem.computeSha1(source).getHash());
+    }
+    return hashes.build();
+  }
+
+  /** @return a hash of everything but the sources that affects the output of the compiler. */
+  private String computeFingerprint() throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(javac.getClass().getName(), StandardCharsets.UTF_8);
+    hasher.putString(javac.getShortName(), StandardCharsets.UTF_8);
+    hasher.putString(javacOptions.toString(), StandardCharsets.UTF_8);
+    for (Path entry : parameters.getClasspathEntries()) {
+      hasher.putString(entry.toString(), StandardCharsets.UTF_8);
+      if (Files.isDirectory(entry)) {
+        try (Stream<Path> files = Files.walk(entry)) {
+          for (Path file :
+              files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+            hasher.putString(entry.relativize(file).toString(), StandardCharsets.UTF_8);
+            hasher.putBytes(MoreFiles.asByteSource(file).hash(Hashing.sha1()).asBytes());
+          }
+        }
+      } else if (Files.isRegularFile(entry)) {
+        hasher.putBytes(MoreFiles.asByteSource(entry).hash(Hashing.sha1()).asBytes());
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private Optional<IncrementalCompilationState> readState() {
+    Path stateFile = stateDir.resolve(STATE_FILE_NAME);
+    if (!Files.isRegularFile(stateFile)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(ObjectMappers.readValue(stateFile, IncrementalCompilationState.class));
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to read the incremental compilation state of %s.", invokingRule);
+      return Optional.empty();
+    }
+  }
+
+  private void writeState(IncrementalCompilationState state) throws IOException {
+    Files.createDirectories(stateDir);
+    ObjectMappers.WRITER.writeValue(stateDir.resolve(STATE_FILE_NAME).toFile(), state);
+  }
+
+  /** @return the contents of the used classes file written by the last compilation, if any. */
+  private Optional<ImmutableSortedMap<String, ImmutableList<String>>> readUsedClasses()
+      throws IOException {
+    Path depFile = filesystem.resolve(CompilerOutputPaths.getDepFilePath(invokingRule, filesystem));
+    if (!parameters.shouldTrackClassUsage() || !Files.isRegularFile(depFile)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        ObjectMappers.readValue(
+            depFile, new TypeReference<ImmutableSortedMap<String, ImmutableList<String>>>() {}));
+  }
+
+  private static void addUsedClasses(
+      Map<String, Set<String>> usedClasses, Map<String, ? extends List<String>> toAdd) {
+    for (Map.Entry<String, ? extends List<String>> entry : toAdd.entrySet()) {
+      usedClasses.computeIfAbsent(entry.getKey(), key -> new TreeSet<>()).addAll(entry.getValue());
+    }
+  }
+
+  /** @return the directory of a source or the package of an internal class name. */
+  private static String getPackage(String path) {
+    int separator = path.lastIndexOf('/');
+    return separator < 0 ? "" : path.substring(0, separator);
+  }
+
+  /** @return the sources passed to the compiler, in any of its invocations. */
+  @VisibleForTesting
+  ImmutableSortedSet<String> getCompiledSources() {
+    return ImmutableSortedSet.copyOf(compiledSources);
+  }
+
+  @Override
+  public String getShortName() {
+    return "javac_incremental";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return createJavacStep(parameters).getDescription(context);
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A {@link StandardJavaFileManager} that lists the classpath from the shared indexes of {@link
+ * ClasspathJarIndexCache} instead of having the compiler open and scan every jar again.
+ *
+ * <p>Only classpaths made of jars are served from the indexes; anything else (e.g. a directory of
+ * classes) is left to the standard file manager. Jars are only opened when the compiler reads a
+ * class that isn't already in memory, and are closed with the file manager.
+ */
+class IndexedClasspathFileManager extends ForwardingStandardJavaFileManager {
+  private static final Logger LOG = Logger.get(IndexedClasspathFileManager.class);
+
+  private final ClasspathJarIndexCache cache;
+
+  @Nullable private Optional<List<ClasspathJarIndex>> classpathIndexes;
+
+  @GuardedBy("openJars")
+  private final Map<ClasspathJarIndex, ZipFile> openJars = new HashMap<>();
+
+  private int contentsHits = 0;
+  private int contentsMisses = 0;
+
+  public IndexedClasspathFileManager(
+      StandardJavaFileManager fileManager, ClasspathJarIndexCache cache) {
+    super(fileManager);
+    this.cache = cache;
+  }
+
+  @Override
+  public void setLocation(Location location, Iterable<? extends File> path) throws IOException {
+    super.setLocation(location, path);
+    classpathIndexes = null;
+  }
+
+  @Override
+  public boolean handleOption(String current, Iterator<String> remaining) {
+    classpathIndexes = null;
+    return super.handleOption(current, remaining);
+  }
+
+  private Optional<List<ClasspathJarIndex>> getClasspathIndexes() {
+    if (classpathIndexes == null) {
+      classpathIndexes = readClasspathIndexes();
+    }
+    return classpathIndexes;
+  }
+
+  private Optional<List<ClasspathJarIndex>> readClasspathIndexes() {
+    Iterable<? extends File> classpath = getLocation(StandardLocation.CLASS_PATH);
+    if (classpath == null) {
+      return Optional.empty();
+    }
+    List<ClasspathJarIndex> indexes = new ArrayList<>();
+    for (File file : classpath) {
+      if (!file.exists()) {
+        // javac ignores missing classpath entries as well.
+        continue;
+      }
+      if (!file.isFile()) {
+        return Optional.empty();
+      }
+      try {
+        indexes.add(cache.getIndex(file.toPath()));
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to index %s; not using classpath indexes.", file);
+        return Optional.empty();
+      }
+    }
+    return Optional.of(indexes);
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+      throws IOException {
+    Optional<List<ClasspathJarIndex>> indexes =
+        location == StandardLocation.CLASS_PATH ? getClasspathIndexes() : Optional.empty();
+    if (!indexes.isPresent()) {
+      return super.list(location, packageName, kinds, recurse);
+    }
+
+    List<JavaFileObject> results = new ArrayList<>();
+    for (ClasspathJarIndex index : indexes.get()) {
+      if (recurse) {
+        for (String candidate : index.getPackages()) {
+          if (packageName.isEmpty()
+              || candidate.equals(packageName)
+              || candidate.startsWith(packageName + ".")) {
+            addEntries(results, index, candidate, kinds);
+          }
+        }
+      } else {
+        addEntries(results, index, packageName, kinds);
+      }
+    }
+    return results;
+  }
+
+  private void addEntries(
+      List<JavaFileObject> results,
+      ClasspathJarIndex index,
+      String packageName,
+      Set<JavaFileObject.Kind> kinds) {
+    for (ClasspathJarIndex.Entry entry : index.getEntries(packageName)) {
+      if (kinds.contains(entry.getKind())) {
+        results.add(new ClasspathJarEntryFileObject(this, index, entry));
+      }
+    }
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof ClasspathJarEntryFileObject) {
+      return ((ClasspathJarEntryFileObject) file).getBinaryName();
+    }
+    return super.inferBinaryName(location, file);
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    if (a instanceof ClasspathJarEntryFileObject || b instanceof ClasspathJarEntryFileObject) {
+      return a.equals(b);
+    }
+    return super.isSameFile(a, b);
+  }
+
+  byte[] readContents(ClasspathJarIndex index, ClasspathJarIndex.Entry entry) throws IOException {
+    byte[] contents = entry.getContents();
+    cache.recordContentsRead(contents != null);
+    if (contents != null) {
+      contentsHits++;
+      return contents;
+    }
+    contentsMisses++;
+
+    synchronized (openJars) {
+      ZipFile zipFile = openJars.get(index);
+      if (zipFile == null) {
+        zipFile = new ZipFile(index.getJarPath().toFile());
+        openJars.put(index, zipFile);
+      }
+      ZipEntry zipEntry = zipFile.getEntry(entry.getPathInJar());
+      if (zipEntry == null) {
+        throw new IOException(
+            String.format("%s no longer contains %s", index.getJarPath(), entry.getPathInJar()));
+      }
+      try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+        contents = ByteStreams.toByteArray(inputStream);
+      }
+    }
+    index.retainContents(cache, entry, contents);
+    return contents;
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (openJars) {
+      for (ZipFile zipFile : openJars.values()) {
+        try {
+          zipFile.close();
+        } catch (IOException e) {
+          LOG.warn(e, "Unable to close %s.", zipFile.getName());
+        }
+      }
+      LOG.debug(
+          "Read %d classpath entries from memory and %d from %d jars.",
+          contentsHits, contentsMisses, openJars.size());
+      openJars.clear();
+    }
+    super.close();
+  }
+}
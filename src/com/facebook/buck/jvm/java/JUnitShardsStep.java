@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the classes of one test rule in several JVMs at once, each with its own {@link JUnitStep},
+ * so that a test rule with many slow classes doesn't keep running long after the other tests.
+ *
+ * <p>Each shard takes a test slot of its own, see {@link #getShardCount()}.
+ */
+public class JUnitShardsStep implements Step {
+  private final ImmutableList<? extends Step> shards;
+
+  public JUnitShardsStep(ImmutableList<? extends Step> shards) {
+    this.shards = shards;
+  }
+
+  /** @return the number of JVMs that run at once, which is the number of test slots to take. */
+  public int getShardCount() {
+    return shards.size();
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ExecutorService executor = MostExecutors.newMultiThreadExecutor("junit-shard", shards.size());
+    try {
+      List<Future<StepExecutionResult>> results = new ArrayList<>(shards.size());
+      for (Step shard : shards) {
+        results.add(executor.submit(() -> shard.execute(context)));
+      }
+      StepExecutionResult result = StepExecutionResults.SUCCESS;
+      for (Future<StepExecutionResult> shardResult : results) {
+        StepExecutionResult next = getUnchecked(shardResult);
+        if (result.isSuccess() && !next.isSuccess()) {
+          result = next;
+        }
+      }
+      return result;
+    } finally {
+      // Interrupts the shards that are still running if this step is interrupted.
+      executor.shutdownNow();
+    }
+  }
+
+  private static StepExecutionResult getUnchecked(Future<StepExecutionResult> result)
+      throws IOException, InterruptedException {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof InterruptedException) {
+        throw (InterruptedException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  @Override
+  public String getShortName() {
+    return "junit";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    List<String> descriptions = new ArrayList<>(shards.size());
+    for (Step shard : shards) {
+      descriptions.add(shard.getDescription(context));
+    }
+    return Joiner.on(" & ").join(descriptions);
+  }
+}
@@ -206,4 +206,9 @@ public class JUnitStep extends ShellStep {
   public boolean hasTimedOut() {
     return hasTimedOut;
   }
+
+  /** @return the classes that this step runs. */
+  public ImmutableList<String> getTestClasses() {
+    return junitJvmArgs.getTestClasses();
+  }
 }
@@ -16,7 +16,10 @@
 
 package com.facebook.buck.jvm.java;
 
+import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 
 public final class JacocoConstants {
@@ -30,4 +33,16 @@ public final class JacocoConstants {
   public static Path getJacocoOutputDir(ProjectFilesystem filesystem) {
     return filesystem.getBuckPaths().getGenDir().resolve("jacoco");
   }
+
+  /**
+   * @return the name of the file in the JaCoCo output directory that the tests of the given target
+   *     write their execution data to. Each target gets its own file, so that tests running
+   *     concurrently don't contend for one file, and the report generator can load them
+   *     concurrently.
+   */
+  public static String getExecCoverageFileName(BuildTarget target) {
+    return String.format(
+        "jacoco-%s.exec",
+        Hashing.sha1().hashString(target.getFullyQualifiedName(), StandardCharsets.UTF_8));
+  }
 }
@@ -29,6 +29,7 @@ import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.util.MoreSuppliers;
+import com.facebook.buck.util.unit.SizeUnit;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -71,6 +72,7 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
                     .setJavacPath(getJavacPath())
                     .setJavacJarPath(getJavacJarPath())
                     .setCompilerClassName(delegate.getValue("tools", "compiler_class_name"))
+                    .setCompilerWorkerOptions(CompilerWorkerOptions.fromConfig(delegate, SECTION))
                     .build());
   }
 
@@ -115,6 +117,10 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     if (trackJavacPhaseEvents.isPresent()) {
       builder.setTrackJavacPhaseEvents(trackJavacPhaseEvents.get());
     }
+    builder.setIncrementalCompilation(
+        delegate.getBooleanValue(SECTION, "incremental_compilation", false));
+    builder.setIndexingClasspathJars(
+        delegate.getBooleanValue(SECTION, "index_classpath_jars", true));
 
     Optional<AbstractJavacOptions.SpoolMode> spoolMode =
         delegate.getEnum(SECTION, "jar_spool_mode", AbstractJavacOptions.SpoolMode.class);
@@ -227,6 +233,14 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     return delegate.getBooleanValue(SECTION, "cache_binaries", true);
   }
 
+  /**
+   * @return the maximum size in bytes of the store of class ABI jars that is shared between rules
+   *     in buck-out, or empty if ABI jars should not be stored.
+   */
+  public Optional<Long> getClassAbiStoreMaxSize() {
+    return delegate.getValue(SECTION, "class_abi_store_max_size").map(SizeUnit::parseBytes);
+  }
+
   public OptionalInt getDxThreadCount() {
     return delegate.getInteger(SECTION, "dx_threads");
   }
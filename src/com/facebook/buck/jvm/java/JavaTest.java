@@ -57,6 +57,7 @@ import com.facebook.buck.test.TestCaseSummary;
 import com.facebook.buck.test.TestResultSummary;
 import com.facebook.buck.test.TestResults;
 import com.facebook.buck.test.TestRunningOptions;
+import com.facebook.buck.test.TestScheduler;
 import com.facebook.buck.test.XmlTestResultParser;
 import com.facebook.buck.test.result.type.ResultType;
 import com.facebook.buck.test.selectors.TestSelectorList;
@@ -139,10 +140,15 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
 
   private static final int TEST_CLASSES_SHUFFLE_SEED = 0xFACEB00C;
 
+  /** Shards shorter than this are not worth the cost of starting another JVM. */
+  private static final long MIN_JUNIT_SHARD_MS = 10_000;
+
   private static final Logger LOG = Logger.get(JavaTest.class);
 
   @Nullable private ImmutableList<JUnitStep> junits;
 
+  private int junitShards = 1;
+
   private final boolean runTestSeparately;
 
   private final ForkMode forkMode;
@@ -237,6 +243,8 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
             .setClasspathFile(getClassPathFile())
             .setTestRunnerClasspath(TESTRUNNER_CLASSES)
             .setCodeCoverageEnabled(executionContext.isCodeCoverageEnabled())
+            .setCodeCoverageDataFileName(
+                JacocoConstants.getExecCoverageFileName(getBuildTarget()))
             .setInclNoLocationClassesEnabled(executionContext.isInclNoLocationClassesEnabled())
             .setDebugEnabled(executionContext.isDebugEnabled())
             .setPathToJavaAgent(options.getPathToJavaAgent())
@@ -312,20 +320,70 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
       }
       junits = junitsBuilder.build();
     } else {
-      junits =
-          ImmutableList.of(
-              getJUnitStep(
-                  executionContext,
-                  buildContext.getSourcePathResolver(),
-                  options,
-                  Optional.of(pathToTestOutput),
-                  Optional.of(pathToTestLogs),
-                  testClassNames));
+      ImmutableList<Set<String>> shards = getJUnitShards(executionContext, options, testClassNames);
+      ImmutableList.Builder<JUnitStep> junitsBuilder = ImmutableList.builder();
+      for (int shard = 0; shard < shards.size(); shard++) {
+        junitsBuilder.add(
+            getJUnitStep(
+                executionContext,
+                buildContext.getSourcePathResolver(),
+                options,
+                Optional.of(pathToTestOutput),
+                Optional.of(getPathToTestLogs(shard)),
+                shards.get(shard)));
+      }
+      junits = junitsBuilder.build();
+      junitShards = shards.size();
+      if (junitShards > 1) {
+        steps.add(new JUnitShardsStep(junits));
+        return steps.build();
+      }
     }
     steps.addAll(junits);
     return steps.build();
   }
 
+  /**
+   * Splits the classes into shards that took about the same time in previous runs, to run them in
+   * parallel JVMs. Classes that never ran are assumed to take the average time. Each shard takes a
+   * test slot, so there are never more shards than test threads.
+   *
+   * @return the shards, or all the classes in one shard if there is no reason to split them.
+   */
+  @VisibleForTesting
+  ImmutableList<Set<String>> getJUnitShards(
+      ExecutionContext executionContext, TestRunningOptions options, Set<String> testClassNames) {
+    ImmutableMap<String, Long> knownDurationsMs = options.getTestClassDurationsMs();
+    int maxShards = Math.min(options.getMaxJUnitShards(), options.getNumTestThreads());
+    if (!options.isSchedulingByDuration()
+        || maxShards <= 1
+        || executionContext.isDebugEnabled()
+        || testClassNames.stream().noneMatch(knownDurationsMs::containsKey)) {
+      return ImmutableList.of(testClassNames);
+    }
+    ImmutableList<ImmutableList<String>> shards =
+        TestScheduler.splitIntoShards(
+            TestScheduler.estimateDurationsMs(
+                testClassNames, testClass -> Optional.ofNullable(knownDurationsMs.get(testClass))),
+            maxShards,
+            MIN_JUNIT_SHARD_MS);
+    if (shards.size() <= 1) {
+      return ImmutableList.of(testClassNames);
+    }
+    LOG.debug("Running the classes of %s in %d JVMs: %s", getBuildTarget(), shards.size(), shards);
+    return shards.stream()
+        .<Set<String>>map(ImmutableSet::copyOf)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /** Each shard logs to its own file, since they run at the same time. */
+  @VisibleForTesting
+  Path getPathToTestLogs(int shard) {
+    return shard == 0
+        ? pathToTestLogs
+        : getPathToTestOutputDirectory().resolve(String.format("logs-%d.txt", shard));
+  }
+
   private static Iterable<String> reorderClasses(Set<String> testClassNames, boolean shuffle) {
     Random rng;
     if (shuffle) {
@@ -421,6 +479,9 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
         if (!isUsingTestSelectors && !Files.isRegularFile(testResultFile)) {
           String message;
           for (JUnitStep junit : Objects.requireNonNull(junits)) {
+            if (!junit.getTestClasses().contains(testClass)) {
+              continue;
+            }
             if (junit.hasTimedOut()) {
               message = "test timed out before generating results file";
             } else {
@@ -439,13 +500,17 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
         }
       }
 
-      return TestResults.builder()
-          .setBuildTarget(getBuildTarget())
-          .setTestCases(summaries)
-          .setContacts(contacts)
-          .setLabels(labels.stream().map(Object::toString).collect(ImmutableSet.toImmutableSet()))
-          .addTestLogPaths(getProjectFilesystem().resolve(pathToTestLogs))
-          .build();
+      TestResults.Builder results =
+          TestResults.builder()
+              .setBuildTarget(getBuildTarget())
+              .setTestCases(summaries)
+              .setContacts(contacts)
+              .setLabels(
+                  labels.stream().map(Object::toString).collect(ImmutableSet.toImmutableSet()));
+      for (int shard = 0; shard < junitShards; shard++) {
+        results.addTestLogPaths(getProjectFilesystem().resolve(getPathToTestLogs(shard)));
+      }
+      return results.build();
     };
   }
 
@@ -110,7 +110,10 @@ public class JavacPipelineState implements RulePipelineState {
               filesystem,
               context.getProjectFilesystemFactory(),
               firstOrderContext.getEnvironment(),
-              firstOrderContext.getProcessExecutor());
+              firstOrderContext.getProcessExecutor(),
+              // Workers must outlive this compilation, so they come from the build's context.
+              new CompilerWorkers(context, filesystem),
+              javacOptions.isIndexingClasspathJars());
 
       ImmutableList<JavacPluginJsr199Fields> pluginFields =
           ImmutableList.copyOf(
@@ -99,6 +99,22 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
 
     addAnnotationGenFolderStep(invokingRule, projectFilesystem, steps, buildableContext, context);
 
+    // Generated sources can't be attributed to the sources that caused them to be generated, so
+    // targets that run annotation processors are always compiled from scratch.
+    if (javacOptions.isIncrementalCompilation()
+        && !hasAnnotationProcessing()
+        && JavaAbis.isLibraryTarget(invokingRule)) {
+      steps.add(
+          new IncrementalJavacStep(
+              javac,
+              buildTimeOptions,
+              invokingRule,
+              context.getSourcePathResolver(),
+              projectFilesystem,
+              parameters));
+      return;
+    }
+
     steps.add(
         new JavacStep(
             javac,
@@ -502,6 +502,11 @@ class Jsr199JavacInvocation implements Javac.Invocation {
 
           StandardJavaFileManager standardFileManager =
               compiler.getStandardFileManager(null, null, null);
+          if (context.isIndexingClasspathJars()) {
+            standardFileManager =
+                new IndexedClasspathFileManager(
+                    standardFileManager, ClasspathJarIndexCache.getSharedCache());
+          }
           addCloseable(standardFileManager);
 
           StandardJavaFileManager fileManager;
@@ -20,10 +20,15 @@ import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.java.lang.model.ElementsExtended;
 import com.facebook.buck.util.zip.JarBuilder;
+import com.google.common.base.Preconditions;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -34,10 +39,13 @@ import javax.lang.model.util.Types;
 
 public class StubJar {
   private final Supplier<LibraryReader> libraryReaderSupplier;
+  private final boolean canReadInParallel;
   @Nullable private AbiGenerationMode compatibilityMode = null;
+  @Nullable private ForkJoinPool pool = null;
 
   public StubJar(Path toMirror) {
     libraryReaderSupplier = () -> LibraryReader.of(toMirror);
+    canReadInParallel = true;
   }
 
   /**
@@ -63,6 +71,8 @@ public class StubJar {
                 messager,
                 topLevelElements,
                 includeParameterMetadata);
+    // Elements and Types are not thread-safe.
+    canReadInParallel = false;
   }
 
   /**
@@ -75,6 +85,17 @@ public class StubJar {
     return this;
   }
 
+  /**
+   * Stubs classes in parallel on the given pool. Entries are still written in the same order as
+   * when stubbing sequentially, so the stub jar is identical. Only supported for stub jars of jars
+   * and directories.
+   */
+  public StubJar setForkJoinPool(ForkJoinPool pool) {
+    Preconditions.checkState(canReadInParallel, "Only class files can be stubbed in parallel.");
+    this.pool = pool;
+    return this;
+  }
+
   public void writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
     // The order of these declarations is important -- FilesystemStubJarWriter actually uses
     // the LibraryReader in its close method, and try-with-resources closes the items in the
@@ -100,6 +121,11 @@ public class StubJar {
             .sorted(Comparator.comparing(MorePaths::pathWithUnixSeparators))
             .collect(Collectors.toList());
 
+    if (pool != null) {
+      writeInParallel(pool, input, writer, paths);
+      return;
+    }
+
     for (Path path : paths) {
       StubJarEntry entry = StubJarEntry.of(input, path, compatibilityMode);
       if (entry == null) {
@@ -108,4 +134,39 @@ public class StubJar {
       entry.write(writer);
     }
   }
+
+  private void writeInParallel(
+      ForkJoinPool pool, LibraryReader input, StubJarWriter writer, List<Path> paths)
+      throws IOException {
+    List<ForkJoinTask<StubJarEntry>> entries = new ArrayList<>(paths.size());
+    for (Path path : paths) {
+      entries.add(pool.submit(() -> StubJarEntry.of(input, path, compatibilityMode)));
+    }
+
+    try {
+      for (ForkJoinTask<StubJarEntry> task : entries) {
+        StubJarEntry entry;
+        try {
+          entry = task.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while stubbing classes.", e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw new IllegalStateException(cause);
+        }
+        if (entry != null) {
+          entry.write(writer);
+        }
+      }
+    } finally {
+      // The reader is closed once we return, so wait for any task still reading from it.
+      entries.forEach(ForkJoinTask::quietlyJoin);
+    }
+  }
 }
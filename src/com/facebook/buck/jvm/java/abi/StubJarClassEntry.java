@@ -18,7 +18,6 @@ package com.facebook.buck.jvm.java.abi;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -31,9 +30,8 @@ import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.InnerClassNode;
 
 class StubJarClassEntry extends StubJarEntry {
-  @Nullable private final Set<String> referencedClassNames;
   private final Path path;
-  private final ClassNode stub;
+  private final byte[] stubBytes;
 
   @Nullable
   public static StubJarClassEntry of(
@@ -58,31 +56,33 @@ class StubJarClassEntry extends StubJarEntry {
     // The synthetic package-info class is how package annotations are recorded; that one is
     // actually used by the compiler
     if (!isAnonymousOrLocalOrSyntheticClass(stub) || stub.name.endsWith("/package-info")) {
-      return new StubJarClassEntry(path, stub, referenceTracker.getReferencedClassNames());
+      // Serialize the stub right away, so that it happens on the same thread as reading the class
+      // when stubbing in parallel.
+      return new StubJarClassEntry(
+          path, toByteArray(stub, referenceTracker.getReferencedClassNames()));
     }
 
     return null;
   }
 
-  private StubJarClassEntry(Path path, ClassNode stub, Set<String> referencedClassNames) {
+  private StubJarClassEntry(Path path, byte[] stubBytes) {
     this.path = path;
-    this.stub = stub;
-    this.referencedClassNames = referencedClassNames;
+    this.stubBytes = stubBytes;
   }
 
   @Override
   public void write(StubJarWriter writer) {
-    writer.writeEntry(path, this::openInputStream);
+    writer.writeEntry(path, () -> new ByteArrayInputStream(stubBytes));
   }
 
-  private InputStream openInputStream() {
+  private static byte[] toByteArray(ClassNode stub, Set<String> referencedClassNames) {
     ClassWriter writer = new ClassWriter(0);
     ClassVisitor visitor = writer;
     visitor = new InnerClassSortingClassVisitor(stub.name, visitor);
     visitor = new AbiFilteringClassVisitor(visitor, referencedClassNames);
     stub.accept(visitor);
 
-    return new ByteArrayInputStream(writer.toByteArray());
+    return writer.toByteArray();
   }
 
   private static boolean isAnonymousOrLocalOrSyntheticClass(ClassNode node) {
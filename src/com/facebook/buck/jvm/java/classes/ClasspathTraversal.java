@@ -22,6 +22,7 @@ import com.facebook.buck.util.ZipFileTraversal;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -29,6 +30,7 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
+import java.util.Optional;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -40,6 +42,9 @@ import java.util.zip.ZipFile;
  * <p>For example, given the input paths of { foo.zip, foo/, and foo.txt }, traverse would first
  * expand foo.zip and traverse its contents, then list the files recursively in foo/, and finally
  * visit the single file foo.txt.
+ *
+ * <p>Zip and jar files are memory-mapped when possible (see {@link MappedZipFile}), so that their
+ * central directory is only read once and their entries are read straight from the mapping.
  */
 public abstract class ClasspathTraversal {
   private final Iterable<Path> paths;
@@ -83,6 +88,14 @@ public abstract class ClasspathTraversal {
 
     @Override
     public void traverse(ClasspathTraversal traversal) throws IOException {
+      Optional<MappedZipFile> mappedZipFile = MappedZipFile.open(file);
+      if (mappedZipFile.isPresent()) {
+        for (MappedZipFile.Entry entry : mappedZipFile.get().getEntries()) {
+          traversal.visit(new FileLikeInMappedZip(mappedZipFile.get(), entry));
+        }
+        return;
+      }
+
       ZipFileTraversal impl =
           new ZipFileTraversal(file) {
             @Override
@@ -126,6 +139,41 @@ public abstract class ClasspathTraversal {
     }
   }
 
+  private static class FileLikeInMappedZip extends AbstractFileLike {
+    private final MappedZipFile zipFile;
+    private final MappedZipFile.Entry entry;
+
+    public FileLikeInMappedZip(MappedZipFile zipFile, MappedZipFile.Entry entry) {
+      this.zipFile = zipFile;
+      this.entry = entry;
+    }
+
+    @Override
+    public Path getContainer() {
+      return zipFile.getPath();
+    }
+
+    @Override
+    public String getRelativePath() {
+      return entry.getName();
+    }
+
+    @Override
+    public long getSize() {
+      return entry.getSize();
+    }
+
+    @Override
+    public InputStream getInput() throws IOException {
+      return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public ByteBuffer getContents() throws IOException {
+      return zipFile.getContents(entry);
+    }
+  }
+
   private static class DirectoryTraversalAdapter implements ClasspathTraverser {
     private final ProjectFilesystem filesystem;
     private final Path directory;
@@ -16,8 +16,10 @@
 
 package com.facebook.buck.jvm.java.classes;
 
+import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 
 /**
@@ -45,4 +47,17 @@ public interface FileLike {
    * @throws java.io.IOException An error occurred opening the stream.
    */
   InputStream getInput() throws IOException;
+
+  /**
+   * Returns the contents of the entry. File-likes of memory-mapped zips return a slice of the
+   * mapping when possible, instead of a copy.
+   *
+   * @return A buffer over the contents, which must not be modified.
+   * @throws java.io.IOException An error occurred reading the entry.
+   */
+  default ByteBuffer getContents() throws IOException {
+    try (InputStream input = getInput()) {
+      return ByteBuffer.wrap(ByteStreams.toByteArray(input));
+    }
+  }
 }
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.classes;
+
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A zip file mapped into memory, whose central directory is read once when it's opened, and whose
+ * entries are read straight from the mapping.
+ *
+ * <p>Stored entries are exposed as read-only slices of the mapping, without copying them. Only
+ * plain zips are supported, see {@link #open(Path)}. Data prepended to the zip (e.g. a launcher
+ * script) is skipped, like {@link java.util.zip.ZipFile} does.
+ *
+ * <p>Java offers no way to unmap a file, so the mapping is released when this object and every
+ * buffer returned by {@link #getContents(Entry)} have been garbage collected. Until then, the
+ * mapping counts against the virtual memory of the process, but not against its heap.
+ */
+class MappedZipFile {
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+
+  private static final int ENCRYPTED_FLAG = 1;
+
+  private final Path path;
+  private final ByteBuffer buffer;
+  private final ImmutableList<Entry> entries;
+
+  /** An entry of the zip, as described by the central directory. */
+  static class Entry {
+    private final String name;
+    private final int method;
+    private final int compressedSize;
+    private final int size;
+    private final int localHeaderOffset;
+
+    private Entry(String name, int method, int compressedSize, int size, int localHeaderOffset) {
+      this.name = name;
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    int getSize() {
+      return size;
+    }
+  }
+
+  private MappedZipFile(Path path, ByteBuffer buffer, ImmutableList<Entry> entries) {
+    this.path = path;
+    this.buffer = buffer;
+    this.entries = entries;
+  }
+
+  /**
+   * Maps the given zip file and reads its central directory.
+   *
+   * @return the zip, or empty if it cannot be mapped: Zip64 and encrypted zips aren't supported,
+   *     and on Windows a mapped file can't be deleted until the mapping is garbage collected, so
+   *     zips are never mapped there.
+   */
+  static Optional<MappedZipFile> open(Path path) throws IOException {
+    if (Platform.detect() == Platform.WINDOWS) {
+      return Optional.empty();
+    }
+
+    MappedByteBuffer mapped;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        return Optional.empty();
+      }
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+    int endOfCentralDirectory = findEndOfCentralDirectory(buffer);
+    if (endOfCentralDirectory < 0) {
+      throw new ZipException("Could not find the central directory of " + path);
+    }
+    int locator = endOfCentralDirectory - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE;
+    if (locator >= 0
+        && buffer.getInt(locator) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+      return Optional.empty();
+    }
+
+    int entryCount = Short.toUnsignedInt(buffer.getShort(endOfCentralDirectory + 10));
+    long centralDirectorySize = Integer.toUnsignedLong(buffer.getInt(endOfCentralDirectory + 12));
+    long centralDirectoryOffset = Integer.toUnsignedLong(buffer.getInt(endOfCentralDirectory + 16));
+    // Offsets in the zip are relative to its first local header, which comes after any data
+    // prepended to the file.
+    long archiveStart = endOfCentralDirectory - centralDirectorySize - centralDirectoryOffset;
+    if (archiveStart < 0) {
+      throw new ZipException("Invalid central directory offset in " + path);
+    }
+
+    ImmutableList.Builder<Entry> entries = ImmutableList.builderWithExpectedSize(entryCount);
+    int offset = (int) (archiveStart + centralDirectoryOffset);
+    for (int i = 0; i < entryCount; i++) {
+      if (offset + CENTRAL_HEADER_SIZE > endOfCentralDirectory
+          || buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+        throw new ZipException("Invalid central directory header in " + path);
+      }
+      int flags = Short.toUnsignedInt(buffer.getShort(offset + 8));
+      int method = Short.toUnsignedInt(buffer.getShort(offset + 10));
+      long compressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 20));
+      long size = Integer.toUnsignedLong(buffer.getInt(offset + 24));
+      int nameLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+      int extraLength = Short.toUnsignedInt(buffer.getShort(offset + 30));
+      int commentLength = Short.toUnsignedInt(buffer.getShort(offset + 32));
+      long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(offset + 42));
+      if ((flags & ENCRYPTED_FLAG) != 0
+          || compressedSize > Integer.MAX_VALUE
+          || size > Integer.MAX_VALUE
+          || localHeaderOffset >= centralDirectoryOffset) {
+        // Either encrypted or a Zip64 entry.
+        return Optional.empty();
+      }
+
+      int absoluteLocalHeaderOffset = (int) (archiveStart + localHeaderOffset);
+      if (i == 0 && buffer.getInt(absoluteLocalHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+        // The layout of the file isn't understood, leave it to ZipFile.
+        return Optional.empty();
+      }
+
+      byte[] name = new byte[nameLength];
+      ByteBuffer nameBuffer = buffer.duplicate();
+      nameBuffer.position(offset + CENTRAL_HEADER_SIZE);
+      nameBuffer.get(name);
+      entries.add(
+          new Entry(
+              // ZipFile decodes names as UTF-8 regardless of the language encoding flag.
+              new String(name, StandardCharsets.UTF_8),
+              method,
+              (int) compressedSize,
+              (int) size,
+              absoluteLocalHeaderOffset));
+
+      offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+
+    return Optional.of(new MappedZipFile(path, buffer, entries.build()));
+  }
+
+  private static int findEndOfCentralDirectory(ByteBuffer buffer) {
+    int last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+    int first = Math.max(0, last - MAX_COMMENT_SIZE);
+    for (int offset = last; offset >= first; offset--) {
+      if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        return offset;
+      }
+    }
+    return -1;
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  /** @return the entries of the zip, in the order of the central directory. */
+  ImmutableList<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * @return the contents of the entry: a read-only slice of the mapping for stored entries, and a
+   *     new buffer for deflated ones.
+   */
+  ByteBuffer getContents(Entry entry) throws IOException {
+    ByteBuffer data = getData(entry);
+    switch (entry.method) {
+      case ZipEntry.STORED:
+        return data;
+      case ZipEntry.DEFLATED:
+        byte[] compressed = new byte[entry.compressedSize];
+        data.get(compressed);
+        byte[] contents = new byte[entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+          inflater.setInput(compressed);
+          int inflated = 0;
+          while (inflated < contents.length && !inflater.finished()) {
+            int count = inflater.inflate(contents, inflated, contents.length - inflated);
+            if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+              break;
+            }
+            inflated += count;
+          }
+          if (inflated != contents.length) {
+            throw new ZipException(
+                String.format("Invalid size of %s in %s", entry.getName(), path));
+          }
+        } catch (DataFormatException e) {
+          throw new ZipException(
+              String.format("Invalid data of %s in %s: %s", entry.getName(), path, e.getMessage()));
+        } finally {
+          inflater.end();
+        }
+        return ByteBuffer.wrap(contents).asReadOnlyBuffer();
+      default:
+        throw new ZipException(
+            String.format("Unsupported compression method of %s in %s", entry.getName(), path));
+    }
+  }
+
+  /** @return a stream reading the contents of the entry straight from the mapping. */
+  InputStream getInputStream(Entry entry) throws IOException {
+    InputStream data = new ByteBufferInputStream(getData(entry));
+    switch (entry.method) {
+      case ZipEntry.STORED:
+        return data;
+      case ZipEntry.DEFLATED:
+        return new InflaterInputStream(data, new Inflater(true)) {
+          private boolean closed = false;
+
+          @Override
+          public void close() throws IOException {
+            if (!closed) {
+              closed = true;
+              inf.end();
+              super.close();
+            }
+          }
+        };
+      default:
+        throw new ZipException(
+            String.format("Unsupported compression method of %s in %s", entry.getName(), path));
+    }
+  }
+
+  /** @return the still compressed data of the entry, as a slice of the mapping. */
+  private ByteBuffer getData(Entry entry) throws ZipException {
+    int offset = entry.localHeaderOffset;
+    if (buffer.getInt(offset) != LOCAL_HEADER_SIGNATURE) {
+      throw new ZipException(
+          String.format("Invalid local header of %s in %s", entry.getName(), path));
+    }
+    int nameLength = Short.toUnsignedInt(buffer.getShort(offset + 26));
+    int extraLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+    int start = offset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    if (start + (long) entry.compressedSize > buffer.limit()) {
+      throw new ZipException(String.format("Truncated data of %s in %s", entry.getName(), path));
+    }
+
+    ByteBuffer data = buffer.duplicate();
+    data.position(start);
+    data.limit(start + entry.compressedSize);
+    return data.slice().asReadOnlyBuffer();
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? Byte.toUnsignedInt(buffer.get()) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.compilerworker;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * A worker process (see {@code WorkerProcessProtocolZero}) that keeps a compiler loaded and warm
+ * across compilations, instead of paying for JVM startup and JIT warmup for every target.
+ *
+ * <p>Usage: {@code CompilerWorkerMain javac} to use the compiler of the JDK the worker runs on, or
+ * {@code CompilerWorkerMain kotlinc <kotlin lib directory>} to load the Kotlin compiler from the
+ * jars of a Kotlin distribution, in its own class loader.
+ *
+ * <p>The arguments file of each job holds the compiler arguments as a JSON array of strings.
+ * Everything the compiler prints goes to the job's stderr file, and the job's stdout file reports
+ * the heap usage of the worker after the compilation, so that Buck can recycle workers that grow
+ * too large.
+ *
+ * <p>Note: this class only depends on the JRE and Gson, since it runs outside of Buck.
+ */
+public class CompilerWorkerMain {
+  public static final String HEAP_USED_BYTES = "heap_used_bytes";
+  public static final String HEAP_MAX_BYTES = "heap_max_bytes";
+
+  private static final String KOTLIN_COMPILER_CLASS = "org.jetbrains.kotlin.cli.jvm.K2JVMCompiler";
+  private static final String KOTLIN_EXIT_CODE_CLASS = "org.jetbrains.kotlin.cli.common.ExitCode";
+
+  private CompilerWorkerMain() {
+    // Do not instantiate.
+  }
+
+  /**
+   * A compiler that can be invoked repeatedly in the same process, and that is closed when the
+   * worker shuts down.
+   */
+  interface Compiler extends Closeable {
+    int compile(String[] args, PrintStream output) throws Exception;
+
+    @Override
+    default void close() throws IOException {}
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: CompilerWorkerMain javac | kotlinc <kotlin lib directory>");
+      System.exit(1);
+    }
+
+    // The protocol owns the real stdout; anything else printed by compilers or annotation
+    // processors must not end up there.
+    PrintStream protocolOut = System.out;
+    System.setOut(System.err);
+
+    try (Compiler compiler = createCompiler(args);
+        JsonReader reader =
+            new JsonReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        JsonWriter writer =
+            new JsonWriter(
+                new BufferedWriter(new OutputStreamWriter(protocolOut, StandardCharsets.UTF_8)))) {
+      run(compiler, reader, writer);
+    }
+  }
+
+  static Compiler createCompiler(String[] args) throws Exception {
+    switch (args[0]) {
+      case "javac":
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+          throw new IllegalStateException("The worker must run on a JDK to use javac.");
+        }
+        return (compilerArgs, output) -> javac.run(null, output, output, compilerArgs);
+      case "kotlinc":
+        if (args.length < 2) {
+          throw new IllegalArgumentException("The Kotlin lib directory is needed to use kotlinc.");
+        }
+        return new KotlinCompiler(Paths.get(args[1]));
+      default:
+        throw new IllegalArgumentException("Unknown compiler: " + args[0]);
+    }
+  }
+
+  /** The Kotlin compiler, loaded from the jars of a Kotlin distribution in its own class loader. */
+  private static class KotlinCompiler implements Compiler {
+    private final URLClassLoader classLoader;
+    private final Class<?> compilerClass;
+    private final Method exec;
+    private final Method getCode;
+
+    KotlinCompiler(Path kotlinLib) throws Exception {
+      List<URL> urls = new ArrayList<>();
+      try (DirectoryStream<Path> jars = Files.newDirectoryStream(kotlinLib, "*.jar")) {
+        for (Path jar : jars) {
+          urls.add(jar.toUri().toURL());
+        }
+      }
+      // Parent the compiler on the platform classes only, so that it doesn't see the worker's own
+      // classpath, and different Kotlin versions never share classes.
+      classLoader =
+          new URLClassLoader(
+              urls.toArray(new URL[0]), ClassLoader.getSystemClassLoader().getParent());
+      System.setProperty("kotlin.home", kotlinLib.toAbsolutePath().getParent().toString());
+
+      try {
+        compilerClass = classLoader.loadClass(KOTLIN_COMPILER_CLASS);
+        exec = compilerClass.getMethod("exec", PrintStream.class, String[].class);
+        getCode = classLoader.loadClass(KOTLIN_EXIT_CODE_CLASS).getMethod("getCode");
+      } catch (Exception e) {
+        classLoader.close();
+        throw e;
+      }
+    }
+
+    @Override
+    public int compile(String[] args, PrintStream output) throws Exception {
+      // The compiler keeps per-compilation state, so use a new instance every time.
+      Object compiler = compilerClass.newInstance();
+      Object exitCode = exec.invoke(compiler, output, args);
+      return (Integer) getCode.invoke(exitCode);
+    }
+
+    @Override
+    public void close() throws IOException {
+      classLoader.close();
+    }
+  }
+
+  static void run(Compiler compiler, JsonReader reader, JsonWriter writer) throws IOException {
+    reader.beginArray();
+    Message handshake = Message.read(reader);
+    writer.beginArray();
+    writer.beginObject();
+    writer.name("id").value(handshake.id);
+    writer.name("type").value("handshake");
+    writer.name("protocol_version").value("0");
+    writer.name("capabilities").beginArray().endArray();
+    writer.endObject();
+    writer.flush();
+
+    while (reader.hasNext()) {
+      Message command = Message.read(reader);
+      writer.beginObject();
+      writer.name("id").value(command.id);
+      if (!"command".equals(command.type)
+          || command.argsPath == null
+          || command.stdoutPath == null
+          || command.stderrPath == null) {
+        writer.name("type").value("error");
+        writer.name("exit_code").value(1);
+      } else {
+        writer.name("type").value("result");
+        writer.name("exit_code").value(runJob(compiler, command));
+      }
+      writer.endObject();
+      writer.flush();
+    }
+
+    reader.endArray();
+    writer.endArray();
+    writer.flush();
+  }
+
+  private static int runJob(Compiler compiler, Message command) throws IOException {
+    String[] args;
+    try (Reader argsReader =
+        Files.newBufferedReader(Paths.get(command.argsPath), StandardCharsets.UTF_8)) {
+      args = readArgs(new JsonReader(argsReader));
+    }
+
+    int exitCode;
+    PrintStream originalErr = System.err;
+    try (OutputStream stderrFile = Files.newOutputStream(Paths.get(command.stderrPath));
+        PrintStream output = new PrintStream(stderrFile, true, "UTF-8")) {
+      System.setOut(output);
+      System.setErr(output);
+      try {
+        exitCode = compiler.compile(args, output);
+      } catch (Throwable t) {
+        t.printStackTrace(output);
+        exitCode = 1;
+      } finally {
+        System.setOut(originalErr);
+        System.setErr(originalErr);
+      }
+    }
+
+    String heapUsage =
+        String.format(
+            "%s=%d%n%s=%d%n",
+            HEAP_USED_BYTES,
+            getRetainedHeapBytes(),
+            HEAP_MAX_BYTES,
+            Runtime.getRuntime().maxMemory());
+    Files.write(Paths.get(command.stdoutPath), heapUsage.getBytes(StandardCharsets.UTF_8));
+    return exitCode;
+  }
+
+  /**
+   * @return the heap still in use after the most recent garbage collections, which unlike the
+   *     current heap usage doesn't count garbage that simply hasn't been collected yet.
+   */
+  private static long getRetainedHeapBytes() {
+    long retained = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+      if (usage != null) {
+        retained += usage.getUsed();
+      }
+    }
+    return retained;
+  }
+
+  private static String[] readArgs(JsonReader reader) throws IOException {
+    List<String> args = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      args.add(reader.nextString());
+    }
+    reader.endArray();
+    return args.toArray(new String[0]);
+  }
+
+  private static class Message {
+    private int id = -1;
+    private String type = "";
+    private String argsPath;
+    private String stdoutPath;
+    private String stderrPath;
+
+    static Message read(JsonReader reader) throws IOException {
+      Message message = new Message();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "id":
+            message.id = reader.nextInt();
+            break;
+          case "type":
+            message.type = reader.nextString();
+            break;
+          case "args_path":
+            message.argsPath = reader.nextString();
+            break;
+          case "stdout_path":
+            message.stdoutPath = reader.nextString();
+            break;
+          case "stderr_path":
+            message.stderrPath = reader.nextString();
+            break;
+          default:
+            reader.skipValue();
+            break;
+        }
+      }
+      reader.endObject();
+      return message;
+    }
+  }
+}
@@ -30,6 +30,9 @@ package com.facebook.buck.jvm.java.coverage;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -39,14 +42,30 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.SelectorUtils;
 import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.analysis.ICoverageVisitor;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
 import org.jacoco.core.tools.ExecFileLoader;
 import org.jacoco.report.DirectorySourceFileLocator;
 import org.jacoco.report.FileMultiReportOutput;
@@ -59,8 +78,12 @@ import org.jacoco.report.html.HTMLFormatter;
 import org.jacoco.report.xml.XMLFormatter;
 
 /**
- * This example creates a HTML report for eclipse like projects based on a single execution data
- * store called jacoco.exec. The report contains no grouping information.
+ * This example creates a HTML report for eclipse like projects based on the execution data files
+ * in the output directory. The report contains no grouping information.
+ *
+ * <p>The execution data files of each test are loaded concurrently and merged, and the classes are
+ * analyzed concurrently, a jar or a class file at a time. Jars are analyzed in place rather than
+ * extracted, and jars with the same contents are only analyzed once.
  *
  * <p>The class files under test must be compiled with debug information, otherwise source
  * highlighting will not work.
@@ -69,26 +92,33 @@ public class ReportGenerator {
 
   private static final Set<String> KNOWN_REPORT_FORMATS = Sets.newHashSet("csv", "html", "xml");
   private static final int TAB_WIDTH = 4;
+  private static final String EXECUTION_DATA_SUFFIX = ".exec";
 
   private final String title;
 
+  private final File jacocoOutputDir;
   private final File executionDataFile;
-  private final ExecFileLoader execFileLoader;
+  private final ExecutionDataStore executionDataStore;
+  private final SessionInfoStore sessionInfoStore;
   private final String classesPath;
+  private final String jarsPath;
   private final String sourcesPath;
   private final File reportDirectory;
   private final Set<String> reportFormats;
   private final String coverageIncludes;
   private final String coverageExcludes;
+  private final int threads;
 
   /** Create a new generator based for the given project. */
   public ReportGenerator(Properties properties) {
-    String jacocoOutputDir = properties.getProperty("jacoco.output.dir");
+    this.jacocoOutputDir = new File(properties.getProperty("jacoco.output.dir"));
     this.title = properties.getProperty("jacoco.title");
     this.executionDataFile =
         new File(jacocoOutputDir, properties.getProperty("jacoco.exec.data.file"));
-    this.execFileLoader = new ExecFileLoader();
-    this.classesPath = properties.getProperty("classes.dir");
+    this.executionDataStore = new ExecutionDataStore();
+    this.sessionInfoStore = new SessionInfoStore();
+    this.classesPath = properties.getProperty("classes.dir", "");
+    this.jarsPath = properties.getProperty("classes.jars", "");
     this.sourcesPath = properties.getProperty("src.dir");
     this.reportDirectory = new File(jacocoOutputDir, "code-coverage");
     this.reportFormats =
@@ -96,6 +126,7 @@ public class ReportGenerator {
             Splitter.on(",").splitToList(properties.getProperty("jacoco.format", "html")));
     this.coverageIncludes = properties.getProperty("jacoco.includes", "**");
     this.coverageExcludes = properties.getProperty("jacoco.excludes", "");
+    this.threads = Runtime.getRuntime().availableProcessors();
   }
 
   /**
@@ -104,20 +135,14 @@ public class ReportGenerator {
    * @throws IOException
    */
   public void create() throws IOException {
-
-    // Read the jacoco.exec file. Multiple data files could be merged
-    // at this point
-    loadExecutionData();
-
-    // Run the structure analyzer on a single class folder to build up
-    // the coverage model. The process would be similar if your classes
-    // were in a jar file. Typically you would create a bundle for each
-    // class folder and each jar you want in your report. If you have
-    // more than one bundle you will need to add a grouping node to your
-    // report
-    IBundleCoverage bundleCoverage = analyzeStructure();
-
-    createReport(bundleCoverage);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      loadExecutionData(executor);
+      IBundleCoverage bundleCoverage = analyzeStructure(executor);
+      createReport(bundleCoverage);
+    } finally {
+      executor.shutdownNow();
+    }
   }
 
   private void createReport(IBundleCoverage bundleCoverage) throws IOException {
@@ -154,9 +179,7 @@ public class ReportGenerator {
     // Initialize the report with all of the execution and session
     // information. At this point the report doesn't know about the
     // structure of the report being created
-    visitor.visitInfo(
-        execFileLoader.getSessionInfoStore().getInfos(),
-        execFileLoader.getExecutionDataStore().getContents());
+    visitor.visitInfo(sessionInfoStore.getInfos(), executionDataStore.getContents());
 
     // Populate the report structure with the bundle coverage information.
     // Call visitGroup if you need groups in your report.
@@ -167,28 +190,169 @@ public class ReportGenerator {
     visitor.visitEnd();
   }
 
-  private void loadExecutionData() throws IOException {
+  private void loadExecutionData(ExecutorService executor) throws IOException {
     executionDataFile.createNewFile();
-    execFileLoader.load(executionDataFile);
+    File[] files =
+        jacocoOutputDir.listFiles(
+            (dir, name) -> name.endsWith(EXECUTION_DATA_SUFFIX) && new File(dir, name).isFile());
+    List<File> executionDataFiles = files == null ? new ArrayList<>() : Arrays.asList(files);
+    Collections.sort(executionDataFiles);
+
+    // Each thread merges the files it loads into its own stores, which are merged at the end.
+    List<ExecFileLoader> loaders =
+        runInParallel(executor, executionDataFiles, ExecFileLoader::new, ExecFileLoader::load);
+    for (ExecFileLoader loader : loaders) {
+      loader.getSessionInfoStore().accept(sessionInfoStore);
+      loader.getExecutionDataStore().accept(executionDataStore);
+    }
   }
 
-  private IBundleCoverage analyzeStructure() throws IOException {
+  private IBundleCoverage analyzeStructure(ExecutorService executor) throws IOException {
     CoverageBuilder coverageBuilder = new CoverageBuilder();
-    Analyzer analyzer = new Analyzer(execFileLoader.getExecutionDataStore(), coverageBuilder);
+    ICoverageVisitor visitor =
+        coverage -> {
+          synchronized (coverageBuilder) {
+            coverageBuilder.visitCoverage(coverage);
+          }
+        };
 
-    String[] classesDirs = classesPath.split(":");
-    for (String classesDir : classesDirs) {
+    List<File> classFiles = new ArrayList<>();
+    for (String classesDir : splitPaths(classesPath)) {
       File classesDirFile = new File(classesDir);
       if (classesDirFile.exists()) {
-        for (File clazz : FileUtils.getFiles(classesDirFile, coverageIncludes, coverageExcludes)) {
-          analyzer.analyzeAll(clazz);
-        }
+        classFiles.addAll(FileUtils.getFiles(classesDirFile, coverageIncludes, coverageExcludes));
+      }
+    }
+    runInParallel(
+        executor,
+        classFiles,
+        () -> new Analyzer(executionDataStore, visitor),
+        Analyzer::analyzeAll);
+
+    List<File> jars = new ArrayList<>();
+    for (String jar : splitPaths(jarsPath)) {
+      File jarFile = new File(jar);
+      if (jarFile.isFile()) {
+        jars.add(jarFile);
       }
     }
+    List<String> includes = normalizePatterns(coverageIncludes);
+    List<String> excludes = normalizePatterns(coverageExcludes);
+    Set<HashCode> analyzedJars = ConcurrentHashMap.newKeySet();
+    runInParallel(
+        executor,
+        jars,
+        () -> new Analyzer(executionDataStore, visitor),
+        (analyzer, jar) -> {
+          if (analyzedJars.add(Files.asByteSource(jar).hash(Hashing.sha1()))) {
+            analyzeJar(analyzer, jar, includes, excludes);
+          }
+        });
 
     return coverageBuilder.getBundle(title);
   }
 
+  /** Analyzes the entries of a jar that match the includes and excludes, without extracting it. */
+  private static void analyzeJar(
+      Analyzer analyzer, File jar, List<String> includes, List<String> excludes)
+      throws IOException {
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName().replace('/', File.separatorChar);
+        if (entry.isDirectory() || !matchesAny(includes, name) || matchesAny(excludes, name)) {
+          continue;
+        }
+        try (InputStream input = zipFile.getInputStream(entry)) {
+          analyzer.analyzeAll(input, jar.getPath() + "@" + entry.getName());
+        }
+      }
+    }
+  }
+
+  /** Normalizes patterns like {@link FileUtils#getFiles(File, String, String)} does. */
+  private static List<String> normalizePatterns(String patterns) {
+    List<String> result = new ArrayList<>();
+    for (String pattern : Splitter.on(',').omitEmptyStrings().trimResults().split(patterns)) {
+      if (pattern.startsWith(SelectorUtils.REGEX_HANDLER_PREFIX)) {
+        result.add(pattern);
+        continue;
+      }
+      pattern = pattern.replace(File.separatorChar == '/' ? '\\' : '/', File.separatorChar);
+      if (pattern.endsWith(File.separator)) {
+        pattern += "**";
+      }
+      result.add(pattern);
+    }
+    return result;
+  }
+
+  private static boolean matchesAny(List<String> patterns, String name) {
+    for (String pattern : patterns) {
+      if (SelectorUtils.matchPath(pattern, name, true)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<String> splitPaths(String paths) {
+    return Splitter.on(':').omitEmptyStrings().splitToList(paths);
+  }
+
+  private interface Task<W, I> {
+    void run(W worker, I item) throws IOException;
+  }
+
+  /**
+   * Runs the task on every item, on up to one thread per worker.
+   *
+   * @return the workers, each of which was used by a single thread.
+   */
+  private <W, I> List<W> runInParallel(
+      ExecutorService executor, List<I> items, Supplier<W> workerFactory, Task<W, I> task)
+      throws IOException {
+    AtomicInteger nextItem = new AtomicInteger();
+    List<Future<W>> futures = new ArrayList<>();
+    for (int i = 0; i < Math.min(threads, items.size()); i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                W worker = workerFactory.get();
+                for (int item = nextItem.getAndIncrement();
+                    item < items.size();
+                    item = nextItem.getAndIncrement()) {
+                  task.run(worker, items.get(item));
+                }
+                return worker;
+              }));
+    }
+
+    List<W> workers = new ArrayList<>();
+    try {
+      for (Future<W> future : futures) {
+        workers.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+    return workers;
+  }
+
   private ISourceFileLocator createSourceFileLocator() {
     MultiSourceFileLocator result = new MultiSourceFileLocator(TAB_WIDTH);
 
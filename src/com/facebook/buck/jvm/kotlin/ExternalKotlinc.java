@@ -24,6 +24,8 @@ import com.facebook.buck.core.rulekey.AddToRuleKey;
 import com.facebook.buck.core.rulekey.AddsToRuleKey;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.CompilerWorkerOptions;
+import com.facebook.buck.jvm.java.CompilerWorkers;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.DefaultProcessExecutor;
 import com.facebook.buck.util.MoreSuppliers;
@@ -37,6 +39,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
 import java.util.function.Supplier;
@@ -47,10 +50,17 @@ public class ExternalKotlinc implements Kotlinc, AddsToRuleKey {
   private static final KotlincVersion DEFAULT_VERSION = KotlincVersion.of("unknown version");
 
   private final Path pathToKotlinc;
+  private final Optional<CompilerWorkerOptions> compilerWorkerOptions;
   private final Supplier<KotlincVersion> version;
 
   public ExternalKotlinc(Path pathToKotlinc) {
+    this(pathToKotlinc, Optional.empty());
+  }
+
+  public ExternalKotlinc(
+      Path pathToKotlinc, Optional<CompilerWorkerOptions> compilerWorkerOptions) {
     this.pathToKotlinc = pathToKotlinc;
+    this.compilerWorkerOptions = compilerWorkerOptions;
 
     this.version =
         MoreSuppliers.memoize(
@@ -121,9 +131,8 @@ public class ExternalKotlinc implements Kotlinc, AddsToRuleKey {
           "Unable to expand sources for %s into %s", invokingRule, workingDirectory);
     }
 
-    ImmutableList<String> command =
+    ImmutableList<String> args =
         ImmutableList.<String>builder()
-            .add(pathToKotlinc.toString())
             .addAll(options)
             .addAll(
                 transform(
@@ -131,6 +140,25 @@ public class ExternalKotlinc implements Kotlinc, AddsToRuleKey {
                     path -> projectFilesystem.resolve(path).toAbsolutePath().toString()))
             .build();
 
+    Optional<Path> workerKotlinLibrary = getWorkerKotlinLibrary(context);
+    if (workerKotlinLibrary.isPresent()) {
+      try {
+        return new CompilerWorkers(context, projectFilesystem)
+            .compile(
+                CompilerWorkers.getCurrentJava(),
+                ImmutableList.of("kotlinc", workerKotlinLibrary.get().toString()),
+                compilerWorkerOptions.get(),
+                args,
+                context.getStdErr());
+      } catch (IOException e) {
+        e.printStackTrace(context.getStdErr());
+        return -1;
+      }
+    }
+
+    ImmutableList<String> command =
+        ImmutableList.<String>builder().add(pathToKotlinc.toString()).addAll(args).build();
+
     // Run the command
     int exitCode = -1;
     try {
@@ -150,6 +178,24 @@ public class ExternalKotlinc implements Kotlinc, AddsToRuleKey {
     return exitCode;
   }
 
+  /**
+   * Workers load the compiler from the {@code lib} directory of the Kotlin distribution that this
+   * kotlinc belongs to. They are only used with the daemon, since the context of a compilation
+   * doesn't outlive it otherwise.
+   */
+  private Optional<Path> getWorkerKotlinLibrary(ExecutionContext context) {
+    if (!compilerWorkerOptions.isPresent() || !context.getPersistentWorkerPools().isPresent()) {
+      return Optional.empty();
+    }
+    Path kotlinLibrary;
+    try {
+      kotlinLibrary = pathToKotlinc.toRealPath().resolve("../../lib").normalize();
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+    return Files.isDirectory(kotlinLibrary) ? Optional.of(kotlinLibrary) : Optional.empty();
+  }
+
   @VisibleForTesting
   ProcessExecutor createProcessExecutor() {
     return new DefaultProcessExecutor(Console.createNullConsole());
@@ -21,6 +21,7 @@ import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.ExecutableFinder;
+import com.facebook.buck.jvm.java.CompilerWorkerOptions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.IOException;
@@ -47,7 +48,8 @@ public class KotlinBuckConfig {
 
   public Kotlinc getKotlinc() {
     if (isExternalCompilation()) {
-      return new ExternalKotlinc(getPathToCompilerBinary());
+      return new ExternalKotlinc(
+          getPathToCompilerBinary(), CompilerWorkerOptions.fromConfig(delegate, SECTION));
     } else {
       ImmutableSet<SourcePath> classpathEntries =
           ImmutableSet.of(
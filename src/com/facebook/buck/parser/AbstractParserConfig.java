@@ -242,6 +242,16 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
     return getDelegate().getValue("parser", "python_path");
   }
 
+  /**
+   * @return whether all Python DSL interpreters allowed for a cell should be started and have their
+   *     default includes loaded as soon as the cell is parsed for the first time, instead of
+   *     starting them lazily one by one when parse requests start queueing up.
+   */
+  @Value.Lazy
+  public boolean getPrewarmPythonInterpreters() {
+    return getDelegate().getBooleanValue("parser", "prewarm_python_interpreters", false);
+  }
+
   /**
    * @return boolean flag indicating whether support for parsing build files using non default
    *     syntax (currently Python DSL).
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.PathMatcher;
+import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
+import com.facebook.buck.io.watchman.WatchmanPathEvent;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.Subscribe;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of build files found under directories that were searched recursively, e.g. to resolve
+ * {@code //foo/...} target patterns.
+ *
+ * <p>When registered on the daemon's file change event bus, entries are invalidated whenever a
+ * build file is added or removed under the directory they describe, so recursive patterns only
+ * need to search the file system again for subtrees that have actually changed. A lookup for a
+ * directory that has not been searched yet is served from the closest searched ancestor, if any,
+ * by filtering its build files.
+ */
+public class BuildFileSearchCache {
+
+  private static final Logger LOG = Logger.get(BuildFileSearchCache.class);
+
+  private final ConcurrentMap<SearchKey, ImmutableSet<Path>> buildFiles =
+      new ConcurrentHashMap<>();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  /**
+   * @param searchRoot absolute path of the directory that is searched recursively
+   * @param buildFileName name of build files in the cell {@code searchRoot} belongs to
+   * @param ignoredPaths paths excluded from the search
+   * @return absolute paths of all build files under {@code searchRoot} or {@link
+   *     Optional#empty()} if neither {@code searchRoot} nor any of its ancestors have been
+   *     searched since their last invalidation.
+   */
+  Optional<ImmutableSet<Path>> get(
+      Path searchRoot, String buildFileName, ImmutableSet<PathMatcher> ignoredPaths) {
+    ImmutableSet<Path> cached =
+        buildFiles.get(new SearchKey(searchRoot, buildFileName, ignoredPaths));
+    if (cached != null) {
+      hitCount.incrementAndGet();
+      return Optional.of(cached);
+    }
+    for (Path ancestor = searchRoot.getParent();
+        ancestor != null;
+        ancestor = ancestor.getParent()) {
+      cached = buildFiles.get(new SearchKey(ancestor, buildFileName, ignoredPaths));
+      if (cached != null) {
+        ImmutableSet.Builder<Path> builder = ImmutableSet.builder();
+        for (Path buildFile : cached) {
+          if (buildFile.startsWith(searchRoot)) {
+            builder.add(buildFile);
+          }
+        }
+        ImmutableSet<Path> result = builder.build();
+        buildFiles.putIfAbsent(new SearchKey(searchRoot, buildFileName, ignoredPaths), result);
+        hitCount.incrementAndGet();
+        return Optional.of(result);
+      }
+    }
+    missCount.incrementAndGet();
+    return Optional.empty();
+  }
+
+  /** Records build files found by a recursive search of {@code searchRoot}. */
+  void put(
+      Path searchRoot,
+      String buildFileName,
+      ImmutableSet<PathMatcher> ignoredPaths,
+      ImmutableSet<Path> foundBuildFiles) {
+    buildFiles.put(new SearchKey(searchRoot, buildFileName, ignoredPaths), foundBuildFiles);
+  }
+
+  @Subscribe
+  public void invalidateBasedOn(WatchmanOverflowEvent event) {
+    LOG.debug("Received overflow event %s, invalidating all build file searches.", event);
+    invalidateAll();
+  }
+
+  @Subscribe
+  public void invalidateBasedOn(WatchmanPathEvent event) {
+    // Modifications of build files do not change the set of build files, so only creation and
+    // deletion events are relevant here.
+    if (!DaemonicParserState.isPathCreateOrDeleteEvent(event)) {
+      return;
+    }
+    invalidatePath(event.getCellPath().resolve(event.getPath()));
+  }
+
+  /** Invalidates searches of all directories that contain {@code path} if it is a build file. */
+  public void invalidatePath(Path path) {
+    Path fileName = path.getFileName();
+    if (fileName == null) {
+      return;
+    }
+    String fileNameString = fileName.toString();
+    buildFiles
+        .keySet()
+        .removeIf(
+            key -> {
+              boolean invalidated =
+                  key.buildFileName.equals(fileNameString) && path.startsWith(key.searchRoot);
+              if (invalidated) {
+                LOG.verbose("Build file %s changed, invalidating %s", path, key.searchRoot);
+              }
+              return invalidated;
+            });
+  }
+
+  /** Invalidates all recorded searches. */
+  public void invalidateAll() {
+    buildFiles.clear();
+  }
+
+  /** @return the number of searches currently held by this cache. */
+  public int size() {
+    return buildFiles.size();
+  }
+
+  /** @return the number of lookups that did not require searching the file system. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** @return the number of lookups that required searching the file system. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** Identifies a single recursive search of build files. */
+  private static class SearchKey {
+    private final Path searchRoot;
+    private final String buildFileName;
+    private final ImmutableSet<PathMatcher> ignoredPaths;
+    private final int hashCode;
+
+    SearchKey(Path searchRoot, String buildFileName, ImmutableSet<PathMatcher> ignoredPaths) {
+      this.searchRoot = searchRoot;
+      this.buildFileName = buildFileName;
+      this.ignoredPaths = ignoredPaths;
+      this.hashCode = Objects.hash(searchRoot, buildFileName, ignoredPaths);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SearchKey)) {
+        return false;
+      }
+      SearchKey that = (SearchKey) o;
+      return hashCode == that.hashCode
+          && searchRoot.equals(that.searchRoot)
+          && buildFileName.equals(that.buildFileName)
+          && ignoredPaths.equals(that.ignoredPaths);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
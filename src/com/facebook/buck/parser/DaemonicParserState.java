@@ -33,6 +33,7 @@ import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.parser.api.BuildFileManifest;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
+import com.facebook.buck.skylark.parser.SkylarkExtensionCache;
 import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteLock;
 import com.google.common.base.Preconditions;
@@ -257,6 +258,9 @@ public class DaemonicParserState {
 
   private final LoadingCache<Cell, BuildFileTree> buildFileTrees;
 
+  /** Evaluated Skylark extensions shared by all Skylark parsers created by this daemon. */
+  private final SkylarkExtensionCache skylarkExtensionCache;
+
   /**
    * The default includes used by the previous run of the parser in each cell (the key is the cell's
    * root path). If this value changes, then we need to invalidate all the caches.
@@ -301,6 +305,7 @@ public class DaemonicParserState {
                         cell.getFilesystem(), cell.getBuildFileName());
                   }
                 });
+    this.skylarkExtensionCache = new SkylarkExtensionCache();
     this.cachedIncludes = new ConcurrentHashMap<>();
     this.cellPathToDaemonicState =
         new ConcurrentHashMap<>(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, parsingThreads);
@@ -315,6 +320,10 @@ public class DaemonicParserState {
     return buildFileTrees;
   }
 
+  SkylarkExtensionCache getSkylarkExtensionCache() {
+    return skylarkExtensionCache;
+  }
+
   /**
    * Retrieve the cache view for caching a particular type.
    *
@@ -423,6 +432,7 @@ public class DaemonicParserState {
         invalidatePath(state, path);
       }
     }
+    skylarkExtensionCache.invalidatePath(path);
   }
 
   /**
@@ -566,6 +576,8 @@ public class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       boolean invalidated = cellPathToDaemonicState.containsKey(cell.getRoot());
       cellPathToDaemonicState.remove(cell.getRoot());
+      // extensions can be loaded across cells, so it's not safe to keep any of them
+      skylarkExtensionCache.invalidateAll();
       if (invalidated) {
         LOG.debug("Cell cache data invalidated.");
       } else {
@@ -582,6 +594,7 @@ public class DaemonicParserState {
       boolean invalidated = !cellPathToDaemonicState.isEmpty();
       cellPathToDaemonicState.clear();
       buildFileTrees.invalidateAll();
+      skylarkExtensionCache.invalidateAll();
       if (invalidated) {
         LOG.debug("Cache data invalidated.");
       } else {
@@ -49,6 +49,7 @@ import com.facebook.buck.skylark.io.impl.SyncCookieState;
 import com.facebook.buck.skylark.parser.BuckGlobals;
 import com.facebook.buck.skylark.parser.ConsoleEventHandler;
 import com.facebook.buck.skylark.parser.RuleFunctionFactory;
+import com.facebook.buck.skylark.parser.SkylarkExtensionCache;
 import com.facebook.buck.skylark.parser.SkylarkProjectBuildFileParser;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.DefaultProcessExecutor;
@@ -74,6 +75,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
   private final ThrowingCloseableMemoizedSupplier<ManifestService, IOException>
       manifestServiceSupplier;
   private final FileHashCache fileHashCache;
+  private final SkylarkExtensionCache skylarkExtensionCache;
 
   public DefaultProjectBuildFileParserFactory(
       TypeCoercerFactory typeCoercerFactory,
@@ -83,7 +85,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       boolean enableProfiling,
       Optional<AtomicLong> processedBytes,
       ThrowingCloseableMemoizedSupplier<ManifestService, IOException> manifestServiceSupplier,
-      FileHashCache fileHashCache) {
+      FileHashCache fileHashCache,
+      SkylarkExtensionCache skylarkExtensionCache) {
     this.typeCoercerFactory = typeCoercerFactory;
     this.console = console;
     this.pythonInterpreterProvider = pythonInterpreterProvider;
@@ -92,6 +95,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
     this.processedBytes = processedBytes;
     this.manifestServiceSupplier = manifestServiceSupplier;
     this.fileHashCache = fileHashCache;
+    this.skylarkExtensionCache = skylarkExtensionCache;
   }
 
   public DefaultProjectBuildFileParserFactory(
@@ -101,7 +105,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       Optional<AtomicLong> processedBytes,
       KnownRuleTypesProvider knownRuleTypesProvider,
       ThrowingCloseableMemoizedSupplier<ManifestService, IOException> manifestServiceSupplier,
-      FileHashCache fileHashCache) {
+      FileHashCache fileHashCache,
+      SkylarkExtensionCache skylarkExtensionCache) {
     this(
         typeCoercerFactory,
         Console.createNullConsole(),
@@ -110,7 +115,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
         enableProfiling,
         processedBytes,
         manifestServiceSupplier,
-        fileHashCache);
+        fileHashCache,
+        skylarkExtensionCache);
   }
 
   public DefaultProjectBuildFileParserFactory(
@@ -128,7 +134,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
         false,
         Optional.empty(),
         manifestServiceSupplier,
-        fileHashCache);
+        fileHashCache,
+        new SkylarkExtensionCache());
   }
 
   /**
@@ -174,6 +181,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
             .setDisableImplicitNativeRules(parserConfig.getDisableImplicitNativeRules())
             .setWarnAboutDeprecatedSyntax(parserConfig.isWarnAboutDeprecatedSyntax())
             .setPackageImplicitIncludes(parserConfig.getPackageImplicitIncludes())
+            .setPreloadDefaultIncludes(parserConfig.getPrewarmPythonInterpreters())
             .build();
     return EventReportingProjectBuildFileParser.of(
         createProjectBuildFileParser(
@@ -280,7 +288,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
         processedBytes);
   }
 
-  private static SkylarkProjectBuildFileParser newSkylarkParser(
+  private SkylarkProjectBuildFileParser newSkylarkParser(
       Cell cell,
       TypeCoercerFactory typeCoercerFactory,
       BuckEventBus eventBus,
@@ -328,7 +336,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
               SkylarkFilesystem.using(cell.getFilesystem()),
               buckGlobals,
               eventHandler,
-              globberFactory);
+              globberFactory,
+              skylarkExtensionCache);
 
       // All built-ins should have already been discovered. Freezing improves performance by
       // avoiding synchronization during query operations. This operation is idempotent, so it's
@@ -62,6 +62,16 @@ public class HybridProjectBuildFileParser implements ProjectBuildFileParser {
     return getParserForBuildFile(buildFile).getBuildFileManifest(buildFile);
   }
 
+  @Override
+  public void initIfNeeded() throws IOException {
+    // build files without syntax marker are the most common, so only their parser is initialized
+    // eagerly
+    ProjectBuildFileParser defaultParser = parsers.get(defaultSyntax);
+    if (defaultParser != null) {
+      defaultParser.initIfNeeded();
+    }
+  }
+
   @Override
   public void reportProfile() throws IOException {
     for (ProjectBuildFileParser parser : parsers.values()) {
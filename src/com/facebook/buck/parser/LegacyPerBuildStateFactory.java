@@ -86,7 +86,8 @@ class LegacyPerBuildStateFactory extends PerBuildStateFactory {
             parseProcessedBytes,
             knownRuleTypesProvider,
             manifestServiceSupplier,
-            fileHashCache);
+            fileHashCache,
+            daemonicParserState.getSkylarkExtensionCache());
     ProjectBuildFileParserPool projectBuildFileParserPool =
         new ProjectBuildFileParserPool(
             numParsingThreads, // Max parsers to create per cell.
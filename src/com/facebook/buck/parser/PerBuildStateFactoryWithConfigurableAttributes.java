@@ -117,7 +117,8 @@ class PerBuildStateFactoryWithConfigurableAttributes extends PerBuildStateFactor
             parseProcessedBytes,
             knownRuleTypesProvider,
             manifestServiceSupplier,
-            fileHashCache);
+            fileHashCache,
+            daemonicParserState.getSkylarkExtensionCache());
     ProjectBuildFileParserPool projectBuildFileParserPool =
         new ProjectBuildFileParserPool(
             numParsingThreads, // Max parsers to create per cell.
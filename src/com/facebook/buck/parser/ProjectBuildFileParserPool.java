@@ -88,7 +88,7 @@ class ProjectBuildFileParserPool implements AutoCloseable {
     Preconditions.checkState(!closing.get());
 
     if (shouldUsePoolForCell(cell)) {
-      return getResourcePoolForCell(buckEventBus, cell, watchman)
+      return getResourcePoolForCell(buckEventBus, cell, watchman, executorService)
           .scheduleOperationWithResource(
               parser -> parser.getBuildFileManifest(buildFile), executorService);
     }
@@ -97,19 +97,44 @@ class ProjectBuildFileParserPool implements AutoCloseable {
   }
 
   private synchronized ResourcePool<ProjectBuildFileParser> getResourcePoolForCell(
-      BuckEventBus buckEventBus, Cell cell, Watchman watchman) {
-    return parserResourcePools.computeIfAbsent(
-        cell,
-        c ->
-            new ResourcePool<>(
-                maxParsersPerCell,
-                // If the Python process garbles the output stream then the bser codec doesn't
-                // always
-                // recover and subsequent attempts at invoking the parser will fail.
-                ResourcePool.ResourceUsageErrorPolicy.RETIRE,
-                () ->
-                    projectBuildFileParserFactory.createBuildFileParser(
-                        buckEventBus, c, watchman)));
+      BuckEventBus buckEventBus,
+      Cell cell,
+      Watchman watchman,
+      ListeningExecutorService executorService) {
+    ResourcePool<ProjectBuildFileParser> resourcePool = parserResourcePools.get(cell);
+    if (resourcePool == null) {
+      resourcePool =
+          new ResourcePool<>(
+              maxParsersPerCell,
+              // If the Python process garbles the output stream then the bser codec doesn't
+              // always
+              // recover and subsequent attempts at invoking the parser will fail.
+              ResourcePool.ResourceUsageErrorPolicy.RETIRE,
+              () ->
+                  projectBuildFileParserFactory.createBuildFileParser(
+                      buckEventBus, cell, watchman));
+      parserResourcePools.put(cell, resourcePool);
+      if (cell.getBuckConfig().getView(ParserConfig.class).getPrewarmPythonInterpreters()) {
+        prewarm(resourcePool, executorService);
+      }
+    }
+    return resourcePool;
+  }
+
+  /**
+   * Creates and initializes all parsers the pool is allowed to have, so that interpreter startup
+   * happens concurrently ahead of parse requests instead of one by one as requests queue up.
+   */
+  private void prewarm(
+      ResourcePool<ProjectBuildFileParser> resourcePool, ListeningExecutorService executorService) {
+    for (int i = 0; i < maxParsersPerCell; i++) {
+      resourcePool.scheduleOperationWithResource(
+          parser -> {
+            parser.initIfNeeded();
+            return null;
+          },
+          executorService);
+    }
   }
 
   private synchronized ProjectBuildFileParser getParserForCell(
@@ -134,6 +159,13 @@ class ProjectBuildFileParserPool implements AutoCloseable {
               }
             });
       }
+      for (ProjectBuildFileParser parser : nonPooledCells.values()) {
+        try {
+          parser.reportProfile();
+        } catch (IOException exception) {
+          LOG.debug(exception, "Exception raised during reportProfile() and we're ignoring it");
+        }
+      }
     }
   }
 
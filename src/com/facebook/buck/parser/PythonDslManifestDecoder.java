@@ -0,0 +1,337 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.syntax.ImmutableListWithSelects;
+import com.facebook.buck.parser.syntax.ImmutableSelectorValue;
+import com.facebook.buck.parser.syntax.SelectorValue;
+import com.facebook.buck.util.ImmutableMapWithNullValues;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.devtools.build.lib.syntax.Runtime;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.immutables.value.Value;
+
+/**
+ * Decodes the response {@code buck.py} sends for a parsed build file directly from the JSON token
+ * stream into a {@link BuildFileManifest}.
+ *
+ * <p>Targets are indexed by name and their selectable attributes are converted as soon as they
+ * are read, so no intermediate representation of the whole response is materialized. Strings are
+ * interned, which lets attribute names and frequently repeated values, like rule types, labels or
+ * visibility patterns, share the same instance across all targets and packages.
+ */
+final class PythonDslManifestDecoder {
+
+  private static final Interner<String> STRING_INTERNER = Interners.newWeakInterner();
+
+  /** Holds a decoded response of {@code buck.py} for a single build file. */
+  @BuckStyleImmutable
+  @Value.Immutable(builder = false, copy = false)
+  abstract static class AbstractPythonDslParseResult {
+
+    /** @return manifest of the build file, empty if {@code buck.py} did not send any values. */
+    @Value.Parameter
+    public abstract BuildFileManifest getManifest();
+
+    /** @return diagnostics reported by {@code buck.py} while parsing the build file. */
+    @Value.Parameter
+    public abstract ImmutableList<Map<String, Object>> getDiagnostics();
+
+    /** @return profiling data collected while parsing the build file, if profiling is enabled. */
+    @Value.Parameter
+    public abstract Optional<String> getProfile();
+  }
+
+  private final ImmutableMap.Builder<String, Map<String, Object>> targets =
+      ImmutableMap.builder();
+  @Nullable private List<String> includes;
+  @Nullable private Map<String, Object> configs;
+  @Nullable private Map<String, String> env;
+  private ImmutableList<Map<String, Object>> diagnostics = ImmutableList.of();
+  private Optional<String> profile = Optional.empty();
+
+  private PythonDslManifestDecoder() {}
+
+  /**
+   * Reads a single response from {@code jp}, leaving the parser positioned so that the next
+   * response can be read by either this decoder or Jackson's data binding.
+   */
+  static PythonDslParseResult decode(JsonParser jp) throws IOException {
+    return new PythonDslManifestDecoder().decodeResponse(jp);
+  }
+
+  private PythonDslParseResult decodeResponse(JsonParser jp) throws IOException {
+    JsonToken token = jp.getCurrentToken() == null ? jp.nextToken() : jp.getCurrentToken();
+    if (token != JsonToken.START_OBJECT) {
+      throw new JsonParseException(jp, "Missing expected START_OBJECT, got: " + token);
+    }
+    boolean hasValues = false;
+    String fieldName;
+    while ((fieldName = jp.nextFieldName()) != null) {
+      switch (fieldName) {
+        case "values":
+          hasValues = decodeValues(jp);
+          break;
+        case "diagnostics":
+          diagnostics = decodeObjectList(jp);
+          break;
+        case "profile":
+          profile = Optional.of(jp.nextTextValue());
+          break;
+        default:
+          throw new JsonParseException(jp, "Unexpected field name: " + fieldName);
+      }
+    }
+    if (jp.getCurrentToken() != JsonToken.END_OBJECT) {
+      throw new JsonParseException(jp, "Missing expected END_OBJECT");
+    }
+    // Mimic Jackson's data binding, which always clears the last token of a root-level value.
+    jp.clearCurrentToken();
+    return PythonDslParseResult.of(buildManifest(hasValues), diagnostics, profile);
+  }
+
+  private BuildFileManifest buildManifest(boolean hasValues) {
+    if (!hasValues) {
+      // in case Python process cannot send values due to serialization issues, it will send an
+      // empty list
+      return BuildFileManifest.of(
+          ImmutableMap.of(),
+          ImmutableSortedSet.of(),
+          ImmutableMap.of(),
+          Optional.empty(),
+          ImmutableList.of());
+    }
+    return BuildFileManifest.of(
+        targets.build(),
+        ImmutableSortedSet.copyOf(Objects.requireNonNull(includes)),
+        Objects.requireNonNull(configs),
+        Optional.of(
+            ImmutableMap.copyOf(
+                Maps.transformValues(Objects.requireNonNull(env), Optional::ofNullable))),
+        ImmutableList.of());
+  }
+
+  /** @return whether {@code buck.py} sent at least one value. */
+  private boolean decodeValues(JsonParser jp) throws IOException {
+    JsonToken token = jp.nextToken();
+    if (token != JsonToken.START_ARRAY) {
+      throw new JsonParseException(jp, "Missing expected START_ARRAY, got: " + token);
+    }
+    boolean hasValues = false;
+    while ((token = jp.nextToken()) == JsonToken.START_OBJECT) {
+      decodeValue(jp);
+      hasValues = true;
+    }
+    if (token != JsonToken.END_ARRAY) {
+      throw new JsonParseException(jp, "Missing expected END_ARRAY");
+    }
+    return hasValues;
+  }
+
+  /** Decodes either a target or one of the {@link MetaRules} {@code buck.py} sends after them. */
+  @SuppressWarnings("unchecked")
+  private void decodeValue(JsonParser jp) throws IOException {
+    String fieldName = jp.nextFieldName();
+    if (MetaRules.INCLUDES.equals(fieldName)) {
+      includes = (List<String>) decodeRecursive(jp, jp.nextToken());
+    } else if (MetaRules.CONFIGS.equals(fieldName)) {
+      configs = (Map<String, Object>) decodeRecursive(jp, jp.nextToken());
+    } else if (MetaRules.ENV.equals(fieldName)) {
+      env = (Map<String, String>) decodeRecursive(jp, jp.nextToken());
+    } else {
+      decodeTarget(jp, fieldName);
+      return;
+    }
+    if (jp.nextToken() != JsonToken.END_OBJECT) {
+      throw new JsonParseException(jp, "Unexpected field in meta rule " + fieldName);
+    }
+  }
+
+  private void decodeTarget(JsonParser jp, @Nullable String firstFieldName) throws IOException {
+    ImmutableMapWithNullValues.Builder<String, Object> builder =
+        ImmutableMapWithNullValues.Builder.insertionOrder();
+    String name = null;
+    for (String fieldName = firstFieldName; fieldName != null; fieldName = jp.nextFieldName()) {
+      Object value = convertToSelectableAttributeIfNeeded(decodeRecursive(jp, jp.nextToken()));
+      if ("name".equals(fieldName)) {
+        name = (String) value;
+      }
+      builder.put(STRING_INTERNER.intern(fieldName), value);
+    }
+    if (jp.getCurrentToken() != JsonToken.END_OBJECT) {
+      throw new JsonParseException(jp, "Missing expected END_OBJECT");
+    }
+    if (name == null) {
+      throw new JsonParseException(jp, "Missing name of the target");
+    }
+    targets.put(name, builder.build());
+  }
+
+  private static ImmutableList<Map<String, Object>> decodeObjectList(JsonParser jp)
+      throws IOException {
+    JsonToken token = jp.nextToken();
+    if (token != JsonToken.START_ARRAY) {
+      throw new JsonParseException(jp, "Missing expected START_ARRAY, got: " + token);
+    }
+    ImmutableList.Builder<Map<String, Object>> result = ImmutableList.builder();
+    while ((token = jp.nextToken()) == JsonToken.START_OBJECT) {
+      result.add(decodeObject(jp));
+    }
+    if (token != JsonToken.END_ARRAY) {
+      throw new JsonParseException(jp, "Missing expected END_ARRAY");
+    }
+    return result.build();
+  }
+
+  private static Map<String, Object> decodeObject(JsonParser jp) throws IOException {
+    ImmutableMapWithNullValues.Builder<String, Object> builder =
+        ImmutableMapWithNullValues.Builder.insertionOrder();
+    String fieldName;
+    while ((fieldName = jp.nextFieldName()) != null) {
+      builder.put(STRING_INTERNER.intern(fieldName), decodeRecursive(jp, jp.nextToken()));
+    }
+    if (jp.getCurrentToken() != JsonToken.END_OBJECT) {
+      throw new JsonParseException(jp, "Missing expected END_OBJECT");
+    }
+    return builder.build();
+  }
+
+  /**
+   * Lists may hold {@code None}, which is left to constructor arg coercion to reject with a proper
+   * error. Only those lists can't be {@link ImmutableList}s.
+   */
+  private static List<Object> decodeList(JsonParser jp) throws IOException {
+    List<Object> list = new ArrayList<>();
+    boolean hasNull = false;
+    JsonToken token;
+    while ((token = jp.nextToken()) != JsonToken.END_ARRAY) {
+      Object value = decodeRecursive(jp, token);
+      hasNull |= value == null;
+      list.add(value);
+    }
+    return hasNull ? Collections.unmodifiableList(list) : ImmutableList.copyOf(list);
+  }
+
+  @Nullable
+  private static Object decodeRecursive(JsonParser jp, @Nullable JsonToken token)
+      throws IOException {
+    if (token == null) {
+      throw new JsonParseException(jp, "Unexpected end of input");
+    }
+    switch (token) {
+      case START_OBJECT:
+        return decodeObject(jp);
+      case START_ARRAY:
+        return decodeList(jp);
+      case VALUE_TRUE:
+        return true;
+      case VALUE_FALSE:
+        return false;
+      case VALUE_NULL:
+        return null;
+      case VALUE_NUMBER_FLOAT:
+        return jp.getDoubleValue();
+      case VALUE_NUMBER_INT:
+        return jp.getLongValue();
+      case VALUE_STRING:
+        return STRING_INTERNER.intern(jp.getText());
+        // $CASES-OMITTED$
+      default:
+        throw new JsonParseException(jp, "Unexpected token: " + token);
+    }
+  }
+
+  /**
+   * When the given object if a map and it contains specific keys it's transformed in either a
+   * {@link com.facebook.buck.parser.syntax.ListWithSelects} or {@link
+   * com.facebook.buck.parser.syntax.SelectorValue}. This conversion is used to pass objects in JSON
+   * data.
+   *
+   * <p>The map may contain the following keys:
+   *
+   * <ul>
+   *   <li>{@code @type} - indicates the type of the object (either "SelectorList" or
+   *       "SelectorValue").
+   *   <li>{@code conditions} - contains a map of conditions for "SelectorList".
+   *   <li>{@code no_match_message} - contains a no match message for "SelectorList".
+   *   <li>{@code items} - contains a list of items for "SelectorValue".
+   * </ul>
+   */
+  @SuppressWarnings("unchecked")
+  @Nullable
+  private static Object convertToSelectableAttributeIfNeeded(@Nullable Object value) {
+    if (!(value instanceof Map)) {
+      return value;
+    }
+    Map<String, Object> attributeValue = (Map<String, Object>) value;
+    String type = (String) attributeValue.get("@type");
+    if (type == null) {
+      return attributeValue;
+    }
+    if ("SelectorValue".equals(type)) {
+      Map<String, Object> conditions =
+          (Map<String, Object>) Objects.requireNonNull(attributeValue.get("conditions"));
+      ImmutableMap.Builder<String, Object> convertedConditions =
+          ImmutableMap.builderWithExpectedSize(conditions.size());
+      conditions.forEach((k, v) -> convertedConditions.put(k, v == null ? Runtime.NONE : v));
+      return ImmutableSelectorValue.of(
+          convertedConditions.build(),
+          Objects.toString(attributeValue.get("no_match_message"), ""));
+    } else {
+      Preconditions.checkState("SelectorList".equals(type));
+      List<Object> items = (List<Object>) Objects.requireNonNull(attributeValue.get("items"));
+      ImmutableList.Builder<Object> convertedItems =
+          ImmutableList.builderWithExpectedSize(items.size());
+      for (Object item : items) {
+        convertedItems.add(Objects.requireNonNull(convertToSelectableAttributeIfNeeded(item)));
+      }
+      ImmutableList<Object> convertedElements = convertedItems.build();
+      return ImmutableListWithSelects.of(
+          convertedElements, getType(Iterables.getLast(convertedElements)));
+    }
+  }
+
+  private static Class<?> getType(Object object) {
+    if (object instanceof SelectorValue) {
+      return getType(
+          Objects.requireNonNull(
+                  Iterables.getFirst(((SelectorValue) object).getDictionary().entrySet(), null))
+              .getValue());
+    } else {
+      return object.getClass();
+    }
+  }
+}
@@ -38,9 +38,6 @@ import com.facebook.buck.parser.events.ParseBuckProfilerReportEvent;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.implicit.PackageImplicitIncludesFinder;
 import com.facebook.buck.parser.options.ProjectBuildFileParserOptions;
-import com.facebook.buck.parser.syntax.ImmutableListWithSelects;
-import com.facebook.buck.parser.syntax.ImmutableSelectorValue;
-import com.facebook.buck.parser.syntax.SelectorValue;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.skylark.io.GlobSpecWithResult;
 import com.facebook.buck.util.InputStreamConsumer;
@@ -60,10 +57,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.io.CountingInputStream;
-import com.google.devtools.build.lib.syntax.Runtime;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -194,7 +189,7 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
    * to when parsing actually begins. This makes it easier to attribute this time to the actual
    * parse phase.
    */
-  @VisibleForTesting
+  @Override
   public void initIfNeeded() throws IOException {
     ensureNotClosed();
     if (!isInitialized) {
@@ -368,6 +363,10 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       argBuilder.add("--warn_about_deprecated_syntax");
     }
 
+    if (options.getPreloadDefaultIncludes()) {
+      argBuilder.add("--preload_includes");
+    }
+
     return argBuilder.build();
   }
 
@@ -404,7 +403,8 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
         ParseBuckFileEvent.started(buildFile, this.getClass());
     buckEventBus.post(parseBuckFileStarted);
 
-    ImmutableList<Map<String, Object>> values = ImmutableList.of();
+    int rulesCount = 0;
+    long allocatedBytesBefore = Threads.getCurrentThreadAllocatedBytes();
     Optional<String> profile = Optional.empty();
     try (AssertScopeExclusiveAccess.Scope scope = assertSingleThreadedParsing.scope()) {
       Path cellPath = options.getProjectRoot().toAbsolutePath();
@@ -418,8 +418,8 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
         }
       }
       currentBuildFile.set(buildFile);
-      BuildFilePythonResult resultObject =
-          performJsonRequest(
+      PythonDslParseResult resultObject =
+          performParseRequest(
               ImmutableMap.of(
                   "buildFile",
                   buildFile.toString(),
@@ -432,30 +432,27 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       Path buckPyPath = getPathToBuckPy(options.getDescriptions());
       handleDiagnostics(
           buildFile, buckPyPath.getParent(), resultObject.getDiagnostics(), buckEventBus);
-      values = resultObject.getValues();
+      BuildFileManifest manifest = resultObject.getManifest();
+      rulesCount = manifest.getTargets().size();
 
-      LOG.verbose("Got rules: %s", values);
-      LOG.verbose("Parsed %d rules from %s", values.size(), buildFile);
+      LOG.verbose("Got rules: %s", manifest.getTargets());
+      LOG.verbose("Parsed %d rules from %s", rulesCount, buildFile);
       profile = resultObject.getProfile();
       if (profile.isPresent()) {
         LOG.debug("Profile result:\n%s", profile.get());
       }
-      if (values.isEmpty()) {
-        // in case Python process cannot send values due to serialization issues, it will send an
-        // empty list
-        return BuildFileManifest.of(
-            ImmutableMap.of(),
-            ImmutableSortedSet.of(),
-            ImmutableMap.of(),
-            Optional.empty(),
-            ImmutableList.of());
-      }
-      return toBuildFileManifest(values);
+      return manifest;
     } finally {
       long parsedBytes = buckPyProcessInput.getCount() - alreadyReadBytes;
       processedBytes.ifPresent(processedBytes -> processedBytes.addAndGet(parsedBytes));
+      long allocatedBytesAfter = Threads.getCurrentThreadAllocatedBytes();
       buckEventBus.post(
-          ParseBuckFileEvent.finished(parseBuckFileStarted, values.size(), parsedBytes, profile));
+          ParseBuckFileEvent.finished(
+              parseBuckFileStarted,
+              rulesCount,
+              parsedBytes,
+              allocatedBytesBefore < 0 ? -1 : allocatedBytesAfter - allocatedBytesBefore,
+              profile));
     }
   }
 
@@ -468,104 +465,32 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
     return MorePaths.getParentOrEmpty(MorePaths.relativize(options.getProjectRoot(), buildFile));
   }
 
-  @SuppressWarnings("unchecked")
-  private BuildFileManifest toBuildFileManifest(ImmutableList<Map<String, Object>> values) {
-    return BuildFileManifest.of(
-        indexTargetsByName(values.subList(0, values.size() - 3).asList()),
-        ImmutableSortedSet.copyOf(
-            Objects.requireNonNull(
-                (List<String>) values.get(values.size() - 3).get(MetaRules.INCLUDES))),
-        Objects.requireNonNull(
-            (Map<String, Object>) values.get(values.size() - 2).get(MetaRules.CONFIGS)),
-        Optional.of(
-            ImmutableMap.copyOf(
-                Maps.transformValues(
-                    Objects.requireNonNull(
-                        (Map<String, String>) values.get(values.size() - 1).get(MetaRules.ENV)),
-                    Optional::ofNullable))),
-        ImmutableList.of());
-  }
-
-  private static ImmutableMap<String, Map<String, Object>> indexTargetsByName(
-      ImmutableList<Map<String, Object>> targets) {
-    ImmutableMap.Builder<String, Map<String, Object>> builder =
-        ImmutableMap.builderWithExpectedSize(targets.size());
-    targets.forEach(
-        target -> builder.put((String) target.get("name"), convertSelectableAttributes(target)));
-    return builder.build();
-  }
-
-  private static Map<String, Object> convertSelectableAttributes(Map<String, Object> values) {
-    return Maps.transformValues(
-        values, PythonDslProjectBuildFileParser::convertToSelectableAttributeIfNeeded);
-  }
-
-  /**
-   * When the given object if a map and it contains specific keys it's transformed in either a
-   * {@link com.facebook.buck.parser.syntax.ListWithSelects} or {@link
-   * com.facebook.buck.parser.syntax.SelectorValue}. This conversion is used to pass objects in JSON
-   * data.
-   *
-   * <p>The map may contain the following keys:
-   *
-   * <ul>
-   *   <li>{@code @type} - indicates the type of the object (either "SelectorList" or
-   *       "SelectorValue").
-   *   <li>{@code conditions} - contains a map of conditions for "SelectorList".
-   *   <li>{@code no_match_message} - contains a no match message for "SelectorList".
-   *   <li>{@code items} - contains a list of items for "SelectorValue".
-   * </ul>
-   */
-  @SuppressWarnings("unchecked")
-  private static Object convertToSelectableAttributeIfNeeded(Object value) {
-    if (!(value instanceof Map)) {
-      return value;
-    }
-    Map<String, Object> attributeValue = (Map<String, Object>) value;
-    String type = (String) attributeValue.get("@type");
-    if (type == null) {
-      return attributeValue;
-    }
-    if ("SelectorValue".equals(type)) {
-      Map<String, Object> conditions =
-          (Map<String, Object>) Objects.requireNonNull(attributeValue.get("conditions"));
-      Map<String, Object> convertedConditions =
-          Maps.transformValues(conditions, v -> v == null ? Runtime.NONE : v);
-      return ImmutableSelectorValue.of(
-          convertedConditions, Objects.toString(attributeValue.get("no_match_message"), ""));
-    } else {
-      Preconditions.checkState("SelectorList".equals(type));
-      List<Object> items = (List<Object>) Objects.requireNonNull(attributeValue.get("items"));
-      ImmutableList<Object> convertedElements = convertToSelectableAttributesIfNeeded(items);
-      return ImmutableListWithSelects.of(
-          convertedElements, getType(Iterables.getLast(convertedElements)));
-    }
-  }
-
-  private static ImmutableList<Object> convertToSelectableAttributesIfNeeded(
-      List<Object> attributes) {
-    ImmutableList.Builder<Object> convertedAttributes =
-        ImmutableList.builderWithExpectedSize(attributes.size());
-    for (Object attribute : attributes) {
-      convertedAttributes.add(
-          PythonDslProjectBuildFileParser.convertToSelectableAttributeIfNeeded(attribute));
+  private BuildFilePythonResult performJsonRequest(ImmutableMap<String, Object> request)
+      throws IOException {
+    JsonParser jsonParser = sendRequest(request);
+    BuildFilePythonResult resultObject;
+    try {
+      resultObject = jsonParser.readValueAs(BuildFilePythonResult.class);
+    } catch (IOException e) {
+      LOG.warn(e, "Parser exited while decoding JSON data");
+      throw e;
     }
-    return convertedAttributes.build();
+    return resultObject;
   }
 
-  private static Class<?> getType(Object object) {
-    if (object instanceof SelectorValue) {
-      return getType(
-          Objects.requireNonNull(
-                  Iterables.getFirst(((SelectorValue) object).getDictionary().entrySet(), null))
-              .getValue());
-    } else {
-      return object.getClass();
+  private PythonDslParseResult performParseRequest(ImmutableMap<String, Object> request)
+      throws IOException {
+    JsonParser jsonParser = sendRequest(request);
+    try {
+      return PythonDslManifestDecoder.decode(jsonParser);
+    } catch (IOException e) {
+      LOG.warn(e, "Parser exited while decoding JSON data");
+      throw e;
     }
   }
 
-  private BuildFilePythonResult performJsonRequest(ImmutableMap<String, Object> request)
-      throws IOException {
+  /** @return parser positioned before the response {@code buck.py} sends for {@code request}. */
+  private JsonParser sendRequest(ImmutableMap<String, Object> request) throws IOException {
     Objects.requireNonNull(request);
     Objects.requireNonNull(buckPyProcessJsonGenerator);
     buckPyProcessJsonGenerator.writeObject(request);
@@ -603,14 +528,7 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
           ObjectMappers.createParser(Objects.requireNonNull(buckPyProcessInput).getInputStream());
     }
     LOG.verbose("Parsing output of process %s...", buckPyProcess);
-    BuildFilePythonResult resultObject;
-    try {
-      resultObject = buckPyProcessJsonParser.readValueAs(BuildFilePythonResult.class);
-    } catch (IOException e) {
-      LOG.warn(e, "Parser exited while decoding JSON data");
-      throw e;
-    }
-    return resultObject;
+    return buckPyProcessJsonParser;
   }
 
   private static void handleDiagnostics(
@@ -25,16 +25,19 @@ import com.facebook.buck.event.PerfEventId;
 import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.filesystem.PathMatcher;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.ProjectFilesystemView;
 import com.facebook.buck.io.filesystem.RecursiveFileMatcher;
 import com.facebook.buck.io.watchman.Watchman;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
+import com.facebook.buck.parser.events.ResolveTargetSpecsEvent;
 import com.facebook.buck.parser.exceptions.MissingBuildFileException;
 import com.facebook.buck.util.MoreThrowables;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.LinkedHashMultimap;
@@ -51,17 +54,39 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Responsible for discovering all the build targets that match a set of {@link TargetNodeSpec}. */
 public class TargetSpecResolver {
 
   private final BuckEventBus eventBus;
   private final Watchman watchman;
+  private final Optional<BuildFileSearchCache> buildFileSearchCache;
 
+  /** Creates a resolver that searches the file system for build files on each resolution. */
   public TargetSpecResolver(BuckEventBus eventBus, Watchman watchman) {
+    this(eventBus, watchman, Optional.empty());
+  }
+
+  /**
+   * Creates a resolver that reuses build file searches recorded in {@code buildFileSearchCache},
+   * which has to be notified about file system changes.
+   */
+  public TargetSpecResolver(
+      BuckEventBus eventBus, Watchman watchman, BuildFileSearchCache buildFileSearchCache) {
+    this(eventBus, watchman, Optional.of(buildFileSearchCache));
+  }
+
+  private TargetSpecResolver(
+      BuckEventBus eventBus,
+      Watchman watchman,
+      Optional<BuildFileSearchCache> buildFileSearchCache) {
     this.eventBus = eventBus;
     this.watchman = watchman;
+    this.buildFileSearchCache = buildFileSearchCache;
   }
 
   /**
@@ -80,7 +105,46 @@ public class TargetSpecResolver {
     // when returning results.
     ImmutableList<TargetNodeSpec> orderedSpecs = ImmutableList.copyOf(specs);
 
-    Multimap<Path, Integer> perBuildFileSpecs = groupSpecsByBuildFile(rootCell, orderedSpecs);
+    ResolveTargetSpecsEvent.Started started = ResolveTargetSpecsEvent.started(orderedSpecs.size());
+    eventBus.post(started);
+    AtomicLong buildFileSearchNanos = new AtomicLong();
+    AtomicInteger cachedBuildFileSearches = new AtomicInteger();
+    Multimap<Path, Integer> perBuildFileSpecs = ImmutableMultimap.of();
+    try {
+      // Without a shared cache, searches are still reused by specs of the same resolution, e.g.
+      // //foo/... and //foo/bar/...
+      perBuildFileSpecs =
+          groupSpecsByBuildFile(
+              rootCell,
+              orderedSpecs,
+              buildFileSearchCache.orElseGet(BuildFileSearchCache::new),
+              buildFileSearchNanos,
+              cachedBuildFileSearches);
+      return resolveBuildFileSpecs(
+          rootCell,
+          orderedSpecs,
+          perBuildFileSpecs,
+          flavorEnhancer,
+          targetNodeProvider,
+          targetNodeFilter);
+    } finally {
+      eventBus.post(
+          ResolveTargetSpecsEvent.finished(
+              started,
+              perBuildFileSpecs.keySet().size(),
+              buildFileSearchNanos.get(),
+              cachedBuildFileSearches.get()));
+    }
+  }
+
+  private <T extends HasBuildTarget> ImmutableList<ImmutableSet<BuildTarget>> resolveBuildFileSpecs(
+      Cell rootCell,
+      ImmutableList<TargetNodeSpec> orderedSpecs,
+      Multimap<Path, Integer> perBuildFileSpecs,
+      FlavorEnhancer<T> flavorEnhancer,
+      TargetNodeProviderForSpecResolver<T> targetNodeProvider,
+      TargetNodeFilterForSpecResolver<T> targetNodeFilter)
+      throws BuildFileParseException, InterruptedException {
 
     // Kick off parse futures for each build file.
     ArrayList<ListenableFuture<Map.Entry<Integer, ImmutableSet<BuildTarget>>>> targetFutures =
@@ -116,7 +180,11 @@ public class TargetSpecResolver {
   // Resolve all the build files from all the target specs.  We store these into a multi-map which
   // maps the path to the build file to the index of it's spec file in the ordered spec list.
   private Multimap<Path, Integer> groupSpecsByBuildFile(
-      Cell rootCell, ImmutableList<TargetNodeSpec> orderedSpecs)
+      Cell rootCell,
+      ImmutableList<TargetNodeSpec> orderedSpecs,
+      BuildFileSearchCache searchCache,
+      AtomicLong buildFileSearchNanos,
+      AtomicInteger cachedBuildFileSearches)
       throws IOException, InterruptedException {
     ParserConfig parserConfig = rootCell.getBuckConfig().getView(ParserConfig.class);
     ParserConfig.BuildFileSearchMethod buildFileSearchMethod =
@@ -127,6 +195,7 @@ public class TargetSpecResolver {
       TargetNodeSpec spec = orderedSpecs.get(index);
       Cell cell = rootCell.getCell(spec.getBuildFileSpec().getCellPath());
       ImmutableSet<Path> buildFiles;
+      long searchStartNanos = System.nanoTime();
       try (SimplePerfEvent.Scope perfEventScope =
           SimplePerfEvent.scope(
               eventBus, PerfEventId.of("FindBuildFiles"), "targetNodeSpec", spec)) {
@@ -143,13 +212,15 @@ public class TargetSpecResolver {
         }
 
         buildFiles =
-            spec.getBuildFileSpec()
-                .findBuildFiles(
-                    cell.getBuildFileName(),
-                    filesystem.asView().withView(Paths.get(""), ImmutableSet.of()),
-                    watchman,
-                    buildFileSearchMethod,
-                    parsingIgnores.build());
+            findBuildFiles(
+                spec.getBuildFileSpec(),
+                cell,
+                buildFileSearchMethod,
+                parsingIgnores.build(),
+                searchCache,
+                cachedBuildFileSearches);
+      } finally {
+        buildFileSearchNanos.addAndGet(System.nanoTime() - searchStartNanos);
       }
       for (Path buildFile : buildFiles) {
         perBuildFileSpecs.put(buildFile, index);
@@ -158,6 +229,48 @@ public class TargetSpecResolver {
     return perBuildFileSpecs;
   }
 
+  /**
+   * Finds build files matched by {@code buildFileSpec}, reusing results of previous searches of
+   * the same directory or one of its ancestors for recursive specs.
+   */
+  private ImmutableSet<Path> findBuildFiles(
+      BuildFileSpec buildFileSpec,
+      Cell cell,
+      ParserConfig.BuildFileSearchMethod buildFileSearchMethod,
+      ImmutableSet<PathMatcher> parsingIgnores,
+      BuildFileSearchCache searchCache,
+      AtomicInteger cachedBuildFileSearches)
+      throws IOException, InterruptedException {
+    ProjectFilesystem filesystem = cell.getFilesystem();
+    ProjectFilesystemView filesystemView =
+        filesystem.asView().withView(Paths.get(""), ImmutableSet.of());
+    if (!buildFileSpec.isRecursive()) {
+      return buildFileSpec.findBuildFiles(
+          cell.getBuildFileName(), filesystemView, watchman, buildFileSearchMethod, parsingIgnores);
+    }
+
+    Path searchRoot = filesystem.resolve(buildFileSpec.getBasePath());
+    // Missing directories are reported by the search itself, so they are never served from a
+    // search of one of their ancestors.
+    if (filesystem.isDirectory(searchRoot)) {
+      Optional<ImmutableSet<Path>> cachedBuildFiles =
+          searchCache.get(searchRoot, cell.getBuildFileName(), parsingIgnores);
+      if (cachedBuildFiles.isPresent()) {
+        cachedBuildFileSearches.incrementAndGet();
+        return cachedBuildFiles.get();
+      }
+    }
+    ImmutableSet<Path> buildFiles =
+        buildFileSpec.findBuildFiles(
+            cell.getBuildFileName(),
+            filesystemView,
+            watchman,
+            buildFileSearchMethod,
+            parsingIgnores);
+    searchCache.put(searchRoot, cell.getBuildFileName(), parsingIgnores, buildFiles);
+    return buildFiles;
+  }
+
   private <T extends HasBuildTarget> void handleTargetNodeSpec(
       FlavorEnhancer<T> flavorEnhancer,
       TargetNodeProviderForSpecResolver<T> targetNodeProvider,
@@ -44,6 +44,11 @@ public class ForwardingProjectBuildFileParserDecorator implements ProjectBuildFi
     return delegate.getBuildFileManifest(buildFile);
   }
 
+  @Override
+  public void initIfNeeded() throws IOException {
+    delegate.initIfNeeded();
+  }
+
   @Override
   public void reportProfile() throws IOException {
     delegate.reportProfile();
@@ -35,6 +35,12 @@ public interface ProjectBuildFileParser extends AutoCloseable {
   BuildFileManifest getBuildFileManifest(Path buildFile)
       throws BuildFileParseException, InterruptedException, IOException;
 
+  /**
+   * Performs expensive initialization, like starting an interpreter, ahead of the first parse
+   * request. Parsers without such initialization do not need to override this method.
+   */
+  default void initIfNeeded() throws IOException {}
+
   /** Reports profile information captured while parsing build files. */
   void reportProfile() throws IOException;
 
@@ -68,12 +68,18 @@ public abstract class ParseBuckFileEvent extends AbstractBuckEvent implements Wo
    * @param started Event created when corresponding build file parsing was started
    * @param rulesCount Total number of rules parsed from this build file
    * @param processedBytes Total number of bytes read while parsing this build file, if applicable
+   * @param allocatedBytes Total number of bytes allocated on the heap by the thread parsing this
+   *     build file, or -1 if it could not be measured
    * @param profile This is the value of getProfile() from PythonDSL parser result. TODO(buck_team)
    *     Update description with real meaning
    */
   public static Finished finished(
-      Started started, int rulesCount, long processedBytes, Optional<String> profile) {
-    return new Finished(started, rulesCount, processedBytes, profile);
+      Started started,
+      int rulesCount,
+      long processedBytes,
+      long allocatedBytes,
+      Optional<String> profile) {
+    return new Finished(started, rulesCount, processedBytes, allocatedBytes, profile);
   }
 
   /** The event raised when build file parsing is started */
@@ -92,13 +98,19 @@ public abstract class ParseBuckFileEvent extends AbstractBuckEvent implements Wo
   public static class Finished extends ParseBuckFileEvent {
     private final int rulesCount;
     private final long processedBytes;
+    private final long allocatedBytes;
     private final Optional<String> profile;
 
     protected Finished(
-        Started started, int rulesCount, long processedBytes, Optional<String> profile) {
+        Started started,
+        int rulesCount,
+        long processedBytes,
+        long allocatedBytes,
+        Optional<String> profile) {
       super(started.getEventKey(), started.getBuckFilePath(), started.getParserClass());
       this.rulesCount = rulesCount;
       this.processedBytes = processedBytes;
+      this.allocatedBytes = allocatedBytes;
       this.profile = profile;
     }
 
@@ -117,6 +129,14 @@ public abstract class ParseBuckFileEvent extends AbstractBuckEvent implements Wo
       return processedBytes;
     }
 
+    /**
+     * @return Number of bytes allocated on the heap by the thread parsing this build file, or -1 if
+     *     it could not be measured
+     */
+    public long getAllocatedBytes() {
+      return allocatedBytes;
+    }
+
     public Optional<String> getProfile() {
       return profile;
     }
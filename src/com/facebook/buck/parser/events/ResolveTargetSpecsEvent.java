@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser.events;
+
+import com.facebook.buck.event.AbstractBuckEvent;
+import com.facebook.buck.event.EventKey;
+import com.facebook.buck.event.WorkAdvanceEvent;
+import com.google.common.base.Objects;
+
+/** Base class for events about resolving target specs into build targets */
+public abstract class ResolveTargetSpecsEvent extends AbstractBuckEvent
+    implements WorkAdvanceEvent {
+  private final int specsCount;
+
+  protected ResolveTargetSpecsEvent(EventKey eventKey, int specsCount) {
+    super(eventKey);
+    this.specsCount = specsCount;
+  }
+
+  /** @return Number of target specs being resolved */
+  public int getSpecsCount() {
+    return specsCount;
+  }
+
+  @Override
+  public String getValueString() {
+    return Integer.toString(specsCount);
+  }
+
+  /**
+   * Create an event when resolution of target specs starts
+   *
+   * @param specsCount Number of target specs that are about to be resolved
+   */
+  public static Started started(int specsCount) {
+    return new Started(specsCount);
+  }
+
+  /**
+   * Create an event when resolution of target specs finishes
+   *
+   * @param started Event created when corresponding resolution was started
+   * @param buildFilesCount Number of build files matched by the resolved specs
+   * @param buildFileSearchNanos Time spent looking for build files matched by the resolved specs
+   * @param cachedBuildFileSearches Number of recursive build file searches that were served from
+   *     the results of previous searches
+   */
+  public static Finished finished(
+      Started started,
+      int buildFilesCount,
+      long buildFileSearchNanos,
+      int cachedBuildFileSearches) {
+    return new Finished(started, buildFilesCount, buildFileSearchNanos, cachedBuildFileSearches);
+  }
+
+  /** The event raised when resolution of target specs is started */
+  public static class Started extends ResolveTargetSpecsEvent {
+    protected Started(int specsCount) {
+      super(EventKey.unique(), specsCount);
+    }
+
+    @Override
+    public String getEventName() {
+      return "ResolveTargetSpecsStarted";
+    }
+  }
+
+  /** The event raised when resolution of target specs is finished */
+  public static class Finished extends ResolveTargetSpecsEvent {
+    private final int buildFilesCount;
+    private final long buildFileSearchNanos;
+    private final int cachedBuildFileSearches;
+
+    protected Finished(
+        Started started,
+        int buildFilesCount,
+        long buildFileSearchNanos,
+        int cachedBuildFileSearches) {
+      super(started.getEventKey(), started.getSpecsCount());
+      this.buildFilesCount = buildFilesCount;
+      this.buildFileSearchNanos = buildFileSearchNanos;
+      this.cachedBuildFileSearches = cachedBuildFileSearches;
+    }
+
+    @Override
+    public String getEventName() {
+      return "ResolveTargetSpecsFinished";
+    }
+
+    /** @return Number of build files matched by the resolved specs */
+    public int getBuildFilesCount() {
+      return buildFilesCount;
+    }
+
+    /** @return Time in nanoseconds spent looking for build files matched by the resolved specs */
+    public long getBuildFileSearchNanos() {
+      return buildFileSearchNanos;
+    }
+
+    /** @return Number of recursive build file searches that did not hit the file system */
+    public int getCachedBuildFileSearches() {
+      return cachedBuildFileSearches;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!super.equals(o)) {
+        return false;
+      }
+      // Because super.equals compares the EventKey, getting here means that we've somehow managed
+      // to create 2 Finished events for the same Started event.
+      throw new UnsupportedOperationException("Multiple conflicting Finished events detected.");
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(super.hashCode(), getBuildFilesCount());
+    }
+  }
+}
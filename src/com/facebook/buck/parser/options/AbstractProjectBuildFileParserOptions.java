@@ -97,4 +97,10 @@ abstract class AbstractProjectBuildFileParserOptions {
   public boolean isWarnAboutDeprecatedSyntax() {
     return true;
   }
+
+  /** @return whether default includes should be loaded as soon as the parser is initialized. */
+  @Value.Default
+  public boolean getPreloadDefaultIncludes() {
+    return false;
+  }
 }
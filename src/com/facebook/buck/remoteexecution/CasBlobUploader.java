@@ -29,6 +29,14 @@ public interface CasBlobUploader {
 
   ImmutableList<UploadResult> batchUpdateBlobs(ImmutableList<UploadData> build) throws IOException;
 
+  /**
+   * Uploads a single blob that is too large to be part of a batch. Implementations should stream
+   * the data instead of holding all of it in memory.
+   */
+  default UploadResult uploadBlob(UploadData blob) throws IOException {
+    return batchUpdateBlobs(ImmutableList.of(blob)).get(0);
+  }
+
   /** Result (status/error message) of an upload. */
   class UploadResult {
     public final Digest digest;
@@ -20,6 +20,7 @@ import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputDirectory;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -35,4 +36,7 @@ public interface ContentAddressedStorage {
   ListenableFuture<Void> materializeOutputs(
       List<OutputDirectory> outputDirectories, List<OutputFile> outputFiles, Path root)
       throws IOException;
+
+  /** Returns the digests whose data is not stored in the CAS. */
+  ImmutableSet<Digest> getMissingDigests(List<Digest> digests) throws IOException;
 }
@@ -53,6 +53,9 @@ abstract class AbstractRemoteExecutionConfig implements ConfigView<BuckConfig> {
   public static final int DEFAULT_REMOTE_CONCURRENT_EXECUTIONS = 80;
   public static final int DEFAULT_REMOTE_CONCURRENT_RESULT_HANDLING = 6;
   public static final boolean DEFAULT_IS_LOCAL_FALLBACK_ENABLED = false;
+  public static final boolean DEFAULT_IS_LAZY_OUTPUT_MATERIALIZATION_ENABLED = false;
+  public static final boolean DEFAULT_IS_LOCAL_ACTION_CACHE_ENABLED = false;
+  public static final long DEFAULT_LOCAL_CAS_MAX_SIZE_MB = Long.MAX_VALUE / (1024 * 1024);
 
   private static final String CONFIG_CERT = "cert";
   private static final String CONFIG_KEY = "key";
@@ -73,6 +76,17 @@ abstract class AbstractRemoteExecutionConfig implements ConfigView<BuckConfig> {
   public static final String CONCURRENT_RESULT_HANDLING_KEY = "concurrent_result_handling";
   /** Whether failed remote executions are retried locally. */
   public static final String IS_LOCAL_FALLBACK_ENABLED_KEY = "is_local_fallback_enabled";
+  /**
+   * Whether output files of remote actions are only downloaded when a local step or a top-level
+   * target needs them. Other remote actions reference them by digest.
+   */
+  public static final String IS_LAZY_OUTPUT_MATERIALIZATION_ENABLED_KEY =
+      "is_lazy_output_materialization_enabled";
+  /**
+   * Whether results of successful remote actions are kept in buck-out and in the daemon, so that
+   * executing the same action again doesn't need any request to the remote action cache.
+   */
+  public static final String IS_LOCAL_ACTION_CACHE_ENABLED_KEY = "is_local_action_cache_enabled";
   /**
    * Number of threads for the strategy to do its work. This doesn't need to be a lot, but should
    * probably be greater than concurrent_result_handling below.
@@ -84,6 +98,12 @@ abstract class AbstractRemoteExecutionConfig implements ConfigView<BuckConfig> {
    * action computations until uploads finish.
    */
   public static final String CONCURRENT_PENDING_UPLOADS_KEY = "concurrent_pending_uploads";
+  /**
+   * Maximum size of the CAS used when executing actions locally (e.g. with the
+   * debug_grpc_in_process type). The least recently used blobs are evicted when it grows larger.
+   */
+  public static final String LOCAL_CAS_MAX_SIZE_MB_KEY = "local_cas_max_size_mb";
+
   /** URL format string for debug UI on the super console */
   public static final String DEBUG_FORMAT_STRING_URL_KEY = "debug_format_string_url";
   /**
@@ -137,6 +157,15 @@ abstract class AbstractRemoteExecutionConfig implements ConfigView<BuckConfig> {
     return getPathWithEnv("ca");
   }
 
+  /** @return the maximum size of the CAS used when executing actions locally. */
+  public long getLocalCasMaxSizeBytes() {
+    return getDelegate()
+            .getLong(SECTION, LOCAL_CAS_MAX_SIZE_MB_KEY)
+            .orElse(DEFAULT_LOCAL_CAS_MAX_SIZE_MB)
+        * 1024
+        * 1024;
+  }
+
   private String getDebugURLFormatString() {
     return getValueWithFallback(DEBUG_FORMAT_STRING_URL_KEY)
         .orElse(FORMAT_SESSION_ID_VARIABLE_STRING);
@@ -180,6 +209,18 @@ abstract class AbstractRemoteExecutionConfig implements ConfigView<BuckConfig> {
             .getBooleanValue(
                 SECTION, IS_LOCAL_FALLBACK_ENABLED_KEY, DEFAULT_IS_LOCAL_FALLBACK_ENABLED);
 
+    boolean isLazyOutputMaterializationEnabled =
+        getDelegate()
+            .getBooleanValue(
+                SECTION,
+                IS_LAZY_OUTPUT_MATERIALIZATION_ENABLED_KEY,
+                DEFAULT_IS_LAZY_OUTPUT_MATERIALIZATION_ENABLED);
+
+    boolean isLocalActionCacheEnabled =
+        getDelegate()
+            .getBooleanValue(
+                SECTION, IS_LOCAL_ACTION_CACHE_ENABLED_KEY, DEFAULT_IS_LOCAL_ACTION_CACHE_ENABLED);
+
     // Some of these values are also limited by other ones (e.g. synchronous work is limited by the
     // number of threads). We detect some of these cases and log an error to the user to help them
     // understand the behavior.
@@ -246,6 +287,16 @@ abstract class AbstractRemoteExecutionConfig implements ConfigView<BuckConfig> {
       public boolean isLocalFallbackEnabled() {
         return isLocalFallbackEnabled;
       }
+
+      @Override
+      public boolean isLazyOutputMaterializationEnabled() {
+        return isLazyOutputMaterializationEnabled;
+      }
+
+      @Override
+      public boolean isLocalActionCacheEnabled() {
+        return isLocalActionCacheEnabled;
+      }
     };
   }
 
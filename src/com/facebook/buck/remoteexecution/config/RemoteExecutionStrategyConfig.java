@@ -28,4 +28,13 @@ public interface RemoteExecutionStrategyConfig {
   int getMaxConcurrentPendingUploads();
 
   boolean isLocalFallbackEnabled();
+
+  /**
+   * Whether output files of remote actions are only written to disk once something other than
+   * another remote action needs them.
+   */
+  boolean isLazyOutputMaterializationEnabled();
+
+  /** Whether results of remote actions are looked up locally before asking the remote service. */
+  boolean isLocalActionCacheEnabled();
 }
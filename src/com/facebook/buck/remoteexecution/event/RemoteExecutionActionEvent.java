@@ -83,6 +83,12 @@ public abstract class RemoteExecutionActionEvent extends AbstractBuckEvent
     eventBus.post(new Scheduled(buildTarget));
   }
 
+  /** Sends the outcome of looking up an action in the local action result cache. */
+  public static void sendLocalCacheLookupEvent(
+      BuckEventBus eventBus, BuildTarget buildTarget, Digest actionDigest, boolean hit) {
+    eventBus.post(new LocalCacheLookup(buildTarget, actionDigest, hit));
+  }
+
   public static boolean isTerminalState(State state) {
     return state == State.ACTION_FAILED
         || state == State.ACTION_SUCCEEDED
@@ -184,6 +190,39 @@ public abstract class RemoteExecutionActionEvent extends AbstractBuckEvent
     }
   }
 
+  /** An action was looked up in the local action result cache. */
+  public static class LocalCacheLookup extends RemoteExecutionActionEvent {
+    private final BuildTarget buildTarget;
+    private final Digest actionDigest;
+    private final boolean hit;
+
+    @VisibleForTesting
+    LocalCacheLookup(BuildTarget buildTarget, Digest actionDigest, boolean hit) {
+      super(EventKey.unique());
+      this.buildTarget = buildTarget;
+      this.actionDigest = actionDigest;
+      this.hit = hit;
+    }
+
+    public BuildTarget getBuildTarget() {
+      return buildTarget;
+    }
+
+    public Digest getActionDigest() {
+      return actionDigest;
+    }
+
+    /** @return whether a result for the action was found, so it didn't need to be executed. */
+    public boolean isHit() {
+      return hit;
+    }
+
+    @Override
+    protected String getValueString() {
+      return hit ? "hit" : "miss";
+    }
+  }
+
   /** An action just exited from this state. */
   public static class Finished extends RemoteExecutionActionEvent {
 
@@ -81,6 +81,17 @@ public class RemoteExecutionConsoleLineProvider implements AdditionalConsoleLine
               localFallbackStats.getLocallySuccessfulRules()));
     }
 
+    int localActionCacheHits = statsProvider.getLocalActionCacheHits();
+    int localActionCacheLookups = localActionCacheHits + statsProvider.getLocalActionCacheMisses();
+    if (localActionCacheLookups > 0) {
+      lines.add(
+          String.format(
+              "[RE] LocalActionCache: [hit_rate=%.2f%% hits=%d misses=%d]",
+              (100f * localActionCacheHits) / localActionCacheLookups,
+              localActionCacheHits,
+              localActionCacheLookups - localActionCacheHits));
+    }
+
     return lines.build();
   }
 
@@ -51,6 +51,9 @@ public class RemoteExecutionEventListener
   private final AtomicInteger localFallbackLocalExecutions;
   private final AtomicInteger localFallbackSuccessfulLocalExecutions;
 
+  private final AtomicInteger localActionCacheHits;
+  private final AtomicInteger localActionCacheMisses;
+
   public RemoteExecutionEventListener() {
     this.downloads = new AtomicInteger(0);
     this.donwloadBytes = new AtomicLong(0);
@@ -63,6 +66,9 @@ public class RemoteExecutionEventListener
     localFallbackLocalExecutions = new AtomicInteger(0);
     localFallbackSuccessfulLocalExecutions = new AtomicInteger(0);
 
+    localActionCacheHits = new AtomicInteger(0);
+    localActionCacheMisses = new AtomicInteger(0);
+
     this.actionStateCount = Maps.newConcurrentMap();
     for (State state : RemoteExecutionActionEvent.State.values()) {
       actionStateCount.put(state, new AtomicInteger(0));
@@ -141,6 +147,16 @@ public class RemoteExecutionEventListener
     }
   }
 
+  /** Event specific subscriber method. */
+  @Subscribe
+  public void onLocalCacheLookup(RemoteExecutionActionEvent.LocalCacheLookup event) {
+    if (event.isHit()) {
+      localActionCacheHits.incrementAndGet();
+    } else {
+      localActionCacheMisses.incrementAndGet();
+    }
+  }
+
   @Override
   public ImmutableMap<State, Integer> getActionsPerState() {
     return ImmutableMap.copyOf(
@@ -183,4 +199,14 @@ public class RemoteExecutionEventListener
         .setTotalExecutedRules(localFallbackTotalExecutions.get())
         .build();
   }
+
+  @Override
+  public int getLocalActionCacheHits() {
+    return localActionCacheHits.get();
+  }
+
+  @Override
+  public int getLocalActionCacheMisses() {
+    return localActionCacheMisses.get();
+  }
 }
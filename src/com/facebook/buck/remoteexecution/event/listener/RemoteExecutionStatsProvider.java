@@ -42,4 +42,10 @@ public interface RemoteExecutionStatsProvider {
 
   /** Fetches stats regarding the local fallback. */
   LocalFallbackStats getLocalFallbackStats();
+
+  /** Number of actions whose result was found in the local action result cache. */
+  int getLocalActionCacheHits();
+
+  /** Number of actions looked up in the local action result cache without a result. */
+  int getLocalActionCacheMisses();
 }
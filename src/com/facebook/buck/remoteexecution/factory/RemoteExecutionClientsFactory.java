@@ -61,7 +61,8 @@ public class RemoteExecutionClientsFactory {
             metadataProvider,
             eventBus);
       case DEBUG_GRPC_IN_PROCESS:
-        return OutOfProcessIsolatedExecutionClients.create(new GrpcProtocol(), eventBus);
+        return OutOfProcessIsolatedExecutionClients.create(
+            new GrpcProtocol(), eventBus, remoteExecutionConfig.getLocalCasMaxSizeBytes());
       case DEBUG_GRPC_LOCAL:
         return GrpcExecutionFactory.createInProcess(eventBus);
     }
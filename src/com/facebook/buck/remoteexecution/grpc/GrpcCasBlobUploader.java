@@ -29,25 +29,46 @@ import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
 import com.facebook.buck.util.MoreThrowables;
 import com.facebook.buck.util.Scope;
 import com.facebook.buck.util.exceptions.BuckUncheckedExecutionException;
+import com.google.bytestream.ByteStreamGrpc.ByteStreamStub;
+import com.google.bytestream.ByteStreamProto.WriteRequest;
+import com.google.bytestream.ByteStreamProto.WriteResponse;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.protobuf.ByteString;
+import io.grpc.Status.Code;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /** GRPC implementation of the CasBlobUploader. */
 public class GrpcCasBlobUploader implements CasBlobUploader {
 
+  private static final int UPLOAD_CHUNK_SIZE = 1024 * 1024;
+
   private final ContentAddressableStorageFutureStub storageStub;
+  private final ByteStreamStub byteStreamStub;
+  private final String instanceName;
   private final BuckEventBus buckEventBus;
 
   public GrpcCasBlobUploader(
-      ContentAddressableStorageFutureStub storageStub, BuckEventBus buckEventBus) {
+      ContentAddressableStorageFutureStub storageStub,
+      ByteStreamStub byteStreamStub,
+      String instanceName,
+      BuckEventBus buckEventBus) {
     this.storageStub = storageStub;
+    this.byteStreamStub = byteStreamStub;
+    this.instanceName = instanceName;
     this.buckEventBus = buckEventBus;
   }
 
@@ -107,4 +128,107 @@ public class GrpcCasBlobUploader implements CasBlobUploader {
           blobs.stream().map(b -> b.digest.toString()).collect(Collectors.joining(" ")));
     }
   }
+
+  @Override
+  public UploadResult uploadBlob(UploadData blob) throws IOException {
+    long size = blob.digest.getSize();
+    try (Scope unused = CasBlobUploadEvent.sendEvent(buckEventBus, 1, size)) {
+      WriteObserver writeObserver = new WriteObserver();
+      StreamObserver<WriteRequest> requestObserver = byteStreamStub.write(writeObserver);
+      try (InputStream dataStream = blob.data.get()) {
+        String resourceName =
+            String.format(
+                "%s/uploads/%s/blobs/%s/%d",
+                instanceName, UUID.randomUUID(), blob.digest.getHash(), size);
+        byte[] buffer = new byte[UPLOAD_CHUNK_SIZE];
+        long offset = 0;
+        while (true) {
+          int read = ByteStreams.read(dataStream, buffer, 0, buffer.length);
+          boolean finishWrite = offset + read >= size;
+          if (!finishWrite && read < buffer.length) {
+            throw new IOException(
+                String.format(
+                    "Expected %d bytes but only got %d when uploading blob: %s.",
+                    size, offset + read, blob.data.describe()));
+          }
+          writeObserver.awaitReady();
+          if (writeObserver.response.isDone()) {
+            break;
+          }
+          requestObserver.onNext(
+              WriteRequest.newBuilder()
+                  .setResourceName(offset == 0 ? resourceName : "")
+                  .setWriteOffset(offset)
+                  .setData(ByteString.copyFrom(buffer, 0, read))
+                  .setFinishWrite(finishWrite)
+                  .build());
+          offset += read;
+          if (finishWrite) {
+            break;
+          }
+        }
+      } catch (IOException | InterruptedException | RuntimeException e) {
+        requestObserver.onError(e);
+        throw e;
+      }
+      requestObserver.onCompleted();
+
+      long committedSize = writeObserver.response.get().getCommittedSize();
+      if (committedSize != size) {
+        return new UploadResult(
+            blob.digest,
+            Code.DATA_LOSS.value(),
+            String.format("Server committed %d of %d bytes.", committedSize, size));
+      }
+      return new UploadResult(blob.digest, Code.OK.value(), null);
+    } catch (InterruptedException | ExecutionException e) {
+      MoreThrowables.throwIfInitialCauseInstanceOf(e, IOException.class);
+      throw new BuckUncheckedExecutionException(
+          e, "When uploading blob: <%s>. Digest: %s.", blob.data.describe(), blob.digest);
+    }
+  }
+
+  /**
+   * Receives the response of a ByteStream write and only lets the caller send more data once the
+   * transport is ready for it, so that large blobs are never fully buffered in memory.
+   */
+  private static class WriteObserver
+      implements ClientResponseObserver<WriteRequest, WriteResponse> {
+    private final SettableFuture<WriteResponse> response = SettableFuture.create();
+    @Nullable private ClientCallStreamObserver<WriteRequest> requestStream;
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<WriteRequest> requestStream) {
+      this.requestStream = requestStream;
+      requestStream.setOnReadyHandler(this::signal);
+    }
+
+    private synchronized void signal() {
+      notifyAll();
+    }
+
+    synchronized void awaitReady() throws InterruptedException {
+      while (!Objects.requireNonNull(requestStream).isReady() && !response.isDone()) {
+        wait();
+      }
+    }
+
+    @Override
+    public void onNext(WriteResponse value) {
+      response.set(value);
+      signal();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      response.setException(t);
+      signal();
+    }
+
+    @Override
+    public void onCompleted() {
+      response.setException(new IOException("ByteStream write completed without a response."));
+      signal();
+    }
+  }
 }
@@ -29,6 +29,7 @@ import com.facebook.buck.remoteexecution.util.OutputsMaterializer;
 import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.bytestream.ByteStreamGrpc.ByteStreamStub;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -36,6 +37,7 @@ import java.util.List;
 
 /** Implementation of CAS using GRPC. */
 public class GrpcContentAddressableStorage implements ContentAddressedStorage {
+  private final GrpcCasBlobUploader blobUploader;
   private final MultiThreadedBlobUploader uploader;
   private final OutputsMaterializer outputsMaterializer;
 
@@ -45,12 +47,14 @@ public class GrpcContentAddressableStorage implements ContentAddressedStorage {
       String instanceName,
       Protocol protocol,
       BuckEventBus buckEventBus) {
+    this.blobUploader =
+        new GrpcCasBlobUploader(storageStub, byteStreamStub, instanceName, buckEventBus);
     this.uploader =
         new MultiThreadedBlobUploader(
             1000,
             10 * 1024 * 1024,
             MostExecutors.newMultiThreadExecutor("blob-uploader", 4),
-            new GrpcCasBlobUploader(storageStub, buckEventBus));
+            blobUploader);
 
     this.outputsMaterializer =
         new OutputsMaterializer(
@@ -68,4 +72,16 @@ public class GrpcContentAddressableStorage implements ContentAddressedStorage {
       throws IOException {
     return outputsMaterializer.materialize(outputDirectories, outputFiles, root);
   }
+
+  @Override
+  public ImmutableSet<Digest> getMissingDigests(List<Digest> digests) throws IOException {
+    if (digests.isEmpty()) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet<String> missingHashes = blobUploader.getMissingHashes(digests);
+    return digests
+        .stream()
+        .filter(digest -> missingHashes.contains(digest.getHash()))
+        .collect(ImmutableSet.toImmutableSet());
+  }
 }
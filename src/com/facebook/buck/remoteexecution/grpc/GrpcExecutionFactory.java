@@ -54,11 +54,11 @@ public class GrpcExecutionFactory {
   public static RemoteExecutionClients createInProcess(BuckEventBus buckEventBus)
       throws IOException {
     NamedTemporaryDirectory workDir = new NamedTemporaryDirectory("__remote__");
+    LocalContentAddressedStorage storage =
+        new LocalContentAddressedStorage(
+            workDir.getPath().resolve("__cache__"), GrpcRemoteExecutionClients.PROTOCOL);
     GrpcRemoteExecutionServiceImpl remoteExecution =
-        new GrpcRemoteExecutionServiceImpl(
-            new LocalContentAddressedStorage(
-                workDir.getPath().resolve("__cache__"), GrpcRemoteExecutionClients.PROTOCOL),
-            workDir.getPath().resolve("__work__"));
+        new GrpcRemoteExecutionServiceImpl(storage, workDir.getPath().resolve("__work__"));
 
     InProcessServerBuilder builder = InProcessServerBuilder.forName("unique");
     remoteExecution.getServices().forEach(builder::addService);
@@ -76,6 +76,7 @@ public class GrpcExecutionFactory {
         try (Closer closer = Closer.create()) {
           closer.register(server::shutdown);
           closer.register(workDir);
+          closer.register(storage);
           closer.register(super::close);
         }
         try {
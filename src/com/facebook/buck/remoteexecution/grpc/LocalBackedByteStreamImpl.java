@@ -17,6 +17,8 @@
 package com.facebook.buck.remoteexecution.grpc;
 
 import build.bazel.remote.execution.v2.Digest;
+import com.facebook.buck.remoteexecution.CasBlobUploader.UploadData;
+import com.facebook.buck.remoteexecution.CasBlobUploader.UploadResult;
 import com.facebook.buck.remoteexecution.grpc.GrpcProtocol.GrpcDigest;
 import com.facebook.buck.remoteexecution.util.LocalContentAddressedStorage;
 import com.google.bytestream.ByteStreamGrpc.ByteStreamImplBase;
@@ -27,11 +29,14 @@ import com.google.bytestream.ByteStreamProto.ReadResponse;
 import com.google.bytestream.ByteStreamProto.WriteRequest;
 import com.google.bytestream.ByteStreamProto.WriteResponse;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.protobuf.ByteString;
 import io.grpc.stub.StreamObserver;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /** A simple ByteStream impl backed by a {@link LocalContentAddressedStorage}. */
 class LocalBackedByteStreamImpl extends ByteStreamImplBase {
@@ -42,6 +47,13 @@ class LocalBackedByteStreamImpl extends ByteStreamImplBase {
   public static final Pattern RESOURCE_NAME_PATTERN =
       Pattern.compile("([^/]*)/blobs/([^/]*)/([0-9]*)");
 
+  /**
+   * Matches upload patterns as specified by the remote execution api:
+   * {instance_name}/uploads/{uuid}/blobs/{hash}/{size}
+   */
+  public static final Pattern WRITE_RESOURCE_NAME_PATTERN =
+      Pattern.compile("([^/]*)/uploads/[^/]*/blobs/([^/]*)/([0-9]*)");
+
   private static final int BYTESTREAM_READ_CHUNK_SIZE = 1 * 1024 * 1024;
 
   private final LocalContentAddressedStorage storage;
@@ -85,8 +97,66 @@ class LocalBackedByteStreamImpl extends ByteStreamImplBase {
 
   @Override
   public StreamObserver<WriteRequest> write(StreamObserver<WriteResponse> responseObserver) {
-    // Unimplemented, Buck client doesn't use this.
-    return super.write(responseObserver);
+    return new StreamObserver<WriteRequest>() {
+      @Nullable private Digest digest;
+      private ByteString data = ByteString.EMPTY;
+      private boolean finished = false;
+
+      @Override
+      public void onNext(WriteRequest request) {
+        if (finished) {
+          return;
+        }
+        try {
+          if (digest == null) {
+            Matcher matcher = WRITE_RESOURCE_NAME_PATTERN.matcher(request.getResourceName());
+            Preconditions.checkState(matcher.matches());
+            digest =
+                Digest.newBuilder()
+                    .setHash(matcher.group(2))
+                    .setSizeBytes(Long.parseLong(matcher.group(3)))
+                    .build();
+          }
+          Preconditions.checkState(request.getWriteOffset() == data.size());
+          data = data.concat(request.getData());
+          if (request.getFinishWrite()) {
+            finished = true;
+            commit(digest, data, responseObserver);
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+          finished = true;
+          responseObserver.onError(e);
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        finished = true;
+      }
+
+      @Override
+      public void onCompleted() {
+        if (!finished) {
+          responseObserver.onError(
+              new IllegalStateException("Write completed without finishing the blob."));
+        }
+      }
+    };
+  }
+
+  private void commit(Digest digest, ByteString data, StreamObserver<WriteResponse> observer) {
+    ImmutableList<UploadResult> results =
+        storage.batchUpdateBlobs(
+            ImmutableList.of(new UploadData(new GrpcDigest(digest), data::newInput)));
+    for (UploadResult result : results) {
+      if (result.status != 0) {
+        observer.onError(new IOException(result.message));
+        return;
+      }
+    }
+    observer.onNext(WriteResponse.newBuilder().setCommittedSize(data.size()).build());
+    observer.onCompleted();
   }
 
   @Override
@@ -32,14 +32,15 @@ import java.util.concurrent.TimeUnit;
 public class GrpcServer implements Closeable {
   private final Server server;
   private final NamedTemporaryDirectory workDir;
+  private final LocalContentAddressedStorage storage;
 
   public GrpcServer(int port) throws IOException {
     workDir = new NamedTemporaryDirectory("__remote__");
+    storage =
+        new LocalContentAddressedStorage(
+            workDir.getPath().resolve("__cache__"), GrpcRemoteExecutionClients.PROTOCOL);
     GrpcRemoteExecutionServiceImpl remoteExecution =
-        new GrpcRemoteExecutionServiceImpl(
-            new LocalContentAddressedStorage(
-                workDir.getPath().resolve("__cache__"), GrpcRemoteExecutionClients.PROTOCOL),
-            workDir.getPath().resolve("__work__"));
+        new GrpcRemoteExecutionServiceImpl(storage, workDir.getPath().resolve("__work__"));
     NettyServerBuilder builder = NettyServerBuilder.forPort(port);
 
     builder.maxMessageSize(500 * 1024 * 1024);
@@ -57,6 +58,7 @@ public class GrpcServer implements Closeable {
     try (Closer closer = Closer.create()) {
       closer.register(server::shutdown);
       closer.register(workDir);
+      closer.register(storage);
     }
     try {
       server.awaitTermination(3, TimeUnit.SECONDS);
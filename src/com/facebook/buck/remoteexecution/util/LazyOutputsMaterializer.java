@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.remoteexecution.util;
+
+import com.facebook.buck.remoteexecution.ContentAddressedStorage;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps track of output files that are stored in the CAS but haven't been written to disk, and
+ * writes them when they are requested.
+ *
+ * <p>Outputs of remote actions are often only read by other remote actions, which can reference
+ * them by digest. Deferring them here instead of materializing them immediately means their bytes
+ * only get downloaded if something local actually needs them.
+ */
+public class LazyOutputsMaterializer {
+  private final ContentAddressedStorage storage;
+  private final Path root;
+
+  /** Deferred files keyed by path relative to root. Entries are removed once on disk. */
+  private final ConcurrentNavigableMap<Path, DeferredFile> deferredFiles =
+      new ConcurrentSkipListMap<>();
+
+  private final AtomicLong deferredCount = new AtomicLong();
+  private final AtomicLong materializedCount = new AtomicLong();
+
+  public LazyOutputsMaterializer(ContentAddressedStorage storage, Path root) {
+    this.storage = storage;
+    this.root = root;
+  }
+
+  private static class DeferredFile {
+    private final OutputFile outputFile;
+    @Nullable private ListenableFuture<Void> materialized;
+
+    DeferredFile(OutputFile outputFile) {
+      this.outputFile = outputFile;
+    }
+  }
+
+  /** Records output files that are in the CAS without writing them to disk. */
+  public void defer(Collection<OutputFile> outputFiles) {
+    for (OutputFile outputFile : outputFiles) {
+      deferredFiles.put(Paths.get(outputFile.getPath()), new DeferredFile(outputFile));
+      deferredCount.incrementAndGet();
+    }
+  }
+
+  /** @return whether no output files are waiting to be written. */
+  public boolean isEmpty() {
+    return deferredFiles.isEmpty();
+  }
+
+  /** @return the output file at {@code path} (relative to root) if it hasn't been written yet. */
+  public Optional<OutputFile> getDeferredFile(Path path) {
+    DeferredFile deferredFile = deferredFiles.get(path);
+    return deferredFile == null ? Optional.empty() : Optional.of(deferredFile.outputFile);
+  }
+
+  /** @return the output files at or under {@code path} (relative to root) not written yet. */
+  public ImmutableList<OutputFile> getDeferredFiles(Path path) {
+    ImmutableList.Builder<OutputFile> builder = ImmutableList.builder();
+    for (DeferredFile deferredFile : getDeferredEntries(path).values()) {
+      builder.add(deferredFile.outputFile);
+    }
+    return builder.build();
+  }
+
+  private Map<Path, DeferredFile> getDeferredEntries(Path path) {
+    // Paths sort by their string representation, so all descendants of path are found in the range
+    // of paths that share its string as a prefix.
+    String prefix = path.toString();
+    Map<Path, DeferredFile> entries = new LinkedHashMap<>();
+    for (Map.Entry<Path, DeferredFile> entry : deferredFiles.tailMap(path).entrySet()) {
+      if (!entry.getKey().toString().startsWith(prefix)) {
+        break;
+      }
+      if (entry.getKey().startsWith(path)) {
+        entries.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Writes all deferred output files at or under the given paths (relative to root) to disk. Files
+   * requested concurrently by multiple callers are only downloaded once.
+   */
+  public ListenableFuture<Void> materialize(Iterable<Path> paths) {
+    List<ListenableFuture<Void>> futures = new ArrayList<>();
+    List<OutputFile> toFetch = new ArrayList<>();
+    List<Map.Entry<Path, DeferredFile>> started = new ArrayList<>();
+    SettableFuture<Void> fetched = SettableFuture.create();
+    for (Path path : paths) {
+      for (Map.Entry<Path, DeferredFile> entry : getDeferredEntries(path).entrySet()) {
+        DeferredFile deferredFile = entry.getValue();
+        synchronized (deferredFile) {
+          if (deferredFile.materialized == null) {
+            deferredFile.materialized = fetched;
+            toFetch.add(deferredFile.outputFile);
+            started.add(entry);
+          }
+          futures.add(deferredFile.materialized);
+        }
+      }
+    }
+    if (!toFetch.isEmpty()) {
+      try {
+        fetched.setFuture(
+            storage.materializeOutputs(ImmutableList.of(), ImmutableList.copyOf(toFetch), root));
+      } catch (IOException e) {
+        fetched.setException(e);
+      }
+      Futures.addCallback(
+          fetched,
+          new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable Void result) {
+              for (Map.Entry<Path, DeferredFile> entry : started) {
+                deferredFiles.remove(entry.getKey(), entry.getValue());
+              }
+              materializedCount.addAndGet(started.size());
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              // Allow the files to be requested again.
+              for (Map.Entry<Path, DeferredFile> entry : started) {
+                synchronized (entry.getValue()) {
+                  entry.getValue().materialized = null;
+                }
+              }
+            }
+          },
+          MoreExecutors.directExecutor());
+    }
+    return Futures.whenAllSucceed(futures).call(() -> null, MoreExecutors.directExecutor());
+  }
+
+  /** @return the number of output files that were deferred so far. */
+  public long getDeferredCount() {
+    return deferredCount.get();
+  }
+
+  /** @return the number of deferred output files that had to be written to disk. */
+  public long getMaterializedCount() {
+    return materializedCount.get();
+  }
+}
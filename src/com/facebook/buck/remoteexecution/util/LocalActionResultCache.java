@@ -0,0 +1,318 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.remoteexecution.util;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.remoteexecution.RemoteExecutionService.ExecutionResult;
+import com.facebook.buck.remoteexecution.interfaces.Protocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputDirectory;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.facebook.buck.remoteexecution.proto.RemoteExecutionMetadata;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Caches the results of successful remote actions by action digest, in memory and on disk.
+ *
+ * <p>Looking up an action here is much cheaper than asking the remote action cache, and it allows
+ * skipping the upload of the action's inputs entirely. Only the outputs of a result are kept
+ * (stdout and stderr of successful actions are never used).
+ *
+ * <p>The number of results on disk is bounded: once it goes over the limit, the results that were
+ * least recently used are deleted.
+ */
+public class LocalActionResultCache {
+  private static final Logger LOG = Logger.get(LocalActionResultCache.class);
+
+  private static final long DEFAULT_MAX_IN_MEMORY_RESULTS = 100_000;
+  private static final long DEFAULT_MAX_ON_DISK_RESULTS = 500_000;
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private static final ConcurrentMap<Path, LocalActionResultCache> SHARED_CACHES =
+      new ConcurrentHashMap<>();
+
+  private final Path cacheDir;
+  private final Protocol protocol;
+  private final Cache<String, ExecutionResult> results;
+  private final long maxOnDiskResults;
+
+  /**
+   * Approximate number of results on disk, or -1 if the cache directory hasn't been counted yet.
+   */
+  private long onDiskResults = -1;
+
+  public LocalActionResultCache(
+      Path cacheDir, Protocol protocol, long maxInMemoryResults, long maxOnDiskResults) {
+    this.cacheDir = cacheDir;
+    this.protocol = protocol;
+    this.results = CacheBuilder.newBuilder().maximumSize(maxInMemoryResults).build();
+    this.maxOnDiskResults = maxOnDiskResults;
+  }
+
+  /**
+   * @return the cache stored in {@code cacheDir}. The in-memory part of it is kept for the lifetime
+   *     of the process, so that a daemon can serve actions it executed in previous builds without
+   *     going to disk.
+   */
+  public static LocalActionResultCache getSharedCache(Path cacheDir, Protocol protocol) {
+    return SHARED_CACHES.computeIfAbsent(
+        cacheDir,
+        dir ->
+            new LocalActionResultCache(
+                dir, protocol, DEFAULT_MAX_IN_MEMORY_RESULTS, DEFAULT_MAX_ON_DISK_RESULTS));
+  }
+
+  /** @return the result of a previous successful execution of the action, if any. */
+  public Optional<ExecutionResult> get(Digest actionDigest) {
+    String key = getKey(actionDigest);
+    Path path = getPath(key);
+    ExecutionResult result = results.getIfPresent(key);
+    if (result != null) {
+      touch(path);
+      return Optional.of(result);
+    }
+    try {
+      result = readResult(Files.readAllBytes(path));
+      touch(path);
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException | RuntimeException e) {
+      LOG.warn(e, "Dropping unreadable action result %s.", path);
+      invalidate(actionDigest);
+      return Optional.empty();
+    }
+    results.put(key, result);
+    return Optional.of(result);
+  }
+
+  /** Stores the result of a successful execution of the action. */
+  public void put(Digest actionDigest, ExecutionResult result) throws IOException {
+    Preconditions.checkArgument(result.getExitCode() == 0, "Only successes can be cached.");
+    String key = getKey(actionDigest);
+    ExecutionResult cachedResult =
+        new CachedExecutionResult(
+            ImmutableList.copyOf(result.getOutputDirectories()),
+            ImmutableList.copyOf(result.getOutputFiles()),
+            result.getActionResultDigest());
+
+    Path path = getPath(key);
+    Files.createDirectories(path.getParent());
+    // Write to a temporary file first so that concurrent readers never see a partial result.
+    Path tmp = Files.createTempFile(path.getParent(), key, TMP_SUFFIX);
+    try (OutputStream stream = Files.newOutputStream(tmp)) {
+      ObjectMappers.WRITER.writeValue(stream, toJson(cachedResult));
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    results.put(key, cachedResult);
+    trimIfNeeded();
+  }
+
+  /** Removes the result of the action, e.g. because its outputs are not available anymore. */
+  public void invalidate(Digest actionDigest) {
+    String key = getKey(actionDigest);
+    results.invalidate(key);
+    try {
+      Files.deleteIfExists(getPath(key));
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to delete action result %s.", key);
+    }
+  }
+
+  /** Marks the result as recently used, so that it's the last one to be deleted when trimming. */
+  private static void touch(Path path) {
+    try {
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      LOG.debug(e, "Failed to touch action result %s.", path);
+    }
+  }
+
+  /**
+   * Deletes the least recently used results once there are more than {@code maxOnDiskResults} of
+   * them on disk. A tenth of the results are deleted at once so that the directory isn't listed on
+   * every put.
+   */
+  private synchronized void trimIfNeeded() throws IOException {
+    if (onDiskResults >= 0 && ++onDiskResults <= maxOnDiskResults) {
+      return;
+    }
+    List<Path> paths;
+    try (Stream<Path> stream = Files.walk(cacheDir, 2)) {
+      paths =
+          stream
+              .filter(Files::isRegularFile)
+              .filter(path -> !path.getFileName().toString().endsWith(TMP_SUFFIX))
+              .collect(Collectors.toCollection(ArrayList::new));
+    }
+    onDiskResults = paths.size();
+    if (onDiskResults <= maxOnDiskResults) {
+      return;
+    }
+    paths.sort(Comparator.comparing(LocalActionResultCache::getLastModifiedTime));
+    long toDelete = onDiskResults - maxOnDiskResults * 9 / 10;
+    for (Path path : paths.subList(0, (int) toDelete)) {
+      String key = path.getFileName().toString();
+      results.invalidate(key);
+      Files.deleteIfExists(path);
+    }
+    onDiskResults -= toDelete;
+  }
+
+  private static FileTime getLastModifiedTime(Path path) {
+    try {
+      return Files.getLastModifiedTime(path);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private static String getKey(Digest actionDigest) {
+    return actionDigest.getHash() + "_" + actionDigest.getSize();
+  }
+
+  private Path getPath(String key) {
+    return cacheDir.resolve(key.substring(0, 2)).resolve(key);
+  }
+
+  private static ImmutableMap<String, Object> toJson(ExecutionResult result) {
+    ImmutableList.Builder<Object> files = ImmutableList.builder();
+    for (OutputFile file : result.getOutputFiles()) {
+      files.add(
+          ImmutableMap.of(
+              "path", file.getPath(),
+              "digest", toJson(file.getDigest()),
+              "executable", file.getIsExecutable()));
+    }
+    ImmutableList.Builder<Object> directories = ImmutableList.builder();
+    for (OutputDirectory directory : result.getOutputDirectories()) {
+      directories.add(
+          ImmutableMap.of(
+              "path", directory.getPath(), "tree_digest", toJson(directory.getTreeDigest())));
+    }
+    return ImmutableMap.of(
+        "files",
+        files.build(),
+        "directories",
+        directories.build(),
+        "action_result_digest",
+        toJson(result.getActionResultDigest()));
+  }
+
+  private static ImmutableMap<String, Object> toJson(Digest digest) {
+    return ImmutableMap.of("hash", digest.getHash(), "size", digest.getSize());
+  }
+
+  private ExecutionResult readResult(byte[] data) throws IOException {
+    JsonNode root = ObjectMappers.READER.readTree(ObjectMappers.createParser(data));
+    ImmutableList.Builder<OutputFile> files = ImmutableList.builder();
+    for (JsonNode file : root.get("files")) {
+      files.add(
+          protocol.newOutputFile(
+              Paths.get(file.get("path").asText()),
+              readDigest(file.get("digest")),
+              file.get("executable").asBoolean()));
+    }
+    ImmutableList.Builder<OutputDirectory> directories = ImmutableList.builder();
+    for (JsonNode directory : root.get("directories")) {
+      directories.add(
+          protocol.newOutputDirectory(
+              Paths.get(directory.get("path").asText()),
+              readDigest(directory.get("tree_digest"))));
+    }
+    return new CachedExecutionResult(
+        directories.build(), files.build(), readDigest(root.get("action_result_digest")));
+  }
+
+  private Digest readDigest(JsonNode digest) {
+    // Digest sizes are ints, but the stored size is read in full so that a corrupted or too large
+    // size fails the read instead of being silently truncated.
+    return protocol.newDigest(
+        digest.get("hash").asText(), Math.toIntExact(digest.get("size").asLong()));
+  }
+
+  private static class CachedExecutionResult implements ExecutionResult {
+    private final ImmutableList<OutputDirectory> outputDirectories;
+    private final ImmutableList<OutputFile> outputFiles;
+    private final Digest actionResultDigest;
+
+    CachedExecutionResult(
+        ImmutableList<OutputDirectory> outputDirectories,
+        ImmutableList<OutputFile> outputFiles,
+        Digest actionResultDigest) {
+      this.outputDirectories = outputDirectories;
+      this.outputFiles = outputFiles;
+      this.actionResultDigest = actionResultDigest;
+    }
+
+    @Override
+    public List<OutputDirectory> getOutputDirectories() {
+      return outputDirectories;
+    }
+
+    @Override
+    public List<OutputFile> getOutputFiles() {
+      return outputFiles;
+    }
+
+    @Override
+    public int getExitCode() {
+      return 0;
+    }
+
+    @Override
+    public Optional<String> getStdout() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<String> getStderr() {
+      return Optional.empty();
+    }
+
+    @Override
+    public RemoteExecutionMetadata getMetadata() {
+      return RemoteExecutionMetadata.getDefaultInstance();
+    }
+
+    @Override
+    public Digest getActionResultDigest() {
+      return actionResultDigest;
+    }
+  }
+}
@@ -36,6 +36,9 @@ import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.exceptions.BuckUncheckedExecutionException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -43,10 +46,14 @@ import com.google.common.io.ByteStreams;
 import com.google.common.io.MoreFiles;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.devtools.build.lib.concurrent.KeyedLocker.AutoUnlocker;
 import com.google.devtools.build.lib.concurrent.StripedKeyedLocker;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -56,29 +63,96 @@ import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
-/** A simple, on-disk content addressed storage. */
-public class LocalContentAddressedStorage implements ContentAddressedStorage {
+/**
+ * A simple, on-disk content addressed storage.
+ *
+ * <p>Each blob is stored once, and inputs of actions are materialized as hardlinks to it (plus a
+ * single executable copy of blobs that are used as executables, since links share their mode).
+ * The input trees of queued actions can be prefetched with {@link #prefetchInputs(Digest)}, and
+ * the storage can be bounded in size, in which case the least recently used blobs are evicted.
+ * Blobs that are still needed by pending actions can be pinned with {@link #pin(Collection)} so
+ * that they are never evicted.
+ */
+public class LocalContentAddressedStorage implements ContentAddressedStorage, Closeable {
   private final Path cacheDir;
   private final StripedKeyedLocker<String> fileLock = new StripedKeyedLocker<>(8);
+  // Executable copies are created while holding the lock of their blob, so they need their own.
+  private final StripedKeyedLocker<String> executableCopyLock = new StripedKeyedLocker<>(8);
 
   private static final int MISSING_CHECK_LIMIT = 1000;
   private static final int UPLOAD_SIZE_LIMIT = 10 * 1024 * 1024;
+  private static final int PREFETCH_THREADS = 4;
+  private static final long MAX_CACHED_DIRECTORIES = 100_000;
+  /** Evicting down to a bit less than the limit avoids having to evict on every upload. */
+  private static final double EVICTION_TARGET_RATIO = 0.9;
+  private static final String EXECUTABLE_SUFFIX = ".x";
 
+  private final ExecutorService uploadService;
   private final MultiThreadedBlobUploader uploader;
   private final OutputsMaterializer outputsMaterializer;
   private final InputsMaterializer inputsMaterializer;
   private final Protocol protocol;
+  private final long maxSizeBytes;
+
+  private final ConcurrentMap<String, BlobEntry> blobs = new ConcurrentHashMap<>();
+  /** Number of pins of each pinned blob. Pinned blobs are never evicted. */
+  private final ConcurrentMap<String, Integer> pinCounts = new ConcurrentHashMap<>();
+  private final AtomicLong totalSize = new AtomicLong();
+  private final AtomicLong accessClock = new AtomicLong();
+  private final AtomicLong evictedBlobs = new AtomicLong();
+  private final Cache<String, Protocol.Directory> directories =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_DIRECTORIES).build();
+  private final ConcurrentMap<String, ListenableFuture<Void>> pendingPrefetches =
+      new ConcurrentHashMap<>();
+  private final ListeningExecutorService prefetchService =
+      MoreExecutors.listeningDecorator(
+          MostExecutors.newMultiThreadExecutor("local-cas-prefetch", PREFETCH_THREADS));
+
+  /** Size and recency of a blob, used to pick blobs to evict. */
+  private static class BlobEntry {
+    private final long size;
+    private volatile long lastAccess;
+    private volatile boolean hasExecutableCopy;
+
+    BlobEntry(long size, long lastAccess) {
+      this.size = size;
+      this.lastAccess = lastAccess;
+    }
+  }
 
   public LocalContentAddressedStorage(Path cacheDir, Protocol protocol) {
+    this(cacheDir, protocol, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a storage that evicts the least recently used blobs once it holds more than
+   * maxSizeBytes. Blobs already present in cacheDir are accounted for.
+   */
+  public LocalContentAddressedStorage(Path cacheDir, Protocol protocol, long maxSizeBytes) {
     this.cacheDir = cacheDir;
     this.protocol = protocol;
-    ExecutorService uploadService = MostExecutors.newMultiThreadExecutor("local-cas-write", 4);
+    this.maxSizeBytes = maxSizeBytes;
+    try {
+      indexExistingBlobs();
+    } catch (IOException e) {
+      throw new BuckUncheckedExecutionException(e, "When indexing blobs in %s.", cacheDir);
+    }
+    this.uploadService = MostExecutors.newMultiThreadExecutor("local-cas-write", 4);
     this.uploader =
         new MultiThreadedBlobUploader(
             MISSING_CHECK_LIMIT,
@@ -126,39 +200,176 @@ public class LocalContentAddressedStorage implements ContentAddressedStorage {
             new InputsMaterializer.Delegate() {
               @Override
               public void materializeFile(Path root, FileNode file) throws IOException {
-                Path path = getPath(file.getDigest().getHash());
-                Preconditions.checkState(Files.exists(path), "Path %s doesn't exist.", path);
-                // As this file could potentially be materialized as both executable and
-                // non-executable, and
-                // links share that, we need two concrete versions of the file.
-                if (file.getIsExecutable()) {
-                  Path exePath = path.getParent().resolve(path.getFileName() + ".x");
-                  if (!Files.exists(exePath)) {
-                    try (AutoUnlocker ignored = fileLock.writeLock(exePath.toString())) {
-                      if (!Files.exists(exePath)) {
-                        Path tempPath = path.getParent().resolve(path.getFileName() + ".x.tmp");
-                        Files.copy(path, tempPath);
-                        Preconditions.checkState(tempPath.toFile().setExecutable(true));
-                        Files.move(tempPath, exePath);
-                      }
-                    }
-                  }
-                  path = exePath;
-                }
+                String hash = file.getDigest().getHash();
                 Path target = root.resolve(file.getName());
                 Path normalized = target.normalize();
                 Preconditions.checkState(
                     normalized.startsWith(root), "%s doesn't start with %s.", normalized, root);
-                Files.createLink(target, path);
+                // Holding the lock keeps the blob from being evicted while it is linked.
+                try (AutoUnlocker ignored = fileLock.readLock(hash)) {
+                  Path path = getPath(hash);
+                  Preconditions.checkState(Files.exists(path), "Path %s doesn't exist.", path);
+                  // As this file could potentially be materialized as both executable and
+                  // non-executable, and links share that, we need two concrete versions of the
+                  // file.
+                  if (file.getIsExecutable()) {
+                    path = ensureExecutableCopy(hash);
+                  }
+                  touch(hash);
+                  Files.createLink(target, path);
+                }
               }
 
               @Override
               public InputStream getData(Protocol.Digest digest) throws IOException {
                 return LocalContentAddressedStorage.this.getData(digest);
               }
+
+              @Override
+              public Protocol.Directory getDirectory(Protocol.Digest digest) throws IOException {
+                return LocalContentAddressedStorage.this.getDirectory(digest);
+              }
             });
   }
 
+  private void indexExistingBlobs() throws IOException {
+    if (!Files.isDirectory(cacheDir)) {
+      return;
+    }
+    List<Path> executableCopies = new ArrayList<>();
+    try (Stream<Path> paths = Files.walk(cacheDir)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        if (!Files.isRegularFile(path)) {
+          continue;
+        }
+        String name = path.getFileName().toString();
+        if (name.endsWith(".tmp")) {
+          // Left over from an interrupted write.
+          Files.deleteIfExists(path);
+        } else if (name.endsWith(EXECUTABLE_SUFFIX)) {
+          executableCopies.add(path);
+        } else {
+          long size = Files.size(path);
+          blobs.put(name, new BlobEntry(size, accessClock.incrementAndGet()));
+          totalSize.addAndGet(size);
+        }
+      }
+    }
+    for (Path path : executableCopies) {
+      String name = path.getFileName().toString();
+      BlobEntry entry = blobs.get(name.substring(0, name.length() - EXECUTABLE_SUFFIX.length()));
+      if (entry == null) {
+        Files.deleteIfExists(path);
+      } else {
+        entry.hasExecutableCopy = true;
+        totalSize.addAndGet(entry.size);
+      }
+    }
+  }
+
+  /** Returns the executable copy of a blob, creating it if needed. */
+  private Path ensureExecutableCopy(String hash) throws IOException {
+    Path path = getPath(hash);
+    Path exePath = path.getParent().resolve(path.getFileName() + EXECUTABLE_SUFFIX);
+    if (!Files.exists(exePath)) {
+      try (AutoUnlocker ignored = executableCopyLock.writeLock(hash)) {
+        if (!Files.exists(exePath)) {
+          Path tempPath = path.getParent().resolve(path.getFileName() + EXECUTABLE_SUFFIX + ".tmp");
+          Files.copy(path, tempPath);
+          Preconditions.checkState(tempPath.toFile().setExecutable(true));
+          Files.move(tempPath, exePath);
+          BlobEntry entry = blobs.get(hash);
+          if (entry != null) {
+            entry.hasExecutableCopy = true;
+            totalSize.addAndGet(entry.size);
+          }
+        }
+      }
+    }
+    return exePath;
+  }
+
+  /** Marks a blob as recently used, so that it is evicted last. */
+  private void touch(String hash) {
+    BlobEntry entry = blobs.get(hash);
+    if (entry != null) {
+      entry.lastAccess = accessClock.incrementAndGet();
+    }
+  }
+
+  private void recordBlob(String hash, long size) {
+    if (blobs.putIfAbsent(hash, new BlobEntry(size, accessClock.incrementAndGet())) == null) {
+      totalSize.addAndGet(size);
+    }
+  }
+
+  /**
+   * Keeps the blobs from being evicted until they are unpinned as many times as they were pinned.
+   * Blobs can be pinned before they are added.
+   */
+  public void pin(Collection<Protocol.Digest> digests) {
+    for (Protocol.Digest digest : digests) {
+      String hash = digest.getHash();
+      // Holding the lock means that an eviction of the blob has either completed (and the blob
+      // will be added again) or will see the pin.
+      try (AutoUnlocker ignored = fileLock.readLock(hash)) {
+        pinCounts.merge(hash, 1, Integer::sum);
+      }
+    }
+  }
+
+  /** Releases pins taken with {@link #pin(Collection)}. */
+  public void unpin(Collection<Protocol.Digest> digests) {
+    for (Protocol.Digest digest : digests) {
+      pinCounts.computeIfPresent(digest.getHash(), (hash, count) -> count == 1 ? null : count - 1);
+    }
+  }
+
+  /** Evicts the least recently used blobs if the storage holds more than its maximum size. */
+  private synchronized void evictIfNeeded() {
+    if (totalSize.get() <= maxSizeBytes) {
+      return;
+    }
+    long targetSize = (long) (maxSizeBytes * EVICTION_TARGET_RATIO);
+    // Snapshot the access times, as they keep changing while sorting.
+    Map<String, Long> lastAccesses = new HashMap<>();
+    for (Map.Entry<String, BlobEntry> entry : blobs.entrySet()) {
+      if (!pinCounts.containsKey(entry.getKey())) {
+        lastAccesses.put(entry.getKey(), entry.getValue().lastAccess);
+      }
+    }
+    List<String> candidates = new ArrayList<>(lastAccesses.keySet());
+    candidates.sort(Comparator.comparingLong(lastAccesses::get));
+    for (String hash : candidates) {
+      if (totalSize.get() <= targetSize) {
+        break;
+      }
+      evict(hash);
+    }
+  }
+
+  private void evict(String hash) {
+    // Files that were already linked into a build directory are unaffected by the deletion.
+    try (AutoUnlocker ignored = fileLock.writeLock(hash)) {
+      if (pinCounts.containsKey(hash)) {
+        return;
+      }
+      BlobEntry entry = blobs.remove(hash);
+      if (entry == null) {
+        return;
+      }
+      Path path = getPath(hash);
+      Files.deleteIfExists(path);
+      Files.deleteIfExists(path.getParent().resolve(path.getFileName() + EXECUTABLE_SUFFIX));
+      totalSize.addAndGet(entry.hasExecutableCopy ? -2 * entry.size : -entry.size);
+      directories.invalidate(hash);
+      uploader.forgetContained(hash);
+      evictedBlobs.incrementAndGet();
+    } catch (IOException e) {
+      throw new BuckUncheckedExecutionException(e, "When evicting %s.", hash);
+    }
+  }
+
   /** Upload blobs. */
   public ImmutableList<UploadResult> batchUpdateBlobs(ImmutableList<UploadData> blobData) {
     ImmutableList.Builder<UploadResult> responseBuilder = ImmutableList.builder();
@@ -168,6 +379,7 @@ public class LocalContentAddressedStorage implements ContentAddressedStorage {
         Path path = ensureParent(getPath(hash));
         try (AutoUnlocker ignored = fileLock.writeLock(hash)) {
           if (Files.exists(path)) {
+            touch(hash);
             continue;
           }
           Path tempPath = path.getParent().resolve(path.getFileName() + ".tmp");
@@ -177,15 +389,69 @@ public class LocalContentAddressedStorage implements ContentAddressedStorage {
             ByteStreams.copy(dataStream, outputStream);
           }
           Files.move(tempPath, path);
+          recordBlob(hash, Files.size(path));
         }
         responseBuilder.add(new UploadResult(data.digest, 0, null));
       } catch (IOException e) {
         responseBuilder.add(new UploadResult(data.digest, 1, e.getMessage()));
       }
     }
+    evictIfNeeded();
     return responseBuilder.build();
   }
 
+  /**
+   * Reads the input tree of an action that is about to run, so that materializing it afterwards
+   * only has to create links: directories are parsed and cached, executable copies of blobs are
+   * created and all blobs of the tree are marked as recently used. Subtrees shared by multiple
+   * queued actions are only read once.
+   */
+  public ListenableFuture<Void> prefetchInputs(Protocol.Digest inputRootDigest) {
+    String hash = inputRootDigest.getHash();
+    SettableFuture<Void> future = SettableFuture.create();
+    ListenableFuture<Void> pending = pendingPrefetches.putIfAbsent(hash, future);
+    if (pending != null) {
+      return pending;
+    }
+    future.setFuture(
+        Futures.transformAsync(
+            prefetchService.submit(() -> prefetchDirectory(inputRootDigest)),
+            children ->
+                Futures.whenAllSucceed(
+                        RichStream.from(children)
+                            .map(child -> prefetchInputs(child.getDigest()))
+                            .toImmutableList())
+                    .call(() -> null, MoreExecutors.directExecutor()),
+            MoreExecutors.directExecutor()));
+    future.addListener(
+        () -> pendingPrefetches.remove(hash, future), MoreExecutors.directExecutor());
+    return future;
+  }
+
+  private Collection<DirectoryNode> prefetchDirectory(Protocol.Digest digest) throws IOException {
+    Protocol.Directory directory = getDirectory(digest);
+    for (FileNode file : directory.getFilesList()) {
+      String hash = file.getDigest().getHash();
+      try (AutoUnlocker ignored = fileLock.readLock(hash)) {
+        if (file.getIsExecutable() && Files.exists(getPath(hash))) {
+          ensureExecutableCopy(hash);
+        }
+        touch(hash);
+      }
+    }
+    return directory.getDirectoriesList();
+  }
+
+  /** @return the total size of the blobs in the storage, including executable copies. */
+  public long getTotalSize() {
+    return totalSize.get();
+  }
+
+  /** @return the number of blobs that were evicted to keep the storage under its maximum size. */
+  public long getEvictedBlobs() {
+    return evictedBlobs.get();
+  }
+
   @Override
   public ListenableFuture<Void> addMissing(ImmutableMap<Digest, UploadDataSupplier> data)
       throws IOException {
@@ -221,10 +487,7 @@ public class LocalContentAddressedStorage implements ContentAddressedStorage {
 
   private void buildTree(Consumer<Protocol.Directory> builder, Protocol.Digest digest)
       throws IOException {
-    Protocol.Directory directory;
-    try (InputStream data = getData(digest)) {
-      directory = protocol.parseDirectory(ByteBuffer.wrap(ByteStreams.toByteArray(data)));
-    }
+    Protocol.Directory directory = getDirectory(digest);
     builder.accept(directory);
     for (Protocol.DirectoryNode directoryNode : directory.getDirectoriesList()) {
       buildTree(builder, directoryNode.getDigest());
@@ -245,6 +508,8 @@ public class LocalContentAddressedStorage implements ContentAddressedStorage {
 
       InputStream getData(Protocol.Digest digest) throws IOException;
 
+      Protocol.Directory getDirectory(Protocol.Digest digest) throws IOException;
+
       default void materializeSymlink(Path root, SymlinkNode symlink) throws IOException {
         MorePaths.createSymLink(
             new WindowsFS(), root.resolve(symlink.getName()), Paths.get(symlink.getTarget()));
@@ -255,10 +520,7 @@ public class LocalContentAddressedStorage implements ContentAddressedStorage {
     public Optional<Protocol.Command> materializeInputs(
         Path root, Protocol.Digest inputsDigest, Optional<Protocol.Digest> commandDigest)
         throws IOException {
-      Protocol.Directory dir;
-      try (InputStream dataStream = delegate.getData(inputsDigest)) {
-        dir = protocol.parseDirectory(ByteBuffer.wrap(ByteStreams.toByteArray(dataStream)));
-      }
+      Protocol.Directory dir = delegate.getDirectory(inputsDigest);
 
       Files.createDirectories(root);
       for (FileNode file : dir.getFilesList()) {
@@ -302,9 +564,25 @@ public class LocalContentAddressedStorage implements ContentAddressedStorage {
   public InputStream getData(Protocol.Digest digest) throws IOException {
     Path path = getPath(digest.getHash());
     Preconditions.checkState(Files.exists(path), "Couldn't find %s.", path);
+    touch(digest.getHash());
     return new BufferedInputStream(new FileInputStream(path.toFile()));
   }
 
+  private Protocol.Directory getDirectory(Protocol.Digest digest) throws IOException {
+    try {
+      return directories.get(
+          digest.getHash(),
+          () -> {
+            try (InputStream dataStream = getData(digest)) {
+              return protocol.parseDirectory(ByteBuffer.wrap(ByteStreams.toByteArray(dataStream)));
+            }
+          });
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new BuckUncheckedExecutionException(e.getCause(), "When reading %s.", digest);
+    }
+  }
+
   private static Path ensureParent(Path path) throws IOException {
     MoreFiles.createParentDirectories(path);
     return path;
@@ -317,7 +595,28 @@ public class LocalContentAddressedStorage implements ContentAddressedStorage {
         .resolve(hashString);
   }
 
+  @Override
+  public ImmutableSet<Protocol.Digest> getMissingDigests(List<Protocol.Digest> digests) {
+    return findMissing(digests).collect(ImmutableSet.toImmutableSet());
+  }
+
+  /** Returns the digests that aren't stored. Blobs that are found are marked as recently used. */
   public Stream<Protocol.Digest> findMissing(Iterable<Protocol.Digest> digests) {
-    return RichStream.from(digests).filter(digest -> !Files.exists(getPath(digest.getHash())));
+    return RichStream.from(digests)
+        .filter(
+            digest -> {
+              String hash = digest.getHash();
+              if (!Files.exists(getPath(hash))) {
+                return true;
+              }
+              touch(hash);
+              return false;
+            });
+  }
+
+  @Override
+  public void close() {
+    prefetchService.shutdownNow();
+    uploadService.shutdownNow();
   }
 }
@@ -24,6 +24,10 @@ import com.facebook.buck.remoteexecution.interfaces.Protocol.SymlinkNode;
 import com.facebook.buck.util.types.Either;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Verify;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Interners;
@@ -38,6 +42,7 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -47,22 +52,63 @@ import java.util.function.Consumer;
  *
  * <p>It also provides methods to get the {@link Protocol} encoded merkle tree data structures
  * (these values are cached once computed for a node).
+ *
+ * <p>Nodes are only identified by their content, so a cache can be shared by multiple builds. The
+ * results of recent merges are retained, which allows trees that are composed bottom-up from the
+ * trees of their dependencies to be rebuilt, and their digests recomputed, in time proportional to
+ * the number of merged nodes rather than to the size of the resulting tree.
  */
 public class MerkleTreeNodeCache {
-  private final Interner<MerkleTreeNode> nodeInterner = Interners.newStrongInterner();
+  private static final long DEFAULT_MAX_MERGED_NODES = 100_000;
 
-  private final ConcurrentHashMap<Reference<MerkleTreeNode>, NodeData> directoryCache =
+  private static final ConcurrentMap<Class<? extends Protocol>, MerkleTreeNodeCache> SHARED_CACHES =
       new ConcurrentHashMap<>();
 
+  private final Interner<MerkleTreeNode> nodeInterner = Interners.newWeakInterner();
+
+  // Nodes are interned, so keys are compared by identity (which is what weakKeys() does).
+  private final Cache<MerkleTreeNode, NodeData> directoryCache =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  private final Cache<ImmutableList<MerkleTreeNode>, MerkleTreeNode> mergedNodesCache;
+
   private final Protocol protocol;
 
   public MerkleTreeNodeCache(Protocol protocol) {
+    this(protocol, DEFAULT_MAX_MERGED_NODES);
+  }
+
+  /** @param maxMergedNodes maximum number of merge results that are retained by this cache. */
+  public MerkleTreeNodeCache(Protocol protocol, long maxMergedNodes) {
     this.protocol = protocol;
+    this.mergedNodesCache = CacheBuilder.newBuilder().maximumSize(maxMergedNodes).build();
+  }
+
+  /**
+   * Returns a cache that is shared by all users of the same {@link Protocol} implementation in
+   * this process, so that trees and digests computed by one build can be reused by the next ones.
+   */
+  public static MerkleTreeNodeCache getSharedCache(Protocol protocol) {
+    return SHARED_CACHES.computeIfAbsent(
+        protocol.getClass(), ignored -> new MerkleTreeNodeCache(protocol));
   }
 
   /** Creates the full tree of nodes for the provided files/symlinks and returns the root node. */
   public MerkleTreeNode createNode(Map<Path, FileNode> files, Map<Path, SymlinkNode> symlinks) {
+    return createNode(files, symlinks, ImmutableMap.of());
+  }
+
+  /**
+   * Like {@link #createNode(Map, Map)}, but the root node also contains the provided (already
+   * built) nodes as subdirectories. This allows building a tree out of shared subtrees without
+   * walking them again.
+   */
+  public MerkleTreeNode createNode(
+      Map<Path, FileNode> files,
+      Map<Path, SymlinkNode> symlinks,
+      Map<String, MerkleTreeNode> directories) {
     TreeNodeBuilder rootBuilder = new TreeNodeBuilder();
+    directories.forEach(rootBuilder::addDirectory);
     files.forEach(
         (pathFragment, fileNode) -> {
           Preconditions.checkState(
@@ -97,12 +143,21 @@ public class MerkleTreeNodeCache {
       return nodes.iterator().next();
     }
 
+    // Merged nodes are interned, so this only compares references when a merge is repeated.
+    ImmutableList<MerkleTreeNode> key = ImmutableList.copyOf(nodes);
+    MerkleTreeNode merged = mergedNodesCache.getIfPresent(key);
+    if (merged != null) {
+      return merged;
+    }
+
     Iterator<MerkleTreeNode> iterator = nodes.iterator();
     TreeNodeBuilder root = new TreeNodeBuilder(iterator.next());
     while (iterator.hasNext()) {
       root.merge(iterator.next());
     }
-    return root.build(nodeInterner);
+    merged = root.build(nodeInterner);
+    mergedNodesCache.put(key, merged);
+    return merged;
   }
 
   /**
@@ -115,23 +170,20 @@ public class MerkleTreeNodeCache {
 
   /** Gets the {@link Protocol} encoded data for the provided tree. */
   public NodeData getData(MerkleTreeNode node) {
-    Reference<MerkleTreeNode> nodeRef = new Reference<>(node);
-    NodeData nodeData = directoryCache.get(nodeRef);
+    NodeData nodeData = directoryCache.getIfPresent(node);
     if (nodeData != null) {
       return nodeData;
     }
 
     Map<String, NodeData> childrenData = new TreeMap<>();
     node.children.forEach((k, v) -> childrenData.put(k, getData(v)));
-    return directoryCache.computeIfAbsent(
-        nodeRef,
-        ignored -> {
-          List<DirectoryNode> childNodes = new ArrayList<>();
-          childrenData.forEach((k, v) -> childNodes.add(protocol.newDirectoryNode(k, v.digest)));
-          Directory directory =
-              protocol.newDirectory(childNodes, node.files.values(), node.symlinks.values());
-          return new NodeData(directory, protocol.computeDigest(directory));
-        });
+    List<DirectoryNode> childNodes = new ArrayList<>();
+    childrenData.forEach((k, v) -> childNodes.add(protocol.newDirectoryNode(k, v.digest)));
+    Directory directory =
+        protocol.newDirectory(childNodes, node.files.values(), node.symlinks.values());
+    nodeData = new NodeData(directory, protocol.computeDigest(directory));
+    NodeData existing = directoryCache.asMap().putIfAbsent(node, nodeData);
+    return existing == null ? nodeData : existing;
   }
 
   /** Represents a node in the merkle tree of files and symlinks. */
@@ -223,6 +275,17 @@ public class MerkleTreeNodeCache {
       Verify.verify(previous == null || previous.equals(fileNode));
     }
 
+    private void addDirectory(String name, MerkleTreeNode node) {
+      checkName(name);
+      Verify.verify(!symlinksBuilder.containsKey(name));
+      Verify.verify(!filesBuilder.containsKey(name));
+      if (childrenBuilder.containsKey(name)) {
+        getMutableDirectory(name).merge(node);
+      } else {
+        childrenBuilder.put(name, Either.ofLeft(node));
+      }
+    }
+
     private void addSymlink(Path pathFragment, SymlinkNode target) {
       Verify.verify(pathFragment.getNameCount() > 0);
       getMutableParentDirectory(pathFragment)
@@ -332,26 +395,4 @@ public class MerkleTreeNodeCache {
       return directory;
     }
   }
-
-  /** Used to get reference equality for interned objects. */
-  private static class Reference<T> {
-    private final T object;
-
-    Reference(T object) {
-      this.object = object;
-    }
-
-    @Override
-    public int hashCode() {
-      return object.hashCode();
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-      if (!(obj instanceof Reference)) {
-        return false;
-      }
-      return this.object == ((Reference<?>) obj).object;
-    }
-  }
 }
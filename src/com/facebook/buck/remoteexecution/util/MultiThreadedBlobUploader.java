@@ -22,6 +22,7 @@ import com.facebook.buck.remoteexecution.CasBlobUploader.UploadResult;
 import com.facebook.buck.remoteexecution.UploadDataSupplier;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
 import com.facebook.buck.util.concurrent.MoreFutures;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -39,6 +40,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -48,11 +50,22 @@ import java.util.stream.Collectors;
  *
  * <p>All upload requests get added to a queue for the "missing check". Work threads will pull up to
  * missingCheckLimit items off this queue and send a request to the CAS to find which it
- * does/doesn't contain. Any that are missing will be added to a queue to be uploaded. Work threads
- * will then pull those off and upload them. When the upload is finished, the future for that digest
- * will be fulfilled.
+ * does/doesn't contain. While a missing check is in flight, another one is only started once a
+ * full batch is available, so requests of concurrently executing actions get coalesced into fewer
+ * calls. Any that are missing will be added to a queue to be uploaded. Work threads will then pull
+ * those off and upload them. When the upload is finished, the future for that digest will be
+ * fulfilled.
+ *
+ * <p>Small blobs are uploaded in batches. The size of a batch in bytes adapts to the observed
+ * latency of previous batches and never exceeds uploadSizeLimit. Blobs that are larger than that
+ * are uploaded one by one with {@link CasBlobUploader#uploadBlob(UploadData)}, which allows them to
+ * be streamed by multiple threads at the same time.
  */
 public class MultiThreadedBlobUploader {
+  private static final int MAX_CONCURRENT_MISSING_CHECKS = 4;
+  private static final long TARGET_BATCH_LATENCY_MILLIS = 1000;
+  private static final int MIN_BATCH_SIZE_LIMIT = 256 * 1024;
+
   private final int missingCheckLimit;
   private final int uploadSizeLimit;
 
@@ -63,6 +76,7 @@ public class MultiThreadedBlobUploader {
       CasBlobUploader delegate) {
     this.missingCheckLimit = missingCheckLimit;
     this.uploadSizeLimit = uploadSizeLimit;
+    this.batchSizeLimit = new AtomicInteger(uploadSizeLimit);
     this.uploadService = uploadService;
     this.asyncBlobUploader = delegate;
   }
@@ -72,7 +86,10 @@ public class MultiThreadedBlobUploader {
 
   private final Set<String> containedHashes = Sets.newConcurrentHashSet();
   private final BlockingQueue<PendingUpload> waitingUploads = new LinkedBlockingQueue<>();
+  private final BlockingQueue<PendingUpload> waitingLargeUploads = new LinkedBlockingQueue<>();
   private final BlockingQueue<PendingUpload> waitingMissingCheck = new LinkedBlockingQueue<>();
+  private final AtomicInteger missingChecksInFlight = new AtomicInteger();
+  private final AtomicInteger batchSizeLimit;
 
   private final ExecutorService uploadService;
   private final CasBlobUploader asyncBlobUploader;
@@ -100,6 +117,11 @@ public class MultiThreadedBlobUploader {
     return enqueue(data);
   }
 
+  /** Forgets that the CAS contains a blob, e.g. because the blob was evicted from it. */
+  public void forgetContained(String hash) {
+    containedHashes.remove(hash);
+  }
+
   private ListenableFuture<Void> enqueue(ImmutableMap<Digest, UploadDataSupplier> data) {
     ImmutableList.Builder<ListenableFuture<Void>> futures = ImmutableList.builder();
     for (Entry<Digest, UploadDataSupplier> entry : data.entrySet()) {
@@ -124,12 +146,43 @@ public class MultiThreadedBlobUploader {
                 pendingUploads.remove(digest.getHash());
               }));
       futures.add(resultFuture);
-      uploadService.submit(this::processUploads);
     }
+    uploadService.submit(this::processUploads);
     return Futures.whenAllSucceed(futures.build()).call(() -> null);
   }
 
+  private boolean tryStartMissingCheck() {
+    while (true) {
+      int inFlight = missingChecksInFlight.get();
+      if (inFlight >= MAX_CONCURRENT_MISSING_CHECKS || !canStartMissingCheck(inFlight)) {
+        return false;
+      }
+      if (missingChecksInFlight.compareAndSet(inFlight, inFlight + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private boolean canStartMissingCheck(int inFlight) {
+    // Requests that arrive while other checks are in flight are coalesced until either those
+    // checks finish or there is enough of them to fill a whole request.
+    return inFlight == 0
+        ? !waitingMissingCheck.isEmpty()
+        : waitingMissingCheck.size() >= missingCheckLimit;
+  }
+
   private void processMissing() {
+    if (!tryStartMissingCheck()) {
+      return;
+    }
+    try {
+      checkMissing();
+    } finally {
+      missingChecksInFlight.decrementAndGet();
+    }
+  }
+
+  private void checkMissing() {
     ImmutableList.Builder<PendingUpload> dataBuilder = ImmutableList.builder();
     int count = 0;
     while (count < missingCheckLimit && !waitingMissingCheck.isEmpty()) {
@@ -154,10 +207,12 @@ public class MultiThreadedBlobUploader {
       Set<String> missing = asyncBlobUploader.getMissingHashes(requiredDigests);
 
       for (PendingUpload entry : data) {
-        if (missing.contains(entry.getHash())) {
-          waitingUploads.add(entry);
-        } else {
+        if (!missing.contains(entry.getHash())) {
           entry.future.set(null);
+        } else if (entry.uploadData.digest.getSize() > uploadSizeLimit) {
+          waitingLargeUploads.add(entry);
+        } else {
+          waitingUploads.add(entry);
         }
       }
     } catch (Throwable e) {
@@ -165,11 +220,40 @@ public class MultiThreadedBlobUploader {
     }
   }
 
+  private boolean hasPendingWork() {
+    return !waitingUploads.isEmpty()
+        || !waitingLargeUploads.isEmpty()
+        || canStartMissingCheck(missingChecksInFlight.get());
+  }
+
+  private void scheduleIfPendingWork() {
+    if (hasPendingWork()) {
+      uploadService.submit(this::processUploads);
+    }
+  }
+
   private void processUploads() {
     processMissing();
+    PendingUpload largeUpload = waitingLargeUploads.poll();
+    if (largeUpload != null) {
+      // Let other threads pick up the remaining work while this blob is being uploaded.
+      scheduleIfPendingWork();
+      uploadLargeBlob(largeUpload);
+    } else {
+      ImmutableMap<String, PendingUpload> data = takeBatch();
+      if (!data.isEmpty()) {
+        scheduleIfPendingWork();
+        uploadBatch(data);
+      }
+    }
+    scheduleIfPendingWork();
+  }
+
+  private ImmutableMap<String, PendingUpload> takeBatch() {
     ImmutableMap.Builder<String, PendingUpload> dataBuilder = ImmutableMap.builder();
+    int sizeLimit = batchSizeLimit.get();
     int size = 0;
-    while (size < uploadSizeLimit && !waitingUploads.isEmpty()) {
+    while (size < sizeLimit && !waitingUploads.isEmpty()) {
       PendingUpload data = waitingUploads.poll();
       if (data == null) {
         break;
@@ -177,41 +261,72 @@ public class MultiThreadedBlobUploader {
       dataBuilder.put(data.getHash(), data);
       size += data.uploadData.digest.getSize();
     }
-    ImmutableMap<String, PendingUpload> data = dataBuilder.build();
+    return dataBuilder.build();
+  }
 
-    if (!data.isEmpty()) {
-      try {
-        ImmutableList.Builder<UploadData> blobsBuilder = ImmutableList.builder();
-        for (PendingUpload entry : data.values()) {
-          blobsBuilder.add(entry.uploadData);
-        }
+  private void uploadBatch(ImmutableMap<String, PendingUpload> data) {
+    try {
+      ImmutableList<UploadData> blobs =
+          data.values().stream().map(e -> e.uploadData).collect(ImmutableList.toImmutableList());
 
-        ImmutableList<UploadData> blobs =
-            data.values().stream().map(e -> e.uploadData).collect(ImmutableList.toImmutableList());
-
-        ImmutableList<UploadResult> results = asyncBlobUploader.batchUpdateBlobs(blobs);
-        Preconditions.checkState(results.size() == blobs.size());
-        results.forEach(
-            result -> {
-              PendingUpload pendingUpload =
-                  Objects.requireNonNull(data.get(result.digest.getHash()));
-              if (result.status == 0) {
-                pendingUpload.future.set(null);
-              } else {
-                pendingUpload.future.setException(
-                    new IOException(
-                        String.format(
-                            "Failed uploading with message: %s. When uploading blob: %s.",
-                            result.message, pendingUpload.uploadData.data.describe())));
-              }
-            });
-        data.forEach((k, pending) -> pending.future.setException(new RuntimeException("idk")));
-      } catch (Exception e) {
-        data.forEach((k, pending) -> pending.future.setException(e));
-      }
+      long startMillis = System.currentTimeMillis();
+      ImmutableList<UploadResult> results = asyncBlobUploader.batchUpdateBlobs(blobs);
+      adjustBatchSizeLimit(
+          blobs.stream().mapToLong(blob -> blob.digest.getSize()).sum(),
+          System.currentTimeMillis() - startMillis);
+      Preconditions.checkState(results.size() == blobs.size());
+      results.forEach(
+          result -> {
+            PendingUpload pendingUpload =
+                Objects.requireNonNull(data.get(result.digest.getHash()));
+            setResult(pendingUpload, result);
+          });
+      data.forEach((k, pending) -> pending.future.setException(new RuntimeException("idk")));
+    } catch (Exception e) {
+      data.forEach((k, pending) -> pending.future.setException(e));
     }
-    if (!waitingMissingCheck.isEmpty() || !waitingUploads.isEmpty()) {
-      uploadService.submit(this::processUploads);
+  }
+
+  private void uploadLargeBlob(PendingUpload pendingUpload) {
+    try {
+      setResult(pendingUpload, asyncBlobUploader.uploadBlob(pendingUpload.uploadData));
+    } catch (Exception e) {
+      pendingUpload.future.setException(e);
     }
   }
+
+  private static void setResult(PendingUpload pendingUpload, UploadResult result) {
+    if (result.status == 0) {
+      pendingUpload.future.set(null);
+    } else {
+      pendingUpload.future.setException(
+          new IOException(
+              String.format(
+                  "Failed uploading with message: %s. When uploading blob: %s.",
+                  result.message, pendingUpload.uploadData.data.describe())));
+    }
+  }
+
+  /**
+   * Shrinks batches that take longer than the target latency and grows full batches that do not,
+   * so that batches stay large when the CAS keeps up but a single slow batch doesn't hold back too
+   * many blobs.
+   */
+  private void adjustBatchSizeLimit(long batchSize, long elapsedMillis) {
+    batchSizeLimit.updateAndGet(
+        limit -> {
+          if (elapsedMillis > TARGET_BATCH_LATENCY_MILLIS) {
+            return Math.max(MIN_BATCH_SIZE_LIMIT, limit / 2);
+          }
+          if (batchSize >= limit) {
+            return (int) Math.min(uploadSizeLimit, limit + limit / 4L);
+          }
+          return limit;
+        });
+  }
+
+  @VisibleForTesting
+  int getBatchSizeLimit() {
+    return batchSizeLimit.get();
+  }
 }
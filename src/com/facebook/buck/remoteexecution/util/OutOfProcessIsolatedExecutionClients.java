@@ -23,6 +23,7 @@ import com.facebook.buck.remoteexecution.ContentAddressedStorage;
 import com.facebook.buck.remoteexecution.RemoteExecutionClients;
 import com.facebook.buck.remoteexecution.RemoteExecutionService;
 import com.facebook.buck.remoteexecution.RemoteExecutionService.ExecutionResult;
+import com.facebook.buck.remoteexecution.UploadDataSupplier;
 import com.facebook.buck.remoteexecution.interfaces.Protocol;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Action;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Command;
@@ -32,21 +33,56 @@ import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
 import com.facebook.buck.remoteexecution.proto.RemoteExecutionMetadata;
 import com.facebook.buck.util.NamedTemporaryDirectory;
 import com.facebook.buck.util.Scope;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 
 /** IsolatedExecution implementation that will run buildrules in a subprocess. */
 public class OutOfProcessIsolatedExecutionClients implements RemoteExecutionClients {
+  /** Uploads that no action claimed within this time are considered abandoned. */
+  private static final long INPUTS_LEASE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+
   private final Protocol protocol;
   private final NamedTemporaryDirectory workDir;
   private final LocalContentAddressedStorage storage;
+  private final ContentAddressedStorage pinningStorage;
+  private final ListeningExecutorService actionService;
   private final RemoteExecutionService executionService;
+  private final Queue<InputsLease> unclaimedLeases = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Blobs uploaded together, which include the inputs of an action and the action itself. They are
+   * pinned in the storage from the upload until the action that claims them has materialized its
+   * inputs, so that uploads of other actions can't evict them in between.
+   */
+  private static class InputsLease {
+    private final ImmutableList<Digest> digests;
+    private final ImmutableSet<String> hashes;
+    private final long createdMillis = System.currentTimeMillis();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    InputsLease(ImmutableList<Digest> digests) {
+      this.digests = digests;
+      this.hashes = digests.stream().map(Digest::getHash).collect(ImmutableSet.toImmutableSet());
+    }
+  }
 
   /**
    * Returns a RemoteExecution implementation that uses a local CAS and a separate local temporary
@@ -54,85 +90,199 @@ public class OutOfProcessIsolatedExecutionClients implements RemoteExecutionClie
    */
   public static OutOfProcessIsolatedExecutionClients create(
       Protocol protocol, BuckEventBus eventBus) throws IOException {
-    return new OutOfProcessIsolatedExecutionClients(protocol, eventBus);
+    return create(protocol, eventBus, Long.MAX_VALUE);
   }
 
-  private OutOfProcessIsolatedExecutionClients(final Protocol protocol, BuckEventBus eventBus)
-      throws IOException {
+  /**
+   * Returns a RemoteExecution implementation that uses a local CAS, bounded to casMaxSizeBytes, and
+   * a separate local temporary directory for execution.
+   */
+  public static OutOfProcessIsolatedExecutionClients create(
+      Protocol protocol, BuckEventBus eventBus, long casMaxSizeBytes) throws IOException {
+    return new OutOfProcessIsolatedExecutionClients(protocol, eventBus, casMaxSizeBytes);
+  }
+
+  private OutOfProcessIsolatedExecutionClients(
+      final Protocol protocol, BuckEventBus eventBus, long casMaxSizeBytes) throws IOException {
     this.workDir = new NamedTemporaryDirectory("__work__");
     this.storage =
-        new LocalContentAddressedStorage(workDir.getPath().resolve("__cache__"), protocol);
+        new LocalContentAddressedStorage(
+            workDir.getPath().resolve("__cache__"), protocol, casMaxSizeBytes);
+    this.pinningStorage =
+        new ContentAddressedStorage() {
+          @Override
+          public ListenableFuture<Void> addMissing(ImmutableMap<Digest, UploadDataSupplier> data)
+              throws IOException {
+            return addMissingAndPin(data);
+          }
+
+          @Override
+          public ListenableFuture<Void> materializeOutputs(
+              List<OutputDirectory> outputDirectories, List<OutputFile> outputFiles, Path root)
+              throws IOException {
+            return storage.materializeOutputs(outputDirectories, outputFiles, root);
+          }
+
+          @Override
+          public ImmutableSet<Digest> getMissingDigests(List<Digest> digests) {
+            return storage.getMissingDigests(digests);
+          }
+        };
     this.protocol = protocol;
+    // Actions are queued here rather than run on the caller's thread, so that the inputs of queued
+    // actions can be prefetched while earlier ones run.
+    this.actionService =
+        MoreExecutors.listeningDecorator(
+            MostExecutors.newMultiThreadExecutor(
+                "local-re-action", Runtime.getRuntime().availableProcessors()));
     this.executionService =
         (actionDigest, ruleName) -> {
-          Action action = storage.materializeAction(actionDigest);
-
-          Path buildDir = workDir.getPath().resolve(action.getInputRootDigest().getHash());
-          try (Closeable ignored = () -> MostFiles.deleteRecursively(buildDir)) {
-            Command command;
-            try (Scope ignored2 = LeafEvents.scope(eventBus, "materializing_inputs")) {
-              command =
-                  storage
-                      .materializeInputs(
-                          buildDir,
-                          action.getInputRootDigest(),
-                          Optional.of(action.getCommandDigest()))
-                      .get();
+          ImmutableList<InputsLease> leases = claimLeases(actionDigest);
+          ListenableFuture<ExecutionResult> result;
+          try {
+            Action action = storage.materializeAction(actionDigest);
+            result =
+                Futures.transformAsync(
+                    storage.prefetchInputs(action.getInputRootDigest()),
+                    ignored -> runAction(action, eventBus, leases),
+                    actionService);
+          } catch (IOException | RuntimeException e) {
+            release(leases);
+            throw e;
+          }
+          result.addListener(() -> release(leases), MoreExecutors.directExecutor());
+          return result;
+        };
+  }
+
+  private ListenableFuture<Void> addMissingAndPin(ImmutableMap<Digest, UploadDataSupplier> data)
+      throws IOException {
+    releaseAbandonedLeases();
+    InputsLease lease = new InputsLease(data.keySet().asList());
+    // Pin before uploading, so that blobs that are already stored can't be evicted either.
+    storage.pin(lease.digests);
+    ListenableFuture<Void> future;
+    try {
+      future = storage.addMissing(data);
+    } catch (IOException | RuntimeException e) {
+      release(ImmutableList.of(lease));
+      throw e;
+    }
+    unclaimedLeases.add(lease);
+    Futures.addCallback(
+        future,
+        new FutureCallback<Void>() {
+          @Override
+          public void onSuccess(@Nullable Void result) {}
+
+          @Override
+          public void onFailure(Throwable t) {
+            release(ImmutableList.of(lease));
+          }
+        },
+        MoreExecutors.directExecutor());
+    return future;
+  }
+
+  /** Takes the leases of the uploads that contained the action. */
+  private ImmutableList<InputsLease> claimLeases(Digest actionDigest) {
+    ImmutableList.Builder<InputsLease> claimed = ImmutableList.builder();
+    for (InputsLease lease : unclaimedLeases) {
+      if (lease.hashes.contains(actionDigest.getHash()) && unclaimedLeases.remove(lease)) {
+        claimed.add(lease);
+      }
+    }
+    return claimed.build();
+  }
+
+  private void releaseAbandonedLeases() {
+    long now = System.currentTimeMillis();
+    for (InputsLease lease : unclaimedLeases) {
+      if (now - lease.createdMillis > INPUTS_LEASE_TIMEOUT_MS && unclaimedLeases.remove(lease)) {
+        release(ImmutableList.of(lease));
+      }
+    }
+  }
+
+  private void release(ImmutableList<InputsLease> leases) {
+    for (InputsLease lease : leases) {
+      if (lease.released.compareAndSet(false, true)) {
+        unclaimedLeases.remove(lease);
+        storage.unpin(lease.digests);
+      }
+    }
+  }
+
+  private ListenableFuture<ExecutionResult> runAction(
+      Action action, BuckEventBus eventBus, ImmutableList<InputsLease> leases)
+      throws IOException, InterruptedException {
+    Path buildDir = workDir.getPath().resolve(action.getInputRootDigest().getHash());
+    try (Closeable ignored = () -> MostFiles.deleteRecursively(buildDir)) {
+      Command command;
+      try (Scope ignored2 = LeafEvents.scope(eventBus, "materializing_inputs")) {
+        command =
+            storage
+                .materializeInputs(
+                    buildDir,
+                    action.getInputRootDigest(),
+                    Optional.of(action.getCommandDigest()))
+                .get();
+      }
+      // Materialized inputs are links, they stay valid if their blobs are evicted.
+      release(leases);
+
+      ActionRunner.ActionResult actionResult =
+          new ActionRunner(protocol, eventBus)
+              .runAction(
+                  command.getCommand(),
+                  command.getEnvironment(),
+                  command
+                      .getOutputDirectories()
+                      .stream()
+                      .map(Paths::get)
+                      .collect(ImmutableSet.toImmutableSet()),
+                  buildDir);
+      try (Scope ignored2 = LeafEvents.scope(eventBus, "uploading_results")) {
+        Futures.getUnchecked(storage.addMissing(actionResult.requiredData));
+      }
+      return Futures.immediateFuture(
+          new ExecutionResult() {
+            @Override
+            public ImmutableList<OutputDirectory> getOutputDirectories() {
+              return actionResult.outputDirectories;
             }
 
-            ActionRunner.ActionResult actionResult =
-                new ActionRunner(protocol, eventBus)
-                    .runAction(
-                        command.getCommand(),
-                        command.getEnvironment(),
-                        command
-                            .getOutputDirectories()
-                            .stream()
-                            .map(Paths::get)
-                            .collect(ImmutableSet.toImmutableSet()),
-                        buildDir);
-            try (Scope ignored2 = LeafEvents.scope(eventBus, "uploading_results")) {
-              Futures.getUnchecked(storage.addMissing(actionResult.requiredData));
+            @Override
+            public ImmutableList<OutputFile> getOutputFiles() {
+              return actionResult.outputFiles;
             }
-            return Futures.immediateFuture(
-                new ExecutionResult() {
-                  @Override
-                  public ImmutableList<OutputDirectory> getOutputDirectories() {
-                    return actionResult.outputDirectories;
-                  }
-
-                  @Override
-                  public ImmutableList<OutputFile> getOutputFiles() {
-                    return actionResult.outputFiles;
-                  }
-
-                  @Override
-                  public int getExitCode() {
-                    return actionResult.exitCode;
-                  }
-
-                  @Override
-                  public Optional<String> getStdout() {
-                    return Optional.of(actionResult.stdout);
-                  }
-
-                  @Override
-                  public Optional<String> getStderr() {
-                    return Optional.of(actionResult.stderr);
-                  }
-
-                  @Override
-                  public RemoteExecutionMetadata getMetadata() {
-                    return RemoteExecutionMetadata.getDefaultInstance();
-                  }
-
-                  @Override
-                  public Digest getActionResultDigest() {
-                    return protocol.newDigest("", 0);
-                  }
-                });
-          }
-        };
+
+            @Override
+            public int getExitCode() {
+              return actionResult.exitCode;
+            }
+
+            @Override
+            public Optional<String> getStdout() {
+              return Optional.of(actionResult.stdout);
+            }
+
+            @Override
+            public Optional<String> getStderr() {
+              return Optional.of(actionResult.stderr);
+            }
+
+            @Override
+            public RemoteExecutionMetadata getMetadata() {
+              return RemoteExecutionMetadata.getDefaultInstance();
+            }
+
+            @Override
+            public Digest getActionResultDigest() {
+              return protocol.newDigest("", 0);
+            }
+          });
+    }
   }
 
   @Override
@@ -142,7 +292,7 @@ public class OutOfProcessIsolatedExecutionClients implements RemoteExecutionClie
 
   @Override
   public ContentAddressedStorage getContentAddressedStorage() {
-    return storage;
+    return pinningStorage;
   }
 
   @Override
@@ -152,6 +302,8 @@ public class OutOfProcessIsolatedExecutionClients implements RemoteExecutionClie
 
   @Override
   public void close() throws IOException {
+    actionService.shutdownNow();
+    storage.close();
     workDir.close();
   }
 }
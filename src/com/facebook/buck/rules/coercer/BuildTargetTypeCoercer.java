@@ -24,10 +24,15 @@ import com.facebook.buck.core.model.UnflavoredBuildTarget;
 import com.facebook.buck.core.parser.buildtargetparser.UnconfiguredBuildTargetFactory;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.nio.file.Path;
 
 public class BuildTargetTypeCoercer extends LeafTypeCoercer<BuildTarget> {
 
+  /** Targets are referenced from many build rules, so equal instances are shared. */
+  private static final Interner<BuildTarget> BUILD_TARGET_INTERNER = Interners.newWeakInterner();
+
   private final UnconfiguredBuildTargetFactory unconfiguredBuildTargetFactory;
 
   public BuildTargetTypeCoercer(UnconfiguredBuildTargetFactory unconfiguredBuildTargetFactory) {
@@ -57,9 +62,10 @@ public class BuildTargetTypeCoercer extends LeafTypeCoercer<BuildTarget> {
           UnflavoredBuildTarget.BUILD_TARGET_PREFIX
               + MorePaths.pathWithUnixSeparators(pathRelativeToProjectRoot);
 
-      return unconfiguredBuildTargetFactory
-          .createForBaseName(cellRoots, baseName, param)
-          .configure(targetConfiguration);
+      return BUILD_TARGET_INTERNER.intern(
+          unconfiguredBuildTargetFactory
+              .createForBaseName(cellRoots, baseName, param)
+              .configure(targetConfiguration));
     } catch (BuildTargetParseException e) {
       throw new CoerceFailedException(
           String.format(
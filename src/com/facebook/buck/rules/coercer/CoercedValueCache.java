@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.coercer;
+
+import com.facebook.buck.core.cell.CellPathResolver;
+import com.facebook.buck.core.model.TargetConfiguration;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.ImmutableMapWithNullValues;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableMap;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Memoizes results of {@link TypeCoercer#coerce} for raw attribute values.
+ *
+ * <p>Build files tend to repeat the same attribute values across targets (e.g. {@code deps} or
+ * {@code visibility}) and the raw values of a package are usually identical to the ones seen
+ * during the previous parse. Coercing them again creates new but equal build targets, source
+ * paths and collections each time. This cache makes such coercions return the instance that was
+ * created first, which saves both the coercion work and the heap retained by duplicated values.
+ *
+ * <p>Results are held weakly, so entries only live as long as some constructor arg still
+ * references them, and cached coercers are held weakly too, so this cache never outlives the
+ * {@link TypeCoercerFactory} that created them. Only immutable raw values are memoized and failed
+ * coercions are never cached.
+ *
+ * <p>Raw values only match if their maps and sets are also in the same order, since coercers keep
+ * that order and rule keys depend on it.
+ */
+public class CoercedValueCache {
+
+  public static final CoercedValueCache INSTANCE = new CoercedValueCache();
+
+  private final LoadingCache<TypeCoercer<?>, Cache<CoercionKey, Object>> coercedValueCache =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(CacheLoader.from(coercer -> CacheBuilder.newBuilder().weakValues().build()));
+
+  private CoercedValueCache() {}
+
+  /**
+   * Coerces {@code rawValue} using {@code coercer}, reusing the result of a previous coercion of an
+   * equal raw value performed with the same arguments, if it is still alive.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T coerce(
+      TypeCoercer<T> coercer,
+      CellPathResolver cellRoots,
+      ProjectFilesystem filesystem,
+      Path pathRelativeToProjectRoot,
+      TargetConfiguration targetConfiguration,
+      Object rawValue)
+      throws CoerceFailedException {
+    if (!isImmutable(rawValue)) {
+      return coercer.coerce(
+          cellRoots, filesystem, pathRelativeToProjectRoot, targetConfiguration, rawValue);
+    }
+    Cache<CoercionKey, Object> cache = coercedValueCache.getUnchecked(coercer);
+    CoercionKey key =
+        new CoercionKey(
+            cellRoots, filesystem, pathRelativeToProjectRoot, targetConfiguration, rawValue);
+    T value = (T) cache.getIfPresent(key);
+    if (value != null) {
+      return value;
+    }
+    value =
+        coercer.coerce(
+            cellRoots, filesystem, pathRelativeToProjectRoot, targetConfiguration, rawValue);
+    if (value == null) {
+      return null;
+    }
+    T existingValue = (T) cache.asMap().putIfAbsent(key, value);
+    return existingValue == null ? value : existingValue;
+  }
+
+  private static boolean isImmutable(Object rawValue) {
+    return rawValue instanceof String
+        || rawValue instanceof Number
+        || rawValue instanceof Boolean
+        || rawValue instanceof ImmutableCollection
+        || rawValue instanceof ImmutableMap
+        || rawValue instanceof ImmutableMapWithNullValues;
+  }
+
+  /** Arguments of a single {@link TypeCoercer#coerce} invocation. */
+  private static class CoercionKey {
+    private final CellPathResolver cellRoots;
+    private final ProjectFilesystem filesystem;
+    private final Path pathRelativeToProjectRoot;
+    private final TargetConfiguration targetConfiguration;
+    private final Object rawValue;
+    private final int hashCode;
+
+    CoercionKey(
+        CellPathResolver cellRoots,
+        ProjectFilesystem filesystem,
+        Path pathRelativeToProjectRoot,
+        TargetConfiguration targetConfiguration,
+        Object rawValue) {
+      this.cellRoots = cellRoots;
+      this.filesystem = filesystem;
+      this.pathRelativeToProjectRoot = pathRelativeToProjectRoot;
+      this.targetConfiguration = targetConfiguration;
+      this.rawValue = rawValue;
+      this.hashCode =
+          Objects.hash(
+              System.identityHashCode(cellRoots),
+              System.identityHashCode(filesystem),
+              pathRelativeToProjectRoot,
+              targetConfiguration,
+              rawValue);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CoercionKey)) {
+        return false;
+      }
+      CoercionKey that = (CoercionKey) o;
+      return hashCode == that.hashCode
+          && cellRoots == that.cellRoots
+          && filesystem == that.filesystem
+          && pathRelativeToProjectRoot.equals(that.pathRelativeToProjectRoot)
+          && targetConfiguration.equals(that.targetConfiguration)
+          && orderedEquals(rawValue, that.rawValue);
+    }
+
+    /** Like {@link Object#equals}, but collections and maps must iterate in the same order. */
+    private static boolean orderedEquals(@Nullable Object first, @Nullable Object second) {
+      if (first == second) {
+        return true;
+      }
+      if (first == null || second == null) {
+        return false;
+      }
+      if (first instanceof Map) {
+        return second instanceof Map
+            && orderedEquals(((Map<?, ?>) first).entrySet(), ((Map<?, ?>) second).entrySet());
+      }
+      if (first instanceof Map.Entry) {
+        if (!(second instanceof Map.Entry)) {
+          return false;
+        }
+        Map.Entry<?, ?> firstEntry = (Map.Entry<?, ?>) first;
+        Map.Entry<?, ?> secondEntry = (Map.Entry<?, ?>) second;
+        return orderedEquals(firstEntry.getKey(), secondEntry.getKey())
+            && orderedEquals(firstEntry.getValue(), secondEntry.getValue());
+      }
+      if (first instanceof Collection) {
+        if (!(second instanceof Collection)
+            || (first instanceof Set) != (second instanceof Set)
+            || ((Collection<?>) first).size() != ((Collection<?>) second).size()) {
+          return false;
+        }
+        Iterator<?> secondElements = ((Collection<?>) second).iterator();
+        for (Object element : (Collection<?>) first) {
+          if (!orderedEquals(element, secondElements.next())) {
+            return false;
+          }
+        }
+        return true;
+      }
+      return first.equals(second);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
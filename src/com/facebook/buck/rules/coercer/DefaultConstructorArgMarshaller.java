@@ -61,13 +61,23 @@ public class DefaultConstructorArgMarshaller implements ConstructorArgMarshaller
     ImmutableMap<String, ParamInfo> allParamInfo =
         CoercedTypeCache.INSTANCE.getAllParamInfo(typeCoercerFactory, dtoClass);
     for (ParamInfo info : allParamInfo.values()) {
-      info.setFromParams(
-          cellRoots,
-          filesystem,
-          buildTarget,
-          buildTarget.getTargetConfiguration(),
-          dtoAndBuild.getFirst(),
-          instance);
+      Object rawValue = instance.get(info.getName());
+      if (rawValue == null) {
+        continue;
+      }
+      try {
+        info.setCoercedValue(
+            dtoAndBuild.getFirst(),
+            CoercedValueCache.INSTANCE.coerce(
+                info.getTypeCoercer(),
+                cellRoots,
+                filesystem,
+                buildTarget.getBasePath(),
+                buildTarget.getTargetConfiguration(),
+                rawValue));
+      } catch (CoerceFailedException e) {
+        throw new ParamInfoException(info.getName(), e.getMessage(), e);
+      }
     }
     T dto = dtoAndBuild.getSecond().apply(dtoAndBuild.getFirst());
     collectDeclaredDeps(cellRoots, allParamInfo.get("deps"), declaredDeps, dto);
@@ -144,23 +154,28 @@ public class DefaultConstructorArgMarshaller implements ConstructorArgMarshaller
       ParamInfo argumentInfo,
       Object rawValue)
       throws CoerceFailedException {
-    TypeCoercer<?> coercer;
     // When an attribute value contains an instance of {@link ListWithSelects} it's coerced by a
     // coercer for {@link SelectorList}.
     // The reason why we cannot use coercer from {@code argumentInfo} because {@link
     // ListWithSelects} is not generic class, but an instance contains all necessary information
     // to coerce the value into an instance of {@link SelectorList} which is a generic class.
     if (rawValue instanceof ListWithSelects) {
-      coercer =
+      // This coercer is created for every attribute, so its results are not worth memoizing.
+      TypeCoercer<?> coercer =
           typeCoercerFactory.typeCoercerForParameterizedType(
               "ListWithSelects",
               SelectorList.class,
               argumentInfo.getSetter().getGenericParameterTypes());
-    } else {
-      coercer = argumentInfo.getTypeCoercer();
+      return coercer.coerce(
+          cellRoots, filesystem, buildTarget.getBasePath(), targetConfiguration, rawValue);
     }
-    return coercer.coerce(
-        cellRoots, filesystem, buildTarget.getBasePath(), targetConfiguration, rawValue);
+    return CoercedValueCache.INSTANCE.coerce(
+        argumentInfo.getTypeCoercer(),
+        cellRoots,
+        filesystem,
+        buildTarget.getBasePath(),
+        targetConfiguration,
+        rawValue);
   }
 
   @SuppressWarnings("unchecked")
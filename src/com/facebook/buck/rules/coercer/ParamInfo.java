@@ -18,7 +18,6 @@ package com.facebook.buck.rules.coercer;
 
 import com.facebook.buck.core.cell.CellPathResolver;
 import com.facebook.buck.core.description.arg.Hint;
-import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.MoreSuppliers;
@@ -238,23 +237,6 @@ public class ParamInfo implements Comparable<ParamInfo> {
     return typeCoercer.hasElementClass(types);
   }
 
-  public void setFromParams(
-      CellPathResolver cellRoots,
-      ProjectFilesystem filesystem,
-      BuildTarget buildTarget,
-      TargetConfiguration targetConfiguration,
-      Object arg,
-      Map<String, ?> instance)
-      throws ParamInfoException {
-    set(
-        cellRoots,
-        filesystem,
-        buildTarget.getBasePath(),
-        targetConfiguration,
-        arg,
-        instance.get(name));
-  }
-
   /**
    * Sets a single property of the {@code dto}, coercing types as necessary.
    *
@@ -23,9 +23,20 @@ import com.facebook.buck.core.sourcepath.DefaultBuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.nio.file.Path;
 
 public class SourcePathTypeCoercer extends LeafTypeCoercer<SourcePath> {
+
+  /**
+   * Outputs of build targets are often listed by multiple build rules, so equal instances are
+   * shared. {@link PathSourcePath}s are not interned, since their equality ignores the identity of
+   * their filesystem.
+   */
+  private static final Interner<SourcePath> BUILD_TARGET_SOURCE_PATH_INTERNER =
+      Interners.newWeakInterner();
+
   private final TypeCoercer<BuildTarget> buildTargetTypeCoercer;
   private final TypeCoercer<Path> pathTypeCoercer;
 
@@ -53,7 +64,8 @@ public class SourcePathTypeCoercer extends LeafTypeCoercer<SourcePath> {
       BuildTarget buildTarget =
           buildTargetTypeCoercer.coerce(
               cellRoots, filesystem, pathRelativeToProjectRoot, targetConfiguration, object);
-      return DefaultBuildTargetSourcePath.of(buildTarget);
+      return BUILD_TARGET_SOURCE_PATH_INTERNER.intern(
+          DefaultBuildTargetSourcePath.of(buildTarget));
     } else {
       Path path =
           pathTypeCoercer.coerce(
@@ -36,6 +36,7 @@ import com.facebook.buck.util.RichStream;
 import com.facebook.buck.util.exceptions.BuckUncheckedExecutionException;
 import com.facebook.buck.util.types.Either;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -45,6 +46,8 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
 import com.google.common.hash.HashCode;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -54,6 +57,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 
@@ -67,10 +71,13 @@ import javax.annotation.Nullable;
  * effectively a merkle tree. This allows us to share the serialized representation of shared
  * objects (for c++ particularly, there are many shared references to the PreprocessorDelegate and
  * other such fields).
+ *
+ * <p>Each such object is serialized only once per Serializer, even when many rules reference it and
+ * are serialized concurrently: the first caller serializes it and the others wait for its result.
  */
 public class Serializer {
   private static final int MAX_INLINE_LENGTH = 100;
-  private final ConcurrentHashMap<AddsToRuleKey, Either<HashCode, byte[]>> cache =
+  private final ConcurrentHashMap<AddsToRuleKey, SettableFuture<Either<HashCode, byte[]>>> cache =
       new ConcurrentHashMap<>();
   private final SourcePathRuleFinder ruleFinder;
   private final ImmutableMap<Path, Optional<String>> cellMap;
@@ -115,9 +122,35 @@ public class Serializer {
   /** See Serialize(T instance) above. */
   public <T extends AddsToRuleKey> Either<HashCode, byte[]> serialize(
       T instance, ClassInfo<T> classInfo) throws IOException {
-    if (cache.containsKey(instance)) {
-      return Objects.requireNonNull(cache.get(instance));
+    SettableFuture<Either<HashCode, byte[]>> future = cache.get(instance);
+    if (future == null) {
+      SettableFuture<Either<HashCode, byte[]>> newFuture = SettableFuture.create();
+      future = cache.putIfAbsent(instance, newFuture);
+      if (future == null) {
+        try {
+          Either<HashCode, byte[]> result = serializeNew(instance, classInfo);
+          newFuture.set(result);
+          return result;
+        } catch (Throwable t) {
+          // Let later callers retry (and fail the same way) rather than caching the failure.
+          cache.remove(instance, newFuture);
+          newFuture.setException(t);
+          throw t;
+        }
+      }
+    }
+    try {
+      // Object graphs are acyclic, so waiting for another thread here can't deadlock.
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new BuckUncheckedExecutionException(e.getCause());
     }
+  }
+
+  private <T extends AddsToRuleKey> Either<HashCode, byte[]> serializeNew(
+      T instance, ClassInfo<T> classInfo) throws IOException {
     Visitor visitor = new Visitor(instance.getClass());
 
     Optional<CustomClassBehaviorTag> serializerTag =
@@ -131,17 +164,12 @@ public class Serializer {
       classInfo.visit(instance, visitor);
     }
 
-    return Objects.requireNonNull(
-        cache.computeIfAbsent(
-            instance,
-            ignored -> {
-              byte[] data = visitor.byteStream.toByteArray();
-              ImmutableList<HashCode> children =
-                  visitor.children.build().distinct().collect(ImmutableList.toImmutableList());
-              return data.length < MAX_INLINE_LENGTH && children.isEmpty()
-                  ? Either.ofRight(data)
-                  : Either.ofLeft(registerNewValue(instance, data, children));
-            }));
+    byte[] data = visitor.byteStream.toByteArray();
+    ImmutableList<HashCode> children =
+        visitor.children.build().distinct().collect(ImmutableList.toImmutableList());
+    return data.length < MAX_INLINE_LENGTH && children.isEmpty()
+        ? Either.ofRight(data)
+        : Either.ofLeft(registerNewValue(instance, data, children));
   }
 
   private <T extends AddsToRuleKey> HashCode registerNewValue(
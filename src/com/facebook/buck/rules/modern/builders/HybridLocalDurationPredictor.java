@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.builders;
+
+import com.facebook.buck.core.rules.BuildRule;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Predicts how long a rule takes to build locally and with the delegate of a {@link
+ * HybridLocalStrategy}, from the durations of previously built rules of the same type.
+ *
+ * <p>Durations are tracked per unit of input size, so that a large rule of a given type is
+ * predicted to take longer than a small one. The number of build deps is used as the input size: it
+ * is known without touching the filesystem, and for most rule types it drives how much data has to
+ * be read (locally) or uploaded (remotely).
+ */
+public class HybridLocalDurationPredictor {
+  /** Weight of the newest sample in the moving averages. */
+  private static final double SMOOTHING = 0.2;
+
+  /** Number of samples needed on both sides before predictions for a rule type are trusted. */
+  static final int MIN_SAMPLES = 10;
+
+  private static final HybridLocalDurationPredictor SHARED_PREDICTOR =
+      new HybridLocalDurationPredictor();
+
+  private final ConcurrentMap<String, Estimates> estimatesByType = new ConcurrentHashMap<>();
+
+  /**
+   * @return a predictor for the lifetime of the process, so that a daemon keeps what it learnt in
+   *     previous builds.
+   */
+  public static HybridLocalDurationPredictor getSharedPredictor() {
+    return SHARED_PREDICTOR;
+  }
+
+  private static class Estimates {
+    private final MovingAverage local = new MovingAverage();
+    private final MovingAverage delegate = new MovingAverage();
+  }
+
+  private static class MovingAverage {
+    private double nanosPerInputUnit;
+    private int samples;
+
+    synchronized void add(double value) {
+      nanosPerInputUnit =
+          samples == 0 ? value : SMOOTHING * value + (1 - SMOOTHING) * nanosPerInputUnit;
+      samples++;
+    }
+
+    synchronized OptionalLong predict(long inputSize) {
+      if (samples < MIN_SAMPLES) {
+        return OptionalLong.empty();
+      }
+      return OptionalLong.of((long) (nanosPerInputUnit * inputSize));
+    }
+  }
+
+  private static long getInputSize(BuildRule rule) {
+    return 1 + rule.getBuildDeps().size();
+  }
+
+  private Estimates getEstimates(BuildRule rule) {
+    return estimatesByType.computeIfAbsent(rule.getType(), ignored -> new Estimates());
+  }
+
+  /** Records the time it took to build the rule locally. */
+  public void recordLocalDuration(BuildRule rule, long nanos) {
+    getEstimates(rule).local.add((double) nanos / getInputSize(rule));
+  }
+
+  /** Records the time it took to build the rule with the delegate strategy. */
+  public void recordDelegateDuration(BuildRule rule, long nanos) {
+    getEstimates(rule).delegate.add((double) nanos / getInputSize(rule));
+  }
+
+  /** @return how long the rule is expected to take locally, if enough rules like it were built. */
+  public OptionalLong predictLocalDuration(BuildRule rule) {
+    return getEstimates(rule).local.predict(getInputSize(rule));
+  }
+
+  /** @return how long the rule is expected to take with the delegate, if known. */
+  public OptionalLong predictDelegateDuration(BuildRule rule) {
+    return getEstimates(rule).delegate.predict(getInputSize(rule));
+  }
+}
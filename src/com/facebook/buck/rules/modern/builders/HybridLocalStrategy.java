@@ -27,16 +27,24 @@ import com.facebook.buck.util.concurrent.JobLimiter;
 import com.facebook.buck.util.concurrent.MoreFutures;
 import com.facebook.buck.util.exceptions.BuckUncheckedExecutionException;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 /**
@@ -46,6 +54,11 @@ import javax.annotation.Nullable;
  * <p>It has a configurable limit for the number of active jobs to allow locally, and for the number
  * to allow to the delegate. It prefers to send them locally if the limit there hasn't been reached.
  * If both are at the limit, the jobs will be queued until space becomes available.
+ *
+ * <p>When a local slot frees up and no job is pending, a job is stolen from the delegate. The job
+ * chosen is the one predicted to save the most time by being built locally, given how long rules of
+ * its type take locally and with the delegate, and how long it has already been with the delegate.
+ * Jobs predicted to finish sooner with the delegate are left alone.
  */
 public class HybridLocalStrategy implements BuildRuleStrategy {
   private static final Logger LOG = Logger.get(HybridLocalStrategy.class);
@@ -57,24 +70,41 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
   private final JobLimiter localLimiter;
   private final JobLimiter delegateLimiter;
 
+  private final HybridLocalDurationPredictor predictor;
   private final DelegateJobTracker tracker = new DelegateJobTracker();
 
-  private static class DelegateJobTracker {
+  private final AtomicInteger stolenJobs = new AtomicInteger();
+  private final AtomicLong predictedTimeSavedNanos = new AtomicLong();
+
+  private class DelegateJobTracker {
     ConcurrentLinkedDeque<Job> delegateJobs = new ConcurrentLinkedDeque<>();
 
     void register(Job job) {
       delegateJobs.addLast(job);
     }
 
+    void unregister(Job job) {
+      delegateJobs.remove(job);
+    }
+
     @Nullable
     Job stealFromDelegate() {
       while (true) {
-        Job job = delegateJobs.pollLast();
+        long now = System.nanoTime();
+        Job job = chooseJobToSteal(now);
         if (job == null) {
           return null;
         }
+        if (!delegateJobs.remove(job)) {
+          // Another thread stole it first, or the delegate just finished it.
+          continue;
+        }
+        OptionalLong predictedSaving = job.predictSavingFromStealing(now);
         try {
           if (job.cancelDelegate(new CancellationException("Job is being stolen."))) {
+            stolenJobs.incrementAndGet();
+            predictedSaving.ifPresent(predictedTimeSavedNanos::addAndGet);
+            job.recordStolenDelegateDuration(now);
             return job;
           }
         } catch (Exception e) {
@@ -86,10 +116,44 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
         }
       }
     }
+
+    /**
+     * @return the job predicted to save the most time by being stolen. Jobs of rule types without
+     *     enough history are stolen most recently delegated first.
+     */
+    @Nullable
+    private Job chooseJobToSteal(long now) {
+      Job bestJob = null;
+      long bestSaving = 0;
+      Job mostRecentUnpredictedJob = null;
+      Iterator<Job> jobs = delegateJobs.descendingIterator();
+      while (jobs.hasNext()) {
+        Job job = jobs.next();
+        OptionalLong saving = job.predictSavingFromStealing(now);
+        if (!saving.isPresent()) {
+          if (mostRecentUnpredictedJob == null) {
+            mostRecentUnpredictedJob = job;
+          }
+        } else if (saving.getAsLong() > bestSaving) {
+          bestJob = job;
+          bestSaving = saving.getAsLong();
+        }
+      }
+      return bestJob != null ? bestJob : mostRecentUnpredictedJob;
+    }
   }
 
   public HybridLocalStrategy(int numLocalJobs, int numDelegateJobs, BuildRuleStrategy delegate) {
+    this(numLocalJobs, numDelegateJobs, delegate, new HybridLocalDurationPredictor());
+  }
+
+  public HybridLocalStrategy(
+      int numLocalJobs,
+      int numDelegateJobs,
+      BuildRuleStrategy delegate,
+      HybridLocalDurationPredictor predictor) {
     this.delegate = delegate;
+    this.predictor = predictor;
     this.localLimiter = new JobLimiter(numLocalJobs);
     this.delegateLimiter = new JobLimiter(numDelegateJobs);
     this.pendingQueue = new ConcurrentLinkedQueue<>();
@@ -114,6 +178,7 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
 
     volatile JobStage stage;
     @Nullable volatile StrategyBuildResult delegateResult;
+    volatile long delegateStartNanos;
 
     Job(BuildStrategyContext strategyContext, BuildRule rule) {
       this.strategyContext = strategyContext;
@@ -137,7 +202,21 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
 
         ListenableFuture<Optional<BuildResult>> localFuture =
             Futures.submitAsync(
-                strategyContext::runWithDefaultBehavior, strategyContext.getExecutorService());
+                () -> {
+                  // Start timing once the executor runs the job, so queueing isn't counted.
+                  long localStartNanos = System.nanoTime();
+                  ListenableFuture<Optional<BuildResult>> result =
+                      strategyContext.runWithDefaultBehavior();
+                  result.addListener(
+                      () -> {
+                        if (isSuccess(result)) {
+                          predictor.recordLocalDuration(rule, System.nanoTime() - localStartNanos);
+                        }
+                      },
+                      MoreExecutors.directExecutor());
+                  return result;
+                },
+                strategyContext.getExecutorService());
         future.setFuture(localFuture);
         return localFuture;
       }
@@ -149,6 +228,7 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
           return future;
         }
         advanceStage(JobStage.DELEGATE_SCHEDULED);
+        delegateStartNanos = System.nanoTime();
         delegateResult =
             delegate.build(rule, new DelegatingContextWithNoOpRuleScope(strategyContext));
         tracker.register(this);
@@ -167,11 +247,41 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
       synchronized (this) {
         if (stage == JobStage.DELEGATE_SCHEDULED) {
           advanceStage(JobStage.FINISHED);
+          tracker.unregister(this);
+          if (isSuccess(delegateResult)) {
+            predictor.recordDelegateDuration(rule, System.nanoTime() - delegateStartNanos);
+          }
           future.setFuture(delegateResult);
         }
       }
     }
 
+    /**
+     * @return how much sooner the job is expected to finish if it's built locally now rather than
+     *     left with the delegate, negative if it's expected to finish sooner with the delegate.
+     */
+    OptionalLong predictSavingFromStealing(long now) {
+      OptionalLong localDuration = predictor.predictLocalDuration(rule);
+      OptionalLong delegateDuration = predictor.predictDelegateDuration(rule);
+      if (!localDuration.isPresent() || !delegateDuration.isPresent()) {
+        return OptionalLong.empty();
+      }
+      long remainingDelegateDuration =
+          Math.max(0, delegateDuration.getAsLong() - (now - delegateStartNanos));
+      return OptionalLong.of(remainingDelegateDuration - localDuration.getAsLong());
+    }
+
+    /**
+     * Records a delegate duration for a job stolen from the delegate. The delegate would have taken
+     * at least as long as it already had the job, and the prediction is kept as the best guess of
+     * the rest, so that only recording the jobs the delegate finished doesn't make it look faster.
+     */
+    void recordStolenDelegateDuration(long now) {
+      long elapsed = now - delegateStartNanos;
+      predictor.recordDelegateDuration(
+          rule, Math.max(elapsed, predictor.predictDelegateDuration(rule).orElse(elapsed)));
+    }
+
     public void cancel(Throwable reason) {
       synchronized (this) {
         if (stage == JobStage.FINISHED) {
@@ -193,6 +303,7 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
                   MoreExecutors.directExecutor()));
         }
         advanceStage(JobStage.FINISHED);
+        tracker.unregister(this);
       }
     }
 
@@ -289,11 +400,51 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
     return delegate.canBuild(instance);
   }
 
+  private static boolean isSuccess(ListenableFuture<Optional<BuildResult>> result) {
+    try {
+      Optional<BuildResult> buildResult = Futures.getDone(result);
+      return buildResult.isPresent() && buildResult.get().isSuccess();
+    } catch (ExecutionException | CancellationException e) {
+      return false;
+    }
+  }
+
+  /** @return the number of jobs that were taken back from the delegate to be built locally. */
+  public int getStolenJobs() {
+    return stolenJobs.get();
+  }
+
+  /**
+   * @return the total time that stealing jobs was predicted to save. Jobs stolen without a
+   *     prediction don't count towards it.
+   */
+  public long getPredictedTimeSavedNanos() {
+    return predictedTimeSavedNanos.get();
+  }
+
   @Override
   public void close() throws IOException {
+    LOG.info(
+        "Stole %d jobs from the delegate, saving an estimated %d ms.",
+        stolenJobs.get(), TimeUnit.NANOSECONDS.toMillis(predictedTimeSavedNanos.get()));
     delegate.close();
   }
 
+  @Override
+  public ImmutableMap<Path, DeferredOutput> getDeferredOutputs(BuildRule rule) {
+    return delegate.getDeferredOutputs(rule);
+  }
+
+  @Override
+  public ListenableFuture<Void> materializeOutputs(Iterable<BuildRule> rules) {
+    return delegate.materializeOutputs(rules);
+  }
+
+  @Override
+  public ListenableFuture<Void> materializeDependencies(BuildRule rule) {
+    return delegate.materializeDependencies(rule);
+  }
+
   private static class DelegatingContextWithNoOpRuleScope extends DelegatingBuildStrategyContext {
     public DelegatingContextWithNoOpRuleScope(BuildStrategyContext delegate) {
       super(delegate);
@@ -26,11 +26,13 @@ import com.facebook.buck.remoteexecution.event.LocalFallbackEvent;
 import com.facebook.buck.remoteexecution.event.LocalFallbackEvent.Result;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +54,21 @@ public class LocalFallbackStrategy implements BuildRuleStrategy {
     mainBuildRuleStrategy.close();
   }
 
+  @Override
+  public ImmutableMap<Path, DeferredOutput> getDeferredOutputs(BuildRule rule) {
+    return mainBuildRuleStrategy.getDeferredOutputs(rule);
+  }
+
+  @Override
+  public ListenableFuture<Void> materializeOutputs(Iterable<BuildRule> rules) {
+    return mainBuildRuleStrategy.materializeOutputs(rules);
+  }
+
+  @Override
+  public ListenableFuture<Void> materializeDependencies(BuildRule rule) {
+    return mainBuildRuleStrategy.materializeDependencies(rule);
+  }
+
   @Override
   public StrategyBuildResult build(BuildRule rule, BuildStrategyContext strategyContext) {
     return new FallbackStrategyBuildResult(
@@ -116,7 +116,10 @@ public class ModernBuildRuleBuilderFactory {
             .orElseThrow(
                 () -> new HumanReadableException("Delegate config configured incorrectly."));
     return new HybridLocalStrategy(
-        hybridLocalConfig.getLocalJobs(), hybridLocalConfig.getDelegateJobs(), delegate);
+        hybridLocalConfig.getLocalJobs(),
+        hybridLocalConfig.getDelegateJobs(),
+        delegate,
+        HybridLocalDurationPredictor.getSharedPredictor());
   }
 
   /** The passthrough strategy just forwards to executorRunner.runWithDefaultExecutor. */
@@ -31,7 +31,9 @@ import com.facebook.buck.remoteexecution.UploadDataSupplier;
 import com.facebook.buck.remoteexecution.interfaces.Protocol;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.FileNode;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.SymlinkNode;
+import com.facebook.buck.remoteexecution.util.LazyOutputsMaterializer;
 import com.facebook.buck.remoteexecution.util.MerkleTreeNodeCache;
 import com.facebook.buck.remoteexecution.util.MerkleTreeNodeCache.MerkleTreeNode;
 import com.facebook.buck.rules.modern.Buildable;
@@ -55,8 +57,10 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
+import com.google.common.util.concurrent.Futures;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -75,6 +79,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /**
  * ModernBuildRuleRemoteExecutionHelper is used to create remote execution actions for a {@link
@@ -97,6 +102,7 @@ public class ModernBuildRuleRemoteExecutionHelper {
   private static final String pluginResources = System.getProperty("buck.module.resources");
   private static final String pluginRoot = System.getProperty("pf4j.pluginsDir");
   public static final Path TRAMPOLINE_PATH = Paths.get("__trampoline__.sh");
+  private static final Path SERIALIZED_VALUE_PATH = Paths.get("__value__");
 
   private final InputsMapBuilder inputsMapBuilder;
 
@@ -144,6 +150,7 @@ public class ModernBuildRuleRemoteExecutionHelper {
   private final SourcePathResolver pathResolver;
   private final CellPathResolver cellResolver;
   private final ThrowingFunction<Path, HashCode, IOException> fileHasher;
+  private final Optional<LazyOutputsMaterializer> lazyOutputs;
   private final Serializer serializer;
   private final Map<Class<?>, Map<String, Boolean>> loggedMessagesByClass;
   private final Path cellPathPrefix;
@@ -162,7 +169,34 @@ public class ModernBuildRuleRemoteExecutionHelper {
       ImmutableSet<Optional<String>> cellNames,
       Path cellPathPrefix,
       ThrowingFunction<Path, HashCode, IOException> fileHasher) {
+    this(
+        eventBus,
+        protocol,
+        ruleFinder,
+        cellResolver,
+        rootCell,
+        cellNames,
+        cellPathPrefix,
+        fileHasher,
+        Optional.empty());
+  }
+
+  /**
+   * @param lazyOutputs output files of previous remote actions that haven't been written to disk.
+   *     Inputs found there are referenced by digest instead of being read from disk.
+   */
+  public ModernBuildRuleRemoteExecutionHelper(
+      BuckEventBus eventBus,
+      Protocol protocol,
+      SourcePathRuleFinder ruleFinder,
+      CellPathResolver cellResolver,
+      Cell rootCell,
+      ImmutableSet<Optional<String>> cellNames,
+      Path cellPathPrefix,
+      ThrowingFunction<Path, HashCode, IOException> fileHasher,
+      Optional<LazyOutputsMaterializer> lazyOutputs) {
     this.eventBus = eventBus;
+    this.lazyOutputs = lazyOutputs;
     this.protocol = protocol;
 
     this.cellResolver = cellResolver;
@@ -180,20 +214,27 @@ public class ModernBuildRuleRemoteExecutionHelper {
     Delegate delegate =
         (instance, data, children) -> {
           HashCode hash = hasher.hashBytes(data);
-          Node node =
-              new Node(
-                  data,
-                  children
-                      .stream()
-                      .collect(
-                          ImmutableSortedMap.toImmutableSortedMap(
-                              Ordering.natural(), HashCode::toString, nodeMap::get)));
-          nodeMap.put(hash, node);
+          // Distinct objects with the same serialized representation share a single node (and so a
+          // single subtree of the inputs).
+          if (!nodeMap.containsKey(hash)) {
+            nodeMap.putIfAbsent(
+                hash,
+                new Node(
+                    data,
+                    protocol.newDigest(hash.toString(), data.length),
+                    children
+                        .stream()
+                        .collect(
+                            ImmutableSortedMap.toImmutableSortedMap(
+                                Ordering.natural(), HashCode::toString, nodeMap::get))));
+          }
           return hash;
         };
     this.serializer = new Serializer(ruleFinder, cellResolver, delegate);
 
-    this.nodeCache = new MerkleTreeNodeCache(protocol);
+    // Input trees only depend on file contents, so trees and digests built by previous builds can
+    // be reused for any rule whose inputs have not changed.
+    this.nodeCache = MerkleTreeNodeCache.getSharedCache(protocol);
 
     this.classPath = prepareClassPath(BuckClasspath::getClasspath);
     this.bootstrapClassPath = prepareClassPath(BuckClasspath::getBootstrapClasspath);
@@ -398,6 +439,15 @@ public class ModernBuildRuleRemoteExecutionHelper {
                 new UploadDataSupplier() {
                   @Override
                   public InputStream get() throws IOException {
+                    if (lazyOutputs.isPresent()) {
+                      // The CAS may have evicted a deferred output since the action that produced
+                      // it ran, in which case it has to be uploaded from disk.
+                      Futures.getChecked(
+                          lazyOutputs
+                              .get()
+                              .materialize(ImmutableList.of(cellPathPrefix.relativize(path))),
+                          IOException.class);
+                    }
                     return new FileInputStream(path.toFile());
                   }
 
@@ -471,7 +521,20 @@ public class ModernBuildRuleRemoteExecutionHelper {
                     cellPathPrefix);
 
             for (SourcePath path : inputs.getPaths()) {
-              inputsAdder.addInput(pathResolver.getAbsolutePath(path));
+              Path absolutePath = pathResolver.getAbsolutePath(path);
+              if (lazyOutputs.isPresent() && absolutePath.startsWith(cellPathPrefix)) {
+                for (OutputFile outputFile :
+                    lazyOutputs.get().getDeferredFiles(cellPathPrefix.relativize(absolutePath))) {
+                  Path outputPath = Paths.get(outputFile.getPath());
+                  files.put(
+                      outputPath,
+                      protocol.newFileNode(
+                          outputFile.getDigest(),
+                          outputPath.getFileName().toString(),
+                          outputFile.getIsExecutable()));
+                }
+              }
+              inputsAdder.addInput(absolutePath);
             }
 
             List<MerkleTreeNode> nodes = new ArrayList<>();
@@ -553,51 +616,79 @@ public class ModernBuildRuleRemoteExecutionHelper {
 
   private static class Node {
     private final byte[] data;
+    private final Digest digest;
 
     private final ImmutableSortedMap<String, Node> children;
 
-    Node(byte[] data, ImmutableSortedMap<String, Node> children) {
+    /**
+     * The inputs subtree for this value and its children. Values shared by many rules (toolchains,
+     * options, ...) are only turned into a tree once.
+     */
+    @Nullable private volatile MerkleTreeNode tree;
+
+    Node(byte[] data, Digest digest, ImmutableSortedMap<String, Node> children) {
       this.data = data;
+      this.digest = digest;
       this.children = children;
     }
   }
 
   private MerkleTreeNode getSerializationTreeAndInputs(
       HashCode hash, Map<Digest, UploadDataSupplier> requiredDataBuilder) {
-    Map<Path, FileNode> fileNodes = new HashMap<>();
-    class DataAdder {
-      void addData(Path root, String hash, Node node) {
-        String fileName = "__value__";
-        Path valuePath = root.resolve(fileName);
-        Digest digest = protocol.newDigest(hash, node.data.length);
-        fileNodes.put(valuePath, protocol.newFileNode(digest, fileName, false));
-        requiredDataBuilder.put(
-            digest,
-            new UploadDataSupplier() {
-              @Override
-              public InputStream get() {
-                return new ByteArrayInputStream(node.data);
-              }
-
-              @Override
-              public String describe() {
-                return String.format("Serialized java object (size:%s).", node.data.length);
-              }
-            });
+    Node root = Objects.requireNonNull(nodeMap.get(hash));
+    addSerializedData(root, Sets.newIdentityHashSet(), requiredDataBuilder);
+    return nodeCache.createNode(
+        ImmutableMap.of(),
+        ImmutableMap.of(),
+        ImmutableMap.of(
+            "__data__",
+            nodeCache.createNode(
+                ImmutableMap.of(),
+                ImmutableMap.of(),
+                ImmutableMap.of(hash.toString(), getSerializationTree(root)))));
+  }
 
-        for (Map.Entry<String, Node> child : node.children.entrySet()) {
-          addData(root.resolve(child.getKey()), child.getKey(), child.getValue());
-        }
+  private MerkleTreeNode getSerializationTree(Node node) {
+    MerkleTreeNode tree = node.tree;
+    if (tree == null) {
+      Map<String, MerkleTreeNode> childTrees = new HashMap<>();
+      for (Map.Entry<String, Node> child : node.children.entrySet()) {
+        childTrees.put(child.getKey(), getSerializationTree(child.getValue()));
       }
+      tree =
+          nodeCache.createNode(
+              ImmutableMap.of(
+                  SERIALIZED_VALUE_PATH,
+                  protocol.newFileNode(node.digest, SERIALIZED_VALUE_PATH.toString(), false)),
+              ImmutableMap.of(),
+              childTrees);
+      node.tree = tree;
     }
+    return tree;
+  }
 
-    new DataAdder()
-        .addData(
-            Paths.get("__data__").resolve(hash.toString()),
-            hash.toString(),
-            Objects.requireNonNull(nodeMap.get(hash)));
+  private void addSerializedData(
+      Node node, Set<Node> visited, Map<Digest, UploadDataSupplier> requiredDataBuilder) {
+    // Values are often referenced through many paths of the graph, only visit them once.
+    if (!visited.add(node)) {
+      return;
+    }
+    requiredDataBuilder.put(
+        node.digest,
+        new UploadDataSupplier() {
+          @Override
+          public InputStream get() {
+            return new ByteArrayInputStream(node.data);
+          }
 
-    return nodeCache.createNode(fileNodes, ImmutableMap.of());
+          @Override
+          public String describe() {
+            return String.format("Serialized java object (size:%s).", node.data.length);
+          }
+        });
+    for (Node child : node.children.values()) {
+      addSerializedData(child, visited, requiredDataBuilder);
+    }
   }
 
   private ThrowingSupplier<ClassPath, IOException> prepareClassPath(
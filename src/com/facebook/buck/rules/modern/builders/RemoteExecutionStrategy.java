@@ -38,6 +38,9 @@ import com.facebook.buck.remoteexecution.config.RemoteExecutionStrategyConfig;
 import com.facebook.buck.remoteexecution.event.RemoteExecutionActionEvent;
 import com.facebook.buck.remoteexecution.event.RemoteExecutionActionEvent.State;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.facebook.buck.remoteexecution.util.LazyOutputsMaterializer;
+import com.facebook.buck.remoteexecution.util.LocalActionResultCache;
 import com.facebook.buck.rules.modern.ModernBuildRule;
 import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.StepExecutionResult;
@@ -46,23 +49,34 @@ import com.facebook.buck.util.Scope;
 import com.facebook.buck.util.concurrent.JobLimiter;
 import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.function.ThrowingFunction;
+import com.facebook.buck.util.function.ThrowingSupplier;
 import com.facebook.buck.util.types.Either;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 
 /**
  * A {@link BuildRuleStrategy} that uses a Remote Execution service for executing BuildRules. It
@@ -79,6 +93,21 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
   private final RemoteExecutionClients executionClients;
   private final ModernBuildRuleRemoteExecutionHelper mbrHelper;
   private final Path cellPathPrefix;
+  private final Optional<LazyOutputsMaterializer> lazyOutputs;
+  private final Optional<LocalActionResultCache> actionResultCache;
+  private final ThrowingFunction<Path, HashCode, IOException> fileHasher;
+  private final boolean canVerifyOutputsOnDisk;
+
+  /** Results found in the local action result cache for actions that are about to run. */
+  private final ConcurrentMap<BuildTarget, ExecutionResult> locallyCachedResults =
+      new ConcurrentHashMap<>();
+
+  /** Paths (relative to cellPathPrefix) of the outputs of rules whose files were deferred. */
+  private final ConcurrentMap<BuildTarget, ImmutableList<Path>> deferredOutputPaths =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<BuildTarget, ListenableFuture<Void>> materializedClosures =
+      new ConcurrentHashMap<>();
 
   private final ListeningExecutorService service;
 
@@ -104,6 +133,11 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
     this.executionLimiter = new JobLimiter(strategyConfig.getMaxConcurrentExecutions());
     this.handleResultLimiter = new JobLimiter(strategyConfig.getMaxConcurrentResultHandling());
     this.eventBus = eventBus;
+    this.fileHasher = fileHasher;
+    // Files on disk can only be compared with output digests if the protocol hashes them the same
+    // way as the file hash cache.
+    this.canVerifyOutputsOnDisk =
+        executionClients.getProtocol().getHashFunction().equals(Hashing.sha1());
 
     ImmutableSet<Optional<String>> cellNames =
         rootCell
@@ -123,6 +157,33 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
             .get()
             .getFirst();
 
+    if (strategyConfig.isLazyOutputMaterializationEnabled() && canVerifyOutputsOnDisk) {
+      this.lazyOutputs =
+          Optional.of(
+              new LazyOutputsMaterializer(
+                  executionClients.getContentAddressedStorage(), cellPathPrefix));
+    } else {
+      if (strategyConfig.isLazyOutputMaterializationEnabled()) {
+        // Deferred outputs are registered in the file hash cache by their digest, which is only
+        // possible when the protocol hashes files the same way the cache does.
+        LOG.warn(
+            "Lazy output materialization is not supported with hash function %s.",
+            executionClients.getProtocol().getHashFunction());
+      }
+      this.lazyOutputs = Optional.empty();
+    }
+
+    this.actionResultCache =
+        strategyConfig.isLocalActionCacheEnabled()
+            ? Optional.of(
+                LocalActionResultCache.getSharedCache(
+                    rootCell
+                        .getFilesystem()
+                        .resolve(rootCell.getFilesystem().getBuckPaths().getBuckOut())
+                        .resolve("re_action_results"),
+                    executionClients.getProtocol()))
+            : Optional.empty();
+
     this.mbrHelper =
         new ModernBuildRuleRemoteExecutionHelper(
             eventBus,
@@ -132,7 +193,8 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
             rootCell,
             cellNames,
             cellPathPrefix,
-            fileHasher);
+            fileHasher,
+            lazyOutputs);
   }
 
   /** Creates a BuildRuleStrategy for a particular */
@@ -165,9 +227,76 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
 
   @Override
   public void close() throws IOException {
+    lazyOutputs.ifPresent(
+        materializer ->
+            LOG.info(
+                "[RE] Deferred [%d] output files, [%d] of which had to be materialized.",
+                materializer.getDeferredCount(), materializer.getMaterializedCount()));
     executionClients.close();
   }
 
+  @Override
+  public ImmutableMap<Path, DeferredOutput> getDeferredOutputs(BuildRule rule) {
+    if (!lazyOutputs.isPresent() || !deferredOutputPaths.containsKey(rule.getBuildTarget())) {
+      return ImmutableMap.of();
+    }
+    ProjectFilesystem filesystem = rule.getProjectFilesystem();
+    ImmutableMap.Builder<Path, DeferredOutput> builder = ImmutableMap.builder();
+    for (Path path : deferredOutputPaths.get(rule.getBuildTarget())) {
+      for (OutputFile outputFile : lazyOutputs.get().getDeferredFiles(path)) {
+        Digest digest = outputFile.getDigest();
+        builder.put(
+            filesystem.relativize(cellPathPrefix.resolve(outputFile.getPath())),
+            new DeferredOutput(HashCode.fromString(digest.getHash()), digest.getSize()));
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  public ListenableFuture<Void> materializeOutputs(Iterable<BuildRule> rules) {
+    if (!lazyOutputs.isPresent()) {
+      return Futures.immediateFuture(null);
+    }
+    List<Path> paths = new ArrayList<>();
+    for (BuildRule rule : rules) {
+      paths.addAll(deferredOutputPaths.getOrDefault(rule.getBuildTarget(), ImmutableList.of()));
+    }
+    return lazyOutputs.get().materialize(paths);
+  }
+
+  @Override
+  public ListenableFuture<Void> materializeDependencies(BuildRule rule) {
+    if (!lazyOutputs.isPresent() || lazyOutputs.get().isEmpty()) {
+      return Futures.immediateFuture(null);
+    }
+    List<ListenableFuture<Void>> futures = new ArrayList<>();
+    for (BuildRule dep : rule.getBuildDeps()) {
+      futures.add(materializeClosure(dep));
+    }
+    return Futures.whenAllSucceed(futures).call(() -> null, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Materializes the outputs of the rule and all of its transitive dependencies. A local step may
+   * read any of them, e.g. through a classpath computed from the transitive deps.
+   */
+  private ListenableFuture<Void> materializeClosure(BuildRule rule) {
+    ListenableFuture<Void> existing = materializedClosures.get(rule.getBuildTarget());
+    if (existing != null) {
+      return existing;
+    }
+    List<ListenableFuture<Void>> futures = new ArrayList<>();
+    futures.add(materializeOutputs(ImmutableList.of(rule)));
+    for (BuildRule dep : rule.getBuildDeps()) {
+      futures.add(materializeClosure(dep));
+    }
+    ListenableFuture<Void> future =
+        Futures.whenAllSucceed(futures).call(() -> null, MoreExecutors.directExecutor());
+    existing = materializedClosures.putIfAbsent(rule.getBuildTarget(), future);
+    return existing == null ? future : existing;
+  }
+
   @Override
   public StrategyBuildResult build(BuildRule rule, BuildStrategyContext strategyContext) {
     Preconditions.checkState(rule instanceof ModernBuildRule);
@@ -229,10 +358,62 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
             () -> Futures.immediateFuture(getRemoteExecutionActionInfo(rule, strategyContext)));
     return Futures.transformAsync(
         actionInfoFuture,
-        actionInfo -> uploadInputs(rule.getBuildTarget(), actionInfo),
+        actionInfo -> {
+          if (lookUpLocalActionResult(rule.getBuildTarget(), actionInfo.getActionDigest())) {
+            // The inputs are only needed if the action actually has to be executed.
+            return Futures.immediateFuture(actionInfo.withRequiredData(ImmutableMap.of()));
+          }
+          return uploadInputs(rule.getBuildTarget(), actionInfo);
+        },
         MoreExecutors.directExecutor());
   }
 
+  private boolean lookUpLocalActionResult(BuildTarget buildTarget, Digest actionDigest) {
+    if (!actionResultCache.isPresent()) {
+      return false;
+    }
+    Optional<ExecutionResult> result = actionResultCache.get().get(actionDigest);
+    if (result.isPresent() && !areOutputsAvailable(result.get())) {
+      // The outputs were evicted from the CAS since the result was cached, so the action has to be
+      // executed again.
+      actionResultCache.get().invalidate(actionDigest);
+      result = Optional.empty();
+    }
+    RemoteExecutionActionEvent.sendLocalCacheLookupEvent(
+        eventBus, buildTarget, actionDigest, result.isPresent());
+    result.ifPresent(cachedResult -> locallyCachedResults.put(buildTarget, cachedResult));
+    return result.isPresent();
+  }
+
+  /**
+   * Checks that the outputs of a locally cached result can still be materialized. Output files that
+   * are already on disk are not looked up in the CAS, so a build whose outputs are up to date makes
+   * no requests to it.
+   */
+  private boolean areOutputsAvailable(ExecutionResult result) {
+    ImmutableSet<Path> upToDateFiles = getUpToDateOutputFiles(result.getOutputFiles());
+    List<Digest> outputDigests = new ArrayList<>();
+    result
+        .getOutputFiles()
+        .stream()
+        .filter(file -> !upToDateFiles.contains(Paths.get(file.getPath())))
+        .forEach(file -> outputDigests.add(file.getDigest()));
+    // The contents of output directories can only be checked against their trees in the CAS.
+    result.getOutputDirectories().forEach(dir -> outputDigests.add(dir.getTreeDigest()));
+    if (outputDigests.isEmpty()) {
+      return true;
+    }
+    try {
+      return executionClients
+          .getContentAddressedStorage()
+          .getMissingDigests(outputDigests)
+          .isEmpty();
+    } catch (IOException e) {
+      LOG.warn(e, "[RE] Failed to check the outputs of a locally cached action.");
+      return false;
+    }
+  }
+
   private ListenableFuture<RemoteExecutionActionInfo> uploadInputs(
       BuildTarget buildTarget, RemoteExecutionActionInfo actionInfo) throws IOException {
     Objects.requireNonNull(actionInfo);
@@ -315,28 +496,37 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
       Iterable<? extends Path> actionOutputs,
       String ruleName) {
     AtomicReference<Throwable> cancelled = new AtomicReference<>(null);
+    Optional<ExecutionResult> cachedResult =
+        Optional.ofNullable(locallyCachedResults.remove(buildTarget));
+    ThrowingSupplier<ListenableFuture<ExecutionResult>, Exception> execute =
+        () -> {
+          cancelled.set(tryStart.call());
+          boolean isCancelled = cancelled.get() != null;
+          if (isCancelled) {
+            RemoteExecutionActionEvent.sendTerminalEvent(
+                eventBus, State.ACTION_CANCELLED, buildTarget, Optional.of(actionDigest));
+            return Futures.immediateFuture(null);
+          }
+          if (cachedResult.isPresent()) {
+            return Futures.immediateFuture(cachedResult.get());
+          }
+          Scope executingScope =
+              RemoteExecutionActionEvent.sendEvent(
+                  eventBus, State.EXECUTING, buildTarget, Optional.of(actionDigest));
+          return Futures.transform(
+              executionClients.getRemoteExecutionService().execute(actionDigest, ruleName),
+              result -> {
+                executingScope.close();
+                return result;
+              },
+              MoreExecutors.directExecutor());
+        };
+    // Locally cached actions don't need to wait for a slot to execute remotely.
     ListenableFuture<ExecutionResult> executionResult =
-        executionLimiter.schedule(
-            service,
-            () -> {
-              cancelled.set(tryStart.call());
-              boolean isCancelled = cancelled.get() != null;
-              if (isCancelled) {
-                RemoteExecutionActionEvent.sendTerminalEvent(
-                    eventBus, State.ACTION_CANCELLED, buildTarget, Optional.of(actionDigest));
-                return Futures.immediateFuture(null);
-              }
-              Scope executingScope =
-                  RemoteExecutionActionEvent.sendEvent(
-                      eventBus, State.EXECUTING, buildTarget, Optional.of(actionDigest));
-              return Futures.transform(
-                  executionClients.getRemoteExecutionService().execute(actionDigest, ruleName),
-                  result -> {
-                    executingScope.close();
-                    return result;
-                  },
-                  MoreExecutors.directExecutor());
-            });
+        cachedResult.isPresent()
+            ? Futures.transformAsync(
+                Futures.immediateFuture(null), ignored -> execute.get(), service)
+            : executionLimiter.schedule(service, execute);
 
     return sendFailedEventOnException(
         Futures.transformAsync(
@@ -355,7 +545,8 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
                           buildTarget,
                           result,
                           actionDigest,
-                          actionOutputs));
+                          actionOutputs,
+                          cachedResult.isPresent()));
             },
             service),
         buildTarget,
@@ -398,7 +589,8 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
       BuildTarget buildTarget,
       ExecutionResult result,
       Digest actionDigest,
-      Iterable<? extends Path> actionOutputs)
+      Iterable<? extends Path> actionOutputs,
+      boolean isLocallyCached)
       throws IOException, StepFailedException {
     LOG.debug(
         "[RE] Built target [%s] with exit code [%d]. Action: [%s]. ActionResult: [%s]",
@@ -433,24 +625,71 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
         RemoteExecutionActionEvent.sendEvent(
             eventBus, State.MATERIALIZING_OUTPUTS, buildTarget, Optional.of(actionDigest));
 
+    ImmutableSet<Path> upToDateFiles = getUpToDateOutputFiles(result.getOutputFiles());
+    ImmutableList<OutputFile> outputFiles =
+        result
+            .getOutputFiles()
+            .stream()
+            .filter(outputFile -> !upToDateFiles.contains(Paths.get(outputFile.getPath())))
+            .collect(ImmutableList.toImmutableList());
+
     try (Scope ignored1 =
         RemoteExecutionActionEvent.sendEvent(
             eventBus, State.DELETING_STALE_OUTPUTS, buildTarget, Optional.of(actionDigest))) {
       for (Path path : actionOutputs) {
-        MostFiles.deleteRecursivelyIfExists(cellPathPrefix.resolve(path));
+        if (!upToDateFiles.contains(path)) {
+          MostFiles.deleteRecursivelyIfExists(cellPathPrefix.resolve(path));
+        }
       }
     }
 
-    ListenableFuture<Void> materializationFuture =
-        executionClients
-            .getContentAddressedStorage()
-            .materializeOutputs(
-                result.getOutputDirectories(), result.getOutputFiles(), cellPathPrefix);
+    ListenableFuture<Void> materializationFuture;
+    if (lazyOutputs.isPresent()) {
+      // Output files are only written once something needs them locally, directories are
+      // materialized right away.
+      lazyOutputs.get().defer(outputFiles);
+      deferredOutputPaths.put(buildTarget, ImmutableList.copyOf(actionOutputs));
+      materializationFuture =
+          executionClients
+              .getContentAddressedStorage()
+              .materializeOutputs(
+                  result.getOutputDirectories(), ImmutableList.of(), cellPathPrefix);
+    } else {
+      materializationFuture =
+          executionClients
+              .getContentAddressedStorage()
+              .materializeOutputs(result.getOutputDirectories(), outputFiles, cellPathPrefix);
+    }
+
+    if (isLocallyCached) {
+      Futures.addCallback(
+          materializationFuture,
+          new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable Void ignored) {}
+
+            @Override
+            public void onFailure(Throwable t) {
+              // The contents of an output directory may have been evicted from the CAS even though
+              // its tree is still there. Forget the result so that the action is executed again by
+              // the next build.
+              actionResultCache.get().invalidate(actionDigest);
+            }
+          },
+          MoreExecutors.directExecutor());
+    }
 
     return Futures.transform(
         materializationFuture,
         ignored -> {
           materializationScope.close();
+          if (actionResultCache.isPresent() && !isLocallyCached) {
+            try {
+              actionResultCache.get().put(actionDigest, result);
+            } catch (IOException e) {
+              LOG.warn(e, "[RE] Failed to store the result of action [%s].", actionDigest);
+            }
+          }
           RemoteExecutionActionEvent.sendTerminalEvent(
               eventBus, State.ACTION_SUCCEEDED, buildTarget, Optional.of(actionDigest));
           actionOutputs.forEach(
@@ -462,4 +701,30 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
         },
         MoreExecutors.directExecutor());
   }
+
+  /**
+   * @return paths of the output files that are already on disk with the expected contents, e.g.
+   *     because the action was executed by a previous build. These don't need to be written again.
+   */
+  private ImmutableSet<Path> getUpToDateOutputFiles(List<OutputFile> outputFiles) {
+    if (!canVerifyOutputsOnDisk) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet.Builder<Path> upToDateFiles = ImmutableSet.builder();
+    for (OutputFile outputFile : outputFiles) {
+      Path path = cellPathPrefix.resolve(outputFile.getPath());
+      try {
+        // Only hash files that have the right size, hashing can be as slow as downloading.
+        if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)
+            && Files.size(path) == outputFile.getDigest().getSize()
+            && Files.isExecutable(path) == outputFile.getIsExecutable()
+            && fileHasher.apply(path).toString().equals(outputFile.getDigest().getHash())) {
+          upToDateFiles.add(Paths.get(outputFile.getPath()));
+        }
+      } catch (IOException e) {
+        LOG.debug(e, "[RE] Failed to check output [%s] on disk.", path);
+      }
+    }
+    return upToDateFiles.build();
+  }
 }
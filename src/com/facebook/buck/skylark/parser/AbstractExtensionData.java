@@ -18,6 +18,7 @@ package com.facebook.buck.skylark.parser;
 
 import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
 import com.google.devtools.build.lib.syntax.Environment.Extension;
 import org.immutables.value.Value;
 
@@ -51,4 +52,11 @@ abstract class AbstractExtensionData {
    */
   @Value.Parameter
   public abstract ImmutableList<String> getLoadTransitiveClosure();
+
+  /**
+   * @return the hash of this extension's content combined with content hashes of all its
+   *     dependencies, which uniquely identifies the result of its evaluation.
+   */
+  @Value.Parameter
+  public abstract HashCode getContentHash();
 }
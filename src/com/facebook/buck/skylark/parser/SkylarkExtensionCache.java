@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.skylark.parser;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.hash.HashCode;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of evaluated Skylark extensions that can be shared by all {@link
+ * SkylarkProjectBuildFileParser} instances of a daemon.
+ *
+ * <p>Entries are keyed by the hash of the extension's content combined with hashes of all its
+ * transitive loads, so a cached entry is only reused when none of the files that contributed to
+ * its evaluation have changed. Extensions are frozen once their evaluation completes, so cached
+ * values can be safely used from multiple parsing threads at the same time.
+ *
+ * <p>Since stale entries are never looked up again, invalidation only exists to release memory
+ * held by extensions whose files have changed.
+ */
+public class SkylarkExtensionCache {
+
+  private static final Logger LOG = Logger.get(SkylarkExtensionCache.class);
+
+  private final ConcurrentMap<HashCode, ExtensionData> extensions = new ConcurrentHashMap<>();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  /**
+   * @return previously evaluated extension with provided {@code contentHash} or {@link
+   *     Optional#empty()} if it has not been evaluated yet or its entry has been invalidated.
+   */
+  Optional<ExtensionData> get(HashCode contentHash) {
+    ExtensionData extensionData = extensions.get(contentHash);
+    if (extensionData == null) {
+      missCount.incrementAndGet();
+      return Optional.empty();
+    }
+    hitCount.incrementAndGet();
+    return Optional.of(extensionData);
+  }
+
+  /**
+   * Records evaluated {@code extensionData}.
+   *
+   * @return the extension that should be used by the caller. In case another thread has managed to
+   *     evaluate the same extension first, its result is returned to make sure that all parsers
+   *     use the same instance.
+   */
+  ExtensionData putIfAbsent(ExtensionData extensionData) {
+    ExtensionData existing = extensions.putIfAbsent(extensionData.getContentHash(), extensionData);
+    return existing == null ? extensionData : existing;
+  }
+
+  /**
+   * Invalidates all extensions that have loaded {@code path} either directly or through one of
+   * their transitive loads.
+   */
+  public void invalidatePath(Path path) {
+    String pathString = path.toString();
+    extensions
+        .values()
+        .removeIf(
+            extensionData -> {
+              boolean invalidated = extensionData.getLoadTransitiveClosure().contains(pathString);
+              if (invalidated) {
+                LOG.verbose("Invalidating extension %s", extensionData.getPath());
+              }
+              return invalidated;
+            });
+  }
+
+  /** Invalidates all cached extensions. */
+  public void invalidateAll() {
+    extensions.clear();
+  }
+
+  /** @return the number of extensions currently held by this cache. */
+  public int size() {
+    return extensions.size();
+  }
+
+  /** @return the number of lookups that were served by previously evaluated extensions. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** @return the number of lookups that required extension evaluation. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+}
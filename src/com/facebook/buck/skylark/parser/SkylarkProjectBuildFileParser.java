@@ -25,6 +25,7 @@ import com.facebook.buck.parser.api.BuildFileManifestPojoizer;
 import com.facebook.buck.parser.api.PojoTransformer;
 import com.facebook.buck.parser.api.ProjectBuildFileParser;
 import com.facebook.buck.parser.events.ParseBuckFileEvent;
+import com.facebook.buck.parser.events.ParseBuckProfilerReportEvent;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.implicit.ImplicitInclude;
 import com.facebook.buck.parser.implicit.PackageImplicitIncludesFinder;
@@ -38,6 +39,7 @@ import com.facebook.buck.skylark.io.GlobberFactory;
 import com.facebook.buck.skylark.io.impl.CachingGlobber;
 import com.facebook.buck.skylark.packages.PackageContext;
 import com.facebook.buck.skylark.parser.context.ParseContext;
+import com.facebook.buck.util.Threads;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -47,6 +49,9 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.cmdline.PackageIdentifier;
@@ -66,6 +71,7 @@ import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -74,6 +80,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.immutables.value.Value;
@@ -98,6 +105,9 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
   private final LoadingCache<LoadImport, ExtensionData> extensionDataCache;
   private final LoadingCache<LoadImport, IncludesData> includesDataCache;
   private final PackageImplicitIncludesFinder packageImplicitIncludeFinder;
+  private final SkylarkExtensionCache sharedExtensionCache;
+  private final AtomicLong sharedExtensionCacheHits;
+  private final AtomicLong sharedExtensionCacheMisses;
 
   private SkylarkProjectBuildFileParser(
       ProjectBuildFileParserOptions options,
@@ -105,13 +115,17 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
       FileSystem fileSystem,
       BuckGlobals buckGlobals,
       EventHandler eventHandler,
-      GlobberFactory globberFactory) {
+      GlobberFactory globberFactory,
+      SkylarkExtensionCache sharedExtensionCache) {
     this.options = options;
     this.buckEventBus = buckEventBus;
     this.fileSystem = fileSystem;
     this.eventHandler = eventHandler;
     this.buckGlobals = buckGlobals;
     this.globberFactory = globberFactory;
+    this.sharedExtensionCache = sharedExtensionCache;
+    this.sharedExtensionCacheHits = new AtomicLong();
+    this.sharedExtensionCacheMisses = new AtomicLong();
 
     this.extensionDataCache =
         CacheBuilder.newBuilder()
@@ -145,8 +159,36 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
       BuckGlobals buckGlobals,
       EventHandler eventHandler,
       GlobberFactory globberFactory) {
+    return using(
+        options,
+        buckEventBus,
+        fileSystem,
+        buckGlobals,
+        eventHandler,
+        globberFactory,
+        new SkylarkExtensionCache());
+  }
+
+  /**
+   * Create an instance of Skylark project build file parser using provided options that reuses
+   * extensions evaluated by other parsers sharing the same {@code sharedExtensionCache}.
+   */
+  public static SkylarkProjectBuildFileParser using(
+      ProjectBuildFileParserOptions options,
+      BuckEventBus buckEventBus,
+      FileSystem fileSystem,
+      BuckGlobals buckGlobals,
+      EventHandler eventHandler,
+      GlobberFactory globberFactory,
+      SkylarkExtensionCache sharedExtensionCache) {
     return new SkylarkProjectBuildFileParser(
-        options, buckEventBus, fileSystem, buckGlobals, eventHandler, globberFactory);
+        options,
+        buckEventBus,
+        fileSystem,
+        buckGlobals,
+        eventHandler,
+        globberFactory,
+        sharedExtensionCache);
   }
 
   @Override
@@ -222,13 +264,20 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
     ImmutableMap<String, Map<String, Object>> rules = ImmutableMap.of();
     ParseBuckFileEvent.Started startEvent = ParseBuckFileEvent.started(buildFile, this.getClass());
     buckEventBus.post(startEvent);
+    long allocatedBytesBefore = Threads.getCurrentThreadAllocatedBytes();
     ParseResult parseResult;
     try {
       parseResult = parseBuildRules(buildFile);
       rules = parseResult.getRawRules();
     } finally {
+      long allocatedBytesAfter = Threads.getCurrentThreadAllocatedBytes();
       buckEventBus.post(
-          ParseBuckFileEvent.finished(startEvent, rules.size(), 0L, Optional.empty()));
+          ParseBuckFileEvent.finished(
+              startEvent,
+              rules.size(),
+              0L,
+              allocatedBytesBefore < 0 ? -1 : allocatedBytesAfter - allocatedBytesBefore,
+              Optional.empty()));
     }
     return parseResult;
   }
@@ -563,29 +612,41 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
     Label label = loadImport.getLabel();
     com.google.devtools.build.lib.vfs.Path extensionPath =
         getImportPath(label, loadImport.getImport());
-    ImmutableList<ExtensionData> dependencies = ImmutableList.of();
+    ParserInputSource inputSource;
+    try {
+      inputSource = createInputSource(extensionPath);
+    } catch (FileNotFoundException e) {
+      throw BuildFileParseException.createForUnknownParseError(
+          String.format(
+              "%s cannot be loaded because it does not exist. It was referenced from %s",
+              extensionPath, loadImport.getContainingLabel()));
+    }
+    BuildFileAST extensionAst = BuildFileAST.parseSkylarkFile(inputSource, eventHandler);
+    if (extensionAst.containsErrors()) {
+      throw BuildFileParseException.createForUnknownParseError(
+          "Cannot parse extension file " + loadImport.getImport().getImportString());
+    }
+    ImmutableList<ExtensionData> dependencies =
+        extensionAst.getImports().isEmpty()
+            ? ImmutableList.of()
+            : loadExtensions(label, extensionAst.getImports());
+
+    HashCode contentHash =
+        computeExtensionContentHash(loadImport, extensionPath, inputSource, dependencies);
+    Optional<ExtensionData> cachedExtensionData = sharedExtensionCache.get(contentHash);
+    if (cachedExtensionData.isPresent()) {
+      sharedExtensionCacheHits.incrementAndGet();
+      return cachedExtensionData.get();
+    }
+    sharedExtensionCacheMisses.incrementAndGet();
+
     Extension extension;
     try (Mutability mutability = Mutability.create("importing extension")) {
-      BuildFileAST extensionAst;
-      try {
-        extensionAst =
-            BuildFileAST.parseSkylarkFile(createInputSource(extensionPath), eventHandler);
-      } catch (FileNotFoundException e) {
-        throw BuildFileParseException.createForUnknownParseError(
-            String.format(
-                "%s cannot be loaded because it does not exist. It was referenced from %s",
-                extensionPath, loadImport.getContainingLabel()));
-      }
-      if (extensionAst.containsErrors()) {
-        throw BuildFileParseException.createForUnknownParseError(
-            "Cannot parse extension file " + loadImport.getImport().getImportString());
-      }
       Environment.Builder envBuilder =
           Environment.builder(mutability)
               .setEventHandler(eventHandler)
               .setGlobals(buckGlobals.getBuckLoadContextGlobals());
-      if (!extensionAst.getImports().isEmpty()) {
-        dependencies = loadExtensions(label, extensionAst.getImports());
+      if (!dependencies.isEmpty()) {
         envBuilder.setImportedExtensions(toImportMap(dependencies, null));
       }
       Environment extensionEnv =
@@ -598,12 +659,38 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
       extension = new Extension(extensionEnv);
     }
 
-    return ExtensionData.of(
-        extension,
-        extensionPath,
-        dependencies,
-        loadImport.getImport().getImportString(),
-        toLoadedPaths(extensionPath, dependencies, null));
+    return sharedExtensionCache.putIfAbsent(
+        ExtensionData.of(
+            extension,
+            extensionPath,
+            dependencies,
+            loadImport.getImport().getImportString(),
+            toLoadedPaths(extensionPath, dependencies, null),
+            contentHash));
+  }
+
+  /**
+   * @return The hash that uniquely identifies the result of evaluating an extension with provided
+   *     content and dependencies. Cell name and import string are included since they affect
+   *     extension resolution and the set of available native rules.
+   */
+  private HashCode computeExtensionContentHash(
+      LoadImport loadImport,
+      com.google.devtools.build.lib.vfs.Path extensionPath,
+      ParserInputSource inputSource,
+      ImmutableList<ExtensionData> dependencies) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(options.getCellName(), StandardCharsets.UTF_8).putByte((byte) 0);
+    hasher.putString(extensionPath.toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+    hasher
+        .putString(loadImport.getImport().getImportString(), StandardCharsets.UTF_8)
+        .putByte((byte) 0);
+    hasher.putUnencodedChars(CharBuffer.wrap(inputSource.getContent()));
+    // foreach is not used to avoid iterator overhead
+    for (int i = 0; i < dependencies.size(); ++i) {
+      hasher.putBytes(dependencies.get(i).getContentHash().asBytes());
+    }
+    return hasher.hash();
   }
 
   /**
@@ -654,8 +741,18 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
 
   @Override
   public void reportProfile() {
-    // this method is a noop since Skylark profiling is completely orthogonal to parsing and is
-    // controlled by com.google.devtools.build.lib.profiler.Profiler
+    // Skylark profiling is completely orthogonal to parsing and is controlled by
+    // com.google.devtools.build.lib.profiler.Profiler, so only extension cache stats are reported
+    buckEventBus.post(
+        ParseBuckProfilerReportEvent.profilerReport(
+            String.format(
+                "Skylark extension cache: %d hits, %d misses (shared cache: %d entries, "
+                    + "%d hits, %d misses)",
+                sharedExtensionCacheHits.get(),
+                sharedExtensionCacheMisses.get(),
+                sharedExtensionCache.size(),
+                sharedExtensionCache.getHitCount(),
+                sharedExtensionCache.getMissCount())));
   }
 
   @Override
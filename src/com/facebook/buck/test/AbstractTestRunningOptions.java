@@ -74,4 +74,28 @@ abstract class AbstractTestRunningOptions {
   public abstract Optional<String> getCoverageIncludes();
 
   public abstract Optional<String> getJavaTempDir();
+
+  /** Whether to start the slowest tests first and split long tests, see {@link TestScheduler}. */
+  @Value.Default
+  public boolean isSchedulingByDuration() {
+    return false;
+  }
+
+  /** The number of tests that run at the same time. */
+  @Value.Default
+  public int getNumTestThreads() {
+    return 1;
+  }
+
+  /**
+   * The maximum number of JVMs that the classes of one JUnit test rule may be split across. Each
+   * JVM takes a test slot, so rules are never split across more than {@link #getNumTestThreads()}.
+   */
+  @Value.Default
+  public int getMaxJUnitShards() {
+    return 1;
+  }
+
+  /** How long each test class took in previous runs, in milliseconds. */
+  public abstract ImmutableMap<String, Long> getTestClassDurationsMs();
 }
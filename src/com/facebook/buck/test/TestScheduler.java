@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Orders and splits tests by how long they took in previous runs, so that the slowest tests start
+ * first instead of a few of them starting late and dominating the end of the run.
+ */
+public class TestScheduler {
+
+  // Utility class; do not instantiate.
+  private TestScheduler() {}
+
+  /**
+   * Estimates how long each item will take.
+   *
+   * @param knownDurationsMs the recorded duration of an item, if any.
+   * @return the recorded duration of each item, in the order of {@code items}, or the mean of the
+   *     recorded durations for items that were never recorded.
+   */
+  public static <T> ImmutableMap<T, Long> estimateDurationsMs(
+      Collection<T> items, Function<? super T, Optional<Long>> knownDurationsMs) {
+    Map<T, Optional<Long>> known = new LinkedHashMap<>();
+    long total = 0;
+    int count = 0;
+    for (T item : items) {
+      Optional<Long> duration = knownDurationsMs.apply(item);
+      known.put(item, duration);
+      if (duration.isPresent()) {
+        total += duration.get();
+        count++;
+      }
+    }
+    long mean = count == 0 ? 0 : total / count;
+
+    ImmutableMap.Builder<T, Long> estimates = ImmutableMap.builder();
+    known.forEach((item, duration) -> estimates.put(item, duration.orElse(mean)));
+    return estimates.build();
+  }
+
+  /** @return the items, longest first. Items of the same duration keep their relative order. */
+  public static <T> ImmutableList<T> orderLongestFirst(Map<T, Long> durationsMs) {
+    List<T> items = new ArrayList<>(durationsMs.keySet());
+    items.sort(Comparator.comparing(durationsMs::get, Comparator.reverseOrder()));
+    return ImmutableList.copyOf(items);
+  }
+
+  /**
+   * Predicts how long it will take to run the given durations in order, with each one starting as
+   * soon as one of {@code slots} is free.
+   */
+  public static long predictWallTimeMs(Iterable<Long> durationsMs, int slots) {
+    return predictWallTimeMs(durationsMs, Function.identity(), duration -> 1, slots);
+  }
+
+  /**
+   * Predicts how long it will take to run the given items in order, with each one starting as soon
+   * as enough of {@code slots} are free for it, and keeping them until it ends.
+   *
+   * @param slotsPerItem how many slots an item takes, e.g. one for each JVM that it runs at once.
+   */
+  public static <T> long predictWallTimeMs(
+      Iterable<T> items,
+      Function<? super T, Long> durationsMs,
+      ToIntFunction<? super T> slotsPerItem,
+      int slots) {
+    PriorityQueue<Long> slotEndTimes = new PriorityQueue<>();
+    for (int i = 0; i < Math.max(1, slots); i++) {
+      slotEndTimes.add(0L);
+    }
+    long wallTime = 0;
+    for (T item : items) {
+      int itemSlots = Math.max(1, Math.min(slotsPerItem.applyAsInt(item), slotEndTimes.size()));
+      long start = 0;
+      for (int i = 0; i < itemSlots; i++) {
+        start = Math.max(start, slotEndTimes.poll());
+      }
+      long end = start + durationsMs.apply(item);
+      for (int i = 0; i < itemSlots; i++) {
+        slotEndTimes.add(end);
+      }
+      wallTime = Math.max(wallTime, end);
+    }
+    return wallTime;
+  }
+
+  /**
+   * Splits items into shards of similar total duration, by adding each item, longest first, to the
+   * shard with the least work so far.
+   *
+   * @param maxShards the maximum number of shards.
+   * @param minShardMs the minimum expected duration of a shard, so that items are not split into
+   *     more shards than is worth the cost of starting each one.
+   * @return the non-empty shards, with the items of each shard longest first.
+   */
+  public static <T> ImmutableList<ImmutableList<T>> splitIntoShards(
+      Map<T, Long> durationsMs, int maxShards, long minShardMs) {
+    long total = durationsMs.values().stream().mapToLong(Long::longValue).sum();
+    int shardCount =
+        (int) Math.max(1, Math.min(maxShards, minShardMs <= 0 ? maxShards : total / minShardMs));
+    shardCount = Math.min(shardCount, Math.max(1, durationsMs.size()));
+
+    List<ImmutableList.Builder<T>> shards = new ArrayList<>(shardCount);
+    long[] shardDurations = new long[shardCount];
+    PriorityQueue<Integer> leastLoaded =
+        new PriorityQueue<>(
+            Comparator.<Integer>comparingLong(shard -> shardDurations[shard])
+                .thenComparing(Function.identity()));
+    for (int shard = 0; shard < shardCount; shard++) {
+      shards.add(ImmutableList.builder());
+      leastLoaded.add(shard);
+    }
+    for (T item : orderLongestFirst(durationsMs)) {
+      int shard = leastLoaded.poll();
+      shards.get(shard).add(item);
+      shardDurations[shard] += durationsMs.get(item);
+      leastLoaded.add(shard);
+    }
+
+    ImmutableList.Builder<ImmutableList<T>> result = ImmutableList.builder();
+    for (ImmutableList.Builder<T> shard : shards) {
+      ImmutableList<T> items = shard.build();
+      if (!items.isEmpty()) {
+        result.add(items);
+      }
+    }
+    return result.build();
+  }
+}
@@ -80,6 +80,24 @@ public abstract class AbstractTestBuckConfig implements ConfigView<BuckConfig> {
     return (int) Math.ceil(ratio * getDelegate().getView(BuildBuckConfig.class).getNumThreads());
   }
 
+  /**
+   * @return whether to start tests in order of their durations in previous runs, slowest first, and
+   *     to split the classes of long JUnit test rules across several JVMs.
+   */
+  public boolean isSchedulingByDuration() {
+    return getDelegate().getBooleanValue(TEST_SECTION_HEADER, "schedule_by_duration", false);
+  }
+
+  /** @return the maximum number of JVMs that the classes of one JUnit test rule may use. */
+  public int getMaxJUnitShards() {
+    int shards = getDelegate().getInteger(TEST_SECTION_HEADER, "max_junit_shards").orElse(4);
+    if (shards <= 0) {
+      throw new HumanReadableException(
+          "test.max_junit_shards must be greater than zero (was " + shards + ")");
+    }
+    return shards;
+  }
+
   public TestResultSummaryVerbosity getResultSummaryVerbosity() {
     boolean includeStdErr =
         getDelegate().getBooleanValue(TEST_SUMMARY_SECTION_NAME, "include_std_err", true);
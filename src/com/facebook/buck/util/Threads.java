@@ -18,11 +18,15 @@ package com.facebook.buck.util;
 
 import com.facebook.buck.core.util.log.Logger;
 import com.google.common.base.Throwables;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 
 public class Threads {
 
   private static final Logger LOG = Logger.get(Threads.class);
 
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
   /** Utility class: do not instantiate. */
   private Threads() {}
 
@@ -45,4 +49,20 @@ public class Threads {
             + Throwables.getStackTraceAsString(new Throwable()));
     thread.interrupt();
   }
+
+  /**
+   * @return the total number of bytes allocated on the heap by the current thread so far, or -1 if
+   *     the JVM does not support measuring it.
+   */
+  public static long getCurrentThreadAllocatedBytes() {
+    if (!(THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+    if (!threadMXBean.isThreadAllocatedMemorySupported()
+        || !threadMXBean.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
 }
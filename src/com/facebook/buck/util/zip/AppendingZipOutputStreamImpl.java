@@ -61,6 +61,12 @@ class AppendingZipOutputStreamImpl implements CustomZipOutputStream.Impl {
     currentEntry.write(delegate, b, off, len);
   }
 
+  @Override
+  public void actuallyWriteCompressed(byte[] b, int off, int len) throws IOException {
+    Objects.requireNonNull(currentEntry);
+    currentEntry.writeCompressed(delegate, b, off, len);
+  }
+
   @Override
   public void actuallyPutNextEntry(ZipEntry entry) throws IOException {
     if (throwExceptionsOnDuplicate && !seenNames.add(entry.getName())) {
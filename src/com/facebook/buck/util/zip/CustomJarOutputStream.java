@@ -16,6 +16,7 @@
 
 package com.facebook.buck.util.zip;
 
+import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
@@ -28,6 +29,8 @@ import javax.annotation.Nullable;
 /** Extension of {@link CustomZipOutputStream} with jar-specific functionality. */
 public class CustomJarOutputStream extends CustomZipOutputStream {
   public static final String DIGEST_ATTRIBUTE_NAME = "Murmur3-128-Digest";
+  static final HashFunction DIGEST_FUNCTION = Hashing.murmur3_128();
+
   private final HashingImpl impl;
 
   public CustomJarOutputStream(Impl impl) {
@@ -51,9 +54,18 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
     impl.writeManifest();
   }
 
-  private static class HashingImpl extends OutputStream implements Impl {
-    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+  /**
+   * Writes an entry whose data has been deflated ahead of time. When hashing entries, the digest
+   * of the entry must have been computed along with its data.
+   */
+  @Override
+  public void writeDeflatedEntry(CustomZipEntry entry, DeflatedEntry deflated)
+      throws IOException {
+    impl.setNextEntryDigest(deflated.getDigest());
+    super.writeDeflatedEntry(entry, deflated);
+  }
 
+  private static class HashingImpl extends OutputStream implements Impl {
     private final Impl inner;
     private final DeterministicManifest manifest = new DeterministicManifest();
     private boolean shouldHashEntries = false;
@@ -61,6 +73,7 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
 
     @Nullable private ZipEntry currentEntry;
     @Nullable private Hasher hasher;
+    @Nullable private HashCode nextEntryDigest;
 
     HashingImpl(Impl inner) {
       this.inner = inner;
@@ -74,12 +87,16 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
       this.shouldHashEntries = shouldHashEntries;
     }
 
+    public void setNextEntryDigest(@Nullable HashCode digest) {
+      this.nextEntryDigest = digest;
+    }
+
     @Override
     public void actuallyPutNextEntry(ZipEntry entry) throws IOException {
       inner.actuallyPutNextEntry(entry);
 
       if (shouldHashEntries && !entry.isDirectory() && hasher == null) {
-        hasher = HASH_FUNCTION.newHasher();
+        hasher = DIGEST_FUNCTION.newHasher();
       }
 
       currentEntry = entry;
@@ -94,6 +111,15 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
       }
     }
 
+    @Override
+    public void actuallyWriteCompressed(byte[] b, int off, int len) throws IOException {
+      if (hasher != null && nextEntryDigest == null) {
+        throw new IllegalStateException(
+            "Attempted to write compressed data without its digest with hashing enabled.");
+      }
+      inner.actuallyWriteCompressed(b, off, len);
+    }
+
     @Override
     public void actuallyCloseEntry() throws IOException {
       inner.actuallyCloseEntry();
@@ -103,12 +129,14 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
           throw new IllegalStateException(
               "Attempted to write an entry with hashing enabled after the manifest was written.");
         }
+        HashCode digest = nextEntryDigest != null ? nextEntryDigest : hasher.hash();
         manifest.setEntryAttribute(
-            currentEntry.getName(), DIGEST_ATTRIBUTE_NAME, hasher.hash().toString());
+            currentEntry.getName(), DIGEST_ATTRIBUTE_NAME, digest.toString());
         hasher = null;
       }
 
       currentEntry = null;
+      nextEntryDigest = null;
     }
 
     @Override
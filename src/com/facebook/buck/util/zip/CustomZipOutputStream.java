@@ -54,6 +54,12 @@ public class CustomZipOutputStream extends OutputStream {
      */
     void actuallyWrite(byte b[], int off, int len) throws IOException;
 
+    /**
+     * Called by {@link CustomZipOutputStream#writeDeflatedEntry(CustomZipEntry, DeflatedEntry)}
+     * with the already-deflated data of the current entry, whose CRC and size have been set.
+     */
+    void actuallyWriteCompressed(byte b[], int off, int len) throws IOException;
+
     void actuallyClose() throws IOException;
   }
 
@@ -123,6 +129,26 @@ public class CustomZipOutputStream extends OutputStream {
     write(buf, 0, 1);
   }
 
+  /**
+   * Writes an entry whose data has been deflated ahead of time, for example on another thread. The
+   * resulting bytes are the same as when writing the uncompressed data to this stream.
+   */
+  public void writeDeflatedEntry(CustomZipEntry entry, DeflatedEntry deflated)
+      throws IOException {
+    Preconditions.checkArgument(
+        entry.getMethod() == ZipEntry.DEFLATED
+            && entry.getCompressionLevel() == deflated.getCompressionLevel(),
+        "Entry %s must be deflated with the same compression level as its data.",
+        entry.getName());
+    entry.setCrc(deflated.getCrc());
+    entry.setSize(deflated.getSize());
+
+    putNextEntry(entry);
+    byte[] data = deflated.getData();
+    impl.actuallyWriteCompressed(data, 0, data.length);
+    closeEntry();
+  }
+
   public void writeEntry(String name, InputStream contents) throws IOException {
     try {
       putNextEntry(new CustomZipEntry(name));
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.zip;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import javax.annotation.Nullable;
+
+/**
+ * The data of a zip entry, deflated ahead of time so that the work can be done on another thread
+ * than the one writing the zip (see {@link
+ * CustomZipOutputStream#writeDeflatedEntry(CustomZipEntry, DeflatedEntry)}), or copied as is from
+ * another zip.
+ *
+ * <p>The data is deflated with the same settings as {@link EntryAccounting}, so that the zip is the
+ * same whichever way its entries were written.
+ */
+public class DeflatedEntry {
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final int compressionLevel;
+  private final byte[] data;
+  private final long crc;
+  private final long size;
+  @Nullable private final HashCode digest;
+
+  private DeflatedEntry(
+      int compressionLevel, byte[] data, long crc, long size, @Nullable HashCode digest) {
+    this.compressionLevel = compressionLevel;
+    this.data = data;
+    this.crc = crc;
+    this.size = size;
+    this.digest = digest;
+  }
+
+  /**
+   * Reads and deflates the data of the given entry.
+   *
+   * @param computeDigest whether to also compute the digest that {@link CustomJarOutputStream}
+   *     records in the manifest when hashing entries.
+   */
+  public static DeflatedEntry deflate(CustomZipEntry entry, InputStream in, boolean computeDigest)
+      throws IOException {
+    Preconditions.checkArgument(entry.getMethod() == ZipEntry.DEFLATED);
+
+    Deflater deflater = new Deflater(entry.getCompressionLevel(), true);
+    CRC32 crc = new CRC32();
+    @Nullable
+    Hasher hasher = computeDigest ? CustomJarOutputStream.DIGEST_FUNCTION.newHasher() : null;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] input = new byte[BUFFER_SIZE];
+    byte[] output = new byte[BUFFER_SIZE];
+    try {
+      int read;
+      while ((read = in.read(input)) != -1) {
+        if (read == 0) {
+          continue;
+        }
+        crc.update(input, 0, read);
+        if (hasher != null) {
+          hasher.putBytes(input, 0, read);
+        }
+        deflater.setInput(input, 0, read);
+        while (!deflater.needsInput()) {
+          out.write(output, 0, deflater.deflate(output, 0, output.length));
+        }
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        out.write(output, 0, deflater.deflate(output, 0, output.length));
+      }
+
+      return new DeflatedEntry(
+          entry.getCompressionLevel(),
+          out.toByteArray(),
+          crc.getValue(),
+          deflater.getBytesRead(),
+          hasher != null ? hasher.hash() : null);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Reads the deflated data of an entry of another zip as is, without inflating it.
+   *
+   * @param entry the entry, whose CRC and uncompressed size must be set.
+   * @param digest the digest of the uncompressed data, if needed.
+   */
+  public static DeflatedEntry copy(
+      CustomZipEntry entry, InputStream rawData, @Nullable HashCode digest) throws IOException {
+    Preconditions.checkArgument(entry.getMethod() == ZipEntry.DEFLATED);
+    Preconditions.checkArgument(
+        entry.getCrc() != -1 && entry.getSize() != -1,
+        "CRC and size of %s must be known to copy it.",
+        entry.getName());
+    return new DeflatedEntry(
+        entry.getCompressionLevel(),
+        ByteStreams.toByteArray(rawData),
+        entry.getCrc(),
+        entry.getSize(),
+        digest);
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  public byte[] getData() {
+    return data;
+  }
+
+  public long getCrc() {
+    return crc;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /** @return the digest of the uncompressed data, if it was computed. */
+  @Nullable
+  public HashCode getDigest() {
+    return digest;
+  }
+}
@@ -57,6 +57,10 @@ class EntryAccounting {
   private long offset;
   private long length = 0;
   private long externalAttributes = 0;
+  /** Whether the entry's data was written already compressed, see {@link #writeCompressed}. */
+  private boolean compressedDataWritten = false;
+
+  private long compressedLength = 0;
 
   /**
    * General purpose bit flag: Bit 00: encrypted file Bit 01: compression option Bit 02: compression
@@ -243,6 +247,8 @@ class EntryAccounting {
     if (len == 0) {
       return;
     }
+    Preconditions.checkState(
+        !compressedDataWritten, "Cannot mix compressed and uncompressed data in one entry.");
     updateCrc(b, off, len);
 
     if (method == Method.STORE) {
@@ -257,6 +263,20 @@ class EntryAccounting {
     }
   }
 
+  /**
+   * Write data that has already been deflated, such as by {@link DeflatedEntry}. The CRC and size
+   * of the uncompressed data must already be set on the entry.
+   */
+  public void writeCompressed(OutputStream out, byte[] b, int off, int len) throws IOException {
+    Preconditions.checkState(
+        method == Method.DEFLATE, "Only deflated entries can be written compressed.");
+    Preconditions.checkState(
+        deflater.getBytesRead() == 0, "Cannot mix compressed and uncompressed data in one entry.");
+    out.write(b, off, len);
+    compressedDataWritten = true;
+    compressedLength += len;
+  }
+
   /**
    * Finish the entry and return the total number of compressed bytes written (not counting the
    * local file header, but counting the data descriptor if present). Must be called exactly once.
@@ -269,6 +289,11 @@ class EntryAccounting {
       Preconditions.checkState(
           entry.getCrc() == calculateCrc(),
           "CRC of bytes written differs from what is specified in the entry.");
+    } else if (compressedDataWritten) {
+      Preconditions.checkState(
+          entry.getSize() != -1 && entry.getCrc() != -1,
+          "Size and CRC must be set for entries written compressed.");
+      entry.setCompressedSize(compressedLength);
     } else if (method == Method.DEFLATE) {
       deflater.finish();
       while (!deflater.finished()) {
@@ -18,9 +18,13 @@ package com.facebook.buck.util.zip;
 
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.util.RichStream;
+import com.facebook.buck.util.function.ThrowingSupplier;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import java.io.IOException;
@@ -36,12 +40,17 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Predicate;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
 import javax.annotation.Nullable;
 
 public class JarBuilder {
@@ -60,6 +69,9 @@ public class JarBuilder {
     void onEntryOmitted(String jarFile, JarEntrySupplier entrySupplier);
   }
 
+  /** How many entries per thread of the pool are deflated ahead of the one being written. */
+  private static final int ENTRIES_DEFLATED_AHEAD_PER_THREAD = 4;
+
   private Observer observer = Observer.IGNORING;
   @Nullable private Path outputFile;
   @Nullable private String mainClass;
@@ -69,8 +81,11 @@ public class JarBuilder {
   private boolean shouldHashEntries;
   private Predicate<? super CustomZipEntry> removeEntryPredicate = entry -> false;
   private List<JarEntryContainer> sourceContainers = new ArrayList<>();
+  /** Containers of {@link #setEntriesToJar}, which are ours to close. */
+  private List<JarEntryContainer> containersToClose = new ArrayList<>();
   private Set<String> alreadyAddedEntries = new HashSet<>();
   private Map<String, Set<String>> services = new HashMap<>();
+  @Nullable private ForkJoinPool pool;
 
   public JarBuilder setObserver(Observer observer) {
     this.observer = observer;
@@ -85,7 +100,11 @@ public class JarBuilder {
     RichStream.from(entriesToJar)
         .peek(path -> Preconditions.checkArgument(path.isAbsolute()))
         .map(JarEntryContainer::of)
-        .forEach(sourceContainers::add);
+        .forEach(
+            container -> {
+              sourceContainers.add(container);
+              containersToClose.add(container);
+            });
 
     return this;
   }
@@ -132,6 +151,16 @@ public class JarBuilder {
     return this;
   }
 
+  /**
+   * Deflates entries in parallel in the given pool, a few entries ahead of the one being written.
+   * Entries are still written in the same order, so the jar is the same as when deflating them one
+   * by one.
+   */
+  public JarBuilder setForkJoinPool(ForkJoinPool pool) {
+    this.pool = pool;
+    return this;
+  }
+
   public int createJarFile(Path outputFile) throws IOException {
     Preconditions.checkArgument(outputFile.isAbsolute());
     try (CustomJarOutputStream jar =
@@ -159,6 +188,10 @@ public class JarBuilder {
       }
 
       return 0;
+    } finally {
+      for (JarEntryContainer container : containersToClose) {
+        container.close();
+      }
     }
   }
 
@@ -221,14 +254,107 @@ public class JarBuilder {
     return entry;
   }
 
-  private void addEntriesToJar(Iterable<JarEntrySupplier> entries, CustomJarOutputStream jar)
+  private void addEntriesToJar(List<JarEntrySupplier> entries, CustomJarOutputStream jar)
       throws IOException {
+    if (pool != null) {
+      addEntriesToJarInParallel(pool, entries, jar);
+      return;
+    }
+
     for (JarEntrySupplier entrySupplier : entries) {
-      addEntryToJar(entrySupplier, jar);
+      addEntryToJar(entrySupplier, jar, null);
+    }
+  }
+
+  private void addEntriesToJarInParallel(
+      ForkJoinPool pool, List<JarEntrySupplier> entries, CustomJarOutputStream jar)
+      throws IOException {
+    int window = pool.getParallelism() * ENTRIES_DEFLATED_AHEAD_PER_THREAD;
+    List<ForkJoinTask<DeflatedEntry>> tasks = new ArrayList<>(entries.size());
+    try {
+      for (int i = 0; i < entries.size(); i++) {
+        while (tasks.size() < entries.size() && tasks.size() <= i + window) {
+          tasks.add(submitDeflate(pool, entries.get(tasks.size())));
+        }
+        addEntryToJar(entries.get(i), jar, tasks.get(i));
+        // Let go of the deflated data as soon as it's written.
+        tasks.set(i, null);
+      }
+    } finally {
+      // The entries' sources may be closed once we return, so wait for any task still reading.
+      tasks.stream().filter(Objects::nonNull).forEach(ForkJoinTask::quietlyJoin);
+    }
+  }
+
+  /** @return the task deflating the given entry, or null if it isn't written deflated. */
+  @Nullable
+  private ForkJoinTask<DeflatedEntry> submitDeflate(
+      ForkJoinPool pool, JarEntrySupplier entrySupplier) {
+    CustomZipEntry entry = entrySupplier.getEntry();
+    String entryName = entry.getName();
+    if (entry.isDirectory()
+        || entry.getMethod() != ZipEntry.DEFLATED
+        || JarFile.MANIFEST_NAME.equals(entryName)
+        || isService(entryName)
+        || removeEntryPredicate.test(entry)) {
+      return null;
+    }
+
+    return pool.submit(() -> deflateEntry(entrySupplier));
+  }
+
+  /**
+   * Deflates the data of the given entry, or copies it as is when it's already deflated in the zip
+   * it comes from.
+   */
+  private DeflatedEntry deflateEntry(JarEntrySupplier entrySupplier) throws IOException {
+    CustomZipEntry entry = entrySupplier.getEntry();
+    Optional<ThrowingSupplier<InputStream, IOException>> rawInputStreamSupplier =
+        entrySupplier.getRawInputStreamSupplier();
+    if (!rawInputStreamSupplier.isPresent()) {
+      try (InputStream entryInputStream =
+          Objects.requireNonNull(entrySupplier.getInputStreamSupplier().get())) {
+        return DeflatedEntry.deflate(entry, entryInputStream, shouldHashEntries);
+      }
+    }
+
+    @Nullable HashCode digest = null;
+    if (shouldHashEntries) {
+      // Inflating the entry to hash it is still much cheaper than deflating it again.
+      Hasher hasher = CustomJarOutputStream.DIGEST_FUNCTION.newHasher();
+      try (InputStream entryInputStream =
+          Objects.requireNonNull(entrySupplier.getInputStreamSupplier().get())) {
+        ByteStreams.copy(entryInputStream, Funnels.asOutputStream(hasher));
+      }
+      digest = hasher.hash();
+    }
+    try (InputStream rawInputStream = rawInputStreamSupplier.get().get()) {
+      return DeflatedEntry.copy(entry, rawInputStream, digest);
+    }
+  }
+
+  private static DeflatedEntry getDeflatedEntry(ForkJoinTask<DeflatedEntry> task)
+      throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while deflating jar entries.", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
     }
   }
 
-  private void addEntryToJar(JarEntrySupplier entrySupplier, CustomJarOutputStream jar)
+  private void addEntryToJar(
+      JarEntrySupplier entrySupplier,
+      CustomJarOutputStream jar,
+      @Nullable ForkJoinTask<DeflatedEntry> deflated)
       throws IOException {
     CustomZipEntry entry = entrySupplier.getEntry();
     String entryName = entry.getName();
@@ -270,6 +396,16 @@ public class JarBuilder {
       return;
     }
 
+    if (deflated != null) {
+      jar.writeDeflatedEntry(entry, getDeflatedEntry(deflated));
+      return;
+    }
+
+    if (entrySupplier.getRawInputStreamSupplier().isPresent()) {
+      jar.writeDeflatedEntry(entry, deflateEntry(entrySupplier));
+      return;
+    }
+
     jar.putNextEntry(entry);
     try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
       if (entryInputStream != null) {
@@ -19,6 +19,8 @@ package com.facebook.buck.util.zip;
 import com.facebook.buck.util.function.ThrowingSupplier;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Optional;
+import javax.annotation.Nullable;
 
 /**
  * Encapsulates a file or directory to be added as a single entry to a jar by {@link JarBuilder}.
@@ -27,14 +29,29 @@ public class JarEntrySupplier {
   private final CustomZipEntry entry;
   private final String owner;
   private final ThrowingSupplier<InputStream, IOException> inputStreamSupplier;
+  @Nullable private final ThrowingSupplier<InputStream, IOException> rawInputStreamSupplier;
 
   public JarEntrySupplier(
       CustomZipEntry entry,
       String owner,
       ThrowingSupplier<InputStream, IOException> inputStreamSupplier) {
+    this(entry, owner, inputStreamSupplier, null);
+  }
+
+  /**
+   * @param rawInputStreamSupplier supplies the deflated data of an entry read from another zip,
+   *     so that it can be copied without inflating and deflating it again. The CRC and size of the
+   *     entry must be set.
+   */
+  public JarEntrySupplier(
+      CustomZipEntry entry,
+      String owner,
+      ThrowingSupplier<InputStream, IOException> inputStreamSupplier,
+      @Nullable ThrowingSupplier<InputStream, IOException> rawInputStreamSupplier) {
     this.entry = entry;
     this.owner = owner;
     this.inputStreamSupplier = inputStreamSupplier;
+    this.rawInputStreamSupplier = rawInputStreamSupplier;
   }
 
   public CustomZipEntry getEntry() {
@@ -48,4 +65,8 @@ public class JarEntrySupplier {
   public ThrowingSupplier<InputStream, IOException> getInputStreamSupplier() {
     return inputStreamSupplier;
   }
+
+  public Optional<ThrowingSupplier<InputStream, IOException>> getRawInputStreamSupplier() {
+    return Optional.ofNullable(rawInputStreamSupplier);
+  }
 }
@@ -102,6 +102,13 @@ public class OverwritingZipOutputStreamImpl implements CustomZipOutputStream.Imp
     currentEntry.write(currentOutput, b, off, len);
   }
 
+  @Override
+  public void actuallyWriteCompressed(byte[] b, int off, int len) throws IOException {
+    Objects.requireNonNull(currentEntry);
+    Objects.requireNonNull(currentOutput);
+    currentEntry.writeCompressed(currentOutput, b, off, len);
+  }
+
   @Override
   public void actuallyClose() throws IOException {
     long currentOffset = 0;
@@ -19,17 +19,29 @@ package com.facebook.buck.util.zip;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import javax.annotation.Nullable;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 
-/** Provides all entries of a given zip or jar file, so they can be added to another jar. */
+/**
+ * Provides all entries of a given zip or jar file, so they can be added to another jar.
+ *
+ * <p>Deflated entries also provide their data as is, so that they can be copied without inflating
+ * and deflating them again.
+ */
 class ZipFileJarEntryContainer implements JarEntryContainer {
   private final String owner;
   private final Path jarFilePath;
   @Nullable private JarFile jar;
+  @Nullable private ZipFile rawZip;
 
   public ZipFileJarEntryContainer(Path jarFilePath) {
     this.jarFilePath = jarFilePath;
@@ -44,17 +56,58 @@ class ZipFileJarEntryContainer implements JarEntryContainer {
 
   @Override
   public Stream<JarEntrySupplier> stream() throws IOException {
-    return getJarFile()
-        .stream()
-        .map(
-            entry ->
-                new JarEntrySupplier(
-                    makeCustomEntry(entry), owner, () -> getJarFile().getInputStream(entry)));
+    List<JarEntry> entries = Collections.list(getJarFile().entries());
+    // Both list the entries in the order of the central directory.
+    List<ZipArchiveEntry> rawEntries = Collections.list(getRawZipFile().getEntries());
+    boolean sameEntries = rawEntries.size() == entries.size();
+
+    return IntStream.range(0, entries.size())
+        .mapToObj(
+            i -> {
+              JarEntry entry = entries.get(i);
+              ZipArchiveEntry rawEntry = sameEntries ? rawEntries.get(i) : null;
+              CustomZipEntry customEntry = makeCustomEntry(entry);
+              return new JarEntrySupplier(
+                  customEntry,
+                  owner,
+                  () -> getJarFile().getInputStream(entry),
+                  canCopyRaw(customEntry, rawEntry)
+                      ? () -> getRawZipFile().getRawInputStream(rawEntry)
+                      : null);
+            });
   }
 
   @Override
   public void close() throws IOException {
-    getJarFile().close();
+    try (JarFile jarToClose = jar;
+        ZipFile rawZipToClose = rawZip) {
+      jar = null;
+      rawZip = null;
+    }
+  }
+
+  private static boolean canCopyRaw(CustomZipEntry entry, @Nullable ZipArchiveEntry rawEntry) {
+    return rawEntry != null
+        && rawEntry.getName().equals(entry.getName())
+        && rawEntry.getMethod() == ZipEntry.DEFLATED
+        && entry.getMethod() == ZipEntry.DEFLATED
+        && !rawEntry.getGeneralPurposeBit().usesEncryption()
+        && entry.getCrc() == rawEntry.getCrc()
+        && entry.getSize() == rawEntry.getSize()
+        && entry.getCrc() != -1
+        && entry.getSize() != -1;
+  }
+
+  private ZipFile getRawZipFile() throws IOException {
+    if (rawZip == null) {
+      try {
+        rawZip = new ZipFile(jarFilePath.toFile());
+      } catch (IOException e) {
+        throw new IOException("Failed to process ZipFile " + owner, e);
+      }
+    }
+
+    return rawZip;
   }
 
   private JarFile getJarFile() throws IOException {
@@ -163,6 +163,19 @@ public class WorkerProcessPool implements Closeable {
       onWorkerProcessReturn.accept(this);
     }
 
+    /** Shuts down the worker process, if any, so that the next consumer starts a new one. */
+    public synchronized void restart() {
+      if (workerProcess != null) {
+        try {
+          workerProcess.close();
+        } catch (Exception ex) {
+          LOG.error(ex, "Failed to close worker process; ignoring.");
+        } finally {
+          workerProcess = null;
+        }
+      }
+    }
+
     @Override
     public synchronized void close() {
       isClosed = true;
@@ -202,6 +215,18 @@ public class WorkerProcessPool implements Closeable {
       }
     }
 
+    /**
+     * Shuts down the borrowed worker process and returns ownership back to the pool, which will
+     * start a new process for the next consumer. Used for workers that accumulate state, e.g. to
+     * give back the memory of a worker that has grown too large.
+     */
+    public void recycle() {
+      if (lifecycle != null) {
+        lifecycle.restart();
+      }
+      close();
+    }
+
     /**
      * Submits a job to the worker, and returns the result.
      *
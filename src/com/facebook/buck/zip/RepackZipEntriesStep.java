@@ -23,24 +23,26 @@ import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
 import com.facebook.buck.util.zip.CustomZipEntry;
 import com.facebook.buck.util.zip.CustomZipOutputStream;
+import com.facebook.buck.util.zip.DeflatedEntry;
 import com.facebook.buck.util.zip.ZipCompressionLevel;
 import com.facebook.buck.util.zip.ZipOutputStreams;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 
 /**
  * A command that creates a copy of a ZIP archive, making sure that certain user-specified entries
- * are packed with a certain compression level.
+ * are packed with a certain compression level. The compressed data of other entries is copied as
+ * is.
  *
  * <p>Can be used, for instance, to force the resources.arsc file in an Android .apk to be
  * compressed.
@@ -91,39 +93,58 @@ public class RepackZipEntriesStep implements Step {
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
     Path inputFile = filesystem.getPathForRelativePath(inputPath);
     Path outputFile = filesystem.getPathForRelativePath(outputPath);
-    try (ZipInputStream in =
-            new ZipInputStream(new BufferedInputStream(Files.newInputStream(inputFile)));
+    try (ZipFile in = new ZipFile(inputFile.toFile());
         CustomZipOutputStream out = ZipOutputStreams.newOutputStream(outputFile)) {
-      for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
-        CustomZipEntry customEntry = new CustomZipEntry(entry);
+      for (ZipArchiveEntry entry : Collections.list(in.getEntriesInPhysicalOrder())) {
+        CustomZipEntry customEntry = toCustomZipEntry(entry);
         if (entries.contains(customEntry.getName())) {
           customEntry.setCompressionLevel(compressionLevel.getValue());
+        } else if (customEntry.getMethod() == ZipEntry.DEFLATED) {
+          // The entry is left as it is, so copy its compressed data instead of inflating and
+          // deflating it again.
+          try (InputStream rawData = in.getRawInputStream(entry)) {
+            out.writeDeflatedEntry(customEntry, DeflatedEntry.copy(customEntry, rawData, null));
+          }
+          continue;
         }
 
-        InputStream toUse;
-        // If we're using STORED files, we must pre-calculate the CRC.
-        if (customEntry.getMethod() == ZipEntry.STORED) {
-          try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            ByteStreams.copy(in, bos);
-            byte[] bytes = bos.toByteArray();
-            customEntry.setCrc(Hashing.crc32().hashBytes(bytes).padToLong());
-            customEntry.setSize(bytes.length);
-            customEntry.setCompressedSize(bytes.length);
-            toUse = new ByteArrayInputStream(bytes);
+        try (InputStream entryData = in.getInputStream(entry)) {
+          InputStream toUse;
+          // If we're using STORED files, we must pre-calculate the CRC.
+          if (customEntry.getMethod() == ZipEntry.STORED) {
+            try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+              ByteStreams.copy(entryData, bos);
+              byte[] bytes = bos.toByteArray();
+              customEntry.setCrc(Hashing.crc32().hashBytes(bytes).padToLong());
+              customEntry.setSize(bytes.length);
+              customEntry.setCompressedSize(bytes.length);
+              toUse = new ByteArrayInputStream(bytes);
+            }
+          } else {
+            toUse = entryData;
           }
-        } else {
-          toUse = in;
-        }
 
-        out.putNextEntry(customEntry);
-        ByteStreams.copy(toUse, out);
-        out.closeEntry();
+          out.putNextEntry(customEntry);
+          ByteStreams.copy(toUse, out);
+          out.closeEntry();
+        }
       }
 
       return StepExecutionResults.SUCCESS;
     }
   }
 
+  private static CustomZipEntry toCustomZipEntry(ZipArchiveEntry entry) {
+    // ZipArchiveEntry keeps its name apart from ZipEntry's, so copy the fields one by one.
+    CustomZipEntry customEntry = new CustomZipEntry(entry.getName());
+    customEntry.setMethod(entry.getMethod());
+    customEntry.setTime(entry.getTime());
+    customEntry.setCrc(entry.getCrc());
+    customEntry.setSize(entry.getSize());
+    customEntry.setCompressedSize(entry.getCompressedSize());
+    return customEntry;
+  }
+
   @Override
   public String getShortName() {
     return "repack zip";
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestDurationHistoryTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:test");
+
+  @Test
+  public void recordedDurationsAreSavedAndLoaded() {
+    Path path = tmp.getRoot().resolve("buck-out").resolve("test_durations.json");
+    TestDurationHistory history = TestDurationHistory.load(path);
+    assertEquals(Optional.empty(), history.getTargetDurationMs(TARGET));
+
+    history.recordTarget(TARGET, 1000);
+    history.recordClass("com.example.FooTest", 400);
+    history.save();
+
+    TestDurationHistory loaded = TestDurationHistory.load(path);
+    assertEquals(Optional.of(1000L), loaded.getTargetDurationMs(TARGET));
+    assertEquals(ImmutableMap.of("com.example.FooTest", 400L), loaded.getClassDurationsMs());
+  }
+
+  @Test
+  public void durationsAverageTheLatestRunWithEarlierOnes() {
+    TestDurationHistory history =
+        new TestDurationHistory(
+            tmp.getRoot().resolve("test_durations.json"),
+            ImmutableMap.of(TARGET.getFullyQualifiedName(), 1000L),
+            ImmutableMap.of());
+    history.recordTarget(TARGET, 3000);
+    assertEquals(Optional.of(2000L), history.getTargetDurationMs(TARGET));
+    history.recordTarget(TARGET, 2000);
+    assertEquals(Optional.of(2000L), history.getTargetDurationMs(TARGET));
+  }
+
+  @Test
+  public void unreadableDurationsAreIgnored() throws IOException {
+    Path path = tmp.getRoot().resolve("test_durations.json");
+    Files.write(path, "not json".getBytes(StandardCharsets.UTF_8));
+
+    TestDurationHistory history = TestDurationHistory.load(path);
+    assertEquals(Optional.empty(), history.getTargetDurationMs(TARGET));
+    assertEquals(ImmutableMap.of(), history.getClassDurationsMs());
+  }
+}
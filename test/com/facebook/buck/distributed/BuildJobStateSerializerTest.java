@@ -16,9 +16,16 @@
 
 package com.facebook.buck.distributed;
 
+import com.facebook.buck.distributed.BuildJobStateSerializer.ChunkedBuildJobState;
 import com.facebook.buck.distributed.thrift.BuildJobState;
+import com.facebook.buck.distributed.thrift.BuildJobStateTargetGraph;
+import com.facebook.buck.distributed.thrift.BuildJobStateTargetNode;
+import com.google.common.collect.Sets;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -38,4 +45,49 @@ public class BuildJobStateSerializerTest {
       Assert.assertEquals(state, actual);
     }
   }
+
+  private static BuildJobState createLargeState(String changedNode) {
+    Random random = new Random(42);
+    BuildJobStateTargetGraph graph = new BuildJobStateTargetGraph();
+    graph.setNodes(new ArrayList<>());
+    for (int i = 0; i < 5000; i++) {
+      BuildJobStateTargetNode node = new BuildJobStateTargetNode();
+      node.setRawNode(i == 2500 ? changedNode : "node" + i + ":" + random.nextLong());
+      graph.addToNodes(node);
+    }
+    BuildJobState state = new BuildJobState();
+    state.setTargetGraph(graph);
+    return state;
+  }
+
+  @Test
+  public void testChunkedSerializationIsSymmetrical() throws IOException {
+    BuildJobState state = createLargeState("changed");
+
+    ChunkedBuildJobState chunked = BuildJobStateSerializer.serializeChunked(state);
+    Assert.assertTrue(BuildJobStateSerializer.isChunkManifest(chunked.manifest));
+    Assert.assertFalse(
+        BuildJobStateSerializer.isChunkManifest(BuildJobStateSerializer.serialize(state)));
+
+    List<byte[]> chunks = new ArrayList<>();
+    for (String hash : BuildJobStateSerializer.getChunkHashes(chunked.manifest)) {
+      chunks.add(chunked.chunksByHash.get(hash));
+    }
+    Assert.assertTrue(chunks.size() > 1);
+    Assert.assertEquals(state, BuildJobStateSerializer.deserializeChunks(chunks));
+  }
+
+  @Test
+  public void testSmallChangeOnlyChangesFewChunks() throws IOException {
+    ChunkedBuildJobState before =
+        BuildJobStateSerializer.serializeChunked(createLargeState("before"));
+    ChunkedBuildJobState after =
+        BuildJobStateSerializer.serializeChunked(createLargeState("after, and a bit longer"));
+
+    int changedChunks =
+        Sets.difference(after.chunksByHash.keySet(), before.chunksByHash.keySet()).size();
+    Assert.assertTrue(changedChunks > 0);
+    Assert.assertTrue(changedChunks <= 2);
+    Assert.assertTrue(after.chunksByHash.size() > 2);
+  }
 }
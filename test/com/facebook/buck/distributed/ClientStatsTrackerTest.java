@@ -56,6 +56,7 @@ public class ClientStatsTrackerTest {
   private static final int LOCAL_FILE_HASH_COMPUTATION_DURATION_MS = 13;
   private static final int LOCAL_TARGET_GRAPH_SERIALIZATION_DURATION_MS = 14;
   private static final int MISSING_FILES_UPLOADED_COUNT = 2001;
+  private static final int LOCAL_FILE_HASH_COUNT = 5200;
   private static final String BUCK_CLIENT_ERROR_MESSAGE = "Some error message";
   private static final String BUILD_LABEL = "unit_test";
   private static final String MINION_TYPE = "standard_type";
@@ -196,6 +197,24 @@ public class ClientStatsTrackerTest {
     Assert.assertFalse(stats.racingBuildFinishedFirst().get());
   }
 
+  @Test
+  public void testLocalFileHashThroughputIsPopulatedWhenCountIsSet() {
+    ClientStatsTracker tracker = new ClientStatsTracker(BUILD_LABEL, MINION_TYPE);
+    initializeCommonStats(tracker);
+    DistBuildClientStats stats = tracker.generateStats();
+    Assert.assertFalse(stats.localFileHashCount().isPresent());
+    Assert.assertFalse(stats.localFileHashesPerSecond().isPresent());
+
+    tracker = new ClientStatsTracker(BUILD_LABEL, MINION_TYPE);
+    initializeCommonStats(tracker);
+    tracker.setLocalFileHashCount(LOCAL_FILE_HASH_COUNT);
+    stats = tracker.generateStats();
+    Assert.assertEquals(LOCAL_FILE_HASH_COUNT, (long) stats.localFileHashCount().get());
+    Assert.assertEquals(
+        LOCAL_FILE_HASH_COUNT * 1000 / LOCAL_FILE_HASH_COMPUTATION_DURATION_MS,
+        (long) stats.localFileHashesPerSecond().get());
+  }
+
   private void initializeCommonStats(ClientStatsTracker tracker) {
     tracker.setStampedeId(STAMPEDE_ID_ONE);
     tracker.setDistributedBuildExitCode(DISTRIBUTED_BUILD_EXIT_CODE);
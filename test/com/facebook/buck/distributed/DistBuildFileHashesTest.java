@@ -16,6 +16,7 @@
 
 package com.facebook.buck.distributed;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -209,6 +210,7 @@ public class DistBuildFileHashesTest {
     assertThat(toDebugStringForAssert(recordedHashes), recordedHashes, Matchers.hasSize(1));
     BuildJobStateFileHashes rootCellHashes = getRootCellHashes(recordedHashes);
     assertThat(rootCellHashes.entries, Matchers.hasSize(1));
+    assertEquals(1, f.distributedBuildFileHashes.getRecordedFileHashCount());
     BuildJobStateFileHashEntry fileHashEntry = rootCellHashes.entries.get(0);
     // It's intentional that we hardcode the path as a string here as we expect the thrift data
     // to contain unix-formated paths.
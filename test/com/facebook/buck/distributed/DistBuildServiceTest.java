@@ -69,6 +69,7 @@ import com.facebook.buck.distributed.thrift.UpdateBuildSlaveStatusResponse;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.timing.SettableFakeClock;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -83,14 +84,19 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.junit.After;
 import org.junit.Assert;
@@ -171,6 +177,131 @@ public class DistBuildServiceTest {
     Assert.assertTrue(buildJobState.equals(sentState));
   }
 
+  @Test
+  public void canUploadTargetGraphInChunks() throws IOException {
+    BuildJobState buildJobState = new BuildJobState();
+    BuildJobStateTargetGraph graph = new BuildJobStateTargetGraph();
+    graph.setNodes(new ArrayList<>());
+    for (int i = 0; i < 10000; i++) {
+      graph.addToNodes(new BuildJobStateTargetNode().setRawNode("node" + i));
+    }
+    buildJobState.setTargetGraph(graph);
+    int chunkCount =
+        BuildJobStateSerializer.serializeChunked(buildJobState).chunksByHash.keySet().size();
+    BuildJobStateChunkRecord chunkRecord =
+        new BuildJobStateChunkRecord(
+            temporaryFolder.getRoot().resolve("chunks"),
+            SettableFakeClock.DO_NOT_CARE,
+            1,
+            TimeUnit.HOURS);
+
+    // The first upload checks for all chunks and uploads the missing ones.
+    Capture<FrontendRequest> containsRequest = EasyMock.newCapture();
+    FrontendResponse containsResponse =
+        new FrontendResponse()
+            .setType(FrontendRequestType.CAS_CONTAINS)
+            .setWasSuccessful(true)
+            .setCasContainsResponse(
+                new CASContainsResponse()
+                    .setExists(new ArrayList<>(Collections.nCopies(chunkCount, false))));
+    EasyMock.expect(frontendService.makeRequest(EasyMock.capture(containsRequest)))
+        .andReturn(containsResponse);
+    Capture<FrontendRequest> storeRequest = EasyMock.newCapture();
+    EasyMock.expect(frontendService.makeRequest(EasyMock.capture(storeRequest)))
+        .andReturn(
+            new FrontendResponse()
+                .setType(FrontendRequestType.STORE_LOCAL_CHANGES)
+                .setWasSuccessful(true));
+    Capture<FrontendRequest> graphRequest = EasyMock.newCapture(CaptureType.ALL);
+    FrontendResponse graphResponse =
+        new FrontendResponse()
+            .setType(FrontendRequestType.STORE_BUILD_GRAPH)
+            .setWasSuccessful(true);
+    EasyMock.expect(frontendService.makeRequest(EasyMock.capture(graphRequest)))
+        .andReturn(graphResponse);
+    // The second upload only sends the manifest, as all chunks are known to be stored.
+    EasyMock.expect(frontendService.makeRequest(EasyMock.capture(graphRequest)))
+        .andReturn(graphResponse);
+    EasyMock.replay(frontendService);
+
+    StampedeId stampedeId = new StampedeId().setId("check-id");
+    distBuildService.uploadTargetGraph(
+        buildJobState, stampedeId, distBuildClientStatsTracker, Optional.of(chunkRecord));
+    distBuildService.uploadTargetGraph(
+        buildJobState,
+        stampedeId,
+        new ClientStatsTracker(BUILD_LABEL, MINION_TYPE),
+        Optional.of(chunkRecord));
+
+    EasyMock.verify(frontendService);
+    Assert.assertEquals(
+        chunkCount, containsRequest.getValue().getCasContainsRequest().getContentSha1sSize());
+    List<FileInfo> uploadedChunks =
+        storeRequest.getValue().getStoreLocalChangesRequest().getFiles();
+    Assert.assertEquals(chunkCount, uploadedChunks.size());
+
+    byte[] manifest = graphRequest.getValues().get(1).getStoreBuildGraphRequest().getBuildGraph();
+    Assert.assertTrue(BuildJobStateSerializer.isChunkManifest(manifest));
+    Map<String, byte[]> chunksByHash = new HashMap<>();
+    for (FileInfo chunk : uploadedChunks) {
+      chunksByHash.put(chunk.getContentHash(), chunk.getContent());
+    }
+    List<byte[]> chunks = new ArrayList<>();
+    for (String hash : BuildJobStateSerializer.getChunkHashes(manifest)) {
+      chunks.add(chunksByHash.get(hash));
+    }
+    Assert.assertEquals(buildJobState, BuildJobStateSerializer.deserializeChunks(chunks));
+  }
+
+  @Test
+  public void skippedChunksAreNotRecordedAsStoredAgain() throws IOException {
+    BuildJobState buildJobState = new BuildJobState();
+    BuildJobStateTargetGraph graph = new BuildJobStateTargetGraph();
+    graph.setNodes(new ArrayList<>());
+    graph.addToNodes(new BuildJobStateTargetNode().setRawNode("node"));
+    buildJobState.setTargetGraph(graph);
+    Set<String> chunkHashes =
+        BuildJobStateSerializer.serializeChunked(buildJobState).chunksByHash.keySet();
+    SettableFakeClock clock = new SettableFakeClock(1000, 0);
+    BuildJobStateChunkRecord chunkRecord =
+        new BuildJobStateChunkRecord(
+            temporaryFolder.getRoot().resolve("chunks"), clock, 1, TimeUnit.HOURS);
+
+    EasyMock.expect(frontendService.makeRequest(EasyMock.anyObject()))
+        .andReturn(
+            new FrontendResponse()
+                .setType(FrontendRequestType.CAS_CONTAINS)
+                .setWasSuccessful(true)
+                .setCasContainsResponse(
+                    new CASContainsResponse()
+                        .setExists(
+                            new ArrayList<>(Collections.nCopies(chunkHashes.size(), true)))));
+    EasyMock.expect(frontendService.makeRequest(EasyMock.anyObject()))
+        .andReturn(
+            new FrontendResponse()
+                .setType(FrontendRequestType.STORE_BUILD_GRAPH)
+                .setWasSuccessful(true))
+        .times(2);
+    EasyMock.replay(frontendService);
+
+    StampedeId stampedeId = new StampedeId().setId("check-id");
+    distBuildService.uploadTargetGraph(
+        buildJobState, stampedeId, distBuildClientStatsTracker, Optional.of(chunkRecord));
+    clock.setCurrentTimeMillis(TimeUnit.MINUTES.toMillis(40));
+    // The chunk is known, so this neither checks it nor records it as stored again.
+    distBuildService.uploadTargetGraph(
+        buildJobState,
+        stampedeId,
+        new ClientStatsTracker(BUILD_LABEL, MINION_TYPE),
+        Optional.of(chunkRecord));
+    clock.setCurrentTimeMillis(TimeUnit.MINUTES.toMillis(70));
+
+    EasyMock.verify(frontendService);
+    for (String hash : chunkHashes) {
+      Assert.assertFalse(chunkRecord.isKnown(hash));
+    }
+  }
+
   @Test
   public void canUploadFiles() throws Exception {
     List<Boolean> fileExistence = Arrays.asList(true, false, true);
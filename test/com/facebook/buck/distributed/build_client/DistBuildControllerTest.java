@@ -519,7 +519,8 @@ public class DistBuildControllerTest {
                 distBuildClientStatsTracker,
                 directExecutor))
         .andReturn(Futures.immediateFuture(null));
-    mockDistBuildService.uploadTargetGraph(buildJobState, stampedeId, distBuildClientStatsTracker);
+    mockDistBuildService.uploadTargetGraph(
+        buildJobState, stampedeId, distBuildClientStatsTracker, Optional.empty());
     expectLastCall().once();
     mockDistBuildService.setBuckVersion(stampedeId, buckVersion, distBuildClientStatsTracker);
     expectLastCall().once();
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.build_slave;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.base.Charsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DistBuildSimulatorTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  /** One long rule and six short ones, all needed by a single top-level rule. */
+  private static final String GRAPH =
+      "{"
+          + "\"//:top\": {\"deps\": [\"//:long\", \"//:s1\", \"//:s2\", \"//:s3\", \"//:s4\","
+          + " \"//:s5\", \"//:s6\"], \"duration_millis\": 10},"
+          + "\"//:long\": {\"deps\": [], \"duration_millis\": 300},"
+          + "\"//:s1\": {\"deps\": [], \"duration_millis\": 50},"
+          + "\"//:s2\": {\"deps\": [], \"duration_millis\": 50},"
+          + "\"//:s3\": {\"deps\": [], \"duration_millis\": 50},"
+          + "\"//:s4\": {\"deps\": [], \"duration_millis\": 50},"
+          + "\"//:s5\": {\"deps\": [], \"duration_millis\": 50},"
+          + "\"//:s6\": {\"deps\": [], \"duration_millis\": 50, \"uncacheable\": false}"
+          + "}";
+
+  private DistBuildSimulator readSimulator() throws Exception {
+    Path graph = tmp.newFile("graph.json");
+    Files.write(graph, GRAPH.getBytes(Charsets.UTF_8));
+    return DistBuildSimulator.readFromFile(graph);
+  }
+
+  @Test
+  public void criticalPathSchedulingStartsLongRuleFirst() throws Exception {
+    DistBuildSimulator simulator = readSimulator();
+
+    long readinessMillis = simulator.simulate(1, 2, Optional.empty(), 0);
+    long criticalPathMillis = simulator.simulate(1, 2, Optional.of(simulator.getDurations()), 0);
+
+    // The long rule runs on one core while the short ones share the other.
+    Assert.assertEquals(310, criticalPathMillis);
+    Assert.assertTrue(readinessMillis >= criticalPathMillis);
+  }
+
+  @Test
+  public void packedWorkUnitsStillBuildEverything() throws Exception {
+    DistBuildSimulator simulator = readSimulator();
+
+    // All short rules fit in one work unit, which runs next to the long rule.
+    Assert.assertEquals(310, simulator.simulate(2, 1, Optional.of(simulator.getDurations()), 300));
+    Assert.assertEquals(610, simulator.simulate(1, 1, Optional.of(simulator.getDurations()), 300));
+  }
+}
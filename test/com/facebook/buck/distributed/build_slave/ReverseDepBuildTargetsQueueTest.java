@@ -41,9 +41,13 @@ import com.facebook.buck.distributed.thrift.WorkUnit;
 import com.facebook.buck.event.listener.NoOpCoordinatorBuildRuleEventsPublisher;
 import com.facebook.buck.parser.exceptions.NoSuchBuildTargetException;
 import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import org.easymock.EasyMock;
 import org.junit.Assert;
 import org.junit.Rule;
@@ -387,6 +391,50 @@ public class ReverseDepBuildTargetsQueueTest {
     EasyMock.verify(artifactCache);
   }
 
+  private static ReverseDepBuildTargetsQueue createQueueWithOneLongLeaf(long packingMillis) {
+    DistributableBuildGraph graph =
+        DistributableBuildGraphTest.createGraph(
+            ImmutableList.of(
+                new Pair<>("top", "short1"),
+                new Pair<>("top", "long"),
+                new Pair<>("top", "short2"),
+                new Pair<>("top", "short3")),
+            ImmutableSet.of());
+    RuleDurationHistory history =
+        new RuleDurationHistory(
+            ImmutableMap.of(
+                "top", 10L, "long", 1000L, "short1", 10L, "short2", 10L, "short3", 10L));
+    return new ReverseDepBuildTargetsQueue(
+        graph, MOST_BUILD_RULES_FINISHED_PERCENTAGE, Optional.of(history), packingMillis);
+  }
+
+  @Test
+  public void testCriticalPathIsHandedOutFirst() {
+    ReverseDepBuildTargetsQueue queue = createQueueWithOneLongLeaf(0);
+    Assert.assertEquals(1010, queue.getCriticalPathMillis("long"));
+    Assert.assertEquals(20, queue.getCriticalPathMillis("short1"));
+
+    List<WorkUnit> workUnits = queue.dequeueZeroDependencyNodes(ImmutableList.of(), 2);
+    Assert.assertEquals(2, workUnits.size());
+    Assert.assertEquals(ImmutableList.of("long"), workUnits.get(0).getBuildTargets());
+    Assert.assertEquals(ImmutableList.of("short1"), workUnits.get(1).getBuildTargets());
+    Assert.assertEquals(1010, queue.getWorkUnitPriority(workUnits.get(0)));
+  }
+
+  @Test
+  public void testShortChainsArePackedIntoOneWorkUnit() {
+    ReverseDepBuildTargetsQueue queue = createQueueWithOneLongLeaf(25);
+
+    List<WorkUnit> workUnits = queue.dequeueZeroDependencyNodes(ImmutableList.of(), 2);
+    Assert.assertEquals(2, workUnits.size());
+    Assert.assertEquals(ImmutableList.of("long"), workUnits.get(0).getBuildTargets());
+    Assert.assertEquals(ImmutableList.of("short1", "short2"), workUnits.get(1).getBuildTargets());
+
+    workUnits = queue.dequeueZeroDependencyNodes(ImmutableList.of("short1", "short2"), 2);
+    Assert.assertEquals(1, workUnits.size());
+    Assert.assertEquals(ImmutableList.of("short3"), workUnits.get(0).getBuildTargets());
+  }
+
   public static BuildTargetsQueue createDiamondDependencyQueue() throws NoSuchBuildTargetException {
     return createQueueWithoutRemoteCache(
         CustomActionGraphBuilderFactory.createDiamondDependencyGraph(),
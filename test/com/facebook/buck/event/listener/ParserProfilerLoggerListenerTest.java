@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.core.model.BuildId;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.log.InvocationInfo;
+import com.facebook.buck.parser.PythonDslProjectBuildFileParser;
+import com.facebook.buck.parser.events.ParseBuckFileEvent;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ParserProfilerLoggerListenerTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private InvocationInfo info;
+
+  @Before
+  public void setUp() {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    info =
+        InvocationInfo.of(
+            new BuildId(),
+            false,
+            false,
+            "build",
+            ImmutableList.of(),
+            ImmutableList.of(),
+            tmp.getRoot(),
+            false);
+  }
+
+  private static ParseBuckFileEvent.Finished parsed(
+      String buildFile, int rulesCount, long allocatedBytes) {
+    return ParseBuckFileEvent.finished(
+        ParseBuckFileEvent.started(Paths.get(buildFile), PythonDslProjectBuildFileParser.class),
+        rulesCount,
+        0L,
+        allocatedBytes,
+        Optional.empty());
+  }
+
+  @Test
+  public void writesAllocatedBytesPerPackageSortedByAllocation() throws IOException {
+    ParserProfilerLoggerListener listener = new ParserProfilerLoggerListener(info, filesystem);
+    listener.parseBuckFileFinished(parsed("small/BUCK", 1, 100));
+    listener.parseBuckFileFinished(parsed("large/BUCK", 1000, 100000));
+    listener.parseBuckFileFinished(parsed("unknown/BUCK", 1, -1));
+    listener.close();
+
+    assertEquals(
+        ImmutableList.of(
+            "allocated_bytes\tnum_rules\tbuild_file",
+            "100000\t1000\t" + Paths.get("large/BUCK"),
+            "100\t1\t" + Paths.get("small/BUCK")),
+        Files.readAllLines(info.getLogDirectoryPath().resolve("parser-allocations.log")));
+  }
+
+  @Test
+  public void doesNotWriteReportWhenNothingWasParsed() throws IOException {
+    new ParserProfilerLoggerListener(info, filesystem).close();
+
+    Path allocationsLog = info.getLogDirectoryPath().resolve("parser-allocations.log");
+    assertFalse(Files.exists(allocationsLog));
+  }
+}
@@ -16,10 +16,15 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.event.FakeBuckEventListener;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.TestProjectFilesystems;
 import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
@@ -28,12 +33,19 @@ import com.facebook.buck.testutil.TemporaryPaths;
 import com.facebook.buck.testutil.integration.TestDataHelper;
 import com.facebook.buck.testutil.integration.ZipInspector;
 import com.facebook.buck.util.zip.CustomJarOutputStream;
+import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
+import java.util.stream.Collectors;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -79,4 +91,107 @@ public class CalculateClassAbiStepTest {
               .getValue(CustomJarOutputStream.DIGEST_ATTRIBUTE_NAME));
     }
   }
+
+  @Test
+  public void reusesTheAbiJarsOfIdenticalLibraryJars() throws IOException {
+    Path outDir = temp.newFolder().toAbsolutePath();
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(outDir);
+    ClassAbiStore store = ClassAbiStore.of(filesystem, Long.MAX_VALUE);
+
+    Path source = TestDataHelper.getTestDataDirectory(this).resolve("prebuilt/junit.jar");
+    Files.copy(source, outDir.resolve("first.jar"));
+    Files.copy(source, outDir.resolve("second.jar"));
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    FakeBuckEventListener listener = new FakeBuckEventListener();
+    executionContext.getBuckEventBus().register(listener);
+
+    new CalculateClassAbiStep(
+            filesystem,
+            Paths.get("first.jar"),
+            Paths.get("first-abi.jar"),
+            AbiGenerationMode.CLASS,
+            Optional.of(store))
+        .execute(executionContext);
+    new CalculateClassAbiStep(
+            filesystem,
+            Paths.get("second.jar"),
+            Paths.get("second-abi.jar"),
+            AbiGenerationMode.CLASS,
+            Optional.of(store))
+        .execute(executionContext);
+
+    List<ClassAbiStoreEvent> events =
+        listener
+            .getEvents()
+            .stream()
+            .filter(ClassAbiStoreEvent.class::isInstance)
+            .map(ClassAbiStoreEvent.class::cast)
+            .collect(Collectors.toList());
+    assertEquals(2, events.size());
+    assertFalse(events.get(0).isHit());
+    assertTrue(events.get(1).isHit());
+    assertEquals(events.get(0).getKey(), events.get(1).getKey());
+    assertEquals(
+        filesystem.computeSha1(Paths.get("first-abi.jar")),
+        filesystem.computeSha1(Paths.get("second-abi.jar")));
+    assertTrue(
+        Files.isRegularFile(store.getPath(events.get(1).getKey()), LinkOption.NOFOLLOW_LINKS));
+  }
+
+  @Test
+  public void abiJarsAreKeyedByLibraryContentsAndMode() throws IOException {
+    ClassAbiStore store = new ClassAbiStore(temp.newFolder("store"), Long.MAX_VALUE);
+    Path jar = TestDataHelper.getTestDataDirectory(this).resolve("prebuilt/junit.jar");
+    Path otherJar = temp.newFile("other.jar");
+    Files.write(otherJar, new byte[] {1, 2, 3});
+
+    HashCode key = store.getKey(jar, AbiGenerationMode.CLASS);
+    assertEquals(key, store.getKey(jar, AbiGenerationMode.CLASS));
+    assertNotEquals(key, store.getKey(jar, AbiGenerationMode.SOURCE));
+    assertNotEquals(key, store.getKey(otherJar, AbiGenerationMode.CLASS));
+
+    assertFalse(store.get(key, temp.getRoot().resolve("abi.jar")));
+  }
+
+  @Test
+  public void storedAbiJarsAreNotChangedWhenOutputsAreRewrittenInPlace() throws IOException {
+    ClassAbiStore store = new ClassAbiStore(temp.newFolder("store"), Long.MAX_VALUE);
+    HashCode key = HashCode.fromInt(1);
+    Path abiJar = temp.newFile("abi.jar");
+    Files.write(abiJar, new byte[] {1, 2, 3});
+    store.put(key, abiJar);
+
+    Path fetchedAbiJar = temp.getRoot().resolve("fetched-abi.jar");
+    assertTrue(store.get(key, fetchedAbiJar));
+    Files.write(abiJar, new byte[] {4, 5, 6}, StandardOpenOption.TRUNCATE_EXISTING);
+    Files.write(fetchedAbiJar, new byte[] {7, 8, 9}, StandardOpenOption.TRUNCATE_EXISTING);
+
+    assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(store.getPath(key)));
+  }
+
+  @Test
+  public void leastRecentlyUsedAbiJarsAreDeletedFromTheStore() throws IOException {
+    ClassAbiStore store = new ClassAbiStore(temp.newFolder("store"), 100);
+    Path abiJar = temp.newFile("abi.jar");
+    Files.write(abiJar, new byte[30]);
+    HashCode first = HashCode.fromInt(1);
+    HashCode second = HashCode.fromInt(2);
+    HashCode third = HashCode.fromInt(3);
+    HashCode fourth = HashCode.fromInt(4);
+    store.put(first, abiJar);
+    store.put(second, abiJar);
+    store.put(third, abiJar);
+    Files.setLastModifiedTime(store.getPath(first), FileTime.fromMillis(1000));
+    Files.setLastModifiedTime(store.getPath(second), FileTime.fromMillis(2000));
+    Files.setLastModifiedTime(store.getPath(third), FileTime.fromMillis(3000));
+    assertTrue(store.get(first, temp.getRoot().resolve("first-abi.jar")));
+
+    store.put(fourth, abiJar);
+
+    assertTrue(Files.exists(store.getPath(first)));
+    assertFalse(Files.exists(store.getPath(second)));
+    assertTrue(Files.exists(store.getPath(third)));
+    assertTrue(Files.exists(store.getPath(fourth)));
+  }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.util.CapturingPrintStream;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.DefaultProcessExecutor;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures the latency of compiling one small library with an external javac, by launching a new
+ * javac process as ExternalJavac does by default, and by sending it to a warm compiler worker.
+ */
+public class CompilerWorkersBenchmark {
+  @Param({"1", "10"})
+  private int sourcesPerLibrary = 2;
+
+  @Param({"20"})
+  private int librariesCount = 2;
+
+  private final ProcessExecutor processExecutor =
+      new DefaultProcessExecutor(Console.createNullConsole());
+
+  private Path root;
+  private Path javac;
+  private Path java;
+  private ExecutionContext context;
+  private CompilerWorkers workers;
+  private final List<ImmutableList<String>> libraryArgs = new ArrayList<>();
+
+  @Before
+  public void setUpTest() throws IOException, InterruptedException {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws IOException {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws IOException, InterruptedException {
+    Path jdkBin = Paths.get(System.getProperty("java.home"), "..", "bin").normalize();
+    javac = jdkBin.resolve("javac");
+    java = CompilerWorkers.findJavaNextTo(javac).get();
+
+    root = Files.createTempDirectory("compiler-workers-benchmark").toRealPath();
+    for (int library = 0; library < librariesCount; library++) {
+      Path sources = root.resolve("lib" + library);
+      Path classes = root.resolve("lib" + library + "-classes");
+      Files.createDirectories(sources);
+      Files.createDirectories(classes);
+      ImmutableList.Builder<String> args =
+          ImmutableList.<String>builder().add("-d", classes.toString());
+      for (int source = 0; source < sourcesPerLibrary; source++) {
+        String name = "Source" + source;
+        Path path = sources.resolve(name + ".java");
+        Files.write(
+            path,
+            String.format(
+                    "package lib%d; public class %s { "
+                        + "public java.util.List<String> run(String s) { "
+                        + "return java.util.Collections.singletonList(s.trim()); } }",
+                    library, name)
+                .getBytes(Charsets.UTF_8));
+        args.add(path.toString());
+      }
+      libraryArgs.add(args.build());
+    }
+
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(root);
+    context = TestExecutionContext.newInstanceWithRealProcessExecutor();
+    workers = new CompilerWorkers(context, filesystem);
+    // Warm up the worker.
+    for (ImmutableList<String> args : libraryArgs) {
+      compileInWorker(args);
+    }
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws IOException {
+    context.getWorkerProcessPools().values().forEach(WorkerProcessPool::close);
+    MostFiles.deleteRecursively(root);
+  }
+
+  private int compileInProcess(ImmutableList<String> args)
+      throws IOException, InterruptedException {
+    ImmutableList<String> command =
+        ImmutableList.<String>builder().add(javac.toString()).addAll(args).build();
+    return processExecutor
+        .launchAndExecute(
+            ProcessExecutorParams.builder().setCommand(command).setDirectory(root).build())
+        .getExitCode();
+  }
+
+  private int compileInWorker(ImmutableList<String> args) throws IOException, InterruptedException {
+    try (CapturingPrintStream stderr = new CapturingPrintStream()) {
+      return workers.compile(
+          java,
+          ImmutableList.of("javac"),
+          CompilerWorkerOptions.of(1, 512, 0.8f),
+          args,
+          stderr);
+    }
+  }
+
+  @Test
+  public void bothWaysCompile() throws IOException, InterruptedException {
+    for (ImmutableList<String> args : libraryArgs) {
+      assertEquals(0, compileInProcess(args));
+      assertEquals(0, compileInWorker(args));
+    }
+  }
+
+  /** Compiles each library in a new javac process. */
+  @Benchmark
+  public void compileInNewProcess(int reps) throws IOException, InterruptedException {
+    for (int i = 0; i < reps; i++) {
+      compileInProcess(libraryArgs.get(i % librariesCount));
+    }
+  }
+
+  /** Compiles each library in the same warm worker. */
+  @Benchmark
+  public void compileInWarmWorker(int reps) throws IOException, InterruptedException {
+    for (int i = 0; i < reps; i++) {
+      compileInWorker(libraryArgs.get(i % librariesCount));
+    }
+  }
+}
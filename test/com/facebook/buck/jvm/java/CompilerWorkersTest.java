@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.jvm.java.compilerworker.CompilerWorkerMain;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.CapturingPrintStream;
+import com.facebook.buck.worker.WorkerProcessParams;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class CompilerWorkersTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final CompilerWorkerOptions OPTIONS = CompilerWorkerOptions.of(1, 256, 0.8f);
+
+  @Test
+  public void recyclesWorkersThatRetainMostOfTheirHeap() {
+    assertTrue(CompilerWorkers.shouldRecycle(heapUsage(900, 1000), 0.8f));
+    assertFalse(CompilerWorkers.shouldRecycle(heapUsage(700, 1000), 0.8f));
+    assertFalse(CompilerWorkers.shouldRecycle(Optional.empty(), 0.8f));
+  }
+
+  @Test
+  public void workersAreKeyedByCompilerAndJvm() {
+    CompilerWorkers workers =
+        new CompilerWorkers(TestExecutionContext.newInstance(), createFilesystem());
+    Path java = CompilerWorkers.getCurrentJava();
+
+    assertEquals(
+        workers.getWorkerProcessParams(java, ImmutableList.of("javac"), OPTIONS),
+        workers.getWorkerProcessParams(java, ImmutableList.of("javac"), OPTIONS));
+    assertThat(
+        workers
+            .getWorkerProcessParams(java, ImmutableList.of("javac"), OPTIONS)
+            .getWorkerProcessIdentity()
+            .get()
+            .getPersistentWorkerKey(),
+        Matchers.not(
+            workers
+                .getWorkerProcessParams(java, ImmutableList.of("kotlinc", "lib"), OPTIONS)
+                .getWorkerProcessIdentity()
+                .get()
+                .getPersistentWorkerKey()));
+  }
+
+  @Test
+  public void workersAreKeyedByCell() throws IOException {
+    ExecutionContext context = TestExecutionContext.newInstance();
+    Path java = CompilerWorkers.getCurrentJava();
+    WorkerProcessParams first =
+        new CompilerWorkers(context, createFilesystem())
+            .getWorkerProcessParams(java, ImmutableList.of("javac"), OPTIONS);
+    WorkerProcessParams second =
+        new CompilerWorkers(
+                context, TestProjectFilesystems.createProjectFilesystem(tmp.newFolder("other")))
+            .getWorkerProcessParams(java, ImmutableList.of("javac"), OPTIONS);
+
+    assertThat(
+        first.getWorkerProcessIdentity().get().getPersistentWorkerKey(),
+        Matchers.not(second.getWorkerProcessIdentity().get().getPersistentWorkerKey()));
+    assertThat(
+        first.getWorkerProcessIdentity().get().getWorkerHash(),
+        Matchers.not(second.getWorkerProcessIdentity().get().getWorkerHash()));
+    assertEquals(context.getEnvironment(), first.getStartupEnvironment());
+  }
+
+  @Test
+  public void compilesInAReusedWorker() throws IOException, InterruptedException {
+    Optional<Path> java =
+        CompilerWorkers.findJavaNextTo(
+            Paths.get(System.getProperty("java.home"), "..", "bin", "javac"));
+    assumeTrue(java.isPresent());
+
+    ProjectFilesystem filesystem = createFilesystem();
+    ExecutionContext context = TestExecutionContext.newInstanceWithRealProcessExecutor();
+    CompilerWorkers workers = new CompilerWorkers(context, filesystem);
+    Path output = tmp.newFolder("classes");
+    for (String name : ImmutableList.of("First", "Second")) {
+      Path source = tmp.getRoot().resolve(name + ".java");
+      Files.write(source, ("public class " + name + " {}").getBytes(StandardCharsets.UTF_8));
+      try (CapturingPrintStream stderr = new CapturingPrintStream()) {
+        assertEquals(
+            0,
+            workers.compile(
+                java.get(),
+                ImmutableList.of("javac"),
+                OPTIONS,
+                ImmutableList.of("-d", output.toString(), source.toString()),
+                stderr));
+      }
+      assertTrue(Files.exists(output.resolve(name + ".class")));
+    }
+
+    assertEquals(1, context.getWorkerProcessPools().size());
+    context.getWorkerProcessPools().values().forEach(WorkerProcessPool::close);
+  }
+
+  private ProjectFilesystem createFilesystem() {
+    return TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+  }
+
+  private static Optional<String> heapUsage(long used, long max) {
+    return Optional.of(
+        String.format(
+            "%s=%d\n%s=%d\n",
+            CompilerWorkerMain.HEAP_USED_BYTES, used, CompilerWorkerMain.HEAP_MAX_BYTES, max));
+  }
+}
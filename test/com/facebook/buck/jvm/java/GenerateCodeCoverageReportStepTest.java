@@ -18,7 +18,6 @@ package com.facebook.buck.jvm.java;
 
 import static org.hamcrest.Matchers.matchesPattern;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -41,7 +40,6 @@ import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -125,8 +123,7 @@ public class GenerateCodeCoverageReportStepTest {
   }
 
   @Test
-  public void testJarFileIsExtracted() throws Throwable {
-    File[] extractedDir = new File[2];
+  public void testJarFilesAreNotExtracted() throws Throwable {
     step =
         new GenerateCodeCoverageReportStep(
             JavaCompilationConstants.DEFAULT_JAVA_COMMAND_PREFIX,
@@ -139,20 +136,17 @@ public class GenerateCodeCoverageReportStepTest {
             Optional.empty(),
             Optional.empty()) {
           @Override
-          StepExecutionResult executeInternal(ExecutionContext context, Set<Path> jarFiles) {
-            for (int i = 0; i < 2; i++) {
-              extractedDir[i] = new ArrayList<>(jarFiles).get(i).toFile();
-              assertTrue(extractedDir[i].isDirectory());
-              assertTrue(
-                  new File(extractedDir[i], "com/facebook/testing/coverage/Foo.class").exists());
-            }
+          StepExecutionResult executeInternal(ExecutionContext context, Set<Path> classesDirs) {
+            // The report generator analyzes jars in place.
+            assertEquals(ImmutableSet.of(), classesDirs);
             return null;
           }
         };
 
     step.execute(TestExecutionContext.newInstance());
-    assertFalse(extractedDir[0].exists());
-    assertFalse(extractedDir[1].exists());
+    for (Path jarFile : jarFiles) {
+      assertTrue(Files.isRegularFile(jarFile));
+    }
   }
 
   @Test
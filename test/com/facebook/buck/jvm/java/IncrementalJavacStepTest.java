@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rules.SourcePathRuleFinder;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.resolver.impl.DefaultSourcePathResolver;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IncrementalJavacStepTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private BuildTarget target;
+  private final Map<String, String> sources = new TreeMap<>();
+
+  @Before
+  public void setUp() {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    target = BuildTargetFactory.newInstance(filesystem.getRootPath(), "//lib:lib");
+    sources.put("lib/com/example/A.java", "public class A { public int f() { return 1; } }");
+    sources.put("lib/com/example/B.java", "public class B { int g() { return new A().f(); } }");
+    sources.put("lib/com/example/C.java", "public class C {}");
+  }
+
+  @Test
+  public void recompilesOnlyChangedSourcesWhenTheirAbiIsUnchanged() throws Exception {
+    assertEquals(sources.keySet(), build());
+
+    sources.put("lib/com/example/A.java", "public class A { public int f() { return 2; } }");
+    assertEquals(ImmutableSortedSet.of("lib/com/example/A.java"), build());
+    assertTrue(Files.exists(getClassFile("B")));
+    assertTrue(Files.exists(getClassFile("C")));
+
+    assertEquals(ImmutableSortedSet.of(), build());
+    assertTrue(Files.exists(getClassFile("A")));
+  }
+
+  @Test
+  public void recompilesDependentsWhenAbiChanges() throws Exception {
+    build();
+
+    sources.put("lib/com/example/A.java", "public class A { public short f() { return 2; } }");
+    assertEquals(
+        ImmutableSortedSet.of("lib/com/example/A.java", "lib/com/example/B.java"), build());
+  }
+
+  @Test
+  public void recompilesSubclassesAndTheirDependentsWhenAbiChanges() throws Exception {
+    sources.put("lib/com/example/C.java", "public class C extends A {}");
+    sources.put("lib/com/example/D.java", "public class D { int h() { return new C().f(); } }");
+    build();
+
+    sources.put("lib/com/example/A.java", "public class A { public short f() { return 2; } }");
+    assertEquals(sources.keySet(), build());
+  }
+
+  @Test
+  public void recompilesEverythingWhenAConstantChanges() throws Exception {
+    sources.put("lib/com/example/C.java", "public class C { public static final int X = 1; }");
+    sources.put("lib/other/D.java", "package other; class D { int x = com.example.C.X; }");
+    build();
+
+    sources.put("lib/com/example/C.java", "public class C { public static final int X = 2; }");
+    assertEquals(sources.keySet(), build());
+  }
+
+  @Test
+  public void removedSourcesLoseTheirClassesAndRecompileTheirPackage() throws Exception {
+    sources.put("lib/other/D.java", "package other; class D {}");
+    build();
+
+    sources.remove("lib/com/example/C.java");
+    assertEquals(
+        ImmutableSortedSet.of("lib/com/example/A.java", "lib/com/example/B.java"), build());
+    assertFalse(Files.exists(getClassFile("C")));
+    assertTrue(Files.exists(getClassFile("A")));
+  }
+
+  /**
+   * Writes the sources and compiles them after cleaning the classes directory, like a build of the
+   * target would.
+   *
+   * @return the sources that were compiled.
+   */
+  private ImmutableSortedSet<String> build() throws IOException, InterruptedException {
+    ImmutableSortedSet.Builder<Path> sourcePaths = ImmutableSortedSet.naturalOrder();
+    for (Map.Entry<String, String> source : sources.entrySet()) {
+      Path path = filesystem.resolve(source.getKey());
+      Files.createDirectories(path.getParent());
+      String contents = source.getValue();
+      if (!contents.startsWith("package ")) {
+        contents = "package com.example; " + contents;
+      }
+      Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+      sourcePaths.add(Paths.get(source.getKey()));
+    }
+
+    CompilerParameters parameters =
+        CompilerParameters.builder()
+            .setScratchPaths(target, filesystem)
+            .setSourceFilePaths(sourcePaths.build())
+            .build();
+    Path classesDir = filesystem.resolve(parameters.getOutputPaths().getClassesDir());
+    MostFiles.deleteRecursivelyIfExists(classesDir);
+    Files.createDirectories(classesDir);
+    Files.createDirectories(filesystem.resolve(parameters.getOutputPaths().getWorkingDirectory()));
+    Files.createDirectories(
+        filesystem.resolve(parameters.getOutputPaths().getPathToSourcesList()).getParent());
+
+    IncrementalJavacStep step =
+        new IncrementalJavacStep(
+            new JdkProvidedInMemoryJavac(),
+            JavacOptions.builder()
+                .setSourceLevel("8")
+                .setTargetLevel("8")
+                .setIncrementalCompilation(true)
+                .build(),
+            target,
+            DefaultSourcePathResolver.from(new SourcePathRuleFinder(new TestActionGraphBuilder())),
+            filesystem,
+            parameters);
+    assertTrue(step.execute(TestExecutionContext.newInstance()).isSuccess());
+    return step.getCompiledSources();
+  }
+
+  private Path getClassFile(String name) {
+    return filesystem
+        .resolve(CompilerOutputPaths.getClassesDir(target, filesystem))
+        .resolve("com/example/" + name + ".class");
+  }
+}
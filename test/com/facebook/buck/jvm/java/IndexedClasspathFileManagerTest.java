@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IndexedClasspathFileManagerTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+  private ClasspathJarIndexCache cache;
+  private Path libraryJar;
+
+  @Before
+  public void setUp() throws IOException {
+    cache = new ClasspathJarIndexCache(1024 * 1024, 1024 * 1024);
+    libraryJar = tmp.getRoot().resolve("lib.jar");
+    Path classes = tmp.newFolder("lib-classes");
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+      assertTrue(
+          compile(
+              writeSource(
+                  "com/example/lib/Library.java", "public static int answer() { return 42; }"),
+              ImmutableList.of("-d", classes.toString()),
+              fileManager));
+    }
+    writeJar(libraryJar, classes);
+  }
+
+  @Test
+  public void listsClasspathFromIndex() throws IOException {
+    try (IndexedClasspathFileManager fileManager = newFileManager()) {
+      fileManager.setLocation(
+          StandardLocation.CLASS_PATH, ImmutableList.of(libraryJar.toFile()));
+
+      List<JavaFileObject> classes = new ArrayList<>();
+      fileManager
+          .list(
+              StandardLocation.CLASS_PATH,
+              "com.example",
+              ImmutableSet.of(JavaFileObject.Kind.CLASS),
+              true)
+          .forEach(classes::add);
+
+      assertEquals(1, classes.size());
+      JavaFileObject library = classes.get(0);
+      assertThat(library, Matchers.instanceOf(ClasspathJarEntryFileObject.class));
+      assertEquals(
+          "com.example.lib.Library",
+          fileManager.inferBinaryName(StandardLocation.CLASS_PATH, library));
+      assertEquals(
+          "jar:" + libraryJar.toFile().toURI() + "!/com/example/lib/Library.class",
+          library.toUri().toString());
+      assertTrue(library.isNameCompatible("Library", JavaFileObject.Kind.CLASS));
+    }
+  }
+
+  @Test
+  public void compilationsShareIndexesAndClassContents() throws IOException {
+    Path source =
+        writeSource(
+            "com/example/app/App.java",
+            "int run() { return com.example.lib.Library.answer(); }");
+
+    for (int i = 0; i < 2; i++) {
+      Path output = tmp.newFolder("app-classes-" + i);
+      try (IndexedClasspathFileManager fileManager = newFileManager()) {
+        assertTrue(
+            compile(
+                source,
+                ImmutableList.of("-d", output.toString(), "-cp", libraryJar.toString()),
+                fileManager));
+      }
+      assertTrue(Files.exists(output.resolve("com/example/app/App.class")));
+    }
+
+    assertEquals(1, cache.getIndexStats().missCount());
+    assertEquals(1, cache.getIndexStats().hitCount());
+    assertEquals(1, cache.getContentsMissCount());
+    assertEquals(1, cache.getContentsHitCount());
+    assertThat(cache.getRetainedContentsBytes(), Matchers.greaterThan(0L));
+  }
+
+  @Test
+  public void changedJarsAreIndexedAgain() throws IOException {
+    ClasspathJarIndex index = cache.getIndex(libraryJar);
+    assertSame(index, cache.getIndex(libraryJar));
+
+    Files.setLastModifiedTime(libraryJar, FileTime.fromMillis(1000));
+
+    assertNotSame(index, cache.getIndex(libraryJar));
+  }
+
+  private IndexedClasspathFileManager newFileManager() {
+    return new IndexedClasspathFileManager(
+        compiler.getStandardFileManager(null, null, null), cache);
+  }
+
+  private Path writeSource(String path, String body) throws IOException {
+    Path source = tmp.getRoot().resolve("src").resolve(path);
+    Files.createDirectories(source.getParent());
+    String packageName = path.substring(0, path.lastIndexOf('/')).replace('/', '.');
+    String className = source.getFileName().toString().replace(".java", "");
+    Files.write(
+        source,
+        String.format("package %s; public class %s { %s }", packageName, className, body)
+            .getBytes(Charsets.UTF_8));
+    return source;
+  }
+
+  private boolean compile(
+      Path source, ImmutableList<String> options, StandardJavaFileManager fileManager) {
+    return compiler
+        .getTask(
+            null, fileManager, null, options, null, fileManager.getJavaFileObjects(source.toFile()))
+        .call();
+  }
+
+  private static void writeJar(Path jar, Path classes) throws IOException {
+    List<Path> files =
+        Files.walk(classes).filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    try (JarOutputStream jarStream = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (Path file : files) {
+        jarStream.putNextEntry(
+            new ZipEntry(classes.relativize(file).toString().replace('\\', '/')));
+        Files.copy(file, jarStream);
+        jarStream.closeEntry();
+      }
+    }
+  }
+}
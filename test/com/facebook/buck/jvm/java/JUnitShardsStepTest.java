@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.step.FakeStep;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.collect.ImmutableList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class JUnitShardsStepTest {
+
+  @Test
+  public void runsTheShardsAtTheSameTime() throws Exception {
+    CountDownLatch running = new CountDownLatch(3);
+    ImmutableList<Step> shards =
+        ImmutableList.of(
+            new WaitingStep(running), new WaitingStep(running), new WaitingStep(running));
+    JUnitShardsStep step = new JUnitShardsStep(shards);
+
+    assertEquals(3, step.getShardCount());
+    assertTrue(step.execute(TestExecutionContext.newInstance()).isSuccess());
+  }
+
+  @Test
+  public void reportsTheFailureOfTheFirstFailingShard() throws Exception {
+    JUnitShardsStep step =
+        new JUnitShardsStep(
+            ImmutableList.of(
+                new FakeStep("junit", "first", 0),
+                new FakeStep("junit", "second", 2),
+                new FakeStep("junit", "third", 3)));
+
+    assertEquals(2, step.execute(TestExecutionContext.newInstance()).getExitCode());
+  }
+
+  @Test
+  public void describesEveryShard() {
+    JUnitShardsStep step =
+        new JUnitShardsStep(
+            ImmutableList.of(
+                new FakeStep("junit", "first", 0), new FakeStep("junit", "second", 0)));
+
+    assertEquals("first & second", step.getDescription(TestExecutionContext.newInstance()));
+  }
+
+  /** Succeeds only if all the steps sharing the latch run at the same time. */
+  private static class WaitingStep implements Step {
+    private final CountDownLatch running;
+
+    private WaitingStep(CountDownLatch running) {
+      this.running = running;
+    }
+
+    @Override
+    public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
+      running.countDown();
+      return running.await(10, TimeUnit.SECONDS)
+          ? StepExecutionResults.SUCCESS
+          : StepExecutionResults.ERROR;
+    }
+
+    @Override
+    public String getShortName() {
+      return "wait";
+    }
+
+    @Override
+    public String getDescription(ExecutionContext context) {
+      return "wait";
+    }
+  }
+}
@@ -16,27 +16,38 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import com.facebook.buck.util.zip.CustomJarOutputStream;
 import com.facebook.buck.util.zip.CustomZipEntry;
 import com.facebook.buck.util.zip.JarBuilder;
 import com.facebook.buck.util.zip.JarEntryContainer;
 import com.facebook.buck.util.zip.JarEntrySupplier;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
@@ -170,6 +181,92 @@ public class JarBuilderTest {
     }
   }
 
+  @Test
+  public void testDeflatingInParallelWritesTheSameJar() throws IOException {
+    Path inputJar = temporaryFolder.newFile("input.jar").toPath();
+    JarBuilder inputBuilder = new JarBuilder();
+    Random random = new Random(0);
+    for (int i = 0; i < 50; i++) {
+      StringBuilder contents = new StringBuilder();
+      for (int j = random.nextInt(20000); j > 0; j--) {
+        contents.append(random.nextInt(j + 1));
+      }
+      addEntry(
+          inputBuilder, String.format("com/example/p%d/C%d.class", i % 7, i), contents.toString());
+    }
+    inputBuilder.createJarFile(inputJar);
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      byte[] sequential = createJar(inputJar, null);
+      byte[] parallel = createJar(inputJar, pool);
+      assertArrayEquals(sequential, parallel);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testCopiesCompressedDataOfMergedJars() throws IOException {
+    Path inputJar = temporaryFolder.newFile("input.jar").toPath();
+    StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      contents.append(i % 100);
+    }
+    byte[] bytes = contents.toString().getBytes(StandardCharsets.UTF_8);
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(inputJar))) {
+      zip.setLevel(Deflater.BEST_SPEED);
+      zip.putNextEntry(new ZipEntry("Foo.class"));
+      zip.write(bytes);
+    }
+
+    File tempFile = temporaryFolder.newFile();
+    new JarBuilder()
+        .setEntriesToJar(ImmutableList.of(inputJar))
+        .setShouldHashEntries(true)
+        .createJarFile(tempFile.toPath());
+
+    try (JarFile input = new JarFile(inputJar.toFile());
+        JarFile jarFile = new JarFile(tempFile)) {
+      JarEntry entry = jarFile.getJarEntry("Foo.class");
+      assertEquals(input.getEntry("Foo.class").getCompressedSize(), entry.getCompressedSize());
+      assertArrayEquals(bytes, ByteStreams.toByteArray(jarFile.getInputStream(entry)));
+      assertEquals(
+          Hashing.murmur3_128().hashBytes(bytes).toString(),
+          jarFile
+              .getManifest()
+              .getAttributes("Foo.class")
+              .getValue(CustomJarOutputStream.DIGEST_ATTRIBUTE_NAME));
+    }
+  }
+
+  private byte[] createJar(Path inputJar, @Nullable ForkJoinPool pool) throws IOException {
+    File tempFile = temporaryFolder.newFile();
+    CustomZipEntry stored = new CustomZipEntry("stored.txt");
+    stored.setCompressionLevel(0);
+    JarBuilder builder;
+    try (TestJarEntryContainer container = new TestJarEntryContainer("Container")) {
+      builder =
+          new JarBuilder()
+              .setEntriesToJar(ImmutableList.of(inputJar))
+              .addEntryContainer(
+                  container
+                      .addEntry("com/example/p1/C1.class", "Duplicate")
+                      .addEntry("META-INF/services/com.example.Foo", "com.example.Bar")
+                      .addEntry("empty.txt", ""))
+              .addEntry(
+                  new JarEntrySupplier(
+                      stored, "owner", () -> new ByteArrayInputStream(new byte[0])))
+              .setShouldHashEntries(true)
+              .setShouldMergeManifests(true);
+    }
+    if (pool != null) {
+      builder.setForkJoinPool(pool);
+    }
+    builder.createJarFile(tempFile.toPath());
+    return Files.readAllBytes(tempFile.toPath());
+  }
+
   private void addEntry(JarBuilder builder, String name, String contents) {
     builder.addEntry(
         new JarEntrySupplier(
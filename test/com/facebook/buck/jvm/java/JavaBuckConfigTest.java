@@ -408,6 +408,20 @@ public class JavaBuckConfigTest {
     assertThat(optionsConsumer.keyVals, hasEntry(key, value));
   }
 
+  @Test
+  public void classpathJarIndexingCanBeDisabled() throws IOException {
+    assertTrue(
+        createWithDefaultFilesystem(new StringReader(""))
+            .getDefaultJavacOptions()
+            .isIndexingClasspathJars());
+    assertFalse(
+        createWithDefaultFilesystem(
+                new StringReader(
+                    Joiner.on('\n').join("[java]", "    index_classpath_jars = false")))
+            .getDefaultJavacOptions()
+            .isIndexingClasspathJars());
+  }
+
   private OptionAccumulator visitOptions(JavacOptions options) {
     OptionAccumulator optionsConsumer = new OptionAccumulator();
     options.appendOptionsTo(
@@ -31,12 +31,15 @@ import com.facebook.buck.testutil.integration.TestDataHelper;
 import com.facebook.buck.util.ExitCode;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.regex.Pattern;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -309,6 +312,43 @@ public class JavaTestIntegrationTest {
     result.assertSuccess();
   }
 
+  @Test
+  public void shardedTestRunsEachClassOnceInItsOwnJvm() throws IOException {
+    ProjectWorkspace workspace =
+        TestDataHelper.createProjectWorkspaceForScenario(this, "slow_tests", temp);
+    workspace.setUp();
+    Files.createDirectories(workspace.getPath("buck-out"));
+    workspace.writeContentsToPath(
+        "{\"targets\":{},\"classes\":{"
+            + "\"com.facebook.buck.jvm.java.JavaTestFork1Test\":20000,"
+            + "\"com.facebook.buck.jvm.java.JavaTestFork2Test\":20000}}",
+        "buck-out/test_durations.json");
+
+    // The classes fail when they run in the same JVM, so this only passes if they were sharded.
+    ProcessResult result =
+        workspace.runBuckCommand(
+            "test",
+            "-c",
+            "test.schedule_by_duration=true",
+            "-c",
+            "test.max_junit_shards=2",
+            "-c",
+            "test.threads=2",
+            "--xml",
+            "results.xml",
+            "//:sharded");
+    result.assertSuccess();
+
+    String results = workspace.getFileContents("results.xml");
+    for (String testClass :
+        ImmutableList.of(
+            "com.facebook.buck.jvm.java.JavaTestFork1Test",
+            "com.facebook.buck.jvm.java.JavaTestFork2Test")) {
+      String testElement = String.format("<test name=\"%s\"", testClass);
+      assertEquals(testClass, 1, results.split(Pattern.quote(testElement), -1).length - 1);
+    }
+  }
+
   @Test
   public void testClasspath() throws IOException {
     ProjectWorkspace workspace =
@@ -28,14 +28,18 @@ import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
 import com.facebook.buck.parser.exceptions.NoSuchBuildTargetException;
 import com.facebook.buck.rules.macros.StringWithMacros;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.test.TestRunningOptions;
 import com.facebook.buck.testutil.MoreAsserts;
 import com.facebook.buck.util.types.Either;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
@@ -138,6 +142,48 @@ public class JavaTestRuleTest {
             transitiveDep.getBuildTarget()));
   }
 
+  @Test
+  public void splitsClassesIntoAtMostOneShardPerTestThread() {
+    JavaTest rule = newRule(ImmutableList.of());
+    ImmutableSet<String> testClasses = ImmutableSet.of("ATest", "BTest", "CTest", "DTest");
+    TestRunningOptions options =
+        TestRunningOptions.builder()
+            .setSchedulingByDuration(true)
+            .setMaxJUnitShards(4)
+            .setNumTestThreads(2)
+            .setTestClassDurationsMs(
+                ImmutableMap.of("ATest", 40_000L, "BTest", 30_000L, "CTest", 20_000L))
+            .build();
+
+    ImmutableList<Set<String>> shards =
+        rule.getJUnitShards(TestExecutionContext.newInstance(), options, testClasses);
+
+    assertEquals(2, shards.size());
+    // Every class runs in exactly one shard.
+    assertEquals(testClasses.size(), shards.stream().mapToInt(Set::size).sum());
+    assertEquals(
+        testClasses,
+        shards.stream().flatMap(Set::stream).collect(ImmutableSet.toImmutableSet()));
+
+    assertEquals(
+        ImmutableList.of(testClasses),
+        rule.getJUnitShards(
+            TestExecutionContext.newInstance(),
+            TestRunningOptions.builder().from(options).setNumTestThreads(1).build(),
+            testClasses));
+  }
+
+  @Test
+  public void eachShardLogsToItsOwnFile() {
+    JavaTest rule = newRule(ImmutableList.of());
+
+    assertEquals(
+        3,
+        ImmutableSet.of(
+                rule.getPathToTestLogs(0), rule.getPathToTestLogs(1), rule.getPathToTestLogs(2))
+            .size());
+  }
+
   private JavaTest newRule(ImmutableList<String> vmArgs) throws NoSuchBuildTargetException {
     ImmutableList<StringWithMacros> vmArgMacros =
         vmArgs
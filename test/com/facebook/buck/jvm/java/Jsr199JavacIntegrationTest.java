@@ -127,7 +127,9 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            new CompilerWorkers(executionContext, createProjectFilesystem()),
+            true);
 
     int exitCode =
         javac
@@ -182,7 +184,9 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            new CompilerWorkers(executionContext, createProjectFilesystem()),
+            true);
 
     int exitCode =
         javac
@@ -285,7 +289,9 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            new CompilerWorkers(executionContext, createProjectFilesystem()),
+            true);
 
     boolean caught = false;
 
@@ -378,7 +384,9 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            new CompilerWorkers(executionContext, createProjectFilesystem()),
+            true);
 
     Invocation buildInvocation =
         javac.newBuildInvocation(
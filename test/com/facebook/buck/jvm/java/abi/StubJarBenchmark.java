@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to generate the class ABI of prebuilt jars, sequentially and on a
+ * fork-join pool.
+ *
+ * <p>Run with {@code buck run //test/com/facebook/buck/benchmarks:jmh StubJarBenchmark} from the
+ * root of the repository, since the jars are resolved relative to it. That the parallel ABI is the
+ * same as the sequential one is tested by {@code StubJarIntegrationTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class StubJarBenchmark {
+  @Param({
+    "third-party/java/guava/guava-23.3-jre.jar",
+    "third-party/java/jackson/jackson-databind-2.9.7.jar",
+    "third-party/java/asm/asm-7.0.jar"
+  })
+  public String jar;
+
+  private Path inputJar;
+  private Path outputDir;
+  private ProjectFilesystem filesystem;
+  private ForkJoinPool pool;
+  private final Path outputJar = Paths.get("abi.jar");
+
+  @Setup
+  public void setUpBenchmark() throws IOException {
+    inputJar = Paths.get(jar).toAbsolutePath();
+    outputDir = Files.createTempDirectory("stub-jar-benchmark");
+    filesystem = TestProjectFilesystems.createProjectFilesystem(outputDir);
+    pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  @TearDown
+  public void tearDownBenchmark() throws IOException {
+    pool.shutdownNow();
+    MostFiles.deleteRecursively(outputDir);
+  }
+
+  @Setup(Level.Invocation)
+  public void deleteOutput() throws IOException {
+    Files.deleteIfExists(filesystem.resolve(outputJar));
+  }
+
+  @Benchmark
+  public void stubSequentially() throws IOException {
+    new StubJar(inputJar).writeTo(filesystem, outputJar);
+  }
+
+  @Benchmark
+  public void stubInParallel() throws IOException {
+    new StubJar(inputJar).setForkJoinPool(pool).writeTo(filesystem, outputJar);
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java.abi;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -28,9 +29,11 @@ import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Enumeration;
+import java.util.concurrent.ForkJoinPool;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -98,6 +101,24 @@ public class StubJarIntegrationTest {
     assertTrue(filesystem.getFileSize(out) < filesystem.getFileSize(source));
   }
 
+  @Test
+  public void parallelStubbingProducesTheSameJar() throws IOException {
+    Path sequentialOut = Paths.get("android-abi.jar");
+    Path parallelOut = Paths.get("android-abi-parallel.jar");
+    Path source = testDataDir.resolve("android.jar");
+    new StubJar(source).writeTo(filesystem, sequentialOut);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      new StubJar(source).setForkJoinPool(pool).writeTo(filesystem, parallelOut);
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(sequentialOut)),
+        Files.readAllBytes(filesystem.resolve(parallelOut)));
+  }
+
   @Test
   public void abiJarManifestShouldContainHashesOfItsFiles() throws IOException {
     Path out = Paths.get("junit-abi.jar");
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.classes;
+
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.util.ZipFileTraversal;
+import com.google.common.base.Splitter;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to hash every class of an Android app's classpath, as {@code
+ * AccumulateClassNamesStep} does, by reading the jars with {@link ZipFile} and by traversing their
+ * memory mappings.
+ *
+ * <p>Run with {@code buck run //test/com/facebook/buck/benchmarks:jmh ClasspathTraversalBenchmark}
+ * from the root of the repository, since the jars are resolved relative to it. That both ways read
+ * the same contents is tested by {@code MappedZipFileTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ClasspathTraversalBenchmark {
+  private static final String TEST_LIBS = "test/com/facebook/buck/testutil/integration/testlibs/";
+
+  @Param({
+    "test/com/facebook/buck/jvm/java/abi/testdata/sample/android.jar,"
+        + TEST_LIBS
+        + "third-party/java/robolectric/shadows-core-3.3.2.jar,"
+        + TEST_LIBS
+        + "third-party/java/bouncycastle/bcprov-jdk15on-158.jar,"
+        + TEST_LIBS
+        + "third-party/java/guava/guava-20.0.jar,"
+        + "third-party/java/jackson/jackson-databind-2.9.7.jar,"
+        + "third-party/java/asm/asm-7.0.jar"
+  })
+  public String jars;
+
+  private Path tempDir;
+  private List<Path> classpath;
+  private ProjectFilesystem filesystem;
+
+  @Setup
+  public void setUpBenchmark() throws IOException {
+    classpath =
+        Splitter.on(',')
+            .splitToList(jars)
+            .stream()
+            .map(jar -> Paths.get(jar).toAbsolutePath())
+            .collect(Collectors.toList());
+    tempDir = Files.createTempDirectory("classpath-traversal-benchmark");
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tempDir);
+  }
+
+  @TearDown
+  public void tearDownBenchmark() throws IOException {
+    MostFiles.deleteRecursively(tempDir);
+  }
+
+  @Benchmark
+  public Map<String, HashCode> hashWithZipFile() throws IOException {
+    Map<String, HashCode> hashes = new HashMap<>();
+    for (Path jar : classpath) {
+      new ZipFileTraversal(jar) {
+        @Override
+        public void visit(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
+          if (zipEntry.getName().endsWith(".class")) {
+            try (InputStream input = zipFile.getInputStream(zipEntry)) {
+              hashes.put(
+                  zipEntry.getName(), Hashing.sha1().hashBytes(ByteStreams.toByteArray(input)));
+            }
+          }
+        }
+      }.traverse();
+    }
+    return hashes;
+  }
+
+  @Benchmark
+  public Map<String, HashCode> hashWithMappedZipFile() throws IOException {
+    Map<String, HashCode> hashes = new HashMap<>();
+    new DefaultClasspathTraverser()
+        .traverse(
+            new ClasspathTraversal(classpath, filesystem) {
+              @Override
+              public void visit(FileLike fileLike) throws IOException {
+                if (FileLikes.isClassFile(fileLike)) {
+                  hashes.put(
+                      fileLike.getRelativePath(), Hashing.sha1().hashBytes(fileLike.getContents()));
+                }
+              }
+            });
+    return hashes;
+  }
+}
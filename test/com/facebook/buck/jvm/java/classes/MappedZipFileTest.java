@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.classes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedZipFileTest {
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  private Path zip;
+
+  @Before
+  public void setUp() throws IOException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+
+    zip = tempDir.newFile("test.zip").toPath();
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      large.append("Line ").append(i).append('\n');
+    }
+    byte[] stored = "stored".getBytes(StandardCharsets.UTF_8);
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      out.setComment("A comment before the central directory.");
+      out.putNextEntry(new ZipEntry("dir/"));
+      out.putNextEntry(new ZipEntry("dir/Foo.class"));
+      out.write("Foo".getBytes(StandardCharsets.UTF_8));
+      out.putNextEntry(new ZipEntry("empty.txt"));
+      out.putNextEntry(new ZipEntry("large.txt"));
+      out.write(large.toString().getBytes(StandardCharsets.UTF_8));
+      ZipEntry storedEntry = new ZipEntry("st\u00f6red.txt");
+      storedEntry.setMethod(ZipEntry.STORED);
+      storedEntry.setSize(stored.length);
+      CRC32 crc = new CRC32();
+      crc.update(stored);
+      storedEntry.setCrc(crc.getValue());
+      out.putNextEntry(storedEntry);
+      out.write(stored);
+    }
+  }
+
+  @Test
+  public void readsTheSameEntriesAsZipFile() throws IOException {
+    MappedZipFile mappedZipFile = MappedZipFile.open(zip).get();
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      List<? extends ZipEntry> expected = Collections.list(zipFile.entries());
+      ImmutableList<MappedZipFile.Entry> actual = mappedZipFile.getEntries();
+      assertEquals(expected.size(), actual.size());
+
+      for (int i = 0; i < expected.size(); i++) {
+        ZipEntry expectedEntry = expected.get(i);
+        MappedZipFile.Entry entry = actual.get(i);
+        assertEquals(expectedEntry.getName(), entry.getName());
+        assertEquals(expectedEntry.getSize(), entry.getSize());
+
+        byte[] expectedContents;
+        try (InputStream input = zipFile.getInputStream(expectedEntry)) {
+          expectedContents = ByteStreams.toByteArray(input);
+        }
+        try (InputStream input = mappedZipFile.getInputStream(entry)) {
+          assertArrayEquals(expectedContents, ByteStreams.toByteArray(input));
+        }
+        ByteBuffer contents = mappedZipFile.getContents(entry);
+        byte[] contentsBytes = new byte[contents.remaining()];
+        contents.get(contentsBytes);
+        assertArrayEquals(expectedContents, contentsBytes);
+      }
+    }
+  }
+
+  @Test
+  public void storedEntriesAreSlicesOfTheMapping() throws IOException {
+    MappedZipFile mappedZipFile = MappedZipFile.open(zip).get();
+    MappedZipFile.Entry stored =
+        mappedZipFile
+            .getEntries()
+            .stream()
+            .filter(entry -> entry.getName().equals("st\u00f6red.txt"))
+            .findFirst()
+            .get();
+
+    assertTrue(mappedZipFile.getContents(stored).isDirect());
+  }
+
+  @Test
+  public void skipsDataPrependedToTheZip() throws IOException {
+    Path script = tempDir.newFile("script.zip").toPath();
+    try (OutputStream out = Files.newOutputStream(script)) {
+      out.write("#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8));
+      Files.copy(zip, out);
+    }
+
+    MappedZipFile mappedZipFile = MappedZipFile.open(script).get();
+    MappedZipFile.Entry foo = mappedZipFile.getEntries().get(1);
+    assertEquals("dir/Foo.class", foo.getName());
+    try (InputStream input = mappedZipFile.getInputStream(foo)) {
+      assertArrayEquals("Foo".getBytes(StandardCharsets.UTF_8), ByteStreams.toByteArray(input));
+    }
+  }
+
+  @Test
+  public void doesNotMapZip64Files() throws IOException {
+    Path zip64 = tempDir.newFile("zip64.zip").toPath();
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip64))) {
+      // More entries than the end of central directory record can count.
+      for (int i = 0; i < 0x10000; i++) {
+        out.putNextEntry(new ZipEntry(Integer.toString(i)));
+      }
+    }
+
+    assertEquals(Optional.empty(), MappedZipFile.open(zip64));
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.coverage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.hamcrest.Matchers;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ReportGeneratorTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final String SAMPLE_CLASS = Sample.class.getName().replace('.', '/') + ".class";
+
+  private byte[] sampleBytes;
+  private long sampleId;
+
+  @Before
+  public void setUp() throws IOException {
+    try (InputStream input = Sample.class.getResourceAsStream("/" + SAMPLE_CLASS)) {
+      sampleBytes = ByteStreams.toByteArray(input);
+    }
+    List<IClassCoverage> coverage = new ArrayList<>();
+    new Analyzer(new ExecutionDataStore(), coverage::add).analyzeClass(sampleBytes, SAMPLE_CLASS);
+    sampleId = coverage.get(0).getId();
+  }
+
+  @Test
+  public void mergesExecutionDataFilesAndAnalyzesJarsInPlace() throws IOException {
+    Path jarOutput = tmp.newFolder("jar-output");
+    writeExecutionData(jarOutput.resolve("jacoco-first.exec"), "first", 0);
+    writeExecutionData(jarOutput.resolve("jacoco-second.exec"), "second", 1);
+    Path jar = writeJar(tmp.getRoot().resolve("sample.jar"));
+    Path sameJar = writeJar(tmp.getRoot().resolve("same.jar"));
+    Properties jarProperties = createProperties(jarOutput);
+    jarProperties.setProperty("classes.jars", jar + ":" + sameJar);
+
+    Path directoryOutput = tmp.newFolder("directory-output");
+    writeExecutionData(directoryOutput.resolve("jacoco.exec"), "first", 0);
+    writeExecutionData(directoryOutput.resolve("jacoco.exec"), "second", 1);
+    Path classesDirectory = tmp.newFolder("classes");
+    Files.createDirectories(classesDirectory.resolve(SAMPLE_CLASS).getParent());
+    Files.write(classesDirectory.resolve(SAMPLE_CLASS), sampleBytes);
+    Properties directoryProperties = createProperties(directoryOutput);
+    directoryProperties.setProperty("classes.dir", classesDirectory.toString());
+
+    String report = generateXmlReport(jarProperties);
+    assertEquals(generateXmlReport(directoryProperties), report);
+    assertThat(
+        report, Matchers.containsString("<class name=\"" + SAMPLE_CLASS.replace(".class", "")));
+    assertThat(report, Matchers.containsString("<sessioninfo id=\"first\""));
+    assertThat(report, Matchers.containsString("<sessioninfo id=\"second\""));
+  }
+
+  @Test
+  public void appliesIncludesAndExcludesToJarEntries() throws IOException {
+    Path output = tmp.newFolder("output");
+    Properties properties = createProperties(output);
+    Path jar = writeJar(tmp.getRoot().resolve("sample.jar"));
+    properties.setProperty("classes.jars", jar.toString());
+    properties.setProperty("jacoco.excludes", "**/*$Sample.class");
+
+    assertThat(generateXmlReport(properties), Matchers.not(Matchers.containsString("<class ")));
+  }
+
+  private Properties createProperties(Path output) {
+    Properties properties = new Properties();
+    properties.setProperty("jacoco.output.dir", output.toString());
+    properties.setProperty("jacoco.exec.data.file", "jacoco.exec");
+    properties.setProperty("jacoco.format", "xml");
+    properties.setProperty("jacoco.title", "Title");
+    properties.setProperty("src.dir", "");
+    return properties;
+  }
+
+  private String generateXmlReport(Properties properties) throws IOException {
+    new ReportGenerator(properties).create();
+    Path report =
+        Paths.get(properties.getProperty("jacoco.output.dir"), "code-coverage", "coverage.xml");
+    return new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+  }
+
+  /** Appends execution data in which only the given probe of the sample class was hit. */
+  private void writeExecutionData(Path file, String sessionId, int probe) throws IOException {
+    boolean[] probes = new boolean[64];
+    probes[probe] = true;
+    try (OutputStream output =
+        Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      ExecutionDataWriter writer = new ExecutionDataWriter(output);
+      writer.visitSessionInfo(new SessionInfo(sessionId, 1, 2));
+      writer.visitClassExecution(
+          new ExecutionData(sampleId, SAMPLE_CLASS.replace(".class", ""), probes));
+      writer.flush();
+    }
+  }
+
+  private Path writeJar(Path jar) throws IOException {
+    try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (String directory : directoriesOf(SAMPLE_CLASS)) {
+        output.putNextEntry(new ZipEntry(directory));
+      }
+      output.putNextEntry(new ZipEntry(SAMPLE_CLASS));
+      output.write(sampleBytes);
+    }
+    return jar;
+  }
+
+  private static List<String> directoriesOf(String name) {
+    ImmutableList.Builder<String> directories = ImmutableList.builder();
+    List<String> parts = Arrays.asList(name.split("/"));
+    for (int i = 1; i < parts.size(); i++) {
+      directories.add(String.join("/", parts.subList(0, i)) + "/");
+    }
+    return directories.build();
+  }
+
+  /** A class with a few branches to analyze. */
+  public static class Sample {
+    public int abs(int value) {
+      if (value < 0) {
+        return -value;
+      }
+      return value;
+    }
+  }
+}
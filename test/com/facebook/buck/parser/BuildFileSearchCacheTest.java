@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.io.filesystem.PathMatcher;
+import com.facebook.buck.io.filesystem.RecursiveFileMatcher;
+import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
+import com.facebook.buck.io.watchman.WatchmanPathEvent;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BuildFileSearchCacheTest {
+
+  private static final ImmutableSet<PathMatcher> IGNORES =
+      ImmutableSet.of(RecursiveFileMatcher.of(Paths.get("buck-out")));
+
+  private Path root;
+  private BuildFileSearchCache cache;
+
+  @Before
+  public void setUp() {
+    root = Paths.get("/repo").toAbsolutePath();
+    cache = new BuildFileSearchCache();
+    cache.put(
+        root.resolve("foo"),
+        "BUCK",
+        IGNORES,
+        ImmutableSet.of(
+            root.resolve("foo/BUCK"),
+            root.resolve("foo/bar/BUCK"),
+            root.resolve("foo/baz/BUCK")));
+  }
+
+  @Test
+  public void searchesAreServedFromCache() {
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of(
+                root.resolve("foo/BUCK"),
+                root.resolve("foo/bar/BUCK"),
+                root.resolve("foo/baz/BUCK"))),
+        cache.get(root.resolve("foo"), "BUCK", IGNORES));
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void searchesOfSubdirectoriesAreServedFromAncestors() {
+    assertEquals(
+        Optional.of(ImmutableSet.of(root.resolve("foo/bar/BUCK"))),
+        cache.get(root.resolve("foo/bar"), "BUCK", IGNORES));
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void searchesWithDifferentParametersAreNotReused() {
+    assertFalse(cache.get(root, "BUCK", IGNORES).isPresent());
+    assertFalse(cache.get(root.resolve("foo"), "TARGETS", IGNORES).isPresent());
+    assertFalse(cache.get(root.resolve("foo"), "BUCK", ImmutableSet.of()).isPresent());
+    assertEquals(3, cache.getMissCount());
+  }
+
+  @Test
+  public void addedBuildFileInvalidatesSearchesOfAncestors() {
+    cache.put(root.resolve("qux"), "BUCK", IGNORES, ImmutableSet.of(root.resolve("qux/BUCK")));
+    cache.invalidateBasedOn(
+        WatchmanPathEvent.of(root, WatchmanPathEvent.Kind.CREATE, Paths.get("foo/bar/baz/BUCK")));
+
+    assertFalse(cache.get(root.resolve("foo"), "BUCK", IGNORES).isPresent());
+    assertEquals(
+        Optional.of(ImmutableSet.of(root.resolve("qux/BUCK"))),
+        cache.get(root.resolve("qux"), "BUCK", IGNORES));
+  }
+
+  @Test
+  public void modifiedBuildFileOrOtherFilesDoNotInvalidateSearches() {
+    cache.invalidateBasedOn(
+        WatchmanPathEvent.of(root, WatchmanPathEvent.Kind.MODIFY, Paths.get("foo/bar/BUCK")));
+    cache.invalidateBasedOn(
+        WatchmanPathEvent.of(root, WatchmanPathEvent.Kind.CREATE, Paths.get("foo/bar/Foo.java")));
+
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void overflowInvalidatesAllSearches() {
+    cache.invalidateBasedOn(WatchmanOverflowEvent.of(root, "overflow"));
+
+    assertEquals(0, cache.size());
+  }
+}
@@ -47,6 +47,9 @@ public class ParserBenchmark {
   @Param({"1", "2", "10"})
   private int threadCount = 1;
 
+  @Param({"false", "true"})
+  private boolean prewarmPythonInterpreters = false;
+
   private TemporaryPaths tempDir = new TemporaryPaths();
 
   private Parser parser;
@@ -95,6 +98,9 @@ public class ParserBenchmark {
           ImmutableMap.of(
               "parallel_parsing", "true", "parsing_threads", Integer.toString(threadCount)));
     }
+    if (prewarmPythonInterpreters) {
+      configSectionsBuilder.put("parser", ImmutableMap.of("prewarm_python_interpreters", "true"));
+    }
     BuckConfig config =
         FakeBuckConfig.builder()
             .setFilesystem(filesystem)
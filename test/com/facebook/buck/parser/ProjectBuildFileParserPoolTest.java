@@ -21,6 +21,7 @@ import static org.junit.Assert.fail;
 
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.cell.TestCellBuilder;
+import com.facebook.buck.core.config.FakeBuckConfig;
 import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.io.watchman.WatchmanFactory;
 import com.facebook.buck.parser.api.BuildFileManifest;
@@ -127,6 +128,61 @@ public class ProjectBuildFileParserPoolTest {
         /* expectedCreateCount */ 1);
   }
 
+  @Test
+  public void startsAllParsersUpfrontWhenPrewarmingIsEnabled() throws Exception {
+    int maxParsers = 3;
+    AtomicInteger createCount = new AtomicInteger(0);
+    AtomicInteger initCount = new AtomicInteger(0);
+    CountDownLatch initLatch = new CountDownLatch(maxParsers);
+    Cell cell =
+        new TestCellBuilder()
+            .setBuckConfig(
+                FakeBuckConfig.builder()
+                    .setSections("[parser]", "prewarm_python_interpreters = true")
+                    .build())
+            .build();
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(maxParsers));
+
+    try (ProjectBuildFileParserPool parserPool =
+        createParserPool(
+            maxParsers,
+            (eventBus, input, watchman) -> {
+              createCount.incrementAndGet();
+              ProjectBuildFileParser mock = EasyMock.createMock(ProjectBuildFileParser.class);
+              try {
+                mock.initIfNeeded();
+                EasyMock.expectLastCall()
+                    .andAnswer(
+                        () -> {
+                          initCount.incrementAndGet();
+                          initLatch.countDown();
+                          assertThat(initLatch.await(1, TimeUnit.SECONDS), Matchers.is(true));
+                          return null;
+                        })
+                    .once();
+                EasyMock.expect(mock.getBuildFileManifest(EasyMock.anyObject(Path.class)))
+                    .andReturn(EMPTY_BUILD_FILE_MANIFEST)
+                    .anyTimes();
+                mock.close();
+                EasyMock.expectLastCall().andVoid().once();
+              } catch (Exception e) {
+                Throwables.throwIfUnchecked(e);
+                throw new RuntimeException(e);
+              }
+              EasyMock.replay(mock);
+              return mock;
+            })) {
+
+      Futures.allAsList(scheduleWork(cell, parserPool, executorService, 1)).get();
+      initLatch.await(1, TimeUnit.SECONDS);
+      assertThat(createCount.get(), Matchers.equalTo(maxParsers));
+      assertThat(initCount.get(), Matchers.equalTo(maxParsers));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
   @Test
   public void closesCreatedParsers() throws Exception {
     int parsersCount = 4;
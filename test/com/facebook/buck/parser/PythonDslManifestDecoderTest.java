@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.json.BuildFilePythonResult;
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.syntax.ListWithSelects;
+import com.facebook.buck.parser.syntax.SelectorValue;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.devtools.build.lib.syntax.Runtime;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Test;
+
+public class PythonDslManifestDecoderTest {
+
+  private static final String VALUES =
+      "{\"values\":["
+          + "{\"name\":\"a\",\"buck.type\":\"java_library\",\"srcs\":[\"A.java\"]},"
+          + "{\"name\":\"b\",\"buck.type\":\"java_library\",\"deps\":[\":a\"]},"
+          + "{\"__includes\":[\"/root/BUCK\",\"/root/defs.bzl\"]},"
+          + "{\"__configs\":{\"section\":{\"key\":\"value\",\"missing\":null}}},"
+          + "{\"__env\":{\"HOME\":\"/home\",\"UNSET\":null}}"
+          + "]}";
+
+  private static PythonDslParseResult decode(String json) throws IOException {
+    try (JsonParser parser = ObjectMappers.createParser(json)) {
+      return PythonDslManifestDecoder.decode(parser);
+    }
+  }
+
+  @Test
+  public void decodesTargetsAndMetaRules() throws IOException {
+    PythonDslParseResult result = decode(VALUES);
+    BuildFileManifest manifest = result.getManifest();
+
+    assertEquals(ImmutableSortedSet.of("a", "b"), manifest.getTargets().keySet());
+    assertEquals(
+        ImmutableMap.of(
+            "name",
+            "a",
+            "buck.type",
+            "java_library",
+            "srcs",
+            ImmutableList.of("A.java")),
+        manifest.getTargets().get("a"));
+    assertEquals(ImmutableSortedSet.of("/root/BUCK", "/root/defs.bzl"), manifest.getIncludes());
+    Map<?, ?> section = (Map<?, ?>) manifest.getConfigs().get("section");
+    assertEquals("value", section.get("key"));
+    assertTrue(section.containsKey("missing"));
+    assertEquals(
+        Optional.of(ImmutableMap.of("HOME", Optional.of("/home"), "UNSET", Optional.empty())),
+        manifest.getEnv());
+    assertTrue(result.getDiagnostics().isEmpty());
+    assertEquals(Optional.empty(), result.getProfile());
+  }
+
+  @Test
+  public void emptyValuesProduceEmptyManifest() throws IOException {
+    PythonDslParseResult result =
+        decode(
+            "{\"values\":[],\"diagnostics\":[{\"message\":\"Oops\",\"level\":\"fatal\"}],"
+                + "\"profile\":\"profile\"}");
+
+    assertTrue(result.getManifest().getTargets().isEmpty());
+    assertEquals(Optional.empty(), result.getManifest().getEnv());
+    assertEquals(
+        ImmutableList.of(ImmutableMap.of("message", "Oops", "level", "fatal")),
+        result.getDiagnostics());
+    assertEquals(Optional.of("profile"), result.getProfile());
+  }
+
+  @Test
+  public void convertsSelectableAttributes() throws IOException {
+    PythonDslParseResult result =
+        decode(
+            "{\"values\":[{\"name\":\"a\",\"srcs\":{\"@type\":\"SelectorList\",\"items\":["
+                + "[\"A.java\"],"
+                + "{\"@type\":\"SelectorValue\",\"conditions\":{\":c\":[\"C.java\"],"
+                + "\"DEFAULT\":null},\"no_match_message\":\"no match\"}]}},"
+                + "{\"__includes\":[]},{\"__configs\":{}},{\"__env\":{}}]}");
+
+    ListWithSelects srcs =
+        (ListWithSelects) result.getManifest().getTargets().get("a").get("srcs");
+    assertEquals(ImmutableList.of("A.java"), srcs.getElements().get(0));
+    SelectorValue selectorValue = (SelectorValue) srcs.getElements().get(1);
+    assertEquals(
+        ImmutableMap.of(":c", ImmutableList.of("C.java"), "DEFAULT", Runtime.NONE),
+        selectorValue.getDictionary());
+    assertEquals("no match", selectorValue.getNoMatchError());
+  }
+
+  @Test
+  public void keepsNullListElements() throws IOException {
+    PythonDslParseResult result =
+        decode(
+            "{\"values\":[{\"name\":\"a\",\"labels\":[\"x\",null]},"
+                + "{\"__includes\":[]},{\"__configs\":{}},{\"__env\":{}}]}");
+
+    assertEquals(
+        Arrays.asList("x", null), result.getManifest().getTargets().get("a").get("labels"));
+  }
+
+  @Test
+  public void internsStringsAcrossPackages() throws IOException {
+    Map<String, Object> first = decode(VALUES).getManifest().getTargets().get("a");
+    Map<String, Object> second = decode(VALUES).getManifest().getTargets().get("a");
+
+    assertSame(first.get("buck.type"), second.get("buck.type"));
+  }
+
+  @Test
+  public void leavesParserReadyForNextResponse() throws IOException {
+    try (JsonParser parser =
+        ObjectMappers.createParser(VALUES + "\n{\"profile\":\"p\"}\n" + VALUES)) {
+      assertEquals(2, PythonDslManifestDecoder.decode(parser).getManifest().getTargets().size());
+      assertEquals(
+          Optional.of("p"), parser.readValueAs(BuildFilePythonResult.class).getProfile());
+      assertEquals(2, PythonDslManifestDecoder.decode(parser).getManifest().getTargets().size());
+    }
+  }
+}
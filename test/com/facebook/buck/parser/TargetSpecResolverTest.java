@@ -32,13 +32,16 @@ import com.facebook.buck.core.rules.knowntypes.KnownRuleTypesProvider;
 import com.facebook.buck.core.rules.knowntypes.TestKnownRuleTypesProvider;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.event.FakeBuckEventListener;
 import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.TestProjectFilesystems;
 import com.facebook.buck.io.watchman.WatchmanFactory;
+import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.manifestservice.ManifestService;
 import com.facebook.buck.parser.TargetSpecResolver.FlavorEnhancer;
 import com.facebook.buck.parser.TargetSpecResolver.TargetNodeProviderForSpecResolver;
+import com.facebook.buck.parser.events.ResolveTargetSpecsEvent;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
 import com.facebook.buck.rules.coercer.ConstructorArgMarshaller;
@@ -49,10 +52,12 @@ import com.facebook.buck.testutil.FakeFileHashCache;
 import com.facebook.buck.testutil.TemporaryPaths;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.facebook.buck.util.RichStream;
 import com.facebook.buck.util.ThrowingCloseableMemoizedSupplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -60,6 +65,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.concurrent.Executors;
 import org.junit.After;
 import org.junit.Before;
@@ -220,6 +226,47 @@ public class TargetSpecResolverTest {
     assertThat(targets, equalTo(ImmutableList.of(ImmutableSet.of())));
   }
 
+  @Test
+  public void recursiveSpecsReuseBuildFileSearchesUntilInvalidated() throws Exception {
+    BuildFileSearchCache buildFileSearchCache = new BuildFileSearchCache();
+    targetNodeTargetSpecResolver =
+        new TargetSpecResolver(eventBus, WatchmanFactory.NULL_WATCHMAN, buildFileSearchCache);
+    FakeBuckEventListener listener = new FakeBuckEventListener();
+    eventBus.register(listener);
+
+    BuildTarget foo = BuildTargetFactory.newInstance(filesystem.getRootPath(), "//foo:foo");
+    Path buckFile = cellRoot.resolve("foo/BUCK");
+    Files.createDirectories(buckFile.getParent());
+    Files.write(buckFile, "genrule(name='foo', out='foo', cmd='foo')".getBytes(UTF_8));
+    ImmutableList<TargetNodeSpec> specs =
+        ImmutableList.of(
+            TargetNodePredicateSpec.of(
+                BuildFileSpec.fromRecursivePath(Paths.get("foo"), cell.getRoot())));
+    assertThat(resolve(specs), equalTo(ImmutableList.of(ImmutableSet.of(foo))));
+
+    // A build file that the cache has not been notified about is not picked up.
+    BuildTarget bar = BuildTargetFactory.newInstance(filesystem.getRootPath(), "//foo/bar:bar");
+    buckFile = cellRoot.resolve("foo/bar/BUCK");
+    Files.createDirectories(buckFile.getParent());
+    Files.write(buckFile, "genrule(name='bar', out='bar', cmd='bar')".getBytes(UTF_8));
+    assertThat(resolve(specs), equalTo(ImmutableList.of(ImmutableSet.of(foo))));
+
+    buildFileSearchCache.invalidateBasedOn(
+        WatchmanPathEvent.of(cellRoot, WatchmanPathEvent.Kind.CREATE, Paths.get("foo/bar/BUCK")));
+    assertThat(resolve(specs), equalTo(ImmutableList.of(ImmutableSet.of(foo, bar))));
+
+    List<ResolveTargetSpecsEvent.Finished> events =
+        RichStream.from(listener.getEvents())
+            .filter(ResolveTargetSpecsEvent.Finished.class)
+            .toImmutableList();
+    assertThat(
+        Lists.transform(events, ResolveTargetSpecsEvent.Finished::getCachedBuildFileSearches),
+        equalTo(ImmutableList.of(0, 1, 0)));
+    assertThat(
+        Lists.transform(events, ResolveTargetSpecsEvent.Finished::getBuildFilesCount),
+        equalTo(ImmutableList.of(1, 1, 2)));
+  }
+
   private ImmutableList<ImmutableSet<BuildTarget>> resolve(Iterable<? extends TargetNodeSpec> specs)
       throws IOException, InterruptedException {
     PerBuildState state =
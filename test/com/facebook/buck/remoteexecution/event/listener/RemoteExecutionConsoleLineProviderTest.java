@@ -74,6 +74,18 @@ public class RemoteExecutionConsoleLineProviderTest {
     }
   }
 
+  @Test
+  public void testLocalActionCacheHitRate() {
+    statsProvider.actionsPerState.put(State.ACTION_SUCCEEDED, 84);
+    statsProvider.localActionCacheHits = 3;
+    statsProvider.localActionCacheMisses = 1;
+    RemoteExecutionConsoleLineProvider provider =
+        new RemoteExecutionConsoleLineProvider(statsProvider, SESSION_ID_INFO);
+    List<String> lines = provider.createConsoleLinesAtTime(0);
+    Assert.assertEquals(5, lines.size());
+    Assert.assertEquals("[RE] LocalActionCache: [hit_rate=75.00% hits=3 misses=1]", lines.get(4));
+  }
+
   @Test
   public void testDebugFormatConsoleOutput() {
     statsProvider.casDownladedBytes = 42;
@@ -99,6 +111,8 @@ public class RemoteExecutionConsoleLineProviderTest {
     public Map<State, Integer> actionsPerState = Maps.newHashMap();
     public int casDownloads = 0;
     public int casDownladedBytes = 0;
+    public int localActionCacheHits = 0;
+    public int localActionCacheMisses = 0;
     public LocalFallbackStats localFallbackStats =
         LocalFallbackStats.builder()
             .setTotalExecutedRules(84)
@@ -146,5 +160,15 @@ public class RemoteExecutionConsoleLineProviderTest {
     public LocalFallbackStats getLocalFallbackStats() {
       return localFallbackStats;
     }
+
+    @Override
+    public int getLocalActionCacheHits() {
+      return localActionCacheHits;
+    }
+
+    @Override
+    public int getLocalActionCacheMisses() {
+      return localActionCacheMisses;
+    }
   }
 }
@@ -196,6 +196,57 @@ public class GrpcRemoteExecutionClientsTest {
     assertEquals(ImmutableMap.of(out1, data1, out2, data2), getDirectoryContents(workDir));
   }
 
+  @Test
+  public void testStorageStreamsBlobsLargerThanBatches() throws Exception {
+    Protocol protocol = new GrpcProtocol();
+    Path root = temporaryPaths.getRoot();
+    Path cacheDir = root.resolve("cache");
+    Files.createDirectories(cacheDir);
+    Path workDir = root.resolve("work");
+    Files.createDirectories(workDir);
+    LocalContentAddressedStorage storage =
+        new LocalContentAddressedStorage(cacheDir, new GrpcProtocol());
+    services.add(new LocalBackedCasImpl(storage));
+    services.add(new LocalBackedByteStreamImpl(storage));
+
+    setupServer();
+
+    StringBuilder largeDataBuilder = new StringBuilder();
+    Random random = new Random(0);
+    while (largeDataBuilder.length() < 11 * 1024 * 1024) {
+      largeDataBuilder.append(Long.toHexString(random.nextLong()));
+    }
+    String largeData = largeDataBuilder.toString();
+    Digest largeDigest = protocol.computeDigest(largeData.getBytes(Charsets.UTF_8));
+    String smallData = "small";
+    Digest smallDigest = protocol.computeDigest(smallData.getBytes(Charsets.UTF_8));
+
+    clients
+        .getContentAddressedStorage()
+        .addMissing(
+            ImmutableMap.of(
+                largeDigest,
+                () -> new ByteArrayInputStream(largeData.getBytes(Charsets.UTF_8)),
+                smallDigest,
+                () -> new ByteArrayInputStream(smallData.getBytes(Charsets.UTF_8))))
+        .get();
+
+    Path largeOut = Paths.get("large");
+    Path smallOut = Paths.get("small");
+    clients
+        .getContentAddressedStorage()
+        .materializeOutputs(
+            ImmutableList.of(),
+            ImmutableList.of(
+                protocol.newOutputFile(largeOut, largeDigest, false),
+                protocol.newOutputFile(smallOut, smallDigest, false)),
+            workDir)
+        .get();
+
+    assertEquals(
+        ImmutableMap.of(largeOut, largeData, smallOut, smallData), getDirectoryContents(workDir));
+  }
+
   private ImmutableMap<Path, String> getDirectoryContents(Path workDir) throws IOException {
     Builder<Path, String> contentsBuilder = ImmutableMap.builder();
     try (Stream<Path> stream = Files.list(workDir)) {
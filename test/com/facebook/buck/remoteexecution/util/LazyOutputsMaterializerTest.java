@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.remoteexecution.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.remoteexecution.grpc.GrpcProtocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LazyOutputsMaterializerTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final Protocol protocol = new GrpcProtocol();
+  private LocalContentAddressedStorage storage;
+  private Path root;
+  private LazyOutputsMaterializer materializer;
+
+  @Before
+  public void setUp() throws Exception {
+    storage = new LocalContentAddressedStorage(tmp.getRoot().resolve("__storage__"), protocol);
+    root = tmp.newFolder("root");
+    materializer = new LazyOutputsMaterializer(storage, root);
+    materializer.defer(
+        ImmutableList.of(
+            addOutputFile("out/lib/lib.jar", "jar"),
+            addOutputFile("out/lib/lib.abi.jar", "abi"),
+            addOutputFile("out/library/library.jar", "other")));
+  }
+
+  private OutputFile addOutputFile(String path, String content) throws Exception {
+    byte[] data = content.getBytes(Charsets.UTF_8);
+    Digest digest = protocol.computeDigest(data);
+    storage
+        .addMissing(ImmutableMap.of(digest, () -> new ByteArrayInputStream(data)))
+        .get(5, TimeUnit.SECONDS);
+    return protocol.newOutputFile(Paths.get(path), digest, false);
+  }
+
+  @Test
+  public void deferredFilesAreNotWritten() {
+    assertFalse(materializer.isEmpty());
+    assertTrue(materializer.getDeferredFile(Paths.get("out/lib/lib.jar")).isPresent());
+    assertFalse(Files.exists(root.resolve("out/lib/lib.jar")));
+    assertEquals(3, materializer.getDeferredCount());
+  }
+
+  @Test
+  public void deferredFilesAreFoundUnderDirectories() {
+    assertEquals(2, materializer.getDeferredFiles(Paths.get("out/lib")).size());
+    assertEquals(3, materializer.getDeferredFiles(Paths.get("out")).size());
+    assertEquals(0, materializer.getDeferredFiles(Paths.get("out/li")).size());
+  }
+
+  @Test
+  public void materializeWritesRequestedFilesOnly() throws Exception {
+    materializer.materialize(ImmutableList.of(Paths.get("out/lib"))).get(5, TimeUnit.SECONDS);
+
+    assertEquals(
+        "jar", new String(Files.readAllBytes(root.resolve("out/lib/lib.jar")), Charsets.UTF_8));
+    assertTrue(Files.exists(root.resolve("out/lib/lib.abi.jar")));
+    assertFalse(Files.exists(root.resolve("out/library/library.jar")));
+    assertFalse(materializer.getDeferredFile(Paths.get("out/lib/lib.jar")).isPresent());
+    assertEquals(2, materializer.getMaterializedCount());
+  }
+
+  @Test
+  public void materializedFilesAreNotWrittenAgain() throws Exception {
+    Path jar = Paths.get("out/lib/lib.jar");
+    materializer.materialize(ImmutableList.of(jar)).get(5, TimeUnit.SECONDS);
+    Files.write(root.resolve(jar), "modified".getBytes(Charsets.UTF_8));
+
+    materializer.materialize(ImmutableList.of(jar)).get(5, TimeUnit.SECONDS);
+
+    assertEquals("modified", new String(Files.readAllBytes(root.resolve(jar)), Charsets.UTF_8));
+    assertEquals(1, materializer.getMaterializedCount());
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.remoteexecution.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.remoteexecution.RemoteExecutionService.ExecutionResult;
+import com.facebook.buck.remoteexecution.grpc.GrpcProtocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputDirectory;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.facebook.buck.remoteexecution.proto.RemoteExecutionMetadata;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LocalActionResultCacheTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final Protocol protocol = new GrpcProtocol();
+  private final Digest actionDigest = digestOf("action");
+  private Path cacheDir;
+
+  @Before
+  public void setUp() {
+    cacheDir = tmp.getRoot().resolve("cache");
+  }
+
+  @Test
+  public void resultsAreServedFromMemoryAndDisk() throws Exception {
+    LocalActionResultCache cache = newCache();
+    assertFalse(cache.get(actionDigest).isPresent());
+
+    cache.put(actionDigest, new FakeExecutionResult(0));
+    assertResultEquals(cache.get(actionDigest));
+
+    // A new cache (e.g. in a new daemon) reads the result stored on disk.
+    assertResultEquals(newCache().get(actionDigest));
+  }
+
+  @Test
+  public void invalidatedResultsAreForgotten() throws Exception {
+    LocalActionResultCache cache = newCache();
+    cache.put(actionDigest, new FakeExecutionResult(0));
+
+    cache.invalidate(actionDigest);
+
+    assertFalse(cache.get(actionDigest).isPresent());
+    assertFalse(newCache().get(actionDigest).isPresent());
+  }
+
+  @Test
+  public void leastRecentlyUsedResultsAreDeletedFromDisk() throws Exception {
+    LocalActionResultCache cache = newCache();
+    for (int i = 0; i < 10; i++) {
+      cache.put(digestOf("action" + i), new FakeExecutionResult(0));
+      Files.setLastModifiedTime(getPath(digestOf("action" + i)), FileTime.fromMillis(i * 1000));
+    }
+    assertResultEquals(newCache().get(digestOf("action0")));
+
+    cache.put(actionDigest, new FakeExecutionResult(0));
+
+    for (Digest digest : ImmutableList.of(digestOf("action1"), digestOf("action2"))) {
+      assertFalse(cache.get(digest).isPresent());
+      assertFalse(Files.exists(getPath(digest)));
+    }
+    for (String action : ImmutableList.of("action0", "action3", "action9", "action")) {
+      assertResultEquals(newCache().get(digestOf(action)));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void failuresAreNotCached() throws Exception {
+    LocalActionResultCache cache = newCache();
+    cache.put(actionDigest, new FakeExecutionResult(1));
+  }
+
+  private LocalActionResultCache newCache() {
+    return new LocalActionResultCache(cacheDir, protocol, 10, 10);
+  }
+
+  private Path getPath(Digest digest) {
+    String key = digest.getHash() + "_" + digest.getSize();
+    return cacheDir.resolve(key.substring(0, 2)).resolve(key);
+  }
+
+    private void assertResultEquals(Optional<ExecutionResult> result) {
+    assertTrue(result.isPresent());
+    assertEquals(0, result.get().getExitCode());
+    OutputFile file = result.get().getOutputFiles().get(0);
+    assertEquals("buck-out/gen/foo/foo.jar", file.getPath());
+    assertEquals(digestOf("jar").getHash(), file.getDigest().getHash());
+    assertTrue(file.getIsExecutable());
+    OutputDirectory directory = result.get().getOutputDirectories().get(0);
+    assertEquals("buck-out/gen/foo/classes", directory.getPath());
+    assertEquals(digestOf("tree").getSize(), directory.getTreeDigest().getSize());
+    assertEquals(digestOf("result").getHash(), result.get().getActionResultDigest().getHash());
+  }
+
+  private Digest digestOf(String data) {
+    return protocol.computeDigest(data.getBytes(Charsets.UTF_8));
+  }
+
+  private class FakeExecutionResult implements ExecutionResult {
+    private final int exitCode;
+
+    FakeExecutionResult(int exitCode) {
+      this.exitCode = exitCode;
+    }
+
+    @Override
+    public List<OutputDirectory> getOutputDirectories() {
+      return ImmutableList.of(
+          protocol.newOutputDirectory(Paths.get("buck-out/gen/foo/classes"), digestOf("tree")));
+    }
+
+    @Override
+    public List<OutputFile> getOutputFiles() {
+      return ImmutableList.of(
+          protocol.newOutputFile(Paths.get("buck-out/gen/foo/foo.jar"), digestOf("jar"), true));
+    }
+
+    @Override
+    public int getExitCode() {
+      return exitCode;
+    }
+
+    @Override
+    public Optional<String> getStdout() {
+      return Optional.of("stdout");
+    }
+
+    @Override
+    public Optional<String> getStderr() {
+      return Optional.of("stderr");
+    }
+
+    @Override
+    public RemoteExecutionMetadata getMetadata() {
+      return RemoteExecutionMetadata.getDefaultInstance();
+    }
+
+    @Override
+    public Digest getActionResultDigest() {
+      return digestOf("result");
+    }
+  }
+}
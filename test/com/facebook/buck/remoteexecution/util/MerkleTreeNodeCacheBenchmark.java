@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.remoteexecution.util;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.remoteexecution.grpc.GrpcProtocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.FileNode;
+import com.facebook.buck.remoteexecution.util.MerkleTreeNodeCache.MerkleTreeNode;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures computing the input root digests of all actions of a graph of Java libraries.
+ *
+ * <p>Each library compiles its own sources against the jars of its transitive dependencies, so
+ * its input tree is composed bottom-up from its sources and the trees of its dependencies, the
+ * same way ModernBuildRuleRemoteExecutionHelper does it. Run with {@code --instrument allocation}
+ * to also measure the allocations.
+ */
+public class MerkleTreeNodeCacheBenchmark {
+  @Param({"1000", "5000"})
+  private int librariesCount = 100;
+
+  @Param({"20"})
+  private int sourcesPerLibrary = 5;
+
+  @Param({"5"})
+  private int depsPerLibrary = 3;
+
+  private final Protocol protocol = new GrpcProtocol();
+  private final List<Map<Path, FileNode>> librarySources = new ArrayList<>();
+  private final List<Map<Path, FileNode>> libraryOutputs = new ArrayList<>();
+  private final List<ImmutableList<Integer>> libraryDeps = new ArrayList<>();
+
+  private MerkleTreeNodeCache warmCache;
+
+  @Before
+  public void setUpTest() {
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() {
+    Random random = new Random(123);
+    for (int library = 0; library < librariesCount; library++) {
+      Path packagePath = Paths.get("java/com/example/lib" + library);
+      Map<Path, FileNode> sources = new HashMap<>();
+      for (int source = 0; source < sourcesPerLibrary; source++) {
+        String name = "Source" + source + ".java";
+        sources.put(packagePath.resolve(name), newFileNode(name, packagePath + name));
+      }
+      librarySources.add(sources);
+
+      String jarName = "lib" + library + ".jar";
+      libraryOutputs.add(
+          ImmutableMap.of(
+              Paths.get("buck-out/gen").resolve(packagePath).resolve(jarName),
+              newFileNode(jarName, jarName)));
+
+      ImmutableList.Builder<Integer> deps = ImmutableList.builder();
+      for (int dep = 0; dep < Math.min(library, depsPerLibrary); dep++) {
+        deps.add(random.nextInt(library));
+      }
+      libraryDeps.add(deps.build());
+    }
+
+    warmCache = new MerkleTreeNodeCache(protocol);
+    computeDigests(warmCache);
+  }
+
+  private FileNode newFileNode(String name, String content) {
+    Digest digest = protocol.computeDigest(content.getBytes(Charsets.UTF_8));
+    return protocol.newFileNode(digest, name, false);
+  }
+
+  /** @return the input root digests of all libraries. */
+  private List<Digest> computeDigests(MerkleTreeNodeCache nodeCache) {
+    List<MerkleTreeNode> exportedTrees = new ArrayList<>(librariesCount);
+    List<Digest> digests = new ArrayList<>(librariesCount);
+    for (int library = 0; library < librariesCount; library++) {
+      List<MerkleTreeNode> depTrees = new ArrayList<>();
+      for (int dep : libraryDeps.get(library)) {
+        depTrees.add(exportedTrees.get(dep));
+      }
+
+      List<MerkleTreeNode> inputs = new ArrayList<>(depTrees);
+      inputs.add(nodeCache.createNode(librarySources.get(library), ImmutableMap.of()));
+      digests.add(nodeCache.getData(nodeCache.mergeNodes(inputs)).getDigest());
+
+      List<MerkleTreeNode> exported = new ArrayList<>(depTrees);
+      exported.add(nodeCache.createNode(libraryOutputs.get(library), ImmutableMap.of()));
+      exportedTrees.add(nodeCache.mergeNodes(exported));
+    }
+    return digests;
+  }
+
+  @Test
+  public void warmCacheComputesSameDigests() {
+    assertEquals(computeDigests(new MerkleTreeNodeCache(protocol)), computeDigests(warmCache));
+  }
+
+  /** Computes the digests as the first build of a daemon does. */
+  @Benchmark
+  public void computeDigestsWithColdCache() {
+    computeDigests(new MerkleTreeNodeCache(protocol));
+  }
+
+  /** Computes the digests as subsequent builds of a daemon do, when inputs have not changed. */
+  @Benchmark
+  public void computeDigestsWithWarmCache() {
+    computeDigests(warmCache);
+  }
+}
@@ -259,6 +259,56 @@ public class MerkleTreeNodeCacheTest {
     assertSame(combinedNode, nodeCache.mergeNodes(ImmutableList.of(firstNode, secondNode)));
   }
 
+  @Test
+  public void repeatedMergesReuseMergedNodes() {
+    MerkleTreeNodeCache nodeCache = new MerkleTreeNodeCache(protocol);
+    Digest digest = protocol.computeDigest("content".getBytes(Charsets.UTF_8));
+    MerkleTreeNode firstNode =
+        nodeCache.createNode(
+            ImmutableMap.of(Paths.get("cat/file.1"), protocol.newFileNode(digest, "file.1", false)),
+            ImmutableMap.of());
+    MerkleTreeNode secondNode =
+        nodeCache.createNode(
+            ImmutableMap.of(Paths.get("dog/file.2"), protocol.newFileNode(digest, "file.2", false)),
+            ImmutableMap.of());
+
+    MerkleTreeNode mergedNode = nodeCache.mergeNodes(ImmutableList.of(firstNode, secondNode));
+    NodeData mergedData = nodeCache.getData(mergedNode);
+
+    assertSame(mergedNode, nodeCache.mergeNodes(ImmutableList.of(firstNode, secondNode)));
+    assertSame(
+        mergedData,
+        nodeCache.getData(nodeCache.mergeNodes(ImmutableList.of(secondNode, firstNode))));
+  }
+
+  @Test
+  public void nodesCanBeBuiltFromSubtrees() {
+    MerkleTreeNodeCache nodeCache = new MerkleTreeNodeCache(protocol);
+    FileNode value = protocol.newFileNode(protocol.computeDigest(new byte[] {1}), "value", false);
+    FileNode other = protocol.newFileNode(protocol.computeDigest(new byte[] {2}), "other", false);
+
+    MerkleTreeNode subtree =
+        nodeCache.createNode(ImmutableMap.of(Paths.get("sub/value"), value), ImmutableMap.of());
+    MerkleTreeNode composed =
+        nodeCache.createNode(
+            ImmutableMap.of(Paths.get("dir/other"), other),
+            ImmutableMap.of(),
+            ImmutableMap.of("dir", subtree));
+
+    assertSame(
+        nodeCache.createNode(
+            ImmutableMap.of(Paths.get("dir/sub/value"), value, Paths.get("dir/other"), other),
+            ImmutableMap.of()),
+        composed);
+  }
+
+  @Test
+  public void sharedCacheIsSharedByProtocolImplementation() {
+    assertSame(
+        MerkleTreeNodeCache.getSharedCache(protocol),
+        MerkleTreeNodeCache.getSharedCache(new GrpcProtocol()));
+  }
+
   @Test
   public void badFileNodeNameIsRejected() {
     expected.expect(IllegalStateException.class);
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.remoteexecution.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.remoteexecution.CasBlobUploader;
+import com.facebook.buck.remoteexecution.UploadDataSupplier;
+import com.facebook.buck.remoteexecution.grpc.GrpcProtocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiThreadedBlobUploaderTest {
+  private static final int MISSING_CHECK_LIMIT = 10;
+  private static final int UPLOAD_SIZE_LIMIT = 1024;
+
+  private final Protocol protocol = new GrpcProtocol();
+  private ExecutorService executor;
+  private FakeCasBlobUploader delegate;
+  private MultiThreadedBlobUploader uploader;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    delegate = new FakeCasBlobUploader();
+    uploader =
+        new MultiThreadedBlobUploader(MISSING_CHECK_LIMIT, UPLOAD_SIZE_LIMIT, executor, delegate);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    delegate.missingCheckLatch.countDown();
+    executor.shutdownNow();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void largeBlobsAreUploadedIndividually() throws Exception {
+    delegate.missingCheckLatch.countDown();
+    ImmutableMap<Digest, UploadDataSupplier> data =
+        ImmutableMap.of(
+            digestOfSize(10), dataOfSize(10),
+            digestOfSize(20), dataOfSize(20),
+            digestOfSize(UPLOAD_SIZE_LIMIT + 1), dataOfSize(UPLOAD_SIZE_LIMIT + 1));
+
+    uploader.addMissing(data).get(5, TimeUnit.SECONDS);
+
+    assertEquals(ImmutableSet.copyOf(data.keySet()), delegate.uploaded);
+    assertEquals(1, delegate.singleUploads.get());
+    assertEquals(UPLOAD_SIZE_LIMIT, uploader.getBatchSizeLimit());
+  }
+
+  @Test
+  public void missingChecksAreCoalescedWhileOneIsInFlight() throws Exception {
+    ListenableFuture<Void> first =
+        uploader.addMissing(ImmutableMap.of(digestOfSize(1), dataOfSize(1)));
+    delegate.missingCheckStarted.await(5, TimeUnit.SECONDS);
+
+    List<ListenableFuture<Void>> others = new ArrayList<>();
+    for (int i = 2; i < 7; i++) {
+      others.add(uploader.addMissing(ImmutableMap.of(digestOfSize(i), dataOfSize(i))));
+    }
+    delegate.missingCheckLatch.countDown();
+
+    first.get(5, TimeUnit.SECONDS);
+    Futures.allAsList(others).get(5, TimeUnit.SECONDS);
+
+    assertEquals(6, delegate.uploaded.size());
+    assertEquals(2, delegate.missingChecks.get());
+  }
+
+  private Digest digestOfSize(int size) {
+    return protocol.newDigest(Integer.toString(size), size);
+  }
+
+  private static UploadDataSupplier dataOfSize(int size) {
+    return () -> new ByteArrayInputStream(new byte[size]);
+  }
+
+  private static class FakeCasBlobUploader implements CasBlobUploader {
+    private final CountDownLatch missingCheckStarted = new CountDownLatch(1);
+    private final CountDownLatch missingCheckLatch = new CountDownLatch(1);
+    private final AtomicInteger missingChecks = new AtomicInteger();
+    private final AtomicInteger singleUploads = new AtomicInteger();
+    private final Set<Digest> uploaded = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public ImmutableSet<String> getMissingHashes(List<Digest> requiredDigests) {
+      missingChecks.incrementAndGet();
+      missingCheckStarted.countDown();
+      try {
+        missingCheckLatch.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return requiredDigests.stream().map(Digest::getHash).collect(ImmutableSet.toImmutableSet());
+    }
+
+    @Override
+    public ImmutableList<UploadResult> batchUpdateBlobs(ImmutableList<UploadData> blobs) {
+      for (UploadData blob : blobs) {
+        assertTrue(blob.digest.getSize() <= UPLOAD_SIZE_LIMIT);
+      }
+      blobs.forEach(blob -> uploaded.add(blob.digest));
+      return blobs
+          .stream()
+          .map(blob -> new UploadResult(blob.digest, 0, null))
+          .collect(ImmutableList.toImmutableList());
+    }
+
+    @Override
+    public UploadResult uploadBlob(UploadData blob) {
+      singleUploads.incrementAndGet();
+      uploaded.add(blob.digest);
+      return new UploadResult(blob.digest, 0, null);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.coercer;
+
+import static com.facebook.buck.core.cell.TestCellBuilder.createCellRoots;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.core.cell.CellPathResolver;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.EmptyTargetConfiguration;
+import com.facebook.buck.core.model.TargetConfiguration;
+import com.facebook.buck.core.parser.buildtargetparser.ParsingUnconfiguredBuildTargetFactory;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoercedValueCacheTest {
+
+  private final ProjectFilesystem filesystem = new FakeProjectFilesystem();
+  private final CellPathResolver cellRoots = createCellRoots(filesystem);
+  private final Path basePath = Paths.get("java/com/example");
+
+  private AtomicInteger coercions;
+  private TypeCoercer<ImmutableSortedSet<BuildTarget>> coercer;
+
+  @Before
+  public void setUp() {
+    coercions = new AtomicInteger();
+    TypeCoercer<BuildTarget> buildTargetTypeCoercer =
+        new BuildTargetTypeCoercer(new ParsingUnconfiguredBuildTargetFactory()) {
+          @Override
+          public BuildTarget coerce(
+              CellPathResolver cellRoots,
+              ProjectFilesystem filesystem,
+              Path pathRelativeToProjectRoot,
+              TargetConfiguration targetConfiguration,
+              Object object)
+              throws CoerceFailedException {
+            coercions.incrementAndGet();
+            return super.coerce(
+                cellRoots, filesystem, pathRelativeToProjectRoot, targetConfiguration, object);
+          }
+        };
+    coercer = new SortedSetTypeCoercer<>(buildTargetTypeCoercer);
+  }
+
+  private ImmutableSortedSet<BuildTarget> coerce(Path basePath, Object rawValue)
+      throws CoerceFailedException {
+    return CoercedValueCache.INSTANCE.coerce(
+        coercer, cellRoots, filesystem, basePath, EmptyTargetConfiguration.INSTANCE, rawValue);
+  }
+
+  @Test
+  public void equalRawValuesAreCoercedOnce() throws CoerceFailedException {
+    ImmutableSortedSet<BuildTarget> first = coerce(basePath, ImmutableList.of(":a", "//foo:b"));
+    ImmutableSortedSet<BuildTarget> second = coerce(basePath, ImmutableList.of(":a", "//foo:b"));
+
+    assertSame(first, second);
+    assertEquals(2, coercions.get());
+  }
+
+  @Test
+  public void rawValuesFromDifferentPackagesAreCoercedSeparately() throws CoerceFailedException {
+    ImmutableSortedSet<BuildTarget> first = coerce(basePath, ImmutableList.of(":a"));
+    ImmutableSortedSet<BuildTarget> second = coerce(Paths.get("other"), ImmutableList.of(":a"));
+
+    assertNotSame(first, second);
+    assertEquals("//java/com/example:a", first.first().getFullyQualifiedName());
+    assertEquals("//other:a", second.first().getFullyQualifiedName());
+  }
+
+  @Test
+  public void mapsInDifferentOrdersAreCoercedSeparately() throws CoerceFailedException {
+    TypeCoercer<ImmutableMap<String, String>> mapCoercer =
+        new MapTypeCoercer<>(new StringTypeCoercer(), new StringTypeCoercer());
+    ImmutableMap<String, String> first =
+        CoercedValueCache.INSTANCE.coerce(
+            mapCoercer,
+            cellRoots,
+            filesystem,
+            basePath,
+            EmptyTargetConfiguration.INSTANCE,
+            ImmutableMap.of("a", "1", "b", "2"));
+    ImmutableMap<String, String> second =
+        CoercedValueCache.INSTANCE.coerce(
+            mapCoercer,
+            cellRoots,
+            filesystem,
+            basePath,
+            EmptyTargetConfiguration.INSTANCE,
+            ImmutableMap.of("b", "2", "a", "1"));
+
+    assertEquals(ImmutableList.of("a", "b"), first.keySet().asList());
+    assertEquals(ImmutableList.of("b", "a"), second.keySet().asList());
+  }
+
+  @Test
+  public void mutableRawValuesAreNotCached() throws CoerceFailedException {
+    List<String> rawValue = new ArrayList<>();
+    rawValue.add(":a");
+    coerce(basePath, rawValue);
+    coerce(basePath, rawValue);
+
+    assertEquals(2, coercions.get());
+  }
+
+  @Test
+  public void failedCoercionsAreNotCached() {
+    for (int i = 0; i < 2; i++) {
+      try {
+        coerce(basePath, ImmutableList.of("//foo::bar"));
+      } catch (CoerceFailedException e) {
+        // expected
+      }
+    }
+
+    assertEquals(2, coercions.get());
+  }
+
+  @Test
+  public void equalBuildTargetsAreInterned() throws CoerceFailedException {
+    BuildTarget fromFirstPackage = coerce(basePath, ImmutableList.of("//foo:b")).first();
+    BuildTarget fromSecondPackage = coerce(Paths.get("other"), ImmutableList.of("//foo:b")).first();
+
+    assertSame(fromFirstPackage, fromSecondPackage);
+  }
+}
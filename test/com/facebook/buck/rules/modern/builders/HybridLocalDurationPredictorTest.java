@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.builders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
+import java.util.OptionalLong;
+import org.junit.Test;
+
+public class HybridLocalDurationPredictorTest {
+  private final HybridLocalDurationPredictor predictor = new HybridLocalDurationPredictor();
+
+  @Test
+  public void nothingIsPredictedWithoutEnoughSamples() {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    for (int i = 1; i < HybridLocalDurationPredictor.MIN_SAMPLES; i++) {
+      predictor.recordLocalDuration(rule, 100);
+    }
+    assertFalse(predictor.predictLocalDuration(rule).isPresent());
+    assertFalse(predictor.predictDelegateDuration(rule).isPresent());
+  }
+
+  @Test
+  public void predictionsScaleWithInputSize() {
+    BuildRule dep = new FakeBuildRule("//:dep");
+    for (int i = 0; i < HybridLocalDurationPredictor.MIN_SAMPLES; i++) {
+      predictor.recordDelegateDuration(dep, 100);
+    }
+    assertEquals(OptionalLong.of(100), predictor.predictDelegateDuration(dep));
+    assertEquals(
+        OptionalLong.of(300),
+        predictor.predictDelegateDuration(
+            new FakeBuildRule("//:rule", dep, new FakeBuildRule("//:other_dep"))));
+  }
+
+  @Test
+  public void recentSamplesWeighMore() {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    for (int i = 0; i < HybridLocalDurationPredictor.MIN_SAMPLES; i++) {
+      predictor.recordLocalDuration(rule, 1000);
+    }
+    predictor.recordLocalDuration(rule, 0);
+    assertEquals(OptionalLong.of(800), predictor.predictLocalDuration(rule));
+  }
+}
@@ -39,6 +39,7 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -289,6 +290,138 @@ public class HybridLocalStrategyTest {
     }
   }
 
+  @Test
+  public void testJobsPredictedToFinishSoonerWithDelegateArentStolen() throws Exception {
+    HybridLocalDurationPredictor predictor =
+        trainedPredictor(TimeUnit.HOURS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(1));
+    Semaphore waiting = new Semaphore(0);
+    Semaphore finished = new Semaphore(0);
+    ListeningExecutorService service =
+        MoreExecutors.listeningDecorator(MostExecutors.newMultiThreadExecutor("test", 4));
+
+    try {
+      CancellableBuildRuleStrategy delegate = new CancellableBuildRuleStrategy();
+      JobLimitingStrategyContextFactory contextFactory =
+          new JobLimitingStrategyContextFactory(waiting, finished, 1, service);
+
+      try (HybridLocalStrategy strategy = new HybridLocalStrategy(1, 10, delegate, predictor)) {
+        List<ListenableFuture<Optional<BuildResult>>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+          FakeBuildRule rule = new FakeBuildRule("//:target-" + i);
+          results.add(
+              Futures.submitAsync(
+                  () -> strategy.build(rule, contextFactory.createContext(rule)).getBuildResult(),
+                  service));
+        }
+
+        assertTrue(delegate.started.tryAcquire(9, 1, TimeUnit.SECONDS));
+        waiting.release(1);
+        assertTrue(finished.tryAcquire(1, 1, TimeUnit.SECONDS));
+        assertFalse(delegate.cancelled.tryAcquire(20, TimeUnit.MILLISECONDS));
+
+        delegate.finishAll();
+        Futures.allAsList(results).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(0, strategy.getStolenJobs());
+      }
+    } finally {
+      service.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testJobsPredictedToFinishSoonerLocallyAreStolen() throws Exception {
+    HybridLocalDurationPredictor predictor =
+        trainedPredictor(TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.HOURS.toNanos(1));
+    Semaphore waiting = new Semaphore(0);
+    Semaphore finished = new Semaphore(0);
+    ListeningExecutorService service =
+        MoreExecutors.listeningDecorator(MostExecutors.newMultiThreadExecutor("test", 4));
+
+    try {
+      CancellableBuildRuleStrategy delegate = new CancellableBuildRuleStrategy();
+      JobLimitingStrategyContextFactory contextFactory =
+          new JobLimitingStrategyContextFactory(waiting, finished, 1, service);
+
+      try (HybridLocalStrategy strategy = new HybridLocalStrategy(1, 10, delegate, predictor)) {
+        List<ListenableFuture<Optional<BuildResult>>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+          FakeBuildRule rule = new FakeBuildRule("//:target-" + i);
+          results.add(
+              Futures.submitAsync(
+                  () -> strategy.build(rule, contextFactory.createContext(rule)).getBuildResult(),
+                  service));
+        }
+
+        assertTrue(delegate.started.tryAcquire(9, 1, TimeUnit.SECONDS));
+        waiting.release(10);
+        assertTrue(finished.tryAcquire(10, 1, TimeUnit.SECONDS));
+
+        Futures.allAsList(results).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(9, strategy.getStolenJobs());
+        assertTrue(strategy.getPredictedTimeSavedNanos() > TimeUnit.MINUTES.toNanos(9 * 59));
+        // Stolen jobs count as taking at least as long as predicted with the delegate.
+        Assert.assertEquals(
+            OptionalLong.of(TimeUnit.HOURS.toNanos(1)),
+            predictor.predictDelegateDuration(new FakeBuildRule("//:trained")));
+      }
+    } finally {
+      service.shutdownNow();
+    }
+  }
+
+  private static HybridLocalDurationPredictor trainedPredictor(
+      long localDurationNanos, long delegateDurationNanos) {
+    HybridLocalDurationPredictor predictor = new HybridLocalDurationPredictor();
+    BuildRule rule = new FakeBuildRule("//:trained");
+    for (int i = 0; i < HybridLocalDurationPredictor.MIN_SAMPLES; i++) {
+      predictor.recordLocalDuration(rule, localDurationNanos);
+      predictor.recordDelegateDuration(rule, delegateDurationNanos);
+    }
+    return predictor;
+  }
+
+  /** A delegate whose jobs only finish when cancelled or when the test finishes them. */
+  private static class CancellableBuildRuleStrategy extends SimpleBuildRuleStrategy {
+    private final Semaphore started = new Semaphore(0);
+    private final Semaphore cancelled = new Semaphore(0);
+    private final List<Runnable> finishers = new ArrayList<>();
+
+    @Override
+    public StrategyBuildResult build(BuildRule rule, BuildStrategyContext strategyContext) {
+      SettableFuture<Optional<BuildResult>> future = SettableFuture.create();
+      synchronized (finishers) {
+        finishers.add(
+            () ->
+                future.set(
+                    Optional.of(
+                        strategyContext.createBuildResult(BuildRuleSuccessType.BUILT_LOCALLY))));
+      }
+      started.release();
+      return new StrategyBuildResult() {
+        @Override
+        public void cancel(Throwable cause) {}
+
+        @Override
+        public boolean cancelIfNotStarted(Throwable reason) {
+          cancelled.release();
+          future.set(Optional.of(strategyContext.createCancelledResult(reason)));
+          return true;
+        }
+
+        @Override
+        public ListenableFuture<Optional<BuildResult>> getBuildResult() {
+          return future;
+        }
+      };
+    }
+
+    void finishAll() {
+      synchronized (finishers) {
+        finishers.forEach(Runnable::run);
+      }
+    }
+  }
+
   static class SimpleBuildRuleStrategy implements BuildRuleStrategy {
     @Override
     public void close() {}
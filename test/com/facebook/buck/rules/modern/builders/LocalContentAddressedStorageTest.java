@@ -17,6 +17,8 @@
 package com.facebook.buck.rules.modern.builders;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.remoteexecution.UploadDataSupplier;
 import com.facebook.buck.remoteexecution.grpc.GrpcProtocol;
@@ -28,6 +30,7 @@ import com.facebook.buck.remoteexecution.util.MerkleTreeNodeCache;
 import com.facebook.buck.remoteexecution.util.MerkleTreeNodeCache.MerkleTreeNode;
 import com.facebook.buck.testutil.TemporaryPaths;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
@@ -40,6 +43,9 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -56,6 +62,11 @@ public class LocalContentAddressedStorageTest {
     storage = new LocalContentAddressedStorage(storageDir, protocol);
   }
 
+  @After
+  public void tearDown() {
+    storage.close();
+  }
+
   @Test
   public void canAddData() throws IOException {
     byte[] data = "hello world!".getBytes(Charsets.UTF_8);
@@ -126,6 +137,102 @@ public class LocalContentAddressedStorageTest {
     assertDataEquals(otherData, Files.readAllBytes(inputsDir.resolve(otherPath)));
   }
 
+  @Test
+  public void leastRecentlyUsedBlobsAreEvicted() throws IOException {
+    storage = new LocalContentAddressedStorage(storageDir, protocol, 30);
+    Digest first = addBlob("first blob!!");
+    Digest second = addBlob("second blob!");
+    getBytes(first);
+    Digest third = addBlob("third blob!!");
+
+    assertEquals(1, storage.getEvictedBlobs());
+    assertEquals(24, storage.getTotalSize());
+    assertEquals(
+        ImmutableList.of(second),
+        storage.findMissing(ImmutableList.of(first, second, third)).collect(Collectors.toList()));
+
+    // Evicted blobs can be added again.
+    addBlob("second blob!");
+    assertDataEquals("second blob!".getBytes(Charsets.UTF_8), getBytes(second));
+  }
+
+  @Test
+  public void pinnedBlobsAreNotEvicted() throws IOException {
+    storage = new LocalContentAddressedStorage(storageDir, protocol, 30);
+    Digest first = addBlob("first blob!!");
+    storage.pin(ImmutableList.of(first));
+    Digest second = addBlob("second blob!");
+    Digest third = addBlob("third blob!!");
+
+    assertEquals(
+        ImmutableList.of(second),
+        storage.findMissing(ImmutableList.of(first, second, third)).collect(Collectors.toList()));
+
+    storage.unpin(ImmutableList.of(first));
+    addBlob("fourth blob!");
+
+    assertEquals(
+        ImmutableList.of(first, second),
+        storage.findMissing(ImmutableList.of(first, second, third)).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void existingBlobsAreAccountedFor() throws IOException {
+    addBlob("hello world!");
+    addBlob("goodbye world!");
+
+    assertEquals(26, new LocalContentAddressedStorage(storageDir, protocol, 100).getTotalSize());
+  }
+
+  @Test
+  public void prefetchedInputsAreMaterializedAsLinks() throws Exception {
+    Map<Path, FileNode> files = new HashMap<>();
+    Path toolPath = Paths.get("dir/tool.sh");
+    byte[] toolData = "#!/bin/sh".getBytes(Charsets.UTF_8);
+    files.put(toolPath, newFileNode(toolData, toolPath, true));
+    Path dataPath = Paths.get("other/data.txt");
+    byte[] someData = "some data".getBytes(Charsets.UTF_8);
+    files.put(dataPath, newFileNode(someData, dataPath, false));
+
+    MerkleTreeNodeCache nodeCache = new MerkleTreeNodeCache(protocol);
+    MerkleTreeNode node = nodeCache.createNode(files, ImmutableMap.of());
+    Digest rootDigest = nodeCache.getData(node).getDigest();
+    ImmutableMap.Builder<Digest, UploadDataSupplier> requiredData = ImmutableMap.builder();
+    requiredData.put(protocol.computeDigest(toolData), () -> new ByteArrayInputStream(toolData));
+    requiredData.put(protocol.computeDigest(someData), () -> new ByteArrayInputStream(someData));
+    nodeCache.forAllData(
+        node,
+        data ->
+            requiredData.put(
+                data.getDigest(),
+                () -> new ByteArrayInputStream(protocol.toByteArray(data.getDirectory()))));
+    Futures.getUnchecked(storage.addMissing(requiredData.build()));
+    long sizeBeforePrefetch = storage.getTotalSize();
+
+    storage.prefetchInputs(rootDigest).get(5, TimeUnit.SECONDS);
+    // The executable copy of the tool was created ahead of time.
+    assertEquals(sizeBeforePrefetch + toolData.length, storage.getTotalSize());
+
+    Path firstDir = tmp.getRoot().resolve("first");
+    Path secondDir = tmp.getRoot().resolve("second");
+    storage.materializeInputs(firstDir, rootDigest, Optional.empty());
+    storage.materializeInputs(secondDir, rootDigest, Optional.empty());
+
+    assertTrue(Files.isExecutable(firstDir.resolve(toolPath)));
+    assertFalse(Files.isExecutable(firstDir.resolve(dataPath)));
+    assertTrue(Files.isSameFile(firstDir.resolve(toolPath), secondDir.resolve(toolPath)));
+    assertTrue(Files.isSameFile(firstDir.resolve(dataPath), secondDir.resolve(dataPath)));
+    assertEquals(sizeBeforePrefetch + toolData.length, storage.getTotalSize());
+  }
+
+  private Digest addBlob(String content) throws IOException {
+    byte[] data = content.getBytes(Charsets.UTF_8);
+    Digest digest = protocol.computeDigest(data);
+    Futures.getUnchecked(
+        storage.addMissing(ImmutableMap.of(digest, () -> new ByteArrayInputStream(data))));
+    return digest;
+  }
+
   private FileNode newFileNode(byte[] bytes, Path path, boolean isExecutable) {
     return protocol.newFileNode(
         protocol.computeDigest(bytes), path.getFileName().toString(), isExecutable);
@@ -58,19 +58,26 @@ import com.facebook.buck.util.Memoizer;
 import com.facebook.buck.util.types.Either;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -504,4 +511,51 @@ public class BuildableSerializerTest extends AbstractValueVisitorTest {
     ObjectWithToolchain deserialized = test(object);
     assertEquals(object.toolchain, deserialized.toolchain);
   }
+
+  public static class SharedValue implements AddsToRuleKey {
+    @AddToRuleKey final String value = Strings.repeat("shared", 50);
+  }
+
+  public static class WithSharedValue implements AddsToRuleKey {
+    @AddToRuleKey final SharedValue shared;
+    @AddToRuleKey final int id;
+
+    WithSharedValue(SharedValue shared, int id) {
+      this.shared = shared;
+      this.id = id;
+    }
+  }
+
+  @Test
+  public void sharedValuesAreSerializedOnce() throws Exception {
+    replay(cellResolver, ruleFinder);
+    SharedValue shared = new SharedValue();
+    AtomicInteger sharedRegistrations = new AtomicInteger();
+    Serializer serializer =
+        new Serializer(
+            ruleFinder,
+            cellResolver,
+            (value, data, children) -> {
+              if (value == shared) {
+                sharedRegistrations.incrementAndGet();
+              }
+              return Hashing.sha1().hashBytes(data);
+            });
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<HashCode>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        WithSharedValue value = new WithSharedValue(shared, i);
+        results.add(executor.submit(() -> serializer.serialize(value)));
+      }
+      for (Future<HashCode> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, sharedRegistrations.get());
+  }
 }
@@ -116,6 +116,13 @@ public class SkylarkProjectBuildFileParserTest {
 
   private SkylarkProjectBuildFileParser createParserWithOptions(
       EventHandler eventHandler, ProjectBuildFileParserOptions options) {
+    return createParserWithOptions(eventHandler, options, new SkylarkExtensionCache());
+  }
+
+  private SkylarkProjectBuildFileParser createParserWithOptions(
+      EventHandler eventHandler,
+      ProjectBuildFileParserOptions options,
+      SkylarkExtensionCache extensionCache) {
     return SkylarkProjectBuildFileParser.using(
         options,
         BuckEventBusForTests.newInstance(),
@@ -126,7 +133,8 @@ public class SkylarkProjectBuildFileParserTest {
             .setDisableImplicitNativeRules(options.getDisableImplicitNativeRules())
             .build(),
         eventHandler,
-        NativeGlobber::create);
+        NativeGlobber::create,
+        extensionCache);
   }
 
   private SkylarkProjectBuildFileParser createParser(EventHandler eventHandler) {
@@ -559,6 +567,88 @@ public class SkylarkProjectBuildFileParserTest {
     assertTrue(parser.getBuildFileManifest(buildFile).getTargets().isEmpty());
   }
 
+  @Test
+  public void extensionIsEvaluatedOnceByParsersSharingCache() throws Exception {
+    SkylarkExtensionCache extensionCache = new SkylarkExtensionCache();
+    Path buildFile = projectFilesystem.resolve("BUCK");
+    Files.write(
+        buildFile,
+        Arrays.asList("load('//:ext.bzl', 'ext')", "prebuilt_jar(name='foo', binary_jar=ext)"));
+    Path extensionFile = projectFilesystem.resolve("ext.bzl");
+    Files.write(extensionFile, Arrays.asList("ext = 'hello'", "print('evaluated')"));
+
+    EventCollector firstEventCollector = new EventCollector(EnumSet.allOf(EventKind.class));
+    createParserWithOptions(firstEventCollector, getDefaultParserOptions().build(), extensionCache)
+        .getBuildFileManifest(buildFile);
+    assertEquals(1, firstEventCollector.count());
+
+    EventCollector secondEventCollector = new EventCollector(EnumSet.allOf(EventKind.class));
+    SkylarkProjectBuildFileParser secondParser =
+        createParserWithOptions(
+            secondEventCollector, getDefaultParserOptions().build(), extensionCache);
+    Map<String, Object> rule =
+        Iterables.getOnlyElement(
+            secondParser.getBuildFileManifest(buildFile).getTargets().values());
+    assertEquals(0, secondEventCollector.count());
+    assertThat(rule.get("binaryJar"), equalTo("hello"));
+    assertEquals(1, extensionCache.getHitCount());
+    assertEquals(1, extensionCache.getMissCount());
+  }
+
+  @Test
+  public void extensionIsReevaluatedWhenTransitiveLoadChanges() throws Exception {
+    SkylarkExtensionCache extensionCache = new SkylarkExtensionCache();
+    Path buildFile = projectFilesystem.resolve("BUCK");
+    Files.write(
+        buildFile,
+        Arrays.asList("load('//:ext.bzl', 'ext')", "prebuilt_jar(name='foo', binary_jar=ext)"));
+    Files.write(
+        projectFilesystem.resolve("ext.bzl"),
+        Arrays.asList("load('//:dep.bzl', 'dep')", "ext = dep"));
+    Path depFile = projectFilesystem.resolve("dep.bzl");
+    Files.write(depFile, Collections.singletonList("dep = 'old'"));
+    createParserWithOptions(
+            new PrintingEventHandler(EventKind.ALL_EVENTS),
+            getDefaultParserOptions().build(),
+            extensionCache)
+        .getBuildFileManifest(buildFile);
+
+    Files.write(depFile, Collections.singletonList("dep = 'new'"));
+    Map<String, Object> rule =
+        Iterables.getOnlyElement(
+            createParserWithOptions(
+                    new PrintingEventHandler(EventKind.ALL_EVENTS),
+                    getDefaultParserOptions().build(),
+                    extensionCache)
+                .getBuildFileManifest(buildFile)
+                .getTargets()
+                .values());
+    assertThat(rule.get("binaryJar"), equalTo("new"));
+    assertEquals(0, extensionCache.getHitCount());
+  }
+
+  @Test
+  public void invalidatingPathEvictsExtensionsLoadingIt() throws Exception {
+    SkylarkExtensionCache extensionCache = new SkylarkExtensionCache();
+    Path buildFile = projectFilesystem.resolve("BUCK");
+    Files.write(buildFile, Collections.singletonList("load('//:ext.bzl', 'ext')"));
+    Files.write(
+        projectFilesystem.resolve("ext.bzl"),
+        Arrays.asList("load('//:dep.bzl', 'dep')", "ext = dep"));
+    Path depFile = projectFilesystem.resolve("dep.bzl");
+    Files.write(depFile, Collections.singletonList("dep = 'value'"));
+    createParserWithOptions(
+            new PrintingEventHandler(EventKind.ALL_EVENTS),
+            getDefaultParserOptions().build(),
+            extensionCache)
+        .getBuildFileManifest(buildFile);
+    assertEquals(2, extensionCache.size());
+
+    extensionCache.invalidatePath(depFile);
+
+    assertEquals(0, extensionCache.size());
+  }
+
   @Test
   public void packageNameFunctionInExtensionUsesBuildFilePackage() throws Exception {
     Path buildFileDirectory = projectFilesystem.resolve("test");
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.test;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Optional;
+import org.junit.Test;
+
+public class TestSchedulerTest {
+
+  @Test
+  public void unknownDurationsAreEstimatedAtTheMeanOfKnownOnes() {
+    ImmutableMap<String, Long> known = ImmutableMap.of("a", 10L, "c", 30L);
+
+    assertEquals(
+        ImmutableMap.of("a", 10L, "b", 20L, "c", 30L),
+        TestScheduler.estimateDurationsMs(
+            ImmutableList.of("a", "b", "c"), item -> Optional.ofNullable(known.get(item))));
+    assertEquals(
+        ImmutableMap.of("a", 0L),
+        TestScheduler.estimateDurationsMs(ImmutableList.of("a"), item -> Optional.empty()));
+  }
+
+  @Test
+  public void ordersLongestFirstAndKeepsTheOrderOfTies() {
+    assertEquals(
+        ImmutableList.of("slow", "b", "a", "fast"),
+        TestScheduler.orderLongestFirst(
+            ImmutableMap.of("fast", 1L, "b", 5L, "slow", 10L, "a", 5L)));
+  }
+
+  @Test
+  public void predictsTheWallTimeOfRunningInParallel() {
+    assertEquals(10, TestScheduler.predictWallTimeMs(ImmutableList.of(10L, 4L, 3L, 3L), 2));
+    assertEquals(20, TestScheduler.predictWallTimeMs(ImmutableList.of(10L, 4L, 3L, 3L), 1));
+    assertEquals(13, TestScheduler.predictWallTimeMs(ImmutableList.of(3L, 3L, 4L, 10L), 2));
+    assertEquals(0, TestScheduler.predictWallTimeMs(ImmutableList.of(), 4));
+  }
+
+  @Test
+  public void shardedItemsWaitForAndKeepSeveralSlots() {
+    ImmutableMap<String, Long> durations = ImmutableMap.of("sharded", 10L, "a", 5L, "b", 5L);
+    ImmutableMap<String, Integer> slots = ImmutableMap.of("sharded", 2, "a", 1, "b", 1);
+
+    assertEquals(
+        15,
+        TestScheduler.predictWallTimeMs(
+            ImmutableList.of("sharded", "a", "b"), durations::get, slots::get, 2));
+    assertEquals(
+        20,
+        TestScheduler.predictWallTimeMs(
+            ImmutableList.of("a", "sharded", "b"), durations::get, slots::get, 2));
+    assertEquals(
+        20,
+        TestScheduler.predictWallTimeMs(
+            ImmutableList.of("sharded", "a", "b"), durations::get, slots::get, 1));
+  }
+
+  @Test
+  public void splitsIntoShardsOfSimilarDuration() {
+    assertEquals(
+        ImmutableList.of(ImmutableList.of("a", "d"), ImmutableList.of("b", "c")),
+        TestScheduler.splitIntoShards(
+            ImmutableMap.of("a", 40L, "b", 30L, "c", 20L, "d", 10L), 4, 50));
+  }
+
+  @Test
+  public void doesNotSplitShortOrSingleItems() {
+    assertEquals(
+        ImmutableList.of(ImmutableList.of("b", "a")),
+        TestScheduler.splitIntoShards(ImmutableMap.of("a", 10L, "b", 20L), 4, 100));
+    assertEquals(
+        ImmutableList.of(ImmutableList.of("a")),
+        TestScheduler.splitIntoShards(ImmutableMap.of("a", 1000L), 4, 10));
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.facebook.buck.util.zip;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
@@ -93,6 +94,23 @@ public class CustomJarOutputStreamTest {
     }
   }
 
+  @Test
+  public void deflatedEntriesAreWrittenAsIfDeflatedByTheStream() throws IOException {
+    byte[] contents = "Deflated contents, deflated contents".getBytes(StandardCharsets.UTF_8);
+    writer.writeEntry("A", new ByteArrayInputStream(contents));
+    writer.close();
+
+    ByteArrayOutputStream deflatedOut = new ByteArrayOutputStream();
+    try (CustomJarOutputStream deflatedWriter = ZipOutputStreams.newJarOutputStream(deflatedOut)) {
+      deflatedWriter.setEntryHashingEnabled(true);
+      CustomZipEntry entry = new CustomZipEntry("A");
+      deflatedWriter.writeDeflatedEntry(
+          entry, DeflatedEntry.deflate(entry, new ByteArrayInputStream(contents), true));
+    }
+
+    assertArrayEquals(out.toByteArray(), deflatedOut.toByteArray());
+  }
+
   @Test
   public void manifestDoesNotContainEntryHashesOfDirectories() throws IOException {
     String entryName = "A/";
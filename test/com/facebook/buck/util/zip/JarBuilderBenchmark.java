@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.zip;
+
+import com.facebook.buck.io.file.MostFiles;
+import com.google.common.base.Splitter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to merge prebuilt jars into a fat jar, deflating entries one by one
+ * and on a fork-join pool.
+ *
+ * <p>Run with {@code buck run //test/com/facebook/buck/benchmarks:jmh JarBuilderBenchmark} from
+ * the root of the repository, since the jars are resolved relative to it. That the parallel jar is
+ * the same as the sequential one is tested by {@code JarBuilderTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class JarBuilderBenchmark {
+  @Param({
+    "third-party/java/guava/guava-23.3-jre.jar,"
+        + "third-party/java/jackson/jackson-core-2.9.7.jar,"
+        + "third-party/java/jackson/jackson-databind-2.9.7.jar,"
+        + "third-party/java/asm/asm-7.0.jar,"
+        + "third-party/java/asm/asm-tree-7.0.jar,"
+        + "third-party/java/asm/asm-util-7.0.jar,"
+        + "third-party/java/commons-compress/commons-compress-1.18.jar"
+  })
+  public String jars;
+
+  private List<Path> inputJars;
+  private Path outputDir;
+  private Path outputJar;
+  private ForkJoinPool pool;
+
+  @Setup
+  public void setUpBenchmark() throws IOException {
+    inputJars =
+        Splitter.on(',')
+            .splitToList(jars)
+            .stream()
+            .map(jar -> Paths.get(jar).toAbsolutePath())
+            .collect(Collectors.toList());
+    outputDir = Files.createTempDirectory("jar-builder-benchmark");
+    outputJar = outputDir.resolve("fat.jar");
+    pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  @TearDown
+  public void tearDownBenchmark() throws IOException {
+    pool.shutdownNow();
+    MostFiles.deleteRecursively(outputDir);
+  }
+
+  @Setup(Level.Invocation)
+  public void deleteOutput() throws IOException {
+    Files.deleteIfExists(outputJar);
+  }
+
+  @Benchmark
+  public void createSequentially() throws IOException {
+    newJarBuilder().createJarFile(outputJar);
+  }
+
+  @Benchmark
+  public void createInParallel() throws IOException {
+    newJarBuilder().setForkJoinPool(pool).createJarFile(outputJar);
+  }
+
+  private JarBuilder newJarBuilder() {
+    return new JarBuilder().setEntriesToJar(inputJars).setShouldMergeManifests(true);
+  }
+}
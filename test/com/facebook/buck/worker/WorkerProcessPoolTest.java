@@ -196,6 +196,23 @@ public class WorkerProcessPoolTest {
     assertThat(process2, is(not(process)));
   }
 
+  @Test
+  public void recycledWorkersAreRestarted() throws InterruptedException, IOException {
+    Set<WorkerProcess> createdWorkers = new HashSet<>();
+    WorkerProcessPool pool = createPool(1, createdWorkers::add);
+
+    BorrowedWorkerProcess worker = pool.borrowWorkerProcess();
+    WorkerProcess process = worker.get();
+    worker.recycle();
+    assertThat(process.isAlive(), is(false));
+
+    try (BorrowedWorkerProcess worker2 = pool.borrowWorkerProcess()) {
+      assertThat(worker2.get(), is(not(process)));
+    }
+    assertThat(createdWorkers.size(), is(2));
+    pool.close();
+  }
+
   @Test(timeout = WAIT_FOR_TEST_THREADS_TIMEOUT)
   public void notifiesWaitingThreadsWhenCleaningDeadProcesses() throws Exception {
     int maxWorkers = 2;
@@ -17,6 +17,7 @@
 package com.facebook.buck.zip;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
@@ -25,12 +26,15 @@ import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.TemporaryPaths;
 import com.facebook.buck.util.zip.ZipCompressionLevel;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 import org.junit.Before;
 import org.junit.Rule;
@@ -95,4 +99,36 @@ public class RepackZipEntriesStepTest {
 
     assertTrue(expected.length < actual.length);
   }
+
+  @Test
+  public void entriesThatAreNotRepackedKeepTheirCompressedData() throws Exception {
+    Path fastZipFile = parent.resolve("fast.zip");
+    String packageName = getClass().getPackage().getName().replace('.', '/');
+    byte[] sample = Resources.toByteArray(Resources.getResource(packageName + "/sample-bytes.dat"));
+    try (ZipOutputStream stream = new ZipOutputStream(Files.newOutputStream(fastZipFile))) {
+      stream.setLevel(Deflater.BEST_SPEED);
+      for (String name : new String[] {"first", "second"}) {
+        stream.putNextEntry(new ZipEntry(name));
+        stream.write(sample);
+      }
+    }
+
+    Path out = parent.resolve("output.zip");
+    RepackZipEntriesStep step =
+        new RepackZipEntriesStep(filesystem, fastZipFile, out, ImmutableSet.of("second"));
+    step.execute(TestExecutionContext.newInstance());
+
+    try (ZipFile input = new ZipFile(fastZipFile.toFile());
+        ZipFile output = new ZipFile(out.toFile())) {
+      ZipEntry copied = output.getEntry("first");
+      assertEquals(input.getEntry("first").getCompressedSize(), copied.getCompressedSize());
+      assertEquals(input.getEntry("first").getCrc(), copied.getCrc());
+      assertArrayEquals(
+          ByteStreams.toByteArray(input.getInputStream(input.getEntry("first"))),
+          ByteStreams.toByteArray(output.getInputStream(copied)));
+      assertTrue(
+          output.getEntry("second").getCompressedSize()
+              < input.getEntry("second").getCompressedSize());
+    }
+  }
 }